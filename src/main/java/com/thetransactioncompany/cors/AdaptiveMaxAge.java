@@ -0,0 +1,179 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Adaptive preflight max-age, which grows with the stability of the CORS
+ * policy for the origins which repeat their preflight requests.
+ *
+ * <p>The policy is considered changed when it is loaded, i.e. when the
+ * request handler is created, and the advertised max-age starts at the
+ * configured minimum. As the policy stays unchanged, the max-age of
+ * repeating origins is doubled in steps, up to about a quarter of the
+ * policy age: a policy which has been stable for a day is unlikely to
+ * change within the next six hours. Origins seen for the first time get
+ * the minimum, which limits the number of stale browser caches after a
+ * policy change. A tenant policy refresh which finds the properties
+ * unchanged keeps the request handler, so the policy age isn't reset.
+ *
+ * <p>The preflights are counted per origin in a fixed array of saturating
+ * counters, indexed by a {@link SeededHash seeded hash} of the origin, so
+ * the memory use is constant and crafted origins cannot target a counter.
+ * The counters are halved every hour, so only recent repeats count.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class AdaptiveMaxAge {
+
+
+	/**
+	 * The number of preflights within the decay interval from which an
+	 * origin is considered repeating.
+	 */
+	static final int REPEAT_THRESHOLD = 2;
+
+
+	/**
+	 * The divisor of the policy age for the advertised max-age.
+	 */
+	static final int STABILITY_DIVISOR = 4;
+
+
+	/**
+	 * The number of counters, a power of two.
+	 */
+	static final int COUNTERS = 4096;
+
+
+	/**
+	 * The maximum counter value.
+	 */
+	private static final int MAX_COUNT = 255;
+
+
+	/**
+	 * The counter decay interval, in nanoseconds.
+	 */
+	static final long DECAY_INTERVAL = TimeUnit.HOURS.toNanos(1);
+
+
+	/**
+	 * The time the policy was loaded, from {@link System#nanoTime}.
+	 */
+	private final long loadedAt;
+
+
+	/**
+	 * The hash function for the origin counters.
+	 */
+	private final SeededHash hash = new SeededHash();
+
+
+	/**
+	 * The preflight counters.
+	 */
+	private final AtomicIntegerArray counters = new AtomicIntegerArray(COUNTERS);
+
+
+	/**
+	 * The time of the next counter decay, from {@link System#nanoTime}.
+	 */
+	private final AtomicLong nextDecay;
+
+
+	/**
+	 * Creates a new adaptive max-age for a policy loaded now.
+	 */
+	AdaptiveMaxAge() {
+
+		this(System.nanoTime());
+	}
+
+
+	/**
+	 * Creates a new adaptive max-age.
+	 *
+	 * @param loadedAt The time the policy was loaded, from
+	 *                 {@link System#nanoTime}.
+	 */
+	AdaptiveMaxAge(final long loadedAt) {
+
+		this.loadedAt = loadedAt;
+		nextDecay = new AtomicLong(loadedAt + DECAY_INTERVAL);
+	}
+
+
+	/**
+	 * Counts a preflight request of the specified origin.
+	 *
+	 * @param originKey The canonical origin key. Must not be {@code null}.
+	 * @param now       The current time, from {@link System#nanoTime}.
+	 *
+	 * @return The number of recent preflights of the origin, including
+	 *         this one.
+	 */
+	int countPreflight(final String originKey, final long now) {
+
+		long decay = nextDecay.get();
+
+		if (now - decay >= 0 && nextDecay.compareAndSet(decay, now + DECAY_INTERVAL)) {
+
+			for (int i = 0; i < COUNTERS; i++) {
+
+				int count;
+
+				do {
+					count = counters.get(i);
+
+				} while (count > 0 && ! counters.compareAndSet(i, count, count >>> 1));
+			}
+		}
+
+		final int i = hash.hash(originKey) & (COUNTERS - 1);
+
+		int count;
+
+		do {
+			count = counters.get(i);
+
+			if (count == MAX_COUNT)
+				return count;
+
+		} while (! counters.compareAndSet(i, count, count + 1));
+
+		return count + 1;
+	}
+
+
+	/**
+	 * Counts a preflight request of the specified origin and returns the
+	 * max-age step for it: 0 for the minimum max-age, each step doubling
+	 * it.
+	 *
+	 * @param originKey  The canonical origin key. Must not be
+	 *                   {@code null}.
+	 * @param minSeconds The minimum max-age, in seconds. Must be
+	 *                   positive.
+	 * @param now        The current time, from {@link System#nanoTime}.
+	 *
+	 * @return The max-age step, not bounded by the maximum max-age.
+	 */
+	int getStep(final String originKey, final int minSeconds, final long now) {
+
+		if (countPreflight(originKey, now) < REPEAT_THRESHOLD)
+			return 0;
+
+		long stableSeconds = TimeUnit.NANOSECONDS.toSeconds(now - loadedAt) / STABILITY_DIVISOR;
+
+		long ratio = stableSeconds / minSeconds;
+
+		if (ratio < 2)
+			return 0;
+
+		return 63 - Long.numberOfLeadingZeros(ratio);
+	}
+}
@@ -0,0 +1,128 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Thread-safe bloom filter of strings. Answers whether a string may be in
+ * the set (with a small false positive probability) or is definitely not
+ * in it, using a few bit probes derived from a {@link SeededHash seeded
+ * hash} of the string, so crafted strings cannot be steered into the bits
+ * of the set elements.
+ *
+ * <p>The filter is sized for about 10 bits per expected element, which
+ * gives a false positive probability of about 1% at the expected element
+ * count. Additions are lock-free; elements cannot be removed.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class BloomFilter {
+
+
+	/**
+	 * The number of bits per expected element.
+	 */
+	private static final int BITS_PER_ELEMENT = 10;
+
+
+	/**
+	 * The number of bit probes per element.
+	 */
+	private static final int PROBES = 7;
+
+
+	/**
+	 * The filter bits.
+	 */
+	private final AtomicLongArray bits;
+
+
+	/**
+	 * Bit mask for mapping hash values to bit indices.
+	 */
+	private final int mask;
+
+
+	/**
+	 * The hash function for the bit probes.
+	 */
+	private final SeededHash hash = new SeededHash();
+
+
+	/**
+	 * Creates a new empty bloom filter.
+	 *
+	 * @param expectedElements The expected number of elements.
+	 */
+	BloomFilter(final int expectedElements) {
+
+		long wanted = Math.max(64L, (long)Math.max(1, expectedElements) * BITS_PER_ELEMENT);
+
+		// Round up to a power of two, at most 2^30 bits
+		int size = Integer.highestOneBit((int)Math.min(wanted, 1 << 30));
+
+		if (size < wanted && size < (1 << 30))
+			size <<= 1;
+
+		bits = new AtomicLongArray(size >>> 6);
+		mask = size - 1;
+	}
+
+
+	/**
+	 * Adds the specified string to the filter.
+	 *
+	 * @param s The string. Must not be {@code null}.
+	 */
+	void add(final String s) {
+
+		final long h = hash.hash64(s);
+		final int h1 = (int)h;
+		final int h2 = (int)(h >>> 32) | 1;
+
+		for (int i = 0; i < PROBES; i++) {
+
+			int bit = (h1 + i * h2) & mask;
+
+			int word = bit >>> 6;
+			long bitMask = 1L << bit;
+
+			long current;
+
+			do {
+				current = bits.get(word);
+
+				if ((current & bitMask) != 0)
+					break;
+
+			} while (! bits.compareAndSet(word, current, current | bitMask));
+		}
+	}
+
+
+	/**
+	 * Checks if the specified string may be in the filter.
+	 *
+	 * @param s The string. Must not be {@code null}.
+	 *
+	 * @return {@code false} if the string is definitely not in the
+	 *         filter, {@code true} if it may be.
+	 */
+	boolean mightContain(final String s) {
+
+		final long h = hash.hash64(s);
+		final int h1 = (int)h;
+		final int h2 = (int)(h >>> 32) | 1;
+
+		for (int i = 0; i < PROBES; i++) {
+
+			int bit = (h1 + i * h2) & mask;
+
+			if ((bits.get(bit >>> 6) & (1L << bit)) == 0)
+				return false;
+		}
+
+		return true;
+	}
+}
@@ -1,18 +1,24 @@
 package com.thetransactioncompany.cors;
 
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-
-import com.thetransactioncompany.util.PropertyParseException;
-import com.thetransactioncompany.util.PropertyRetriever;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
  * The CORS filter configuration. The fields become immutable (final) after 
- * they are initialised.
+ * they are initialised. The allowed origins may be updated at runtime 
+ * through the {@link #getOriginRegistry origin registry}.
  *
  * @author Vladimir Dzhuvinov
  * @author Luis Sala
@@ -49,9 +55,91 @@ public class CORSConfiguration {
 	 * parsing of the request origins before matching, see 
 	 * http://lists.w3.org/Archives/Public/public-webapps/2010JulSep/1046.html
 	 *
+	 * <p>The set is a read-only view of the {@link #getOriginRegistry
+	 * origin registry} and reflects any runtime changes to it.
+	 *
 	 * <p>Property key: cors.allowOrigin
 	 */
 	public final Set<ValidatedOrigin> allowedOrigins;
+
+
+	/**
+	 * Wildcard patterns of origins that the CORS filter must allow, such
+	 * as {@code https://*.example.com} or {@code http://localhost:*}, see
+	 * {@link OriginPatternMatcher} for the syntax. Empty if none.
+	 *
+	 * <p>Property key: cors.allowOrigin
+	 */
+	public final Set<String> allowedOriginPatterns;
+
+
+	/**
+	 * Matcher for the {@link #allowedOriginPatterns}, {@code null} if 
+	 * none are configured.
+	 */
+	private final OriginPatternMatcher originPatternMatcher;
+
+
+	/**
+	 * IP address ranges of IP-literal origins that the CORS filter must
+	 * allow, in CIDR notation, such as {@code http://10.0.0.0/8:*}, see
+	 * {@link OriginRangeMatcher} for the syntax. Empty if none.
+	 *
+	 * <p>Property key: cors.allowOrigin
+	 */
+	public final Set<String> allowedOriginRanges;
+
+
+	/**
+	 * Matcher for the {@link #allowedOriginRanges}, {@code null} if none
+	 * are configured.
+	 */
+	private final OriginRangeMatcher originRangeMatcher;
+
+
+	/**
+	 * The registry of the allowed origins, shared with the parent or the
+	 * previous configuration if the allowed origins are the same.
+	 */
+	private final OriginRegistry originRegistry;
+
+
+	/**
+	 * The raw {@code cors.allowOrigin} value, for comparing the allowed
+	 * origins with those of the named and tenant policies.
+	 */
+	private final String allowOriginSpec;
+
+
+	/**
+	 * Notified by the origin registry after origins are added.
+	 */
+	private final Runnable originAdditionListener;
+
+
+	/**
+	 * Returns the registry of the allowed origins, which may be used to
+	 * add and remove origins at runtime. Does not apply if
+	 * {@link #allowAnyOrigin} is set.
+	 *
+	 * <p>A named or tenant policy with the same {@code cors.allowOrigin}
+	 * value as the top-level configuration, typically inherited, shares
+	 * the registry of the top-level configuration, so origins added at
+	 * runtime apply to it too. A policy with a different
+	 * {@code cors.allowOrigin} value has its own registry.
+	 *
+	 * <p>A configuration reloaded with an unchanged
+	 * {@code cors.allowOrigin} value, see
+	 * {@link CORSConfigurationLoader#load(CORSConfiguration)}, takes over
+	 * the registry of the previous configuration, so the origins added and
+	 * removed at runtime and the temporary grants are retained.
+	 *
+	 * @return The origin registry.
+	 */
+	public OriginRegistry getOriginRegistry() {
+
+		return originRegistry;
+	}
 	
 	
 	/**
@@ -69,11 +157,138 @@ public class CORSConfiguration {
 	 * <p>Property key: cors.allowSubdomains
 	 */
 	public final boolean allowSubdomains;
+
+
+	/**
+	 * If {@code true} {@link #allowSubdomains subdomain} matching allows
+	 * any origin with the same registrable domain, scheme and port as one
+	 * of the {@link #allowedOrigins}, else any origin which is a
+	 * subdomain of them. The registrable domain is determined by the
+	 * {@link PublicSuffixList public suffix list}, so that allowing
+	 * {@code https://www.example.co.uk} allows
+	 * {@code https://app.example.co.uk}, but allowing a public suffix
+	 * such as {@code https://co.uk} allows nothing beyond itself. Nor does
+	 * allowing an origin under a top level domain which is not on the
+	 * list.
+	 *
+	 * <p>Property key: cors.matchRegistrableDomain
+	 */
+	public final boolean matchRegistrableDomain;
+
+
+	/**
+	 * The registrable domain keys of the allowed origins, as
+	 * {@code scheme://registrable-domain[:port]}.
+	 */
+	private static final class RegistrableDomainIndex {
+
+
+		/**
+		 * The origin registry version the index was built from.
+		 */
+		final long version;
+
+
+		/**
+		 * The registrable domain keys.
+		 */
+		final Set<String> keys;
+
+
+		RegistrableDomainIndex(final long version, final Set<String> keys) {
+
+			this.version = version;
+			this.keys = keys;
+		}
+	}
+
+
+	/**
+	 * The registrable domain index of the allowed origins, rebuilt when
+	 * the origin registry changes, {@code null} if not built yet.
+	 */
+	private volatile RegistrableDomainIndex registrableDomainIndex;
+
+
+	/**
+	 * The maximum number of validated request origins to cache, for 
+	 * {@link #allowSubdomains subdomain} matching. Zero if caching is 
+	 * disabled.
+	 *
+	 * <p>Property key: cors.validatedOriginCacheSize
+	 */
+	public final int validatedOriginCacheSize;
+
+
+	/**
+	 * Caches the validated request origins, {@code null} if disabled.
+	 */
+	private final ValidatedOriginCache validatedOriginCache;
+
+
+	/**
+	 * Returns the cache of the validated request origins.
+	 *
+	 * @return The validated origin cache, {@code null} if disabled.
+	 */
+	public ValidatedOriginCache getValidatedOriginCache() {
+
+		return validatedOriginCache;
+	}
+
+
+	/**
+	 * Origins that the CORS filter must deny, even if they are allowed
+	 * otherwise. Compared case-insensitively, ignoring explicit default
+	 * ports. Empty if none.
+	 *
+	 * <p>Property key: cors.denyOrigin
+	 */
+	public final Set<Origin> deniedOrigins;
+
+
+	/**
+	 * The number of times an origin must be denied before it is learned
+	 * as a denied origin and rejected up front. Zero if learning is 
+	 * disabled (the default). Learning is suspended while an
+	 * {@link #setOriginAuthorizer origin authorizer} is set.
+	 *
+	 * <p>Property key: cors.denyOrigin.learnThreshold
+	 */
+	public final int denyOriginLearnThreshold;
+
+
+	/**
+	 * The maximum number of learned denied origins.
+	 *
+	 * <p>Property key: cors.denyOrigin.learnedMaxSize
+	 */
+	public final int denyOriginLearnedMaxSize;
+
+
+	/**
+	 * The list of the denied and learned origins.
+	 */
+	private final OriginDenyList originDenyList;
+
+
+	/**
+	 * Returns the list of the {@link #deniedOrigins denied} and learned
+	 * origins.
+	 *
+	 * @return The origin deny list.
+	 */
+	public OriginDenyList getOriginDenyList() {
+
+		return originDenyList;
+	}
 	
 
 	/**
 	 * Helper method to check whether requests from the specified origin 
-	 * must be allowed.
+	 * must be allowed. The {@link #deniedOrigins denied} and learned
+	 * origins are rejected first. If {@link #allowAnyOrigin} is set and
+	 * no origins are denied the origin is not looked at.
 	 *
 	 * @param origin The origin as reported by the web client (browser), 
 	 *               {@code null} if unknown.
@@ -82,18 +297,59 @@ public class CORSConfiguration {
 	 */
 	public final boolean isAllowedOrigin(final Origin origin) {
 
+		return isAllowedOrigin(origin, true);
+	}
+
+
+	/**
+	 * Checks whether requests from the specified origin must be allowed,
+	 * see {@link #isAllowedOrigin(Origin)}, optionally skipping the
+	 * origin group lookup, for callers which have already done it.
+	 *
+	 * @param origin      The origin as reported by the web client
+	 *                    (browser), {@code null} if unknown.
+	 * @param checkGroups If {@code true} the origins in the origin groups
+	 *                    are allowed, if {@code false} they are not
+	 *                    looked up.
+	 *
+	 * @return {@code true} if the origin is allowed, else {@code false}.
+	 */
+	final boolean isAllowedOrigin(final Origin origin, final boolean checkGroups) {
+
         	if (allowAnyOrigin)
-                	return true;
+                	return deniedOrigins.isEmpty() || origin == null || ! originDenyList.isDenied(origin);
 		
 		if (origin == null)
 			return false;
+
+		if (originDenyList.isDenied(origin))
+			return false;
 		
-		if (allowedOrigins.contains(origin))
+		if (originRegistry.contains(origin))
+			return true;
+
+		if (checkGroups && indexOfGroupOrigin(origin) >= 0)
+			return true;
+
+		if (originPatternMatcher != null && originPatternMatcher.matches(origin))
+			return true;
+
+		if (originRangeMatcher != null && originRangeMatcher.matches(origin))
 			return true;
 			
-		else if (allowSubdomains)
-			return isAllowedSubdomainOrigin(origin);
-		
+		if (allowSubdomains && isAllowedSubdomainOrigin(origin))
+			return true;
+
+		// Delegate the remaining origins to the authorizer, if any
+		OriginAuthorizationCache authorizationCache = getEffectiveOriginAuthorizationCache();
+
+		if (authorizationCache != null)
+			return authorizationCache.isAllowed(origin);
+
+		// Learn repeatedly denied origins, to reject them up front
+		if (originDenyList.isLearning())
+			originDenyList.recordDenial(origin);
+
 		return false;
 	}
 	
@@ -109,6 +365,9 @@ public class CORSConfiguration {
 	 * {@code cors.allowedOrigin = https://example.com } whereas 
 	 * {@code cors.allowedOrigin = http://example.com } would not match.
 	 *
+	 * <p>If {@link #matchRegistrableDomain} is set the origin's scheme,
+	 * registrable domain and port are matched instead.
+	 *
 	 * @param origin The origin as reported by the web client (browser), 
 	 *               {@code null} if unknown.
 	 *
@@ -118,7 +377,15 @@ public class CORSConfiguration {
 	public final boolean isAllowedSubdomainOrigin(final Origin origin) {
 		
 		try {
-			ValidatedOrigin validatedOrigin = origin.validate();
+			ValidatedOrigin validatedOrigin = validatedOriginCache != null ? 
+				validatedOriginCache.validate(origin) : origin.validate();
+
+			if (matchRegistrableDomain) {
+
+				String key = toRegistrableDomainKey(validatedOrigin);
+
+				return key != null && getRegistrableDomainIndex().keys.contains(key);
+			}
 			
 			String scheme = validatedOrigin.getScheme();
 			String suffix = validatedOrigin.getSuffix();
@@ -140,10 +407,223 @@ public class CORSConfiguration {
 	}
 	
 	
+	/**
+	 * Returns the registrable domain key of the specified origin.
+	 *
+	 * @param origin The validated origin.
+	 *
+	 * @return The key, as {@code scheme://registrable-domain[:port]},
+	 *         {@code null} if the origin host has no registrable domain.
+	 */
+	private static String toRegistrableDomainKey(final ValidatedOrigin origin) {
+
+		String domain = origin.getRegistrableDomain();
+
+		if (domain == null)
+			return null;
+
+		String key = origin.getScheme() + "://" + domain;
+
+		return origin.getPort() != -1 ? OriginUtils.toCanonicalKey(key + ":" + origin.getPort()) : key;
+	}
+
+
+	/**
+	 * Returns the registrable domain index of the allowed origins,
+	 * rebuilding it if the origin registry changed.
+	 *
+	 * @return The registrable domain index.
+	 */
+	private RegistrableDomainIndex getRegistrableDomainIndex() {
+
+		RegistrableDomainIndex index = registrableDomainIndex;
+
+		final long version = originRegistry.getVersion();
+
+		if (index != null && index.version == version)
+			return index;
+
+		Set<String> keys = new HashSet<String>();
+
+		for (ValidatedOrigin allowedOrigin: allowedOrigins) {
+
+			String key = toRegistrableDomainKey(allowedOrigin);
+
+			if (key != null)
+				keys.add(key);
+		}
+
+		index = new RegistrableDomainIndex(version, keys);
+		registrableDomainIndex = index;
+		return index;
+	}
+	
+	
+	/**
+	 * The maximum number of origin authorizer results to cache.
+	 *
+	 * <p>Property key: cors.originAuthorizer.cacheSize
+	 */
+	public final int originAuthorizerCacheSize;
+
+
+	/**
+	 * The time-to-live of cached positive origin authorizer results, in
+	 * seconds.
+	 *
+	 * <p>Property key: cors.originAuthorizer.positiveTTL
+	 */
+	public final long originAuthorizerPositiveTTL;
+
+
+	/**
+	 * The time-to-live of cached negative origin authorizer results, in
+	 * seconds.
+	 *
+	 * <p>Property key: cors.originAuthorizer.negativeTTL
+	 */
+	public final long originAuthorizerNegativeTTL;
+
+
+	/**
+	 * The period after expiration during which a cached origin authorizer
+	 * result may still be used while it is refreshed in the background,
+	 * in seconds.
+	 *
+	 * <p>Property key: cors.originAuthorizer.staleTTL
+	 */
+	public final long originAuthorizerStaleTTL;
+
+
+	/**
+	 * The number of background threads for origin authorizer lookups.
+	 *
+	 * <p>Property key: cors.originAuthorizer.threads
+	 */
+	public final int originAuthorizerThreads;
+
+
+	/**
+	 * The maximum time a request from an origin without a cached origin
+	 * authorizer result waits for the lookup, in milliseconds. If the
+	 * lookup doesn't complete in time, or if zero, the request is denied.
+	 * Zero by default, a wait blocks the request thread on the backing
+	 * store of the authorizer and should only be enabled deliberately.
+	 *
+	 * <p>Property key: cors.originAuthorizer.missWait
+	 */
+	public final long originAuthorizerMissWait;
+
+
+	/**
+	 * Caches the results of the origin authorizer, {@code null} if none
+	 * is set.
+	 */
+	private volatile OriginAuthorizationCache originAuthorizationCache;
+
+
+	/**
+	 * The configuration from which this named or tenant policy inherits
+	 * its settings, {@code null} for a top-level configuration.
+	 */
+	private final CORSConfiguration parent;
+
+
+	/**
+	 * The properties from which this configuration was created.
+	 */
+	private final Properties sourceProps;
+
+
+	/**
+	 * Returns the cache of the origin authorizer which applies to this
+	 * configuration, its own or else the one inherited from the parent
+	 * configuration.
+	 *
+	 * @return The origin authorizer cache, {@code null} if none.
+	 */
+	private OriginAuthorizationCache getEffectiveOriginAuthorizationCache() {
+
+		OriginAuthorizationCache authorizationCache = originAuthorizationCache;
+
+		if (authorizationCache == null && parent != null)
+			return parent.originAuthorizationCache;
+
+		return authorizationCache;
+	}
+
+
+	/**
+	 * Sets an authorizer for the origins which are not in the
+	 * {@link #allowedOrigins} and don't match as 
+	 * {@link #allowSubdomains subdomains}. The authorizer results are
+	 * cached according to the {@code cors.originAuthorizer.*} settings.
+	 * Any previously set authorizer is shut down. The named and tenant
+	 * policies without an authorizer of their own share the authorizer
+	 * and its cache.
+	 *
+	 * <p>Property key: cors.originAuthorizer (class name)
+	 *
+	 * @param authorizer The origin authorizer, {@code null} if none.
+	 */
+	public void setOriginAuthorizer(final OriginAuthorizer authorizer) {
+
+		OriginAuthorizationCache oldCache = originAuthorizationCache;
+
+		if (authorizer != null) {
+			originAuthorizationCache = new OriginAuthorizationCache(
+				authorizer,
+				originAuthorizerCacheSize,
+				originAuthorizerPositiveTTL,
+				originAuthorizerNegativeTTL,
+				originAuthorizerStaleTTL,
+				originAuthorizerThreads,
+				originAuthorizerMissWait);
+		} else {
+			originAuthorizationCache = null;
+		}
+
+		if (oldCache != null)
+			oldCache.shutdown();
+
+		// The authorizer may allow learned origins
+		originDenyList.clearLearned();
+	}
+
+
+	/**
+	 * Gets the authorizer for the origins which are not in the
+	 * {@link #allowedOrigins}, including one inherited by a named or
+	 * tenant policy.
+	 *
+	 * @return The origin authorizer, {@code null} if none.
+	 */
+	public OriginAuthorizer getOriginAuthorizer() {
+
+		OriginAuthorizationCache authorizationCache = getEffectiveOriginAuthorizationCache();
+
+		return authorizationCache != null ? authorizationCache.getAuthorizer() : null;
+	}
+
+
+	/**
+	 * Gets the cache of the origin authorizer results, including one
+	 * inherited by a named or tenant policy.
+	 *
+	 * @return The origin authorizer cache, {@code null} if no authorizer
+	 *         is set.
+	 */
+	public OriginAuthorizationCache getOriginAuthorizationCache() {
+
+		return getEffectiveOriginAuthorizationCache();
+	}
+	
+	
 	/**
 	 * The supported HTTP methods. Requests for methods not included here 
 	 * must be refused by the CORS filter with a HTTP 405 "Method not 
-	 * allowed" response.
+	 * allowed" response. Iterated in the configured order, so the
+	 * rendered {@code Access-Control-Allow-Methods} value is stable.
 	 *
 	 * <p>Property key: cors.supportedMethods
 	 */
@@ -176,81 +656,937 @@ public class CORSConfiguration {
 	
 	/**
 	 * The names of the supported author request headers. Applies if
-	 * {@link #supportAnyHeader} is {@code false}. Never {@code null}.
+	 * {@link #supportAnyHeader} is {@code false}. May include wildcard
+	 * patterns, such as {@code X-Tenant-*}. Iterated in the configured
+	 * order. Never {@code null}.
 	 * 
 	 * <p>Property key: cors.supportedHeaders
 	 */
 	public final Set<String> supportedHeaders;
+
+
+	/**
+	 * Index of the {@link #supportedHeaders}, with a seeded hash and
+	 * bounded lookup time for the requested header names.
+	 */
+	private final StringIndex supportedHeaderIndex;
+
+
+	/**
+	 * Matcher of the wildcard patterns in the {@link #supportedHeaders},
+	 * {@code null} if none.
+	 */
+	private final HeaderPatternMatcher supportedHeaderPatterns;
 	
 	
 	/**
 	 * Helper method to check whether the specified (non-simple) author 
 	 * request header is supported.
 	 *
-	 * @param header The header field name.
+	 * @param header The header field name, in
+	 *               {@link HeaderName#formatCanonical canonical} form.
 	 *
 	 * @return {@code true} if the header is supported, else {@code false}.
 	 */
 	public final boolean isSupportedHeader(final String header) {
 
-		return supportAnyHeader || supportedHeaders.contains(header);
+		return supportAnyHeader ||
+		       supportedHeaderIndex.contains(header) ||
+		       supportedHeaderPatterns != null && supportedHeaderPatterns.matches(header);
 	}
-	
-	
+
+
 	/**
-	 * The non-simple response headers that the web browser should expose 
-	 * to the author of the CORS request.
+	 * The names of the author request headers which are supported only
+	 * for specific HTTP methods, in addition to the
+	 * {@link #supportedHeaders}, keyed by method. Applies if
+	 * {@link #supportAnyHeader} is {@code false}. May include wildcard
+	 * patterns. Empty if none.
 	 *
-	 * <p>Property key: cors.exposedHeaders
+	 * <p>Property key: cors.supportedHeaders.[method]
 	 */
-	public final Set<String> exposedHeaders;
-	
-	
+	public final Map<String,Set<String>> methodSupportedHeaders;
+
+
+	/**
+	 * The matrix of the supported headers by method, {@code null} if
+	 * {@link #supportAnyHeader} is {@code true}.
+	 */
+	private final HeaderMethodMatrix supportedHeaderMatrix;
+
+
+	/**
+	 * Gets the matrix of the supported headers by method.
+	 *
+	 * @return The matrix, {@code null} if any header is supported.
+	 */
+	HeaderMethodMatrix getSupportedHeaderMatrix() {
+
+		return supportedHeaderMatrix;
+	}
+
+
+	/**
+	 * Helper method to check whether the specified (non-simple) author
+	 * request header is supported for the specified HTTP method, either
+	 * as one of the {@link #supportedHeaders} or the
+	 * {@link #methodSupportedHeaders}.
+	 *
+	 * @param method The HTTP method, in upper case.
+	 * @param header The header field name, in
+	 *               {@link HeaderName#formatCanonical canonical} form.
+	 *
+	 * @return {@code true} if the header is supported, else {@code false}.
+	 */
+	public final boolean isSupportedHeader(final String method, final String header) {
+
+		if (supportAnyHeader)
+			return true;
+
+		int methodNumber = supportedHeaderMatrix.indexOfMethod(method);
+
+		return methodNumber >= 0 && supportedHeaderMatrix.isSupported(methodNumber, new String[]{header});
+	}
+	
+	
+	/**
+	 * The non-simple response headers that the web browser should expose 
+	 * to the author of the CORS request. May include wildcard patterns,
+	 * such as {@code X-RateLimit-*}, which are resolved against the
+	 * header names set by the web application. Iterated in the configured
+	 * order.
+	 *
+	 * <p>Property key: cors.exposedHeaders
+	 */
+	public final Set<String> exposedHeaders;
+	
+	
+	/**
+	 * Indicates whether user credentials, such as cookies, HTTP 
+	 * authentication or client-side certificates, are supported.
+	 *
+	 * <p>Property key: cors.supportsCredentials
+	 */
+	public final boolean supportsCredentials;
+
+
+	/**
+	 * If {@code true} the responses for origins without credentials
+	 * support use the {@code *} wildcard of the CORS specification in the
+	 * {@code Access-Control-Allow-Methods},
+	 * {@code Access-Control-Allow-Headers} (if any header is supported) and
+	 * {@code Access-Control-Expose-Headers} (if any headers are exposed)
+	 * headers, instead of listing the names. The preflight responses
+	 * become identical across requesters. Note that the wildcard exposes
+	 * all response headers.
+	 *
+	 * <p>Property key: cors.wildcardResponses
+	 */
+	public final boolean wildcardResponses;
+	
+	
+	/**
+	 * Indicates how long the results of a preflight request can be cached
+	 * by the web client, in seconds. If {@code -1} unspecified.
+	 *
+	 * <p>Property key: cors.maxAge
+	 */
+	public final int maxAge;
+
+
+	/**
+	 * If {@code true} the advertised preflight max-age adapts to the
+	 * stability of the policy, from {@link #maxAge} (or the max-age of
+	 * an origin group) up to {@link #adaptiveMaxAgeLimit}, see
+	 * {@link AdaptiveMaxAge}. Requires a positive {@link #maxAge}.
+	 *
+	 * <p>Property key: cors.maxAge.adaptive
+	 */
+	public final boolean adaptiveMaxAge;
+
+
+	/**
+	 * The upper bound of the adaptive preflight max-age, in seconds.
+	 *
+	 * <p>Property key: cors.maxAge.limit
+	 */
+	public final int adaptiveMaxAgeLimit;
+
+
+	/**
+	 * If {@code true} successful preflight responses include a complete
+	 * {@code Vary: Origin, Access-Control-Request-Method,
+	 * Access-Control-Request-Headers} header, so they can be stored by
+	 * shared caches. Else {@code Vary: Origin} is set only if the
+	 * response depends on the origin.
+	 *
+	 * <p>Property key: cors.preflightVary
+	 */
+	public final boolean preflightVary;
+
+
+	/**
+	 * The {@code Cache-Control} value of successful preflight responses,
+	 * e.g. {@code public, max-age=600}, {@code null} if none.
+	 *
+	 * <p>Property key: cors.preflightCacheControl
+	 */
+	public final String preflightCacheControl;
+
+
+	/**
+	 * If {@code true} successful preflight responses list only the
+	 * requested method in {@code Access-Control-Allow-Methods} and only
+	 * the requested headers in {@code Access-Control-Allow-Headers},
+	 * instead of all supported methods and headers.
+	 *
+	 * <p>Property key: cors.minimalPreflight
+	 */
+	public final boolean minimalPreflight;
+
+
+	/**
+	 * If {@code true} successful preflight responses are committed
+	 * immediately by the filter, with a {@code 204 No Content} status and
+	 * a zero content length, instead of being left to the servlet
+	 * container with a default {@code 200} status.
+	 *
+	 * <p>Property key: cors.preflightNoContent
+	 */
+	public final boolean preflightNoContent;
+
+
+	/**
+	 * Enables HTTP servlet request tagging to provide CORS information to
+	 * downstream handlers.
+	 *
+	 * <p>Property key: cors.tagRequests
+	 */
+	public final boolean tagRequests;
+
+
+	/**
+	 * The number of synthetic actual, preflight and rejected CORS 
+	 * requests to pass through the filter at initialisation, to warm up 
+	 * the request processing code. If zero the warm-up is disabled.
+	 *
+	 * <p>Property key: cors.warmUpIterations
+	 */
+	public final int warmUpIterations;
+
+
+	/**
+	 * The maximum time to spend warming up the filter at initialisation,
+	 * in milliseconds. If zero or negative the warm-up is limited by the 
+	 * {@link #warmUpIterations iteration count} only.
+	 *
+	 * <p>Property key: cors.warmUpTimeBudget
+	 */
+	public final long warmUpTimeBudget;
+
+
+	/**
+	 * If {@code true} the filter warm-up must be run in a background 
+	 * thread, else it must complete before the filter initialisation 
+	 * returns.
+	 *
+	 * <p>Property key: cors.warmUpInBackground
+	 */
+	public final boolean warmUpInBackground;
+
+
+	/**
+	 * The property name of the origin authorizer class.
+	 */
+	static final String ORIGIN_AUTHORIZER_PROPERTY = "cors.originAuthorizer";
+
+
+	/**
+	 * The property name prefix of the named policies.
+	 */
+	public static final String POLICY_PROPERTY_PREFIX = "cors.policy.";
+
+
+	/**
+	 * Named policies which apply to the requests for specific host names
+	 * or under specific URI path prefixes instead of this configuration,
+	 * keyed by name. Each policy inherits the settings of this
+	 * configuration and overrides them with its own
+	 * {@code cors.policy.[name].*} properties. Empty if none.
+	 *
+	 * <p>Property key: cors.policy.[name].hostName (host name list) or
+	 * cors.policy.[name].pathPrefix (path prefix list), and
+	 * cors.policy.[name].[setting]
+	 */
+	public final Map<String,CORSPolicy> policies;
+
+
+	/**
+	 * The property name prefix of the origin groups.
+	 */
+	public static final String ORIGIN_GROUP_PROPERTY_PREFIX = "cors.originGroup.";
+
+
+	/**
+	 * Groups of origins which are allowed with their own credentials,
+	 * exposed headers and max-age settings, keyed by name. Empty if none.
+	 *
+	 * <p>Property key: cors.originGroup.[name].origins (origin list) and
+	 * optional cors.originGroup.[name].supportsCredentials,
+	 * cors.originGroup.[name].exposedHeaders and
+	 * cors.originGroup.[name].maxAge, which default to the top-level
+	 * settings.
+	 */
+	public final Map<String,OriginGroup> originGroups;
+
+
+	/**
+	 * Index of the canonical keys of the origin group origins. The index
+	 * positions serve as origin identifiers.
+	 */
+	private final StringIndex originGroupIndex;
+
+
+	/**
+	 * The origin group of each origin, by origin identifier.
+	 */
+	private final OriginGroup[] originGroupByOrigin;
+
+
+	/**
+	 * Returns the identifier of the specified origin in the origin
+	 * groups.
+	 *
+	 * @param origin The origin, {@code null} if unknown.
+	 *
+	 * @return The origin identifier, -1 if the origin is not in a group.
+	 */
+	int indexOfGroupOrigin(final Origin origin) {
+
+		if (origin == null || originGroupIndex.size() == 0)
+			return -1;
+
+		return originGroupIndex.indexOf(OriginUtils.toCanonicalKey(origin.toString()));
+	}
+
+
+	/**
+	 * Returns the number of origins in the origin groups.
+	 *
+	 * @return The number of origins, the identifiers range from zero to
+	 *         this number minus one.
+	 */
+	int getGroupOriginCount() {
+
+		return originGroupByOrigin.length;
+	}
+
+
+	/**
+	 * Returns the origin group of the origin with the specified
+	 * identifier.
+	 *
+	 * @param originId The origin identifier.
+	 *
+	 * @return The origin group.
+	 */
+	OriginGroup getOriginGroup(final int originId) {
+
+		return originGroupByOrigin[originId];
+	}
+
+
+	/**
+	 * Returns the origin group of the specified origin.
+	 *
+	 * @param origin The origin, {@code null} if unknown.
+	 *
+	 * @return The origin group, {@code null} if the origin is not in a
+	 *         group.
+	 */
+	public OriginGroup getOriginGroup(final Origin origin) {
+
+		int originId = indexOfGroupOrigin(origin);
+
+		return originId >= 0 ? originGroupByOrigin[originId] : null;
+	}
+
+
+	/**
+	 * The property name prefix of the tenant policy settings.
+	 */
+	public static final String TENANT_PROPERTY_PREFIX = "cors.tenant.";
+
+
+	/**
+	 * The name of the request header carrying the tenant identifier,
+	 * {@code null} if not used.
+	 *
+	 * <p>Property key: cors.tenant.header
+	 */
+	public final String tenantHeader;
+
+
+	/**
+	 * The index of the server name label carrying the tenant identifier,
+	 * counting from the left, e.g. {@code 0} for {@code acme} in
+	 * {@code acme.app.example.com}. Negative if not used.
+	 *
+	 * <p>Property key: cors.tenant.hostLabel
+	 */
+	public final int tenantHostLabel;
+
+
+	/**
+	 * The index of the request path segment carrying the tenant
+	 * identifier, relative to the web application context path, e.g.
+	 * {@code 0} for {@code acme} in {@code /acme/orders}. Negative if not
+	 * used.
+	 *
+	 * <p>Property key: cors.tenant.pathSegment
+	 */
+	public final int tenantPathSegment;
+
+
+	/**
+	 * The maximum number of cached tenant policies.
+	 *
+	 * <p>Property key: cors.tenant.cacheSize
+	 */
+	public final int tenantCacheSize;
+
+
+	/**
+	 * The interval after which a cached tenant policy is reloaded in the
+	 * background, in seconds.
+	 *
+	 * <p>Property key: cors.tenant.refreshInterval
+	 */
+	public final long tenantRefreshInterval;
+
+
+	/**
+	 * The number of threads for reloading the tenant policies.
+	 *
+	 * <p>Property key: cors.tenant.threads
+	 */
+	public final int tenantThreads;
+
+
+	/**
+	 * The properties inherited by the tenant policies.
+	 */
+	private final Properties tenantBaseProps;
+
+
+	/**
+	 * The cache of the tenant policies, {@code null} if no tenant policy
+	 * source is set.
+	 */
+	private volatile TenantPolicyCache tenantPolicyCache;
+
+
+	/**
+	 * Sets a source of tenant policies, which are loaded on demand and
+	 * applied instead of this configuration to the requests of the
+	 * respective tenants. The tenant of a request is determined by the
+	 * {@link #tenantHeader}, {@link #tenantHostLabel} or
+	 * {@link #tenantPathSegment} setting, and its policy inherits the
+	 * settings of this configuration. The tenant policies are cached
+	 * according to the {@code cors.tenant.*} settings. Any previously set
+	 * source is shut down.
+	 *
+	 * <p>Property key: cors.tenant.source (class name)
+	 *
+	 * @param source The tenant policy source, {@code null} if none.
+	 */
+	public void setTenantPolicySource(final TenantPolicySource source) {
+
+		TenantPolicyCache oldCache = tenantPolicyCache;
+
+		if (source != null) {
+			tenantPolicyCache = new TenantPolicyCache(
+				source,
+				this,
+				tenantBaseProps,
+				tenantCacheSize,
+				tenantRefreshInterval,
+				tenantThreads);
+		} else {
+			tenantPolicyCache = null;
+		}
+
+		if (oldCache != null)
+			oldCache.shutdown();
+	}
+
+
+	/**
+	 * Gets the source of tenant policies.
+	 *
+	 * @return The tenant policy source, {@code null} if none.
+	 */
+	public TenantPolicySource getTenantPolicySource() {
+
+		TenantPolicyCache cache = tenantPolicyCache;
+
+		return cache != null ? cache.getSource() : null;
+	}
+
+
+	/**
+	 * Gets the cache of the tenant policies.
+	 *
+	 * @return The tenant policy cache, {@code null} if no tenant policy
+	 *         source is set.
+	 */
+	public TenantPolicyCache getTenantPolicyCache() {
+
+		return tenantPolicyCache;
+	}
+	
+	
+	/**
+	 * Parses a string containing words separated by space and/or comma.
+	 *
+	 * @param s The string to parse. Must not be {@code null}.
+	 *
+	 * @return An array of the parsed words, empty if none were found.
+	 */
+	protected static String[] parseWords(final String s) {
+		
+		return PropertyReader.parseWords(s);
+	}
+	
+	
+	/**
+	 * Loads and instantiates the specified origin authorizer class.
+	 *
+	 * @param className The class name. Must not be {@code null}.
+	 *
+	 * @return The origin authorizer.
+	 *
+	 * @throws CORSConfigurationException If the class couldn't be loaded
+	 *                                    or instantiated.
+	 */
+	private static OriginAuthorizer loadOriginAuthorizer(final String className)
+		throws CORSConfigurationException {
+
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+		if (classLoader == null)
+			classLoader = CORSConfiguration.class.getClassLoader();
+
+		try {
+			return (OriginAuthorizer)Class.forName(className, true, classLoader).newInstance();
+
+		} catch (Exception e) {
+
+			throw new CORSConfigurationException("Bad origin authorizer class in property cors.originAuthorizer: " + className, e);
+		}
+	}
+
+
+	/**
+	 * Loads the tenant policy source with the specified class name.
+	 *
+	 * @param className The class name. Must not be {@code null}.
+	 *
+	 * @return The tenant policy source.
+	 *
+	 * @throws CORSConfigurationException If the class couldn't be loaded
+	 *                                    or instantiated.
+	 */
+	private static TenantPolicySource loadTenantPolicySource(final String className)
+		throws CORSConfigurationException {
+
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+		if (classLoader == null)
+			classLoader = CORSConfiguration.class.getClassLoader();
+
+		try {
+			return (TenantPolicySource)Class.forName(className, true, classLoader).newInstance();
+
+		} catch (Exception e) {
+
+			throw new CORSConfigurationException("Bad tenant policy source class in property cors.tenant.source: " + className, e);
+		}
+	}
+
+
+	/**
+	 * Checks if this configuration was created from the specified
+	 * properties, to skip rebuilding an unchanged configuration.
+	 *
+	 * @param props The properties. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the properties are the same, else
+	 *         {@code false}.
+	 */
+	boolean isCreatedFrom(final Properties props) {
+
+		return sourceProps.equals(props);
+	}
+
+
+	/**
+	 * Creates a throwaway copy of this configuration for the filter
+	 * warm-up. The copy has no origin authorizer and no tenant policy
+	 * source, so the warm-up requests don't reach them, and shares no
+	 * state with this configuration. Authorizers and sources set
+	 * programmatically are not copied either.
+	 *
+	 * @return The warm-up configuration, to be shut down after use.
+	 *
+	 * @throws CORSConfigurationException On a invalid property.
+	 */
+	CORSConfiguration createWarmUpConfiguration()
+		throws CORSConfigurationException {
+
+		Properties props = new Properties();
+
+		for (String key: sourceProps.stringPropertyNames()) {
+
+			if (key.startsWith(TENANT_PROPERTY_PREFIX))
+				continue;
+
+			if (key.equals(ORIGIN_AUTHORIZER_PROPERTY) ||
+			    key.startsWith(POLICY_PROPERTY_PREFIX) && key.endsWith(".originAuthorizer"))
+				continue;
+
+			props.setProperty(key, sourceProps.getProperty(key));
+		}
+
+		props.setProperty("cors.warmUpIterations", "0");
+
+		return new CORSConfiguration(props);
+	}
+
+
+	/**
+	 * Set when this configuration is shut down.
+	 */
+	private final AtomicBoolean shutDown = new AtomicBoolean();
+
+
+	/**
+	 * Releases the background threads held by this configuration. Should
+	 * be called when the configuration is taken out of service.
+	 */
+	public void shutdown() {
+
+		if (! shutDown.compareAndSet(false, true))
+			return;
+
+		originRegistry.removeAdditionListener(originAdditionListener);
+		originRegistry.release();
+
+		OriginAuthorizationCache authorizationCache = originAuthorizationCache;
+
+		if (authorizationCache != null)
+			authorizationCache.shutdown();
+
+		for (CORSPolicy policy: policies.values())
+			policy.getConfiguration().shutdown();
+
+		TenantPolicyCache tenantCache = tenantPolicyCache;
+
+		if (tenantCache != null)
+			tenantCache.shutdown();
+	}
+
+
+	/**
+	 * Compiles the wildcard patterns in the specified header names.
+	 *
+	 * @param headers The header names, may include patterns. Must not be
+	 *                {@code null}.
+	 * @param key     The property key, for the error message.
+	 *
+	 * @return The pattern matcher, {@code null} if there are no patterns.
+	 *
+	 * @throws CORSConfigurationException If the patterns are too complex.
+	 */
+	private static HeaderPatternMatcher compileHeaderPatterns(final Set<String> headers, final String key)
+		throws CORSConfigurationException {
+
+		Set<String> patterns = new LinkedHashSet<String>();
+
+		for (String header: headers) {
+
+			if (HeaderPatternMatcher.isPattern(header))
+				patterns.add(header);
+		}
+
+		if (patterns.isEmpty())
+			return null;
+
+		try {
+			return new HeaderPatternMatcher(patterns);
+
+		} catch (IllegalArgumentException e) {
+
+			throw new CORSConfigurationException("Bad header pattern in property " + key + ": " + e.getMessage());
+		}
+	}
+
+
+	/**
+	 * Parses the origin groups from the specified properties.
+	 *
+	 * @param props                      The properties. Must not be
+	 *                                   {@code null}.
+	 * @param defaultSupportsCredentials The default credentials support.
+	 * @param defaultExposedHeaders      The default exposed headers. Must
+	 *                                   not be {@code null}.
+	 * @param defaultMaxAge              The default preflight max-age.
+	 *
+	 * @return The origin groups, keyed by name, empty if none.
+	 *
+	 * @throws CORSConfigurationException On a invalid origin group
+	 *                                    property.
+	 */
+	private static Map<String,OriginGroup> parseOriginGroups(final Properties props,
+								 final boolean defaultSupportsCredentials,
+								 final Set<String> defaultExposedHeaders,
+								 final int defaultMaxAge)
+		throws CORSConfigurationException {
+
+		Set<String> names = new TreeSet<String>();
+
+		for (String key: props.stringPropertyNames()) {
+
+			if (! key.startsWith(ORIGIN_GROUP_PROPERTY_PREFIX))
+				continue;
+
+			int nameEnd = key.indexOf('.', ORIGIN_GROUP_PROPERTY_PREFIX.length());
+
+			String setting = nameEnd > 0 ? key.substring(nameEnd + 1) : "";
+
+			if (nameEnd <= ORIGIN_GROUP_PROPERTY_PREFIX.length() ||
+			    ! (setting.equals("origins") || setting.equals("supportsCredentials") ||
+			       setting.equals("exposedHeaders") || setting.equals("maxAge")))
+				throw new CORSConfigurationException("Bad origin group property: " + key);
+
+			names.add(key.substring(ORIGIN_GROUP_PROPERTY_PREFIX.length(), nameEnd));
+		}
+
+		if (names.isEmpty())
+			return Collections.emptyMap();
+
+		PropertyReader pr = new PropertyReader(props);
+
+		Map<String,OriginGroup> groups = new LinkedHashMap<String,OriginGroup>();
+
+		for (String name: names) {
+
+			final String prefix = ORIGIN_GROUP_PROPERTY_PREFIX + name + ".";
+
+			Set<ValidatedOrigin> origins = new LinkedHashSet<ValidatedOrigin>();
+
+			for (String url: parseWords(pr.getOptString(prefix + "origins", ""))) {
+
+				try {
+					origins.add(new Origin(url).validate());
+
+				} catch (OriginException e) {
+
+					throw new CORSConfigurationException("Bad origin URL in property " + prefix + "origins: " + url);
+				}
+			}
+
+			if (origins.isEmpty())
+				throw new CORSConfigurationException("Missing property " + prefix + "origins");
+
+			Set<String> exposed = defaultExposedHeaders;
+
+			if (props.getProperty(prefix + "exposedHeaders") != null) {
+
+				exposed = new LinkedHashSet<String>();
+
+				for (String header: parseWords(props.getProperty(prefix + "exposedHeaders"))) {
+
+					try {
+						exposed.add(HeaderName.formatCanonical(header));
+
+					} catch (IllegalArgumentException e) {
+						throw new CORSConfigurationException("Bad header field name in property " + prefix + "exposedHeaders: " + header);
+					}
+				}
+
+				compileHeaderPatterns(exposed, prefix + "exposedHeaders");
+			}
+
+			groups.put(name, new OriginGroup(
+				name,
+				Collections.unmodifiableSet(origins),
+				pr.getOptBoolean(prefix + "supportsCredentials", defaultSupportsCredentials),
+				Collections.unmodifiableSet(exposed),
+				pr.getOptInt(prefix + "maxAge", defaultMaxAge)));
+		}
+
+		return Collections.unmodifiableMap(groups);
+	}
+
+
 	/**
-	 * Indicates whether user credentials, such as cookies, HTTP 
-	 * authentication or client-side certificates, are supported.
+	 * Checks if the specified property is inherited by the named and
+	 * tenant policies. The policy selection properties are not inherited.
+	 * Nor is the origin authorizer class, the policies share the
+	 * authorizer instance of the parent configuration instead.
 	 *
-	 * <p>Property key: cors.supportsCredentials
-	 */
-	public final boolean supportsCredentials;
-	
-	
-	/**
-	 * Indicates how long the results of a preflight request can be cached
-	 * by the web client, in seconds. If {@code -1} unspecified.
+	 * @param key The property key. Must not be {@code null}.
 	 *
-	 * <p>Property key: cors.maxAge
+	 * @return {@code true} if the property is inherited, else
+	 *         {@code false}.
 	 */
-	public final int maxAge;
+	static boolean isInheritedProperty(final String key) {
+
+		return ! key.startsWith(POLICY_PROPERTY_PREFIX) &&
+		       ! key.startsWith(TENANT_PROPERTY_PREFIX) &&
+		       ! key.equals(ORIGIN_AUTHORIZER_PROPERTY) &&
+		       ! key.equals(CORSConfigurationLoader.HOST_POLICY_DIR_PARAM_NAME);
+	}
 
 
 	/**
-	 * Enables HTTP servlet request tagging to provide CORS information to
-	 * downstream handlers.
+	 * Returns the properties inherited by the named and tenant policies.
 	 *
-	 * <p>Property key: cors.tagRequests
+	 * @param props The properties. Must not be {@code null}.
+	 *
+	 * @return The inherited properties.
 	 */
-	public final boolean tagRequests;
-	
-	
+	private static Properties getInheritedProperties(final Properties props) {
+
+		Properties baseProps = new Properties();
+
+		for (String key: props.stringPropertyNames()) {
+
+			if (isInheritedProperty(key))
+				baseProps.setProperty(key, props.getProperty(key));
+		}
+
+		return baseProps;
+	}
+
+
 	/**
-	 * Parses a string containing words separated by space and/or comma.
+	 * Parses the named policies from the specified properties.
 	 *
-	 * @param s The string to parse. Must not be {@code null}.
+	 * @param props     The properties. Must not be {@code null}.
+	 * @param baseProps The properties inherited by the policies. Must not
+	 *                  be {@code null}.
+	 * @param parent    The parent configuration of the policies. Must not
+	 *                  be {@code null}.
 	 *
-	 * @return An array of the parsed words, empty if none were found.
+	 * @return The policies, keyed by name, empty if none.
+	 *
+	 * @throws CORSConfigurationException On a invalid policy property.
 	 */
-	protected static String[] parseWords(final String s) {
-		
-		String s1 = s.trim();
-		
-		if (s1.isEmpty())
-			return new String[]{};
-		else
-			return s1.split("\\s*,\\s*|\\s+");
+	private static Map<String,CORSPolicy> parsePolicies(final Properties props,
+							    final Properties baseProps,
+							    final CORSConfiguration parent)
+		throws CORSConfigurationException {
+
+		Set<String> names = new TreeSet<String>();
+
+		for (String key: props.stringPropertyNames()) {
+
+			if (! key.startsWith(POLICY_PROPERTY_PREFIX))
+				continue;
+
+			int nameEnd = key.indexOf('.', POLICY_PROPERTY_PREFIX.length());
+
+			if (nameEnd <= POLICY_PROPERTY_PREFIX.length() || nameEnd == key.length() - 1)
+				throw new CORSConfigurationException("Bad policy property: " + key);
+
+			names.add(key.substring(POLICY_PROPERTY_PREFIX.length(), nameEnd));
+		}
+
+		if (names.isEmpty())
+			return Collections.emptyMap();
+
+		Map<String,CORSPolicy> policies = new LinkedHashMap<String,CORSPolicy>();
+
+		Set<String> seenPathPrefixes = new HashSet<String>();
+		Set<String> seenHostNames = new HashSet<String>();
+
+		for (String name: names) {
+
+			final String prefix = POLICY_PROPERTY_PREFIX + name + ".";
+
+			Properties policyProps = new Properties();
+			policyProps.putAll(baseProps);
+
+			for (String key: props.stringPropertyNames()) {
+
+				if (key.startsWith(prefix))
+					policyProps.setProperty("cors." + key.substring(prefix.length()), props.getProperty(key));
+			}
+
+			String[] pathPrefixes = parseWords(policyProps.getProperty("cors.pathPrefix", ""));
+			policyProps.remove("cors.pathPrefix");
+
+			String[] hostNames = parseWords(policyProps.getProperty("cors.hostName", ""));
+			policyProps.remove("cors.hostName");
+
+			if (pathPrefixes.length == 0 && hostNames.length == 0)
+				throw new CORSConfigurationException("Missing property " + prefix + "pathPrefix or " + prefix + "hostName");
+
+			if (pathPrefixes.length > 0 && hostNames.length > 0)
+				throw new CORSConfigurationException("Properties " + prefix + "pathPrefix and " + prefix + "hostName must not be combined");
+
+			Set<String> prefixSet = new LinkedHashSet<String>();
+
+			for (String pathPrefix: pathPrefixes) {
+
+				if (! pathPrefix.startsWith("/"))
+					throw new CORSConfigurationException("Bad path prefix in property " + prefix + "pathPrefix: " + pathPrefix);
+
+				if (! seenPathPrefixes.add(PathTrie.normalizePrefix(pathPrefix)))
+					throw new CORSConfigurationException("Duplicate path prefix in property " + prefix + "pathPrefix: " + pathPrefix);
+
+				prefixSet.add(pathPrefix);
+			}
+
+			Set<String> hostSet = new LinkedHashSet<String>();
+
+			for (String hostName: hostNames) {
+
+				String host = HostTable.normalize(hostName);
+
+				String domain = HostTable.isWildcard(host) ? host.substring(2) : host;
+
+				if (domain.isEmpty() || domain.indexOf('*') >= 0 || domain.indexOf('/') >= 0 || domain.indexOf(':') >= 0)
+					throw new CORSConfigurationException("Bad host name in property " + prefix + "hostName: " + hostName);
+
+				if (! seenHostNames.add(host))
+					throw new CORSConfigurationException("Duplicate host name in property " + prefix + "hostName: " + hostName);
+
+				hostSet.add(host);
+			}
+
+			CORSConfiguration policyConfig;
+
+			try {
+				policyConfig = new CORSConfiguration(policyProps, parent);
+
+			} catch (CORSConfigurationException e) {
+
+				throw new CORSConfigurationException("Bad policy " + name + ": " + e.getMessage(), e);
+			}
+
+			policies.put(name, new CORSPolicy(name,
+			                                     Collections.unmodifiableSet(prefixSet),
+			                                     Collections.unmodifiableSet(hostSet),
+			                                     policyConfig));
+		}
+
+		return Collections.unmodifiableMap(policies);
 	}
-	
-	
+
+
 	/**
 	 * Creates a new CORS configuration from the specified properties.
 	 *
@@ -261,16 +1597,77 @@ public class CORSConfiguration {
 	 *     <li>cors.allowGenericHttpRequests {true|false} defaults to 
 	 *         {@code true}.
 	 *     <li>cors.allowOrigin {"*"|origin-list} defaults to {@code *}.
+	 *         The origin list may include wildcard patterns, see
+	 *         {@link OriginPatternMatcher}, and IP address ranges, see
+	 *         {@link OriginRangeMatcher}.
 	 *     <li>cors.allowSubdomains {true|false} defaults to {@code false}.
+	 *     <li>cors.matchRegistrableDomain {true|false} defaults to 
+	 *         {@code false}.
+	 *     <li>cors.validatedOriginCacheSize {int} defaults to 
+	 *         {@code 1000}, {@code 0} disables caching.
+	 *     <li>cors.denyOrigin {origin-list} defaults to empty list.
+	 *     <li>cors.denyOrigin.learnThreshold {int} defaults to {@code 0}
+	 *         (learning disabled).
+	 *     <li>cors.denyOrigin.learnedMaxSize {int} defaults to 
+	 *         {@code 10000}.
+	 *     <li>cors.originAuthorizer {class-name} defaults to none.
+	 *     <li>cors.originAuthorizer.cacheSize {int} defaults to 
+	 *         {@code 10000}.
+	 *     <li>cors.originAuthorizer.positiveTTL {int} defaults to 
+	 *         {@code 300} seconds.
+	 *     <li>cors.originAuthorizer.negativeTTL {int} defaults to 
+	 *         {@code 60} seconds.
+	 *     <li>cors.originAuthorizer.staleTTL {int} defaults to 
+	 *         {@code 300} seconds.
+	 *     <li>cors.originAuthorizer.threads {int} defaults to {@code 2}.
+	 *     <li>cors.originAuthorizer.missWait {int} defaults to 
+	 *         {@code 0} ms, cache misses are denied without waiting.
 	 *     <li>cors.supportedMethods {method-list} defaults to {@code "GET, 
 	 *         POST, HEAD, OPTIONS"}.
 	 *     <li>cors.supportedHeaders {"*"|header-list} defaults to 
 	 *         {@code *}.
+	 *     <li>cors.supportedHeaders.[method] {header-list} for each
+	 *         method with additional supported headers, defaults to none.
 	 *     <li>cors.exposedHeaders {header-list} defaults to empty list.
 	 *     <li>cors.supportsCredentials {true|false} defaults to 
 	 *         {@code true}.
+	 *     <li>cors.wildcardResponses {true|false} defaults to 
+	 *         {@code false}.
 	 *     <li>cors.maxAge {int} defaults to {@code -1} (unspecified).
+	 *     <li>cors.maxAge.adaptive {true|false} defaults to 
+	 *         {@code false}.
+	 *     <li>cors.maxAge.limit {int} defaults to {@code 86400}.
+	 *     <li>cors.preflightVary {true|false} defaults to 
+	 *         {@code false}.
+	 *     <li>cors.preflightCacheControl {string} defaults to none.
+	 *     <li>cors.minimalPreflight {true|false} defaults to 
+	 *         {@code false}.
+	 *     <li>cors.preflightNoContent {true|false} defaults to 
+	 *         {@code false}.
 	 *     <li>cors.tagRequests {boolean} defaults to {@code false}.
+	 *     <li>cors.warmUpIterations {int} defaults to {@code 0} 
+	 *         (disabled).
+	 *     <li>cors.warmUpTimeBudget {int} defaults to {@code 1000} ms.
+	 *     <li>cors.warmUpInBackground {true|false} defaults to 
+	 *         {@code false}.
+	 *     <li>cors.policy.[name].hostName {host-name-list} or
+	 *         cors.policy.[name].pathPrefix {path-prefix-list} with
+	 *         cors.policy.[name].[setting] for each setting overridden by
+	 *         the named policy, defaults to none. The host names may 
+	 *         include wildcards, such as {@code *.example.com}.
+	 *     <li>cors.originGroup.[name].origins {origin-list} with optional
+	 *         cors.originGroup.[name].supportsCredentials {true|false},
+	 *         cors.originGroup.[name].exposedHeaders {header-list} and
+	 *         cors.originGroup.[name].maxAge {int}, which default to the
+	 *         top-level settings, defaults to none.
+	 *     <li>cors.tenant.source {class-name} defaults to none.
+	 *     <li>cors.tenant.header {header-name},
+	 *         cors.tenant.hostLabel {int} or 
+	 *         cors.tenant.pathSegment {int}, one of them is required if
+	 *         a tenant policy source is set.
+	 *     <li>cors.tenant.cacheSize {int} defaults to {@code 1000}.
+	 *     <li>cors.tenant.refreshInterval {int} defaults to {@code 300} s.
+	 *     <li>cors.tenant.threads {int} defaults to {@code 1}.
 	 * </ul>
 	 *
 	 * @param props The properties. Must not be {@code null}.
@@ -279,126 +1676,439 @@ public class CORSConfiguration {
 	 */
 	public CORSConfiguration(final Properties props)
 		throws CORSConfigurationException {
+
+		this(props, null);
+	}
+
+
+	/**
+	 * Creates a new CORS configuration for a named or tenant policy from
+	 * the specified properties.
+	 *
+	 * @param props  The properties, including the inherited ones. Must
+	 *               not be {@code null}.
+	 * @param parent The parent configuration, {@code null} if none.
+	 *
+	 * @throws CORSConfigurationException On a invalid property.
+	 */
+	CORSConfiguration(final Properties props, final CORSConfiguration parent)
+		throws CORSConfigurationException {
+
+		this(props, parent, null);
+	}
+
+
+	/**
+	 * Creates a new CORS configuration from the specified properties, as
+	 * a replacement for a previous configuration. If the allowed origins
+	 * are unchanged the origin registry of the previous configuration is
+	 * taken over, with its runtime changes.
+	 *
+	 * @param props    The properties, including the inherited ones. Must
+	 *                 not be {@code null}.
+	 * @param parent   The parent configuration, {@code null} if none.
+	 * @param previous The previous configuration, {@code null} if none.
+	 *
+	 * @throws CORSConfigurationException On a invalid property.
+	 */
+	CORSConfiguration(final Properties props,
+			  final CORSConfiguration parent,
+			  final CORSConfiguration previous)
+		throws CORSConfigurationException {
+
+		this.parent = parent;
+
+		sourceProps = new Properties();
+
+		for (String key: props.stringPropertyNames())
+			sourceProps.setProperty(key, props.getProperty(key));
 	
-		try {
-			PropertyRetriever pr = new PropertyRetriever(props);
+		PropertyReader pr = new PropertyReader(props);
 
-			// Parse the allow generic HTTP requests option
-			allowGenericHttpRequests = pr.getOptBoolean("cors.allowGenericHttpRequests", true);
-			
-			// Parse the allowed origins list
-			String originSpec = pr.getOptString("cors.allowOrigin", "*").trim();
-			
-			allowedOrigins = new HashSet<ValidatedOrigin>();
+		// Parse the allow generic HTTP requests option
+		allowGenericHttpRequests = pr.getOptBoolean("cors.allowGenericHttpRequests", true);
+		
+		// Parse the allowed origins list
+		String originSpec = pr.getOptString("cors.allowOrigin", "*").trim();
+		
+		Set<ValidatedOrigin> origins = new HashSet<ValidatedOrigin>();
+		Set<String> originPatterns = new LinkedHashSet<String>();
+		Set<String> originRanges = new LinkedHashSet<String>();
 
-			if (originSpec.equals("*")) {
+		if (originSpec.equals("*")) {
 
-				allowAnyOrigin = true;
+			allowAnyOrigin = true;
 
-			} else {
+		} else {
 
-				allowAnyOrigin = false;
+			allowAnyOrigin = false;
 
-				String[] urls = parseWords(originSpec);
+			String[] urls = parseWords(originSpec);
 
-				for (String url: urls) {
+			for (String url: urls) {
 
-					try {
-						allowedOrigins.add(new Origin(url).validate());
+				if (OriginRangeMatcher.isRange(url)) {
+					originRanges.add(url);
+					continue;
+				}
+
+				if (OriginPatternMatcher.isPattern(url)) {
+					originPatterns.add(url);
+					continue;
+				}
 
-                                	} catch (OriginException e) {
-					
-                                        	throw new PropertyParseException("Bad origin URL in property cors.allowOrigin: " + url);
-                                	}
+				try {
+					origins.add(new Origin(url).validate());
+
+				} catch (OriginException e) {
+
+					throw new CORSConfigurationException("Bad origin URL in property cors.allowOrigin: " + url);
 				}
 			}
-			
-			// Parse the allow origin suffix matching option
-			allowSubdomains = pr.getOptBoolean("cors.allowSubdomains", false);
-			
+		}
+		
+		allowOriginSpec = originSpec;
+
+		if (parent != null && originSpec.equals(parent.allowOriginSpec) && parent.originRegistry.retain()) {
 
-			// Parse the supported methods list
+			originRegistry = parent.originRegistry;
 
-			String methodSpec = pr.getOptString("cors.supportedMethods", "GET, POST, HEAD, OPTIONS").trim().toUpperCase();
+		} else if (previous != null && originSpec.equals(previous.allowOriginSpec) && previous.originRegistry.retain()) {
 
-			supportedMethods = new HashSet<String>();
+			// Keep the origins added and removed at runtime
+			originRegistry = previous.originRegistry;
 
-			for (String methodName: parseWords(methodSpec)) {
+		} else {
 
-				supportedMethods.add(methodName);
+			originRegistry = new OriginRegistry(origins);
+		}
+
+		allowedOrigins = originRegistry.asSet();
+
+		allowedOriginPatterns = Collections.unmodifiableSet(originPatterns);
+
+		if (! originPatterns.isEmpty()) {
+
+			try {
+				originPatternMatcher = new OriginPatternMatcher(originPatterns);
+
+			} catch (IllegalArgumentException e) {
+
+				throw new CORSConfigurationException("Bad origin pattern in property cors.allowOrigin: " + e.getMessage());
 			}
-			
+		} else {
+			originPatternMatcher = null;
+		}
 
-			// Parse the supported headers list
-			String headerSpec;
+		allowedOriginRanges = Collections.unmodifiableSet(originRanges);
+
+		if (! originRanges.isEmpty()) {
 
-			// Empty value has special meaning of "no supported headers"
 			try {
-				headerSpec = pr.getString("cors.supportedHeaders");
+				originRangeMatcher = new OriginRangeMatcher(originRanges);
 
-			} catch (PropertyParseException e) {
+			} catch (IllegalArgumentException e) {
 
-				headerSpec = "*";
+				throw new CORSConfigurationException("Bad origin range in property cors.allowOrigin: " + e.getMessage());
 			}
+		} else {
+			originRangeMatcher = null;
+		}
+		
+		// Parse the allow origin suffix matching option
+		allowSubdomains = pr.getOptBoolean("cors.allowSubdomains", false);
+		matchRegistrableDomain = pr.getOptBoolean("cors.matchRegistrableDomain", false);
 
-			if (headerSpec.equals("*")) {
+		validatedOriginCacheSize = pr.getOptInt("cors.validatedOriginCacheSize", 1000);
 
-				supportAnyHeader = true;
-				supportedHeaders = Collections.unmodifiableSet(new HashSet<String>());
+		if (validatedOriginCacheSize < 0 || validatedOriginCacheSize == 1)
+			throw new CORSConfigurationException("The property cors.validatedOriginCacheSize must be zero or at least 2");
 
-			} else {
+		validatedOriginCache = validatedOriginCacheSize > 0 ? new ValidatedOriginCache(validatedOriginCacheSize) : null;
 
-				supportAnyHeader = false;
 
-				String[] headers = parseWords(headerSpec);
+		// Parse the denied origins list and learning options
+		Set<Origin> denied = new HashSet<Origin>();
 
-				supportedHeaders = new HashSet<String>();
+		for (String url: parseWords(pr.getOptString("cors.denyOrigin", ""))) {
 
-				for (String header: headers) {
+			try {
+				denied.add(new Origin(url).validate());
 
-					try {
-						supportedHeaders.add(HeaderName.formatCanonical(header));
+			} catch (OriginException e) {
 
-					} catch (IllegalArgumentException e) {
+				throw new CORSConfigurationException("Bad origin URL in property cors.denyOrigin: " + url);
+			}
+		}
 
-						throw new PropertyParseException("Bad header field name in property cors.supportedHeaders: " + header);
-					}
+		deniedOrigins = Collections.unmodifiableSet(denied);
+
+		denyOriginLearnThreshold = pr.getOptInt("cors.denyOrigin.learnThreshold", 0);
+		denyOriginLearnedMaxSize = pr.getOptInt("cors.denyOrigin.learnedMaxSize", 10000);
+
+		if (denyOriginLearnThreshold < 0)
+			throw new CORSConfigurationException("The property cors.denyOrigin.learnThreshold must not be negative");
+
+		if (denyOriginLearnedMaxSize < 0)
+			throw new CORSConfigurationException("The property cors.denyOrigin.learnedMaxSize must not be negative");
+
+		originDenyList = new OriginDenyList(deniedOrigins, denyOriginLearnThreshold, denyOriginLearnedMaxSize);
+
+		// Learned origins may become allowed
+		originAdditionListener = new Runnable() {
+			@Override
+			public void run() {
+				originDenyList.clearLearned();
+			}
+		};
+
+		originRegistry.addAdditionListener(originAdditionListener);
+
+
+		// Parse the origin authorizer options
+		originAuthorizerCacheSize = pr.getOptInt("cors.originAuthorizer.cacheSize", 10000);
+		originAuthorizerPositiveTTL = pr.getOptLong("cors.originAuthorizer.positiveTTL", 300);
+		originAuthorizerNegativeTTL = pr.getOptLong("cors.originAuthorizer.negativeTTL", 60);
+		originAuthorizerStaleTTL = pr.getOptLong("cors.originAuthorizer.staleTTL", 300);
+		originAuthorizerThreads = pr.getOptInt("cors.originAuthorizer.threads", 2);
+		originAuthorizerMissWait = pr.getOptLong("cors.originAuthorizer.missWait", 0);
+
+		if (originAuthorizerCacheSize <= 0)
+			throw new CORSConfigurationException("The property cors.originAuthorizer.cacheSize must be positive");
+
+		if (originAuthorizerThreads <= 0)
+			throw new CORSConfigurationException("The property cors.originAuthorizer.threads must be positive");
+
+		if (originAuthorizerMissWait < 0)
+			throw new CORSConfigurationException("The property cors.originAuthorizer.missWait must not be negative");
+
+		String authorizerClassName = pr.getOptString(ORIGIN_AUTHORIZER_PROPERTY, null);
+
+		if (authorizerClassName != null)
+			setOriginAuthorizer(loadOriginAuthorizer(authorizerClassName.trim()));
+		
+
+		// Parse the supported methods list
+
+		String methodSpec = pr.getOptString("cors.supportedMethods", "GET, POST, HEAD, OPTIONS").trim().toUpperCase();
+
+		supportedMethods = new LinkedHashSet<String>();
+
+		for (String methodName: parseWords(methodSpec)) {
+
+			supportedMethods.add(methodName);
+		}
+		
+
+		// Parse the supported headers list
+		String headerSpec;
+
+		// Empty value has special meaning of "no supported headers"
+		try {
+			headerSpec = pr.getString("cors.supportedHeaders");
+
+		} catch (CORSConfigurationException e) {
+
+			headerSpec = "*";
+		}
+
+		if (headerSpec.equals("*")) {
+
+			supportAnyHeader = true;
+			supportedHeaders = Collections.unmodifiableSet(new LinkedHashSet<String>());
+
+		} else {
+
+			supportAnyHeader = false;
+
+			String[] headers = parseWords(headerSpec);
+
+			Set<String> headerSet = new LinkedHashSet<String>();
+
+			for (String header: headers) {
+
+				try {
+					headerSet.add(HeaderName.formatCanonical(header));
+
+				} catch (IllegalArgumentException e) {
+
+					throw new CORSConfigurationException("Bad header field name in property cors.supportedHeaders: " + header);
 				}
 			}
 
+			supportedHeaders = Collections.unmodifiableSet(headerSet);
+		}
+
+		supportedHeaderIndex = new StringIndex(supportedHeaders);
+
+		supportedHeaderPatterns = compileHeaderPatterns(supportedHeaders, "cors.supportedHeaders");
+
+
+		// Parse the method specific supported headers
+		final String methodHeadersPrefix = "cors.supportedHeaders.";
 
-			// Parse the exposed headers list
-			exposedHeaders = new HashSet<String>();
+		Map<String,Set<String>> methodHeaders = new TreeMap<String,Set<String>>();
 
-			for (String header: parseWords(pr.getOptString("cors.exposedHeaders", ""))) {
+		for (String key: props.stringPropertyNames()) {
+
+			if (! key.startsWith(methodHeadersPrefix))
+				continue;
+
+			if (supportAnyHeader)
+				throw new CORSConfigurationException("The property " + key + " requires a cors.supportedHeaders list");
+
+			String method = key.substring(methodHeadersPrefix.length()).trim().toUpperCase();
+
+			if (! supportedMethods.contains(method))
+				throw new CORSConfigurationException("Unsupported method in property " + key);
+
+			Set<String> headerSet = new LinkedHashSet<String>();
+
+			for (String header: parseWords(props.getProperty(key))) {
 
 				try {
-					exposedHeaders.add(HeaderName.formatCanonical(header));
+					headerSet.add(HeaderName.formatCanonical(header));
 
 				} catch (IllegalArgumentException e) {
-					throw new PropertyParseException("Bad header field name in property cors.exposedHeaders: " + header);
+
+					throw new CORSConfigurationException("Bad header field name in property " + key + ": " + header);
 				}
 			}
 
+			compileHeaderPatterns(headerSet, key);
+
+			methodHeaders.put(method, Collections.unmodifiableSet(headerSet));
+		}
 
-			// Parse the allow credentials option
-			supportsCredentials = pr.getOptBoolean("cors.supportsCredentials", true);
+		methodSupportedHeaders = Collections.unmodifiableMap(methodHeaders);
 
+		supportedHeaderMatrix = supportAnyHeader ? null : new HeaderMethodMatrix(supportedMethods, supportedHeaders, methodSupportedHeaders);
 
-			// Parse the max cache age of preflight requests
-			maxAge = pr.getOptInt("cors.maxAge", -1);
 
-			// Controls request tagging
-			tagRequests = pr.getOptBoolean("cors.tagRequests", false);
-			
-		
-		} catch (PropertyParseException e) {
-			
-			// Simply reformat as a more specific exception class
-			// to improve stack trace clarity (config exceptions
-			// are often dumped to the web client screen)
-			
-			throw new CORSConfigurationException(e.getMessage());
+		// Parse the exposed headers list
+		exposedHeaders = new LinkedHashSet<String>();
+
+		for (String header: parseWords(pr.getOptString("cors.exposedHeaders", ""))) {
+
+			try {
+				exposedHeaders.add(HeaderName.formatCanonical(header));
+
+			} catch (IllegalArgumentException e) {
+				throw new CORSConfigurationException("Bad header field name in property cors.exposedHeaders: " + header);
+			}
+		}
+
+		compileHeaderPatterns(exposedHeaders, "cors.exposedHeaders");
+
+
+		// Parse the allow credentials option
+		supportsCredentials = pr.getOptBoolean("cors.supportsCredentials", true);
+
+
+		// Parse the wildcard responses option
+		wildcardResponses = pr.getOptBoolean("cors.wildcardResponses", false);
+
+
+		// Parse the max cache age of preflight requests
+		maxAge = pr.getOptInt("cors.maxAge", -1);
+
+		adaptiveMaxAge = pr.getOptBoolean("cors.maxAge.adaptive", false);
+
+		adaptiveMaxAgeLimit = pr.getOptInt("cors.maxAge.limit", 86400);
+
+		if (adaptiveMaxAge && maxAge <= 0)
+			throw new CORSConfigurationException("The property cors.maxAge.adaptive requires a positive cors.maxAge");
+
+		if (adaptiveMaxAge && adaptiveMaxAgeLimit < maxAge)
+			throw new CORSConfigurationException("The property cors.maxAge.limit must not be less than cors.maxAge");
+
+
+		// Parse the preflight caching options
+		preflightVary = pr.getOptBoolean("cors.preflightVary", false);
+
+		String cacheControl = pr.getOptString("cors.preflightCacheControl", "").trim();
+
+		if (cacheControl.indexOf('\r') >= 0 || cacheControl.indexOf('\n') >= 0)
+			throw new CORSConfigurationException("Bad property cors.preflightCacheControl: Line breaks not allowed");
+
+		preflightCacheControl = cacheControl.isEmpty() ? null : cacheControl;
+
+		minimalPreflight = pr.getOptBoolean("cors.minimalPreflight", false);
+
+		preflightNoContent = pr.getOptBoolean("cors.preflightNoContent", false);
+
+
+		// Parse the origin groups and index their origins
+		originGroups = parseOriginGroups(props, supportsCredentials, exposedHeaders, maxAge);
+
+		Set<String> seenGroupOriginKeys = new HashSet<String>();
+		List<String> groupOriginKeys = new ArrayList<String>();
+		List<OriginGroup> groupByOrigin = new ArrayList<OriginGroup>();
+
+		for (OriginGroup group: originGroups.values()) {
+
+			for (ValidatedOrigin origin: group.getOrigins()) {
+
+				if (originDenyList.isDenied(origin))
+					throw new CORSConfigurationException("Denied origin in property " + ORIGIN_GROUP_PROPERTY_PREFIX + group.getName() + ".origins: " + origin);
+
+				String key = OriginUtils.toCanonicalKey(origin.toString());
+
+				if (! seenGroupOriginKeys.add(key))
+					throw new CORSConfigurationException("Duplicate origin in property " + ORIGIN_GROUP_PROPERTY_PREFIX + group.getName() + ".origins: " + origin);
+
+				groupOriginKeys.add(key);
+				groupByOrigin.add(group);
+			}
+		}
+
+		originGroupIndex = new StringIndex(groupOriginKeys);
+		originGroupByOrigin = groupByOrigin.toArray(new OriginGroup[groupByOrigin.size()]);
+
+		// Controls request tagging
+		tagRequests = pr.getOptBoolean("cors.tagRequests", false);
+
+		// Parse the warm-up options
+		warmUpIterations = pr.getOptInt("cors.warmUpIterations", 0);
+		warmUpTimeBudget = pr.getOptLong("cors.warmUpTimeBudget", 1000);
+		warmUpInBackground = pr.getOptBoolean("cors.warmUpInBackground", false);
+
+		Properties baseProps = getInheritedProperties(props);
+
+		// Parse the named policies
+		policies = parsePolicies(props, baseProps, this);
+
+
+		// Parse the tenant policy options
+		tenantBaseProps = baseProps;
+
+		String header = pr.getOptString("cors.tenant.header", "").trim();
+		tenantHeader = header.isEmpty() ? null : header;
+		tenantHostLabel = pr.getOptInt("cors.tenant.hostLabel", -1);
+		tenantPathSegment = pr.getOptInt("cors.tenant.pathSegment", -1);
+		tenantCacheSize = pr.getOptInt("cors.tenant.cacheSize", 1000);
+		tenantRefreshInterval = pr.getOptLong("cors.tenant.refreshInterval", 300);
+		tenantThreads = pr.getOptInt("cors.tenant.threads", 1);
+
+		int tenantSelectors = (tenantHeader != null ? 1 : 0) + (tenantHostLabel >= 0 ? 1 : 0) + (tenantPathSegment >= 0 ? 1 : 0);
+
+		if (tenantSelectors > 1)
+			throw new CORSConfigurationException("Only one of the properties cors.tenant.header, cors.tenant.hostLabel and cors.tenant.pathSegment may be set");
+
+		if (tenantCacheSize <= 0)
+			throw new CORSConfigurationException("The property cors.tenant.cacheSize must be positive");
+
+		if (tenantThreads <= 0)
+			throw new CORSConfigurationException("The property cors.tenant.threads must be positive");
+
+		String tenantSourceClassName = pr.getOptString("cors.tenant.source", null);
+
+		if (tenantSourceClassName != null) {
+
+			if (tenantSelectors == 0)
+				throw new CORSConfigurationException("The property cors.tenant.source requires cors.tenant.header, cors.tenant.hostLabel or cors.tenant.pathSegment");
+
+			setTenantPolicySource(loadTenantPolicySource(tenantSourceClassName.trim()));
 		}
 	}
 }
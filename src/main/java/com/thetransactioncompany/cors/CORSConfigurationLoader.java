@@ -1,10 +1,15 @@
 package com.thetransactioncompany.cors;
 
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Enumeration;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
 
 import javax.servlet.FilterConfig;
 
@@ -29,6 +34,19 @@ public class CORSConfigurationLoader {
 	public static final String CONFIG_FILE_PARAM_NAME = "cors.configurationFile";
 
 
+	/**
+	 * The name of the configuration property that points to a directory
+	 * of per-host policy files.
+	 */
+	public static final String HOST_POLICY_DIR_PARAM_NAME = "cors.hostPolicyDirectory";
+
+
+	/**
+	 * The file name extension of the per-host policy files.
+	 */
+	private static final String HOST_POLICY_FILE_EXTENSION = ".properties";
+
+
 	/**
 	 * The servlet filter configuration.
 	 */
@@ -122,6 +140,151 @@ public class CORSConfigurationLoader {
 	}
 	
 	
+	/**
+	 * Lists the per-host policy files in the specified web application
+	 * directory.
+	 *
+	 * @param dir The directory, relative to the web application root
+	 *            directory. Must not be {@code null}.
+	 *
+	 * @return The file resource paths, keyed by file name, in file name
+	 *         order, {@code null} if the directory wasn't found.
+	 */
+	private Map<String,String> listHostPolicyResources(final String dir) {
+
+		String correctedDir = dir.startsWith("/") ? dir : "/" + dir;
+
+		if (! correctedDir.endsWith("/"))
+			correctedDir = correctedDir + "/";
+
+		Set<?> paths = filterConfig.getServletContext().getResourcePaths(correctedDir);
+
+		if (paths == null)
+			return null;
+
+		Map<String,String> files = new TreeMap<String,String>();
+
+		for (Object path: paths) {
+
+			String name = path.toString().substring(correctedDir.length());
+
+			if (name.endsWith(HOST_POLICY_FILE_EXTENSION) && name.indexOf('/') < 0)
+				files.put(name, path.toString());
+		}
+
+		return files;
+	}
+
+
+	/**
+	 * Lists the per-host policy files in the specified file system
+	 * directory.
+	 *
+	 * @param dir The directory. Must not be {@code null}.
+	 *
+	 * @return The file paths, keyed by file name, in file name order.
+	 *
+	 * @throws IOException If the directory wasn't found.
+	 */
+	private static Map<String,String> listHostPolicyFiles(final String dir)
+		throws IOException {
+
+		File[] dirFiles = new File(dir).listFiles();
+
+		if (dirFiles == null)
+			throw new IOException("No such directory: " + dir);
+
+		Map<String,String> files = new TreeMap<String,String>();
+
+		for (File file: dirFiles) {
+
+			if (file.isFile() && file.getName().endsWith(HOST_POLICY_FILE_EXTENSION))
+				files.put(file.getName(), file.getPath());
+		}
+
+		return files;
+	}
+
+
+	/**
+	 * Loads the per-host policy files from the directory specified by the
+	 * {@code cors.hostPolicyDirectory} property, if any, into the
+	 * specified configuration properties. The directory is looked up
+	 * relative to the web application root directory first, then in the
+	 * file system.
+	 *
+	 * <p>Each file in the directory with a {@code .properties} extension
+	 * becomes a named policy, with the {@code cors.*} properties of the
+	 * file mapped to {@code cors.policy.[name].*}. The policy name is the
+	 * file name without the extension, with dots replaced by
+	 * underscores. The policy applies to the host names in the
+	 * {@code cors.hostName} property of the file, if missing to the host
+	 * name given by the file name, e.g. {@code api.example.com.properties}.
+	 * Policy properties which are already set take precedence over the
+	 * files.
+	 *
+	 * @param props The configuration properties. Must not be
+	 *              {@code null}.
+	 *
+	 * @throws IOException If the directory or a file couldn't be loaded.
+	 */
+	private void loadHostPolicies(final Properties props)
+		throws IOException {
+
+		String dir = props.getProperty(HOST_POLICY_DIR_PARAM_NAME);
+
+		if (dir == null || dir.trim().isEmpty())
+			return;
+
+		Map<String,String> files = listHostPolicyResources(dir.trim());
+
+		final boolean inWebApp = files != null;
+
+		if (! inWebApp)
+			files = listHostPolicyFiles(dir.trim());
+
+		for (Map.Entry<String,String> file: files.entrySet()) {
+
+			String baseName = file.getKey().substring(0, file.getKey().length() - HOST_POLICY_FILE_EXTENSION.length());
+
+			String prefix = CORSConfiguration.POLICY_PROPERTY_PREFIX + baseName.replace('.', '_') + ".";
+
+			InputStream is;
+
+			if (inWebApp)
+				is = filterConfig.getServletContext().getResourceAsStream(file.getValue());
+			else
+				is = new FileInputStream(file.getValue());
+
+			if (is == null)
+				throw new IOException("No such filename: " + file.getValue());
+
+			Properties fileProps = new Properties();
+
+			try {
+				fileProps.load(is);
+
+			} finally {
+				is.close();
+			}
+
+			if (fileProps.getProperty("cors.hostName") == null)
+				fileProps.setProperty("cors.hostName", baseName);
+
+			for (String key: fileProps.stringPropertyNames()) {
+
+				if (! key.startsWith("cors."))
+					continue;
+
+				String policyKey = prefix + key.substring("cors.".length());
+
+				if (props.getProperty(policyKey) == null)
+					props.setProperty(policyKey, fileProps.getProperty(key));
+			}
+		}
+	}
+
+
 	/**
 	 * Gets the current system variables environment (lazy loading).
 	 *
@@ -171,6 +334,10 @@ public class CORSConfigurationLoader {
 	 *         configuration property is applied.
 	 * </ul>
 	 *
+	 * <p>If the configuration specifies a {@code cors.hostPolicyDirectory},
+	 * the per-host policies are loaded from the files in it, see
+	 * {@link #loadHostPolicies}.
+	 *
 	 * @return The loaded CORS filter configuration.
 	 *
 	 * @throws CORSConfigurationException If the configuration file
@@ -181,6 +348,31 @@ public class CORSConfigurationLoader {
 	public CORSConfiguration load()
 		throws CORSConfigurationException {
 
+		return load(null);
+	}
+
+
+	/**
+	 * Loads a CORS filter configuration as a replacement for the
+	 * specified one, see {@link #load()}. If {@code cors.allowOrigin} is
+	 * unchanged the new configuration takes over the
+	 * {@link CORSConfiguration#getOriginRegistry origin registry} of the
+	 * previous one, so the origins added and removed at runtime and the
+	 * temporary grants survive the reload. The previous configuration
+	 * should be shut down afterwards as usual.
+	 *
+	 * @param previous The previous configuration, {@code null} if none.
+	 *
+	 * @return The loaded CORS filter configuration.
+	 *
+	 * @throws CORSConfigurationException If the configuration file
+	 *                                    couldn't be loaded or parsing of
+	 *                                    one or more properties failed due
+	 *                                    to an illegal value.
+	 */
+	public CORSConfiguration load(final CORSConfiguration previous)
+		throws CORSConfigurationException {
+
 		Properties props;
 
 		try {
@@ -202,11 +394,13 @@ public class CORSConfigurationLoader {
 				props = getFilterInitParameters(filterConfig);
 			}
 
+			loadHostPolicies(props);
+
 		} catch(IOException e) {
 
 			throw new CORSConfigurationException(e.getMessage(), e);
 		}
 
-		return new CORSConfiguration(props);
+		return new CORSConfiguration(props, null, previous);
 	}
 }
\ No newline at end of file
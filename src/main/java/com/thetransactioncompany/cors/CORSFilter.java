@@ -3,6 +3,8 @@ package com.thetransactioncompany.cors;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -27,15 +29,62 @@ import javax.servlet.http.HttpServletResponse;
  *     <li>cors.allowGenericHttpRequests {true|false} defaults to {@code true}.
  *     <li>cors.allowOrigin {"*"|origin-list} defaults to {@code *}.
  *     <li>cors.allowSubdomains {true|false} defaults to {@code false}.
+ *     <li>cors.matchRegistrableDomain {true|false} defaults to {@code false}.
+ *     <li>cors.validatedOriginCacheSize {int} defaults to {@code 1000}.
+ *     <li>cors.denyOrigin {origin-list} defaults to empty list.
+ *     <li>cors.denyOrigin.learnThreshold {int} defaults to {@code 0}
+ *         (disabled).
+ *     <li>cors.denyOrigin.learnedMaxSize {int} defaults to {@code 10000}.
+ *     <li>cors.originAuthorizer {class-name} defaults to none.
+ *     <li>cors.originAuthorizer.cacheSize {int} defaults to {@code 10000}.
+ *     <li>cors.originAuthorizer.positiveTTL {int} defaults to {@code 300} s.
+ *     <li>cors.originAuthorizer.negativeTTL {int} defaults to {@code 60} s.
+ *     <li>cors.originAuthorizer.staleTTL {int} defaults to {@code 300} s.
+ *     <li>cors.originAuthorizer.threads {int} defaults to {@code 2}.
+ *     <li>cors.originAuthorizer.missWait {int} defaults to {@code 0} ms.
  *     <li>cors.supportedMethods {method-list} defaults to {@code "GET, POST,
  *         HEAD, OPTIONS"}.
  *     <li>cors.supportedHeaders {"*"|header-list} defaults to {@code *}.
+ *     <li>cors.supportedHeaders.[method] {header-list} defaults to none.
  *     <li>cors.exposedHeaders {header-list} defaults to empty list.
  *     <li>cors.supportsCredentials {true|false} defaults to {@code true}.
+ *     <li>cors.wildcardResponses {true|false} defaults to {@code false}.
  *     <li>cors.maxAge {int} defaults to {@code -1} (unspecified).
+ *     <li>cors.maxAge.adaptive {true|false} defaults to {@code false}.
+ *     <li>cors.maxAge.limit {int} defaults to {@code 86400}.
+ *     <li>cors.preflightVary {true|false} defaults to {@code false}.
+ *     <li>cors.preflightCacheControl {string} defaults to none.
+ *     <li>cors.minimalPreflight {true|false} defaults to {@code false}.
+ *     <li>cors.preflightNoContent {true|false} defaults to {@code false}.
  *     <li>cors.tagRequests {boolean} default to {@code false}.
+ *     <li>cors.warmUpIterations {int} defaults to {@code 0} (disabled).
+ *     <li>cors.warmUpTimeBudget {int} defaults to {@code 1000} ms.
+ *     <li>cors.warmUpInBackground {true|false} defaults to {@code false}.
+ *     <li>cors.policy.[name].hostName {host-name-list} or
+ *         cors.policy.[name].pathPrefix {path-prefix-list} with
+ *         cors.policy.[name].[parameter] overrides, defaults to none.
+ *     <li>cors.hostPolicyDirectory {directory} defaults to none, see
+ *         {@link CORSConfigurationLoader}.
+ *     <li>cors.tenant.source {class-name} defaults to none.
+ *     <li>cors.tenant.header {header-name}, cors.tenant.hostLabel {int}
+ *         or cors.tenant.pathSegment {int} defaults to none.
+ *     <li>cors.tenant.cacheSize {int} defaults to {@code 1000}.
+ *     <li>cors.tenant.refreshInterval {int} defaults to {@code 300} s.
+ *     <li>cors.tenant.threads {int} defaults to {@code 1}.
  * </ul>
  *
+ * <p>Requests for the host name of a named policy are handled by that
+ * policy, an exact host name takes precedence over a wildcard such as
+ * {@code *.example.com}. The host name is the server name of the request,
+ * as determined by the web container from the {@code Host} header. Other
+ * requests under the path prefix of a named policy are handled by that
+ * policy, the longest matching prefix wins. The path is taken from the
+ * servlet path and path info of the request, which the web container has
+ * already decoded and normalised. Other requests of a tenant with a
+ * policy in the {@link TenantPolicySource tenant policy source} are
+ * handled by the tenant policy. All other requests are handled by the
+ * top-level policy.
+ *
  * @author Vladimir Dzhuvinov
  * @author David Bellem
  * @author Gervasio Amy
@@ -45,15 +94,99 @@ public class CORSFilter implements Filter {
 
 
 	/**
-	 * The CORS filer configuration.
+	 * The configuration of the filter with the request handlers derived
+	 * from it, replaced as a whole when a new configuration is set.
 	 */
-	private CORSConfiguration config;
+	private static final class State {
+
+
+		/**
+		 * The CORS filer configuration.
+		 */
+		final CORSConfiguration config;
+
+
+		/**
+		 * Encapsulates the CORS request handling logic.
+		 */
+		final CORSRequestHandler handler;
+
+
+		/**
+		 * The request handlers of the named policies, keyed by path
+		 * prefix, {@code null} if none are configured.
+		 */
+		final PathTrie<CORSRequestHandler> policyHandlers;
+
+
+		/**
+		 * The request handlers of the named policies, keyed by host
+		 * name, {@code null} if none are configured.
+		 */
+		final HostTable<CORSRequestHandler> hostHandlers;
+
+
+		/**
+		 * Resolves the tenant of the requests, {@code null} if no
+		 * tenant selection is configured.
+		 */
+		final TenantResolver tenantResolver;
+
+
+		/**
+		 * Creates the request handlers for the specified
+		 * configuration.
+		 *
+		 * @param config The CORS filter configuration. Must not be
+		 *               {@code null}.
+		 */
+		State(final CORSConfiguration config) {
+
+			this.config = config;
+
+			handler = new CORSRequestHandler(config);
+
+			PathTrie<CORSRequestHandler> trie = null;
+			Map<String,CORSRequestHandler> hosts = null;
+
+			for (CORSPolicy policy: config.policies.values()) {
+
+				CORSRequestHandler policyHandler = new CORSRequestHandler(policy.getConfiguration());
+
+				for (String pathPrefix: policy.getPathPrefixes()) {
+
+					if (trie == null)
+						trie = new PathTrie<CORSRequestHandler>();
+
+					trie.put(pathPrefix, policyHandler);
+				}
+
+				for (String hostName: policy.getHostNames()) {
+
+					if (hosts == null)
+						hosts = new HashMap<String,CORSRequestHandler>();
+
+					hosts.put(hostName, policyHandler);
+				}
+			}
+
+			policyHandlers = trie;
+			hostHandlers = hosts != null ? new HostTable<CORSRequestHandler>(hosts) : null;
+
+			if (config.tenantHeader != null || config.tenantHostLabel >= 0 || config.tenantPathSegment >= 0)
+				tenantResolver = new TenantResolver(config.tenantHeader, config.tenantHostLabel, config.tenantPathSegment);
+			else
+				tenantResolver = null;
+		}
+	}
 
 
 	/**
-	 * Encapsulates the CORS request handling logic.
+	 * The current configuration and request handlers, {@code null} if the
+	 * filter is not initialised. Requests read it once, so they see
+	 * either the old or the new configuration, never a mix of the two.
 	 */
-	private CORSRequestHandler handler;
+	private volatile State state;
 
 
 	/**
@@ -83,15 +216,103 @@ public class CORSFilter implements Filter {
 
 
 	/**
-	 * Sets the cross-origin access policy for this CORS filter.
+	 * Sets the cross-origin access policy for this CORS filter. The
+	 * request handlers are switched to the new policy atomically. The
+	 * previous policy is {@link CORSConfiguration#shutdown shut down}.
+	 * Its runtime origin registry changes are lost, unless the new policy
+	 * was loaded with {@link CORSConfigurationLoader#load(CORSConfiguration)}
+	 * and took over the registry.
 	 *
 	 * @param config The cross-origin access policy. Must not be
 	 *               {@code null}.
 	 */
 	public void setConfiguration(final CORSConfiguration config) {
 
-		this.config = config;
-		handler = new CORSRequestHandler(config);
+		State oldState;
+
+		synchronized (this) {
+
+			oldState = state;
+			state = new State(config);
+		}
+
+		if (oldState != null && oldState.config != config)
+			oldState.config.shutdown();
+	}
+
+
+	/**
+	 * Returns the path of the specified HTTP request, relative to the web
+	 * application context path, as the servlet path plus the path info.
+	 * The web container has already decoded and normalised both.
+	 *
+	 * @param request The HTTP request. Must not be {@code null}.
+	 *
+	 * @return The request path, empty if not available.
+	 */
+	static String getRequestPath(final HttpServletRequest request) {
+
+		String servletPath = request.getServletPath();
+		String pathInfo = request.getPathInfo();
+
+		if (pathInfo == null)
+			return servletPath != null ? servletPath : "";
+		else if (servletPath == null || servletPath.isEmpty())
+			return pathInfo;
+		else
+			return servletPath + pathInfo;
+	}
+
+
+	/**
+	 * Selects the request handler for the specified HTTP request, by the
+	 * host name, then by the longest path prefix of the named policies,
+	 * then by the tenant.
+	 *
+	 * @param state   The current filter state. Must not be {@code null}.
+	 * @param request The HTTP request. Must not be {@code null}.
+	 *
+	 * @return The request handler.
+	 */
+	private static CORSRequestHandler selectHandler(final State state, final HttpServletRequest request) {
+
+		final HostTable<CORSRequestHandler> hostTable = state.hostHandlers;
+
+		if (hostTable != null) {
+
+			CORSRequestHandler hostHandler = hostTable.match(request.getServerName());
+
+			if (hostHandler != null)
+				return hostHandler;
+		}
+
+		final PathTrie<CORSRequestHandler> trie = state.policyHandlers;
+
+		if (trie != null) {
+
+			CORSRequestHandler policyHandler = trie.match(getRequestPath(request), 0);
+
+			if (policyHandler != null)
+				return policyHandler;
+		}
+
+		final TenantResolver resolver = state.tenantResolver;
+		final TenantPolicyCache tenantCache = state.config.getTenantPolicyCache();
+
+		if (resolver != null && tenantCache != null) {
+
+			String tenant = resolver.resolve(request);
+
+			if (tenant != null) {
+
+				CORSRequestHandler tenantHandler = tenantCache.getHandler(tenant);
+
+				if (tenantHandler != null)
+					return tenantHandler;
+			}
+		}
+
+		return state.handler;
 	}
 
 
@@ -103,7 +324,56 @@ public class CORSFilter implements Filter {
 	 */
 	public CORSConfiguration getConfiguration() {
 
-		return config;
+		final State current = state;
+
+		return current != null ? current.config : null;
+	}
+
+
+	/**
+	 * Gets the registry of the allowed origins for this CORS filter. It
+	 * can be used to add and remove origins at runtime, without reloading
+	 * the configuration. Note that the changes are not persisted. They
+	 * survive a reload through
+	 * {@link CORSConfigurationLoader#load(CORSConfiguration)} which
+	 * leaves {@code cors.allowOrigin} unchanged, and are lost otherwise.
+	 *
+	 * <p>The named and tenant policies which don't override
+	 * {@code cors.allowOrigin} share this registry. A policy with its own
+	 * {@code cors.allowOrigin} has a separate registry, see
+	 * {@link #getOriginRegistry(String)}.
+	 *
+	 * @return The origin registry, {@code null} if the filter is not
+	 *         initialised.
+	 */
+	public OriginRegistry getOriginRegistry() {
+
+		final CORSConfiguration config = getConfiguration();
+
+		return config != null ? config.getOriginRegistry() : null;
+	}
+
+
+	/**
+	 * Gets the registry of the allowed origins for the specified named
+	 * policy. It is the top-level {@link #getOriginRegistry registry}
+	 * unless the policy overrides {@code cors.allowOrigin}.
+	 *
+	 * @param policyName The policy name. Must not be {@code null}.
+	 *
+	 * @return The origin registry, {@code null} if the filter is not
+	 *         initialised or there is no such policy.
+	 */
+	public OriginRegistry getOriginRegistry(final String policyName) {
+
+		final CORSConfiguration config = getConfiguration();
+
+		if (config == null)
+			return null;
+
+		CORSPolicy policy = config.policies.get(policyName);
+
+		return policy != null ? policy.getConfiguration().getOriginRegistry() : null;
 	}
 
 
@@ -129,6 +399,48 @@ public class CORSFilter implements Filter {
 
 			throw new ServletException(e.getMessage(), e);
 		}
+
+		warmUp();
+	}
+
+
+	/**
+	 * Warms up the request processing code by passing synthetic CORS
+	 * requests through this filter, as specified by the
+	 * {@link CORSConfiguration#warmUpIterations},
+	 * {@link CORSConfiguration#warmUpTimeBudget} and
+	 * {@link CORSConfiguration#warmUpInBackground} settings. Invoked by
+	 * {@link #init}; filters created with a configuration directly
+	 * should call it before they are put in service. Does nothing if the
+	 * warm-up is disabled.
+	 */
+	public void warmUp() {
+
+		final CORSConfiguration config = getConfiguration();
+
+		if (config == null || config.warmUpIterations <= 0)
+			return;
+
+		final CORSFilterWarmer warmer = new CORSFilterWarmer(this);
+		final int iterations = config.warmUpIterations;
+		final long timeBudget = config.warmUpTimeBudget;
+
+		if (! config.warmUpInBackground) {
+
+			warmer.run(iterations, timeBudget);
+			return;
+		}
+
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				warmer.run(iterations, timeBudget);
+			}
+		}, "CORS Filter warm-up");
+
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
 	}
 
 
@@ -182,6 +494,9 @@ public class CORSFilter implements Filter {
 
 		CORSRequestType type = CORSRequestType.detect(request);
 
+		final CORSRequestHandler handler = selectHandler(state, request);
+		final CORSConfiguration config = handler.getConfiguration();
+
 		// Tag if configured
 		if (config.tagRequests)
 			RequestTagger.tag(request, type);
@@ -190,10 +505,11 @@ public class CORSFilter implements Filter {
 			if (type.equals(CORSRequestType.ACTUAL)) {
 
 				// Simple / actual CORS request
-				handler.handleActualRequest(request, response);
+				CORSResponseHeaders headers = handler.applyActualRequest(request, response);
 
-				// Preserve CORS response headers on reset()
-				CORSResponseWrapper responseWrapper = new CORSResponseWrapper(response);
+				// Preserve CORS response headers on reset(), expose
+				// the response headers matching a pattern
+				CORSResponseWrapper responseWrapper = new CORSResponseWrapper(response, headers.exposedHeaderPatterns);
 
 				chain.doFilter(request, responseWrapper);
 
@@ -203,6 +519,14 @@ public class CORSFilter implements Filter {
 				// further down the chain
 				handler.handlePreflightRequest(request, response);
 
+				if (config.preflightNoContent) {
+
+					// Commit an empty response right away
+					response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+					response.setContentLength(0);
+					response.flushBuffer();
+				}
+
 			} else if (config.allowGenericHttpRequests) {
 
 				// Not a CORS request, but allow it through
@@ -257,6 +581,9 @@ public class CORSFilter implements Filter {
 	@Override
 	public void destroy() {
 
-		// do nothing
+		final CORSConfiguration config = getConfiguration();
+
+		if (config != null)
+			config.shutdown();
 	}
 }
@@ -0,0 +1,177 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+
+/**
+ * Warms up a CORS filter by passing synthetic actual, preflight and rejected
+ * CORS requests through a copy of it. The requests and responses are
+ * internal stubs, the downstream filter chain is never invoked.
+ *
+ * <p>The purpose of the warm-up is to have the request processing code
+ * (origin checks, header name validation and parsing, response header
+ * output) loaded and compiled before the first real requests arrive.
+ *
+ * <p>The requests are passed through a throwaway filter with a copy of
+ * the configuration, without the origin authorizer and the tenant policy
+ * source. The state of the warmed up filter, such as the learned denied
+ * origins, the adaptive max-age counters and the caches, is left
+ * untouched.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class CORSFilterWarmer {
+
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger LOG = LogManager.getLogManager().getLogger("");
+
+
+	/**
+	 * The origin to use for synthetic requests which must be rejected.
+	 * The {@code .invalid} TLD is reserved, see RFC 2606.
+	 */
+	private static final String REJECTED_ORIGIN = "http://warm-up.invalid";
+
+
+	/**
+	 * Filter chain which does nothing.
+	 */
+	private static final FilterChain NO_OP_CHAIN = new FilterChain() {
+		@Override
+		public void doFilter(final ServletRequest request, final ServletResponse response) {
+			// do nothing
+		}
+	};
+
+
+	/**
+	 * The configuration of the CORS filter to warm up.
+	 */
+	private final CORSConfiguration config;
+
+
+	/**
+	 * Headers of the synthetic actual request.
+	 */
+	private final Map<String,String> actualRequestHeaders;
+
+
+	/**
+	 * Headers of the synthetic preflight request.
+	 */
+	private final Map<String,String> preflightRequestHeaders;
+
+
+	/**
+	 * Headers of the synthetic rejected request.
+	 */
+	private final Map<String,String> rejectedRequestHeaders;
+
+
+	/**
+	 * The method of the synthetic actual request.
+	 */
+	private final String method;
+
+
+	/**
+	 * Creates a new CORS filter warmer.
+	 *
+	 * @param filter The CORS filter to warm up. Must be configured and
+	 *               not {@code null}.
+	 */
+	public CORSFilterWarmer(final CORSFilter filter) {
+
+		if (filter == null || filter.getConfiguration() == null)
+			throw new IllegalArgumentException("The CORS filter must not be null and must be configured");
+
+		config = filter.getConfiguration();
+
+		String origin = "http://example.com";
+
+		if (! config.allowedOrigins.isEmpty())
+			origin = config.allowedOrigins.iterator().next().toString();
+
+		Iterator<String> methods = config.supportedMethods.iterator();
+		method = methods.hasNext() ? methods.next() : "GET";
+
+		String requestHeaders = "X-Requested-With, Content-Type";
+
+		if (! config.supportAnyHeader)
+			requestHeaders = HeaderUtils.serialize(config.supportedHeaders, ", ");
+
+		actualRequestHeaders = new HashMap<String,String>();
+		actualRequestHeaders.put(HeaderName.ORIGIN, origin);
+
+		preflightRequestHeaders = new HashMap<String,String>();
+		preflightRequestHeaders.put(HeaderName.ORIGIN, origin);
+		preflightRequestHeaders.put(HeaderName.ACCESS_CONTROL_REQUEST_METHOD, method);
+
+		if (! requestHeaders.isEmpty())
+			preflightRequestHeaders.put(HeaderName.ACCESS_CONTROL_REQUEST_HEADERS, requestHeaders);
+
+		rejectedRequestHeaders = new HashMap<String,String>();
+		rejectedRequestHeaders.put(HeaderName.ORIGIN, REJECTED_ORIGIN);
+	}
+
+
+	/**
+	 * Runs the warm-up. Each iteration passes one actual, one preflight
+	 * and one rejected request through a throwaway copy of the filter.
+	 *
+	 * @param iterations The maximum number of iterations.
+	 * @param timeBudget The maximum time to spend, in milliseconds. If
+	 *                   zero or negative unlimited.
+	 *
+	 * @return The number of completed iterations.
+	 */
+	public int run(final int iterations, final long timeBudget) {
+
+		final long deadline = timeBudget > 0 ? System.nanoTime() + timeBudget * 1000000L : Long.MAX_VALUE;
+
+		int i = 0;
+
+		CORSConfiguration warmUpConfig = null;
+
+		try {
+			warmUpConfig = config.createWarmUpConfiguration();
+
+			CORSFilter filter = new CORSFilter(warmUpConfig);
+
+			for (; i < iterations; i++) {
+
+				if (timeBudget > 0 && System.nanoTime() - deadline > 0)
+					break;
+
+				filter.doFilter(new WarmUpRequest(method, actualRequestHeaders), new WarmUpResponse(), NO_OP_CHAIN);
+				filter.doFilter(new WarmUpRequest("OPTIONS", preflightRequestHeaders), new WarmUpResponse(), NO_OP_CHAIN);
+				filter.doFilter(new WarmUpRequest(method, rejectedRequestHeaders), new WarmUpResponse(), NO_OP_CHAIN);
+			}
+
+		} catch (Exception e) {
+
+			LOG.warning("CORS Filter: Warm-up aborted: " + e.getMessage());
+
+		} finally {
+
+			if (warmUpConfig != null)
+				warmUpConfig.shutdown();
+		}
+
+		LOG.fine("CORS Filter: Completed " + i + " warm-up iterations");
+
+		return i;
+	}
+}
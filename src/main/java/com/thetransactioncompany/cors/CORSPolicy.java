@@ -0,0 +1,113 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Set;
+
+
+/**
+ * Named CORS policy, which applies to the requests for one or more host
+ * names, or under one or more URI path prefixes, instead of the default
+ * policy of the filter.
+ *
+ * <p>Policies are configured by properties with the prefix
+ * {@code cors.policy.[name].}, see {@link CORSConfiguration}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class CORSPolicy {
+
+
+	/**
+	 * The policy name.
+	 */
+	private final String name;
+
+
+	/**
+	 * The URI path prefixes the policy applies to.
+	 */
+	private final Set<String> pathPrefixes;
+
+
+	/**
+	 * The host names the policy applies to.
+	 */
+	private final Set<String> hostNames;
+
+
+	/**
+	 * The policy configuration.
+	 */
+	private final CORSConfiguration configuration;
+
+
+	/**
+	 * Creates a new CORS policy.
+	 *
+	 * @param name          The policy name. Must not be {@code null}.
+	 * @param pathPrefixes  The URI path prefixes, relative to the web
+	 *                      application context path. Must not be
+	 *                      {@code null}.
+	 * @param hostNames     The host names, in lower case, may include
+	 *                      wildcards such as {@code *.example.com}. Must
+	 *                      not be {@code null}.
+	 * @param configuration The policy configuration. Must not be
+	 *                      {@code null}.
+	 */
+	public CORSPolicy(final String name,
+			  final Set<String> pathPrefixes,
+			  final Set<String> hostNames,
+			  final CORSConfiguration configuration) {
+
+		this.name = name;
+		this.pathPrefixes = pathPrefixes;
+		this.hostNames = hostNames;
+		this.configuration = configuration;
+	}
+
+
+	/**
+	 * Returns the policy name.
+	 *
+	 * @return The policy name.
+	 */
+	public String getName() {
+
+		return name;
+	}
+
+
+	/**
+	 * Returns the URI path prefixes the policy applies to.
+	 *
+	 * @return The URI path prefixes, relative to the web application
+	 *         context path, empty if the policy applies to host names.
+	 */
+	public Set<String> getPathPrefixes() {
+
+		return pathPrefixes;
+	}
+
+
+	/**
+	 * Returns the host names the policy applies to.
+	 *
+	 * @return The host names, empty if the policy applies to path
+	 *         prefixes.
+	 */
+	public Set<String> getHostNames() {
+
+		return hostNames;
+	}
+
+
+	/**
+	 * Returns the policy configuration.
+	 *
+	 * @return The policy configuration.
+	 */
+	public CORSConfiguration getConfiguration() {
+
+		return configuration;
+	}
+}
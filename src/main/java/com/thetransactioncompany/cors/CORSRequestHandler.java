@@ -1,6 +1,9 @@
 package com.thetransactioncompany.cors;
 
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -18,6 +21,13 @@ import javax.servlet.http.HttpServletResponse;
  */
 public class CORSRequestHandler {
 
+
+	/**
+	 * The complete {@code Vary} tokens of preflight responses, for shared
+	 * caches.
+	 */
+	static final int PREFLIGHT_VARY = VaryHeader.ORIGIN | VaryHeader.REQUEST_METHOD | VaryHeader.REQUEST_HEADERS;
+
 	
 	/**
 	 * The CORS filter configuration, detailing the cross-origin access 
@@ -30,18 +40,33 @@ public class CORSRequestHandler {
 	 * Pre-computed string of the CORS supported methods.
 	 */
 	private final String supportedMethods;
-	
-	
+
+
 	/**
-	 * Pre-computed string of the CORS supported headers.
+	 * Index of the supported methods, for rendering the requested method
+	 * of minimal preflight responses from its configured instance.
 	 */
-	private final String supportedHeaders;
+	private final StringIndex supportedMethodIndex;
 	
 	
 	/**
-	 * Pre-computed string of the CORS exposed headers.
+	 * Pre-computed origin dependent response headers for the origins
+	 * which are not in an origin group.
+	 */
+	private final CORSResponseHeaders defaultHeaders;
+
+
+	/**
+	 * Pre-computed origin dependent response headers for the origins in
+	 * the origin groups, by origin identifier.
+	 */
+	private final CORSResponseHeaders[] originHeaders;
+
+
+	/**
+	 * The adaptive preflight max-age, {@code null} if not enabled.
 	 */
-	private final String exposedHeaders;
+	private final AdaptiveMaxAge adaptiveMaxAge;
 	
 	
 	/**
@@ -58,18 +83,104 @@ public class CORSRequestHandler {
 
 		// Access-Control-Allow-Methods
 		supportedMethods = HeaderUtils.serialize(config.supportedMethods, ", ");
+		supportedMethodIndex = new StringIndex(config.supportedMethods);
 
-		// Access-Control-Allow-Headers
-		if (! config.supportAnyHeader)
-			supportedHeaders = HeaderUtils.serialize(config.supportedHeaders, ", ");
-		else
-			supportedHeaders = null;
+		// Access-Control-Allow-Headers, pre-computed by method in the
+		// supported header matrix of the configuration
+
+		// Access-Control-Allow-Credentials, Access-Control-Expose-Headers
+		// and Access-Control-Max-Age, the adaptive max-age restarts
+		// from the minimum with each loaded policy
+		adaptiveMaxAge = config.adaptiveMaxAge ? new AdaptiveMaxAge() : null;
+
+		final int maxAgeLimit = config.adaptiveMaxAge ? config.adaptiveMaxAgeLimit : 0;
+
+		defaultHeaders = new CORSResponseHeaders(config.supportsCredentials, config.wildcardResponses, config.exposedHeaders, config.maxAge, maxAgeLimit);
+
+		// Render the headers once per origin group
+		Map<OriginGroup,CORSResponseHeaders> groupHeaders = new IdentityHashMap<OriginGroup,CORSResponseHeaders>();
+
+		for (OriginGroup group: config.originGroups.values())
+			groupHeaders.put(group, new CORSResponseHeaders(group.supportsCredentials(), config.wildcardResponses, group.getExposedHeaders(), group.getMaxAge(), maxAgeLimit));
 
-		/// Access-Control-Expose-Headers
-		exposedHeaders = HeaderUtils.serialize(config.exposedHeaders, ", ");
+		originHeaders = new CORSResponseHeaders[config.getGroupOriginCount()];
+
+		for (int i = 0; i < originHeaders.length; i++)
+			originHeaders[i] = groupHeaders.get(config.getOriginGroup(i));
+	}
+
+
+	/**
+	 * Gets the cross-origin access policy of this handler.
+	 *
+	 * @return The cross-origin access policy.
+	 */
+	public CORSConfiguration getConfiguration() {
+
+		return config;
 	}
 	
 	
+	/**
+	 * Checks the specified request origin and returns the response
+	 * headers which apply to it. An origin in an origin group is
+	 * authorised and resolved to its headers by a single lookup.
+	 *
+	 * @param origin The request origin. Must not be {@code null}.
+	 *
+	 * @return The origin dependent response headers.
+	 *
+	 * @throws CORSException If the origin is denied.
+	 */
+	private CORSResponseHeaders authorize(final Origin origin)
+		throws CORSException {
+
+		int originId = config.indexOfGroupOrigin(origin);
+
+		if (originId >= 0)
+			return originHeaders[originId];
+
+		// Not in a group, skip the second group lookup
+		if (! config.isAllowedOrigin(origin, false))
+			throw CORSException.ORIGIN_DENIED;
+
+		return defaultHeaders;
+	}
+
+
+	/**
+	 * Appends the {@code Access-Control-Allow-Origin} and
+	 * {@code Access-Control-Allow-Credentials} headers, in this order.
+	 *
+	 * @param response      The HTTP response.
+	 * @param headers       The origin dependent response headers.
+	 * @param requestOrigin The request origin.
+	 *
+	 * @return {@code true} if the headers depend on the request origin,
+	 *         requiring {@code Vary: Origin}, else {@code false}.
+	 */
+	private boolean addAllowOrigin(final HttpServletResponse response,
+				       final CORSResponseHeaders headers,
+				       final Origin requestOrigin) {
+
+		if (headers.supportsCredentials) {
+
+			// The string "*" cannot be used for a resource that supports credentials.
+			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, requestOrigin.toString());
+			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
+			return true;
+		}
+
+		if (config.allowAnyOrigin) {
+			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+			return false;
+		}
+
+		response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, requestOrigin.toString());
+		return true;
+	}
+
+
 	/**
 	 * Handles a simple or actual CORS request.
 	 *
@@ -84,6 +195,26 @@ public class CORSRequestHandler {
 	public void handleActualRequest(final HttpServletRequest request, 
 		                        final HttpServletResponse response)
 		throws CORSException {
+
+		applyActualRequest(request, response);
+	}
+
+
+	/**
+	 * Handles a simple or actual CORS request and returns the origin
+	 * dependent response headers which applied to it.
+	 *
+	 * @param request  The HTTP request.
+	 * @param response The HTTP response.
+	 *
+	 * @return The applied response headers, with the exposed header
+	 *         patterns for the {@link CORSResponseWrapper}.
+	 *
+	 * @throws CORSException If the request is invalid or denied.
+	 */
+	CORSResponseHeaders applyActualRequest(final HttpServletRequest request,
+					       final HttpServletResponse response)
+		throws CORSException {
 	
 		if (CORSRequestType.detect(request) != CORSRequestType.ACTUAL)
 			throw CORSException.INVALID_ACTUAL_REQUEST;
@@ -92,8 +223,7 @@ public class CORSRequestHandler {
 		// Check origin against allow list
 		Origin requestOrigin = new Origin(request.getHeader(HeaderName.ORIGIN));
 		
-		if (! config.isAllowedOrigin(requestOrigin))
-			throw CORSException.ORIGIN_DENIED;
+		final CORSResponseHeaders headers = authorize(requestOrigin);
 		
 		
 		// Check method
@@ -103,30 +233,17 @@ public class CORSRequestHandler {
 			throw CORSException.UNSUPPORTED_METHOD;
 		
 		
-		// Success, append response headers
-		if (config.supportsCredentials) {
-
-			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
-
-			// The string "*" cannot be used for a resource that supports credentials.
-			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, requestOrigin.toString());
-
-			// See https://bitbucket.org/thetransactioncompany/cors-filter/issue/16/
-			response.addHeader(HeaderName.VARY, "Origin");
+		// Success, append response headers, in a fixed order
+		final boolean varyOrigin = addAllowOrigin(response, headers, requestOrigin);
+		
+		if (! headers.exposedHeaders.isEmpty())
+			response.addHeader(HeaderName.ACCESS_CONTROL_EXPOSE_HEADERS, headers.exposedHeaders);
 
-		} else {
-			if (config.allowAnyOrigin) {
-				response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
-			} else {
-				response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, requestOrigin.toString());
+		// See https://bitbucket.org/thetransactioncompany/cors-filter/issue/16/
+		if (varyOrigin)
+			VaryHeader.add(response, VaryHeader.ORIGIN);
 
-				// See https://bitbucket.org/thetransactioncompany/cors-filter/issue/16/
-				response.addHeader(HeaderName.VARY, "Origin");
-			}
-		}
-		
-		if (! exposedHeaders.isEmpty())
-			response.addHeader(HeaderName.ACCESS_CONTROL_EXPOSE_HEADERS, exposedHeaders);
+		return headers;
 	}
 	
 	
@@ -150,8 +267,7 @@ public class CORSRequestHandler {
 		// Check origin against allow list
 		Origin requestOrigin = new Origin(request.getHeader(HeaderName.ORIGIN));
 		
-		if (! config.isAllowedOrigin(requestOrigin))
-			throw CORSException.ORIGIN_DENIED;
+		final CORSResponseHeaders headers = authorize(requestOrigin);
 			
 		
 		// Parse requested method
@@ -187,49 +303,93 @@ public class CORSRequestHandler {
 			throw CORSException.UNSUPPORTED_METHOD;
 		
 		
-		// Author request headers check
-		if (! config.supportAnyHeader) {
+		// Author request headers check, against the headers supported
+		// for the method
+		final HeaderMethodMatrix headerMatrix = config.getSupportedHeaderMatrix();
+
+		final int methodNumber = headerMatrix != null ? headerMatrix.indexOfMethod(requestedMethod) : -1;
 
-			for (String requestHeader : requestHeaders) {
+		if (headerMatrix != null) {
 
-				if (!config.supportedHeaders.contains(requestHeader))
-					throw CORSException.UNSUPPORTED_REQUEST_HEADER;
-			}			
+			if (methodNumber < 0)
+				throw CORSException.UNSUPPORTED_METHOD;
+
+			if (! headerMatrix.isSupported(methodNumber, requestHeaders))
+				throw CORSException.UNSUPPORTED_REQUEST_HEADER;
 		}
 		
-		// Success, append response headers
+		// Success, append response headers, in a fixed order
+
+		final boolean varyOrigin = addAllowOrigin(response, headers, requestOrigin);
+		
+		// The actual requests are still checked against the supported
+		// methods
+		if (headers.wildcard)
+			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_METHODS, "*");
+		else if (config.minimalPreflight)
+			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_METHODS, supportedMethodIndex.get(supportedMethodIndex.indexOf(requestedMethod)));
+		else
+			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_METHODS, supportedMethods);
 		
-		if (config.supportsCredentials) {
-			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, requestOrigin.toString());
-			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
 
-			// See https://bitbucket.org/thetransactioncompany/cors-filter/issue/16/
-			response.addHeader(HeaderName.VARY, "Origin");
-		} else {
-			if (config.allowAnyOrigin) {
-				response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
-			} else {
-				response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, requestOrigin.toString());
+		if (config.supportAnyHeader && rawRequestHeadersString != null) {
+
+			if (headers.wildcard) {
+
+				// The wildcard doesn't cover Authorization, which
+				// must be listed explicitly
+				String value = "*";
+
+				for (String header: requestHeaders) {
 
-				// See https://bitbucket.org/thetransactioncompany/cors-filter/issue/16/
-				response.addHeader(HeaderName.VARY, "Origin");
+					if (header.equals("Authorization")) {
+						value = "*, Authorization";
+						break;
+					}
+				}
+
+				response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_HEADERS, value);
+
+			} else {
+				// Echo author headers
+				response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_HEADERS, rawRequestHeadersString);
 			}
+
+		} else if (headerMatrix != null) {
+
+			final String allowHeaders = config.minimalPreflight ?
+				headerMatrix.getRequestedAllowHeaders(methodNumber, requestHeaders) :
+				headerMatrix.getAllowHeaders(methodNumber, requestHeaders);
+
+			if (! allowHeaders.isEmpty())
+				response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_HEADERS, allowHeaders);
 		}
 		
-		if (config.maxAge > 0)
-			response.addHeader(HeaderName.ACCESS_CONTROL_MAX_AGE, Integer.toString(config.maxAge));
-		
-		response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_METHODS, supportedMethods);
-		
+		if (adaptiveMaxAge != null && headers.maxAgeSteps != null) {
 
-		if (config.supportAnyHeader && rawRequestHeadersString != null) {
+			final String originKey = OriginUtils.toCanonicalKey(requestOrigin.toString());
+
+			int step = adaptiveMaxAge.getStep(originKey, headers.maxAgeSeconds, System.nanoTime());
 
-			// Echo author headers
-			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_HEADERS, rawRequestHeadersString);
+			response.addHeader(HeaderName.ACCESS_CONTROL_MAX_AGE, headers.maxAgeSteps[Math.min(step, headers.maxAgeSteps.length - 1)]);
 
-		} else if (supportedHeaders != null && ! supportedHeaders.isEmpty()) {
+		} else if (headers.maxAge != null) {
 
-			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_HEADERS, supportedHeaders);
+			response.addHeader(HeaderName.ACCESS_CONTROL_MAX_AGE, headers.maxAge);
 		}
+
+		if (config.preflightVary) {
+
+			// Complete Vary for shared caches
+			VaryHeader.add(response, PREFLIGHT_VARY);
+
+		} else if (varyOrigin) {
+
+			// See https://bitbucket.org/thetransactioncompany/cors-filter/issue/16/
+			VaryHeader.add(response, VaryHeader.ORIGIN);
+		}
+
+		if (config.preflightCacheControl != null)
+			response.addHeader(HeaderName.CACHE_CONTROL, config.preflightCacheControl);
 	}
 }
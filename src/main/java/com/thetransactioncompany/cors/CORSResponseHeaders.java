@@ -0,0 +1,134 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Pre-rendered values of the CORS response headers which depend on the
+ * request origin, for a CORS configuration or an {@link OriginGroup}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class CORSResponseHeaders {
+
+
+	/**
+	 * Whether user credentials are supported.
+	 */
+	final boolean supportsCredentials;
+
+
+	/**
+	 * Whether the {@code *} wildcard is used in place of the method and
+	 * header lists, only if credentials are not supported.
+	 */
+	final boolean wildcard;
+
+
+	/**
+	 * The {@code Access-Control-Expose-Headers} value, with the exact
+	 * exposed headers, empty if none.
+	 */
+	final String exposedHeaders;
+
+
+	/**
+	 * The exposed header patterns, resolved against the response header
+	 * names by the {@link CORSResponseWrapper}, {@code null} if none.
+	 */
+	final HeaderPatternMatcher exposedHeaderPatterns;
+
+
+	/**
+	 * The {@code Access-Control-Max-Age} value, {@code null} if none.
+	 */
+	final String maxAge;
+
+
+	/**
+	 * The preflight max-age in seconds, zero or negative if none.
+	 */
+	final int maxAgeSeconds;
+
+
+	/**
+	 * The {@code Access-Control-Max-Age} values of the adaptive max-age
+	 * steps, doubling from {@link #maxAge} to the limit, {@code null} if
+	 * the max-age is not adaptive.
+	 */
+	final String[] maxAgeSteps;
+
+
+	/**
+	 * Creates a new set of pre-rendered response headers.
+	 *
+	 * @param supportsCredentials Whether user credentials are supported.
+	 * @param wildcardResponses   Whether to use the {@code *} wildcard
+	 *                            where legal, see
+	 *                            {@link CORSConfiguration#wildcardResponses}.
+	 * @param exposedHeaders      The exposed headers, may include
+	 *                            wildcard patterns. Must not be
+	 *                            {@code null}.
+	 * @param maxAge              The preflight max-age in seconds,
+	 *                            zero or negative if none.
+	 * @param maxAgeLimit         The limit of the adaptive max-age in
+	 *                            seconds, zero if the max-age is not
+	 *                            adaptive.
+	 */
+	CORSResponseHeaders(final boolean supportsCredentials,
+			    final boolean wildcardResponses,
+			    final Set<String> exposedHeaders,
+			    final int maxAge,
+			    final int maxAgeLimit) {
+
+		this.supportsCredentials = supportsCredentials;
+
+		// The wildcard is treated as a literal name for credentialed
+		// requests
+		wildcard = wildcardResponses && ! supportsCredentials;
+
+		Set<String> exact = new LinkedHashSet<String>();
+		Set<String> patterns = new LinkedHashSet<String>();
+
+		for (String header: exposedHeaders) {
+
+			if (HeaderPatternMatcher.isPattern(header))
+				patterns.add(header);
+			else
+				exact.add(header);
+		}
+
+		if (wildcard && ! exposedHeaders.isEmpty()) {
+
+			this.exposedHeaders = "*";
+			exposedHeaderPatterns = null;
+
+		} else {
+
+			this.exposedHeaders = HeaderUtils.serialize(exact, ", ");
+			exposedHeaderPatterns = patterns.isEmpty() ? null : new HeaderPatternMatcher(patterns);
+		}
+		this.maxAge = maxAge > 0 ? Integer.toString(maxAge) : null;
+		maxAgeSeconds = maxAge;
+
+		if (maxAge > 0 && maxAgeLimit > maxAge) {
+
+			List<String> steps = new ArrayList<String>();
+
+			for (long seconds = maxAge; seconds < maxAgeLimit; seconds *= 2)
+				steps.add(Long.toString(seconds));
+
+			steps.add(Integer.toString(maxAgeLimit));
+
+			maxAgeSteps = steps.toArray(new String[steps.size()]);
+
+		} else {
+
+			maxAgeSteps = null;
+		}
+	}
+}
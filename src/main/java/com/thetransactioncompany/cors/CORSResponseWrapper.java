@@ -13,6 +13,18 @@ import javax.servlet.http.HttpServletResponseWrapper;
  * is produced; this wrapper ensures previously set CORS headers survive such a
  * reset.
  *
+ * <p>The wrapper also resolves the exposed header patterns of the CORS
+ * configuration, such as {@code X-RateLimit-*}: the names of the headers
+ * set by the web application which match a pattern are appended to the
+ * {@code Access-Control-Expose-Headers} value.
+ *
+ * <p>The {@code Vary} headers written by the web application are merged
+ * with the {@code Vary} header of the CORS filter into a single header,
+ * see {@link VaryHeader}. The CORS headers set by the filter take
+ * precedence: writes of the same headers by the web application are
+ * suppressed, so the response doesn't carry duplicate or conflicting
+ * CORS headers.
+ *
  * @author Gervasio Amy
  */
 public class CORSResponseWrapper extends HttpServletResponseWrapper {
@@ -34,6 +46,62 @@ public class CORSResponseWrapper extends HttpServletResponseWrapper {
 	}
 
 
+	/**
+	 * The names of the CORS response headers which the filter may set,
+	 * by bit number in {@link #filterHeaders}.
+	 */
+	private static final String[] CORS_HEADER_NAMES = {
+		HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN,
+		HeaderName.ACCESS_CONTROL_ALLOW_CREDENTIALS,
+		HeaderName.ACCESS_CONTROL_EXPOSE_HEADERS,
+		HeaderName.ACCESS_CONTROL_ALLOW_METHODS,
+		HeaderName.ACCESS_CONTROL_ALLOW_HEADERS,
+		HeaderName.ACCESS_CONTROL_MAX_AGE
+	};
+
+
+	/**
+	 * The bits of the CORS headers set by the filter before wrapping.
+	 */
+	private final int filterHeaders;
+
+
+	/**
+	 * The {@code Vary} tokens set by the filter before wrapping.
+	 */
+	private final int filterVary;
+
+
+	/**
+	 * The other {@code Vary} tokens set by the filter before wrapping.
+	 */
+	private final Set<String> filterVaryOthers;
+
+
+	/**
+	 * The current {@code Vary} tokens.
+	 */
+	private int vary;
+
+
+	/**
+	 * The other current {@code Vary} tokens.
+	 */
+	private Set<String> varyOthers;
+
+
+	/**
+	 * The exposed header patterns, {@code null} if none.
+	 */
+	private final HeaderPatternMatcher exposedHeaderPatterns;
+
+
+	/**
+	 * The header names exposed by pattern, in lower case.
+	 */
+	private Set<String> exposedByPattern;
+
+
 	/**
 	 * Creates a new CORS response wrapper for the specified HTTP servlet
 	 * response.
@@ -42,7 +110,215 @@ public class CORSResponseWrapper extends HttpServletResponseWrapper {
 	 */
 	public CORSResponseWrapper(final HttpServletResponse response) {
 
+		this(response, null);
+	}
+
+
+	/**
+	 * Creates a new CORS response wrapper for the specified HTTP servlet
+	 * response, exposing the headers which match the specified patterns.
+	 *
+	 * @param response              The HTTP servlet response.
+	 * @param exposedHeaderPatterns The exposed header patterns,
+	 *                              {@code null} if none.
+	 */
+	CORSResponseWrapper(final HttpServletResponse response,
+			    final HeaderPatternMatcher exposedHeaderPatterns) {
+
 		super(response);
+		this.exposedHeaderPatterns = exposedHeaderPatterns;
+
+		int bits = 0;
+
+		for (int i = 0; i < CORS_HEADER_NAMES.length; i++) {
+
+			if (response.containsHeader(CORS_HEADER_NAMES[i]))
+				bits |= 1 << i;
+		}
+
+		filterHeaders = bits;
+
+		filterVaryOthers = new LinkedHashSet<String>();
+		filterVary = VaryHeader.parse(response.getHeader(HeaderName.VARY), filterVaryOthers);
+
+		vary = filterVary;
+		varyOthers = filterVaryOthers;
+	}
+
+
+	/**
+	 * Returns the bit number of the specified CORS response header name.
+	 *
+	 * @param name The header name, {@code null} if none.
+	 *
+	 * @return The bit number, -1 if not a CORS response header.
+	 */
+	private static int indexOfCORSHeader(final String name) {
+
+		if (name == null || name.length() < 15 || ! name.regionMatches(true, 0, "Access-Control-", 0, 15))
+			return -1;
+
+		for (int i = 0; i < CORS_HEADER_NAMES.length; i++) {
+
+			if (CORS_HEADER_NAMES[i].equalsIgnoreCase(name))
+				return i;
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Returns {@code true} if a write of the specified header must be
+	 * suppressed because the CORS filter has set it.
+	 *
+	 * @param name The header name.
+	 *
+	 * @return {@code true} to suppress the write, else {@code false}.
+	 */
+	private boolean isFilterHeader(final String name) {
+
+		int i = indexOfCORSHeader(name);
+
+		return i >= 0 && (filterHeaders & (1 << i)) != 0;
+	}
+
+
+	/**
+	 * Merges the specified {@code Vary} value into the single
+	 * {@code Vary} header.
+	 *
+	 * @param value   The header value, {@code null} if none.
+	 * @param replace {@code true} to replace the previous tokens of the
+	 *                web application, {@code false} to add to them. The
+	 *                tokens of the CORS filter are always kept.
+	 */
+	private void mergeVary(final String value, final boolean replace) {
+
+		Set<String> others = new LinkedHashSet<String>(replace ? filterVaryOthers : varyOthers);
+
+		vary = (replace ? filterVary : vary) | VaryHeader.parse(value, others);
+		varyOthers = others;
+
+		String merged = VaryHeader.render(vary, varyOthers);
+
+		super.setHeader(HeaderName.VARY, merged.isEmpty() ? null : merged);
+	}
+
+
+	/**
+	 * Appends the specified header name to the
+	 * {@code Access-Control-Expose-Headers} value if it matches an
+	 * exposed header pattern.
+	 *
+	 * @param name The header name.
+	 */
+	private void expose(final String name) {
+
+		if (exposedHeaderPatterns == null || name == null || isCommitted())
+			return;
+
+		if (name.regionMatches(true, 0, "Access-Control-", 0, 15) || ! exposedHeaderPatterns.matches(name))
+			return;
+
+		if (exposedByPattern == null)
+			exposedByPattern = new HashSet<String>();
+
+		if (! exposedByPattern.add(name.toLowerCase(Locale.ENGLISH)))
+			return;
+
+		String canonicalName;
+
+		try {
+			canonicalName = HeaderName.formatCanonical(name);
+
+		} catch (IllegalArgumentException e) {
+
+			return;
+		}
+
+		String value = getHeader(HeaderName.ACCESS_CONTROL_EXPOSE_HEADERS);
+
+		if (value == null || value.isEmpty())
+			super.setHeader(HeaderName.ACCESS_CONTROL_EXPOSE_HEADERS, canonicalName);
+		else
+			super.setHeader(HeaderName.ACCESS_CONTROL_EXPOSE_HEADERS, value + ", " + canonicalName);
+	}
+
+
+	@Override
+	public void setHeader(final String name, final String value) {
+
+		if (HeaderName.VARY.equalsIgnoreCase(name)) {
+			mergeVary(value, true);
+			return;
+		}
+
+		if (isFilterHeader(name))
+			return;
+
+		super.setHeader(name, value);
+		expose(name);
+	}
+
+
+	@Override
+	public void addHeader(final String name, final String value) {
+
+		if (HeaderName.VARY.equalsIgnoreCase(name)) {
+			mergeVary(value, false);
+			return;
+		}
+
+		if (isFilterHeader(name))
+			return;
+
+		super.addHeader(name, value);
+		expose(name);
+	}
+
+
+	@Override
+	public void setIntHeader(final String name, final int value) {
+
+		if (isFilterHeader(name))
+			return;
+
+		super.setIntHeader(name, value);
+		expose(name);
+	}
+
+
+	@Override
+	public void addIntHeader(final String name, final int value) {
+
+		if (isFilterHeader(name))
+			return;
+
+		super.addIntHeader(name, value);
+		expose(name);
+	}
+
+
+	@Override
+	public void setDateHeader(final String name, final long date) {
+
+		if (isFilterHeader(name))
+			return;
+
+		super.setDateHeader(name, date);
+		expose(name);
+	}
+
+
+	@Override
+	public void addDateHeader(final String name, final long date) {
+
+		if (isFilterHeader(name))
+			return;
+
+		super.addDateHeader(name, date);
+		expose(name);
 	}
 
 	@Override
@@ -60,8 +336,9 @@ public class CORSResponseWrapper extends HttpServletResponseWrapper {
 
 		super.reset();
 
+		// Restore directly, the filter headers are write protected
 		for (String headerName : corsHeaders.keySet()) {
-			setHeader(headerName, corsHeaders.get(headerName));
+			super.setHeader(headerName, corsHeaders.get(headerName));
 		}
 	}
 }
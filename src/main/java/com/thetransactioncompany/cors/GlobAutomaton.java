@@ -0,0 +1,345 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Deterministic finite automaton matching a string against a set of glob
+ * patterns in a single pass, in time linear to the string length regardless
+ * of the number of patterns. Matching is case-insensitive for US-ASCII
+ * letters.
+ *
+ * <p>Each pattern is a sequence of {@link Item items}, a character class
+ * with a repetition. The patterns are compiled into a nondeterministic
+ * automaton, which is then converted to a deterministic transition table by
+ * subset construction.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class GlobAutomaton {
+
+
+	/**
+	 * The number of input symbols: the US-ASCII characters plus one
+	 * symbol for all other characters.
+	 */
+	static final int SYMBOLS = 129;
+
+
+	/**
+	 * The symbol for non US-ASCII characters.
+	 */
+	static final int OTHER = 128;
+
+
+	/**
+	 * The maximum number of automaton states, to guard against state
+	 * explosion.
+	 */
+	static final int MAX_STATES = 10000;
+
+
+	/**
+	 * Pattern item repetition.
+	 */
+	enum Repeat {
+
+		/**
+		 * Exactly one character.
+		 */
+		ONE,
+
+
+		/**
+		 * Zero or more characters.
+		 */
+		ZERO_OR_MORE,
+
+
+		/**
+		 * One or more characters.
+		 */
+		ONE_OR_MORE
+	}
+
+
+	/**
+	 * Pattern item, a character class with a repetition.
+	 */
+	static final class Item {
+
+
+		/**
+		 * The matching symbols.
+		 */
+		final BitSet symbols;
+
+
+		/**
+		 * The repetition.
+		 */
+		final Repeat repeat;
+
+
+		/**
+		 * Creates a new pattern item.
+		 *
+		 * @param symbols The matching symbols. Must not be
+		 *                {@code null}.
+		 * @param repeat  The repetition. Must not be {@code null}.
+		 */
+		Item(final BitSet symbols, final Repeat repeat) {
+
+			this.symbols = symbols;
+			this.repeat = repeat;
+		}
+
+
+		/**
+		 * Creates a pattern item for a single literal character.
+		 *
+		 * @param c The character.
+		 *
+		 * @return The pattern item.
+		 */
+		static Item literal(final char c) {
+
+			BitSet symbols = new BitSet(SYMBOLS);
+			symbols.set(toSymbol(c));
+			return new Item(symbols, Repeat.ONE);
+		}
+	}
+
+
+	/**
+	 * The transition table, indexed by {@code state * SYMBOLS + symbol},
+	 * -1 for the dead state.
+	 */
+	private final int[] transitions;
+
+
+	/**
+	 * The index of the first pattern accepted by each state, -1 for
+	 * non-accepting states.
+	 */
+	private final int[] accepts;
+
+
+	/**
+	 * Maps the specified character to an input symbol, folding US-ASCII
+	 * letters to lower case.
+	 *
+	 * @param c The character.
+	 *
+	 * @return The input symbol.
+	 */
+	static int toSymbol(final char c) {
+
+		if (c >= 'A' && c <= 'Z')
+			return c + ('a' - 'A');
+
+		return c < OTHER ? c : OTHER;
+	}
+
+
+	/**
+	 * Compiles the specified patterns.
+	 *
+	 * @param patterns The patterns, as item sequences. Must not be
+	 *                 {@code null}.
+	 *
+	 * @throws IllegalArgumentException If the automaton exceeds the
+	 *                                  maximum number of states.
+	 */
+	GlobAutomaton(final List<Item[]> patterns) {
+
+		// Expand one-or-more repetitions into one + zero-or-more,
+		// then lay out the NFA positions of all patterns in a row
+		List<Item> items = new ArrayList<Item>();
+		List<Integer> acceptPositions = new ArrayList<Integer>();
+		List<Integer> startPositions = new ArrayList<Integer>();
+
+		for (Item[] pattern: patterns) {
+
+			startPositions.add(items.size());
+
+			for (Item item: pattern) {
+
+				if (item.repeat == Repeat.ONE_OR_MORE) {
+					items.add(new Item(item.symbols, Repeat.ONE));
+					items.add(new Item(item.symbols, Repeat.ZERO_OR_MORE));
+				} else {
+					items.add(item);
+				}
+			}
+
+			// Accepting position, matches nothing
+			acceptPositions.add(items.size());
+			items.add(new Item(new BitSet(SYMBOLS), Repeat.ONE));
+		}
+
+		// Maps NFA positions to pattern indices for the accepting ones
+		int[] acceptingPattern = new int[items.size()];
+		Arrays.fill(acceptingPattern, -1);
+
+		for (int i = 0; i < acceptPositions.size(); i++)
+			acceptingPattern[acceptPositions.get(i)] = i;
+
+		// Subset construction
+		Map<BitSet,Integer> stateIds = new HashMap<BitSet,Integer>();
+		List<BitSet> states = new ArrayList<BitSet>();
+
+		BitSet start = new BitSet(items.size());
+
+		for (int pos: startPositions)
+			start.set(pos);
+
+		closure(items, start);
+		stateIds.put(start, 0);
+		states.add(start);
+
+		List<int[]> rows = new ArrayList<int[]>();
+
+		for (int s = 0; s < states.size(); s++) {
+
+			BitSet state = states.get(s);
+
+			int[] row = new int[SYMBOLS];
+
+			for (int symbol = 0; symbol < SYMBOLS; symbol++) {
+
+				BitSet next = new BitSet(items.size());
+
+				for (int pos = state.nextSetBit(0); pos >= 0; pos = state.nextSetBit(pos + 1)) {
+
+					Item item = items.get(pos);
+
+					if (! item.symbols.get(symbol))
+						continue;
+
+					if (item.repeat == Repeat.ZERO_OR_MORE)
+						next.set(pos);
+					else
+						next.set(pos + 1);
+				}
+
+				if (next.isEmpty()) {
+					row[symbol] = -1;
+					continue;
+				}
+
+				closure(items, next);
+
+				Integer id = stateIds.get(next);
+
+				if (id == null) {
+
+					if (states.size() == MAX_STATES)
+						throw new IllegalArgumentException("The patterns are too complex");
+
+					id = states.size();
+					stateIds.put(next, id);
+					states.add(next);
+				}
+
+				row[symbol] = id;
+			}
+
+			rows.add(row);
+		}
+
+		transitions = new int[rows.size() * SYMBOLS];
+		accepts = new int[rows.size()];
+
+		for (int s = 0; s < rows.size(); s++) {
+
+			System.arraycopy(rows.get(s), 0, transitions, s * SYMBOLS, SYMBOLS);
+
+			accepts[s] = -1;
+
+			BitSet state = states.get(s);
+
+			for (int pos = state.nextSetBit(0); pos >= 0; pos = state.nextSetBit(pos + 1)) {
+
+				int pattern = acceptingPattern[pos];
+
+				if (pattern >= 0 && (accepts[s] < 0 || pattern < accepts[s]))
+					accepts[s] = pattern;
+			}
+		}
+	}
+
+
+	/**
+	 * Extends the specified NFA position set with the positions reachable
+	 * by skipping zero-or-more items.
+	 *
+	 * @param items     The NFA items.
+	 * @param positions The position set to extend.
+	 */
+	private static void closure(final List<Item> items, final BitSet positions) {
+
+		for (int pos = positions.nextSetBit(0); pos >= 0; pos = positions.nextSetBit(pos + 1)) {
+
+			if (items.get(pos).repeat == Repeat.ZERO_OR_MORE)
+				positions.set(pos + 1);
+		}
+	}
+
+
+	/**
+	 * Returns the number of states of the automaton.
+	 *
+	 * @return The number of states.
+	 */
+	int getStateCount() {
+
+		return accepts.length;
+	}
+
+
+	/**
+	 * Matches the specified string region against the patterns.
+	 *
+	 * @param s     The string. Must not be {@code null}.
+	 * @param start The start index, inclusive.
+	 * @param end   The end index, exclusive.
+	 *
+	 * @return The index of the first matching pattern, -1 if none
+	 *         matches.
+	 */
+	int match(final String s, final int start, final int end) {
+
+		int state = 0;
+
+		for (int i = start; i < end; i++) {
+
+			state = transitions[state * SYMBOLS + toSymbol(s.charAt(i))];
+
+			if (state < 0)
+				return -1;
+		}
+
+		return accepts[state];
+	}
+
+
+	/**
+	 * Matches the specified string against the patterns.
+	 *
+	 * @param s The string. Must not be {@code null}.
+	 *
+	 * @return The index of the first matching pattern, -1 if none
+	 *         matches.
+	 */
+	int match(final String s) {
+
+		return match(s, 0, s.length());
+	}
+}
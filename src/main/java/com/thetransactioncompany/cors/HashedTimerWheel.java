@@ -0,0 +1,291 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+
+/**
+ * Hashed timer wheel for running tasks after a delay, with a precision of
+ * one tick. Scheduling a task takes constant time, the tasks are run by a
+ * single background daemon thread which is started on the first scheduled
+ * task.
+ *
+ * <p>The wheel is intended for large numbers of timeouts which don't need
+ * a precise expiration time, such as time-limited origin grants.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class HashedTimerWheel {
+
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger LOG = LogManager.getLogManager().getLogger("");
+
+
+	/**
+	 * A scheduled task.
+	 */
+	private static final class Timeout {
+
+
+		/**
+		 * The deadline, as {@code System.nanoTime()}.
+		 */
+		final long deadline;
+
+
+		/**
+		 * The task to run.
+		 */
+		final Runnable task;
+
+
+		/**
+		 * The remaining full rotations of the wheel before the task is
+		 * due.
+		 */
+		long remainingRounds;
+
+
+		Timeout(final long deadline, final Runnable task) {
+
+			this.deadline = deadline;
+			this.task = task;
+		}
+	}
+
+
+	/**
+	 * The tick duration, in nanoseconds.
+	 */
+	private final long tickNanos;
+
+
+	/**
+	 * The wheel buckets. Accessed by the worker thread only.
+	 */
+	private final List<List<Timeout>> buckets;
+
+
+	/**
+	 * Bit mask for mapping ticks to buckets.
+	 */
+	private final int mask;
+
+
+	/**
+	 * The newly scheduled tasks, to be transferred to the buckets by the
+	 * worker thread on the next tick.
+	 */
+	private final Queue<Timeout> pending = new ConcurrentLinkedQueue<Timeout>();
+
+
+	/**
+	 * The name of the worker thread.
+	 */
+	private final String threadName;
+
+
+	/**
+	 * The worker thread, {@code null} if not started.
+	 */
+	private Thread worker;
+
+
+	/**
+	 * Indicates whether the wheel is stopped.
+	 */
+	private volatile boolean stopped;
+
+
+	/**
+	 * Creates a new hashed timer wheel.
+	 *
+	 * @param tickDuration The tick duration. Must be positive.
+	 * @param unit         The tick duration unit. Must not be
+	 *                     {@code null}.
+	 * @param wheelSize    The number of buckets, rounded up to a power of
+	 *                     two. Must be positive.
+	 * @param threadName   The name of the worker thread. Must not be
+	 *                     {@code null}.
+	 */
+	HashedTimerWheel(final long tickDuration,
+			 final TimeUnit unit,
+			 final int wheelSize,
+			 final String threadName) {
+
+		if (tickDuration <= 0)
+			throw new IllegalArgumentException("The tick duration must be positive");
+
+		if (wheelSize <= 0)
+			throw new IllegalArgumentException("The wheel size must be positive");
+
+		tickNanos = unit.toNanos(tickDuration);
+
+		int size = Integer.highestOneBit(wheelSize);
+
+		if (size < wheelSize)
+			size <<= 1;
+
+		buckets = new ArrayList<List<Timeout>>(size);
+
+		for (int i = 0; i < size; i++)
+			buckets.add(new ArrayList<Timeout>());
+
+		mask = size - 1;
+
+		this.threadName = threadName;
+	}
+
+
+	/**
+	 * Schedules the specified task to run after the specified delay. The
+	 * task may run up to one tick later than requested. Tasks scheduled
+	 * after the wheel is stopped are discarded.
+	 *
+	 * @param task  The task. Must not be {@code null}.
+	 * @param delay The delay.
+	 * @param unit  The delay unit. Must not be {@code null}.
+	 */
+	void schedule(final Runnable task, final long delay, final TimeUnit unit) {
+
+		if (stopped)
+			return;
+
+		pending.add(new Timeout(System.nanoTime() + unit.toNanos(delay), task));
+
+		startIfRequired();
+	}
+
+
+	/**
+	 * Starts the worker thread if not started yet.
+	 */
+	private synchronized void startIfRequired() {
+
+		if (worker != null || stopped)
+			return;
+
+		worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runWorker();
+			}
+		}, threadName);
+
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+
+	/**
+	 * Stops the wheel. Pending tasks are discarded.
+	 */
+	synchronized void stop() {
+
+		stopped = true;
+
+		if (worker != null)
+			worker.interrupt();
+
+		pending.clear();
+	}
+
+
+	/**
+	 * Runs the worker loop, advancing the wheel by one bucket each tick.
+	 */
+	private void runWorker() {
+
+		final long startTime = System.nanoTime();
+
+		long tick = 0;
+
+		while (! stopped) {
+
+			long sleepNanos = startTime + (tick + 1) * tickNanos - System.nanoTime();
+
+			if (sleepNanos > 0) {
+
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleepNanos);
+
+				} catch (InterruptedException e) {
+
+					return;
+				}
+			}
+
+			transferPending(startTime, tick);
+
+			expireBucket(buckets.get((int)(tick & mask)));
+
+			tick++;
+		}
+	}
+
+
+	/**
+	 * Transfers the newly scheduled tasks to their buckets.
+	 *
+	 * @param startTime The wheel start time, as
+	 *                  {@code System.nanoTime()}.
+	 * @param tick      The current tick.
+	 */
+	private void transferPending(final long startTime, final long tick) {
+
+		Timeout timeout;
+
+		while ((timeout = pending.poll()) != null) {
+
+			long dueTick = Math.max(0, timeout.deadline - startTime) / tickNanos;
+
+			timeout.remainingRounds = (dueTick - tick) / buckets.size();
+
+			// Tasks already overdue go in the current bucket
+			long bucketTick = Math.max(dueTick, tick);
+
+			buckets.get((int)(bucketTick & mask)).add(timeout);
+		}
+	}
+
+
+	/**
+	 * Runs the due tasks in the specified bucket.
+	 *
+	 * @param bucket The bucket.
+	 */
+	private void expireBucket(final List<Timeout> bucket) {
+
+		Iterator<Timeout> it = bucket.iterator();
+
+		while (it.hasNext()) {
+
+			Timeout timeout = it.next();
+
+			if (timeout.remainingRounds > 0) {
+				timeout.remainingRounds--;
+				continue;
+			}
+
+			it.remove();
+
+			try {
+				timeout.task.run();
+
+			} catch (RuntimeException e) {
+
+				LOG.severe("CORS Filter: Timer task failed: " + e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,368 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Immutable matrix of the author request headers supported for each
+ * HTTP method, for checking the requested headers of a preflight request.
+ *
+ * <p>The methods and the headers are numbered by {@link StringIndex}
+ * position. Each method has a bitset of its supported header numbers. A
+ * preflight check collects the numbers of the requested headers into a
+ * bitset and tests it against the bitset of the requested method with a
+ * single AND per 64 headers, instead of a set lookup per header and
+ * method.
+ *
+ * <p>Wildcard header patterns, such as {@code X-Tenant-*}, are kept out
+ * of the bitsets in a {@link HeaderPatternMatcher} per method, which is
+ * consulted only for the requested headers without an exact match.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class HeaderMethodMatrix {
+
+
+	/**
+	 * The maximum number of cached renderings of requested header
+	 * subsets.
+	 */
+	static final int MAX_CACHED_SUBSETS = 256;
+
+
+	/**
+	 * The methods.
+	 */
+	private final StringIndex methods;
+
+
+	/**
+	 * The headers supported for at least one method.
+	 */
+	private final StringIndex headers;
+
+
+	/**
+	 * The supported header bitset of each method, by method number.
+	 */
+	private final long[][] supported;
+
+
+	/**
+	 * The supported header patterns of each method, by method number,
+	 * {@code null} for a method without patterns.
+	 */
+	private final HeaderPatternMatcher[] patterns;
+
+
+	/**
+	 * The pre-rendered {@code Access-Control-Allow-Headers} value of each
+	 * method, by method number.
+	 */
+	private final String[] allowHeaders;
+
+
+	/**
+	 * The cached {@code Access-Control-Allow-Headers} values of requested
+	 * header subsets, keyed by header bitset, for up to 64 headers.
+	 */
+	private final ConcurrentMap<Long,String> subsets = new ConcurrentHashMap<Long,String>();
+
+
+	/**
+	 * Creates a new header method matrix.
+	 *
+	 * @param methods       The methods. Must not be {@code null}.
+	 * @param commonHeaders The headers or header patterns supported for
+	 *                      all methods. Must not be {@code null}.
+	 * @param methodHeaders The headers or header patterns additionally
+	 *                      supported for specific methods, keyed by
+	 *                      method. Must not be {@code null}.
+	 */
+	HeaderMethodMatrix(final Collection<String> methods,
+			   final Collection<String> commonHeaders,
+			   final Map<String,Set<String>> methodHeaders) {
+
+		this.methods = new StringIndex(methods);
+
+		Set<String> allHeaders = new LinkedHashSet<String>();
+
+		for (String header: commonHeaders) {
+
+			if (! HeaderPatternMatcher.isPattern(header))
+				allHeaders.add(header);
+		}
+
+		for (Set<String> headerSet: methodHeaders.values()) {
+
+			for (String header: headerSet) {
+
+				if (! HeaderPatternMatcher.isPattern(header))
+					allHeaders.add(header);
+			}
+		}
+
+		headers = new StringIndex(allHeaders);
+
+		final int words = Math.max(1, (headers.size() + 63) >>> 6);
+
+		supported = new long[this.methods.size()][words];
+		patterns = new HeaderPatternMatcher[this.methods.size()];
+		allowHeaders = new String[this.methods.size()];
+
+		for (int m = 0; m < this.methods.size(); m++) {
+
+			Set<String> methodSet = new LinkedHashSet<String>(commonHeaders);
+
+			Set<String> extra = methodHeaders.get(this.methods.get(m));
+
+			if (extra != null)
+				methodSet.addAll(extra);
+
+			Set<String> exactSet = new LinkedHashSet<String>();
+			Set<String> patternSet = new LinkedHashSet<String>();
+
+			for (String header: methodSet) {
+
+				if (HeaderPatternMatcher.isPattern(header)) {
+					patternSet.add(header);
+					continue;
+				}
+
+				exactSet.add(header);
+
+				int h = headers.indexOf(header);
+				supported[m][h >>> 6] |= 1L << h;
+			}
+
+			if (! patternSet.isEmpty())
+				patterns[m] = new HeaderPatternMatcher(patternSet);
+
+			allowHeaders[m] = HeaderUtils.serialize(exactSet, ", ");
+		}
+	}
+
+
+	/**
+	 * Returns the number of the specified method.
+	 *
+	 * @param method The method. Must not be {@code null}.
+	 *
+	 * @return The method number, -1 if not in the matrix.
+	 */
+	int indexOfMethod(final String method) {
+
+		return methods.indexOf(method);
+	}
+
+
+	/**
+	 * Checks if the specified headers are all supported for the method
+	 * with the specified number.
+	 *
+	 * @param method         The method number.
+	 * @param requestHeaders The header names, in
+	 *                       {@link HeaderName#formatCanonical canonical}
+	 *                       form. Must not be {@code null}.
+	 *
+	 * @return {@code true} if all headers are supported, else
+	 *         {@code false}.
+	 */
+	boolean isSupported(final int method, final String[] requestHeaders) {
+
+		final long[] methodSet = supported[method];
+
+		if (patterns[method] != null) {
+
+			// Exact bit, else pattern, per header
+			for (String header: requestHeaders) {
+
+				if (! isExactlySupported(method, header) && ! patterns[method].matches(header))
+					return false;
+			}
+
+			return true;
+		}
+
+		if (methodSet.length == 1) {
+
+			// Up to 64 headers, single word
+			long requested = 0L;
+
+			for (String header: requestHeaders) {
+
+				int h = headers.indexOf(header);
+
+				if (h < 0)
+					return false;
+
+				requested |= 1L << h;
+			}
+
+			return (requested & ~methodSet[0]) == 0L;
+		}
+
+		long[] requested = new long[methodSet.length];
+
+		for (String header: requestHeaders) {
+
+			int h = headers.indexOf(header);
+
+			if (h < 0)
+				return false;
+
+			requested[h >>> 6] |= 1L << h;
+		}
+
+		for (int w = 0; w < methodSet.length; w++) {
+
+			if ((requested[w] & ~methodSet[w]) != 0L)
+				return false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Returns the {@code Access-Control-Allow-Headers} value listing only
+	 * the specified supported request headers, for minimal preflight
+	 * responses. The exact header names are rendered from their
+	 * configured instances in the configured order, so a single header
+	 * needs no new string and the renderings of header combinations
+	 * are cached.
+	 *
+	 * @param method         The method number.
+	 * @param requestHeaders The requested header names, in
+	 *                       {@link HeaderName#formatCanonical canonical}
+	 *                       form, previously checked with
+	 *                       {@link #isSupported}. Must not be
+	 *                       {@code null}.
+	 *
+	 * @return The header value, empty if none.
+	 */
+	String getRequestedAllowHeaders(final int method, final String[] requestHeaders) {
+
+		if (requestHeaders.length == 0)
+			return "";
+
+		if (patterns[method] != null || supported[method].length > 1) {
+
+			// Rare, render in request order
+			StringBuilder sb = new StringBuilder();
+
+			for (String header: requestHeaders) {
+
+				if (sb.length() > 0)
+					sb.append(", ");
+
+				int h = headers.indexOf(header);
+
+				sb.append(h >= 0 ? headers.get(h) : header);
+			}
+
+			return sb.toString();
+		}
+
+		long requested = 0L;
+
+		for (String header: requestHeaders)
+			requested |= 1L << headers.indexOf(header);
+
+		if (Long.bitCount(requested) == 1)
+			return headers.get(Long.numberOfTrailingZeros(requested));
+
+		String value = subsets.get(requested);
+
+		if (value != null)
+			return value;
+
+		StringBuilder sb = new StringBuilder();
+
+		for (long bits = requested; bits != 0L; bits &= bits - 1) {
+
+			if (sb.length() > 0)
+				sb.append(", ");
+
+			sb.append(headers.get(Long.numberOfTrailingZeros(bits)));
+		}
+
+		value = sb.toString();
+
+		if (subsets.size() < MAX_CACHED_SUBSETS)
+			subsets.putIfAbsent(requested, value);
+
+		return value;
+	}
+
+
+	/**
+	 * Checks if the specified header is in the exact supported headers of
+	 * the method with the specified number.
+	 */
+	private boolean isExactlySupported(final int method, final String header) {
+
+		int h = headers.indexOf(header);
+
+		return h >= 0 && (supported[method][h >>> 6] & (1L << h)) != 0L;
+	}
+
+
+	/**
+	 * Returns the pre-rendered {@code Access-Control-Allow-Headers} value
+	 * for the method with the specified number. Lists the exact supported
+	 * headers only.
+	 *
+	 * @param method The method number.
+	 *
+	 * @return The header value, empty if no headers are supported.
+	 */
+	String getAllowHeaders(final int method) {
+
+		return allowHeaders[method];
+	}
+
+
+	/**
+	 * Returns the {@code Access-Control-Allow-Headers} value for the
+	 * method with the specified number and the specified supported
+	 * request headers. The requested headers which matched a pattern are
+	 * appended to the pre-rendered exact headers, since patterns cannot be
+	 * listed in the response.
+	 *
+	 * @param method         The method number.
+	 * @param requestHeaders The requested header names, in
+	 *                       {@link HeaderName#formatCanonical canonical}
+	 *                       form, previously checked with
+	 *                       {@link #isSupported}. Must not be
+	 *                       {@code null}.
+	 *
+	 * @return The header value, empty if none.
+	 */
+	String getAllowHeaders(final int method, final String[] requestHeaders) {
+
+		if (patterns[method] == null)
+			return allowHeaders[method];
+
+		StringBuilder sb = new StringBuilder(allowHeaders[method]);
+
+		for (String header: requestHeaders) {
+
+			if (isExactlySupported(method, header))
+				continue;
+
+			if (sb.length() > 0)
+				sb.append(", ");
+
+			sb.append(header);
+		}
+
+		return sb.toString();
+	}
+}
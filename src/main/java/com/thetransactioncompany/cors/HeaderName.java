@@ -88,6 +88,12 @@ public class HeaderName {
 	public static final String VARY = "Vary";
 
 
+	/**
+	 * "Cache-Control" header name.
+	 */
+	public static final String CACHE_CONTROL = "Cache-Control";
+
+
 	/**
 	 * "Host" header name.
 	 */
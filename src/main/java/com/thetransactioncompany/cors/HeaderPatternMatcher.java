@@ -0,0 +1,240 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * Immutable matcher of header field names against a set of wildcard
+ * patterns, such as {@code X-Tenant-*} or {@code X-*-Id}. Matching is
+ * case-insensitive for US-ASCII letters.
+ *
+ * <p>Prefix patterns, with a single trailing {@code *}, are stored in a
+ * character trie of their lower case prefixes. A lookup walks the trie
+ * over the characters of the header name in place, in time proportional
+ * to the length of the longest prefix and without allocating. The
+ * remaining patterns, with a {@code *} elsewhere, are compiled into a
+ * {@link GlobAutomaton}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class HeaderPatternMatcher {
+
+
+	/**
+	 * The header field name characters (RFC 7230 tchar), as automaton
+	 * symbols.
+	 */
+	private static final BitSet TOKEN_CHARS = new BitSet(GlobAutomaton.SYMBOLS);
+
+
+	static {
+		for (char c = 0x21; c < 0x7f; c++) {
+
+			if ("\"(),/:;<=>?@[\\]{}".indexOf(c) < 0)
+				TOKEN_CHARS.set(GlobAutomaton.toSymbol(c));
+		}
+	}
+
+
+	/**
+	 * Trie node.
+	 */
+	private static final class Node {
+
+
+		/**
+		 * The child characters, in lower case.
+		 */
+		char[] chars = new char[0];
+
+
+		/**
+		 * The child nodes, in character order.
+		 */
+		Node[] children = new Node[0];
+
+
+		/**
+		 * {@code true} if a prefix pattern ends at this node.
+		 */
+		boolean terminal;
+
+
+		/**
+		 * Finds the child for the specified lower case character.
+		 */
+		Node find(final char c) {
+
+			for (int i = 0; i < chars.length; i++) {
+
+				if (chars[i] == c)
+					return children[i];
+			}
+
+			return null;
+		}
+
+
+		/**
+		 * Returns the child for the specified lower case character,
+		 * creating it if required.
+		 */
+		Node child(final char c) {
+
+			Node node = find(c);
+
+			if (node != null)
+				return node;
+
+			chars = Arrays.copyOf(chars, chars.length + 1);
+			chars[chars.length - 1] = c;
+
+			children = Arrays.copyOf(children, children.length + 1);
+			children[children.length - 1] = new Node();
+
+			return children[children.length - 1];
+		}
+	}
+
+
+	/**
+	 * The root of the prefix pattern trie.
+	 */
+	private final Node root = new Node();
+
+
+	/**
+	 * The compiled non-prefix patterns, {@code null} if none.
+	 */
+	private final GlobAutomaton automaton;
+
+
+	/**
+	 * Returns {@code true} if the specified header name is a wildcard
+	 * pattern.
+	 *
+	 * @param name The header name. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the name contains a wildcard character.
+	 */
+	static boolean isPattern(final String name) {
+
+		return name.indexOf('*') >= 0;
+	}
+
+
+	/**
+	 * Creates a new header pattern matcher.
+	 *
+	 * @param patterns The header name patterns. Must not be {@code null}.
+	 *
+	 * @throws IllegalArgumentException If the patterns compile into too
+	 *                                  many automaton states.
+	 */
+	HeaderPatternMatcher(final Collection<String> patterns) {
+
+		List<GlobAutomaton.Item[]> globs = new ArrayList<GlobAutomaton.Item[]>();
+
+		for (String pattern: patterns) {
+
+			int star = pattern.indexOf('*');
+
+			if (star == pattern.length() - 1) {
+
+				// Prefix pattern
+				Node node = root;
+
+				for (int i = 0; i < star; i++)
+					node = node.child(toLowerCase(pattern.charAt(i)));
+
+				node.terminal = true;
+
+			} else {
+
+				globs.add(parse(pattern));
+			}
+		}
+
+		automaton = globs.isEmpty() ? null : new GlobAutomaton(globs);
+	}
+
+
+	/**
+	 * Parses the specified glob pattern into automaton items.
+	 */
+	private static GlobAutomaton.Item[] parse(final String pattern) {
+
+		GlobAutomaton.Item[] items = new GlobAutomaton.Item[pattern.length()];
+
+		for (int i = 0; i < items.length; i++) {
+
+			char c = pattern.charAt(i);
+
+			if (c == '*')
+				items[i] = new GlobAutomaton.Item(TOKEN_CHARS, GlobAutomaton.Repeat.ZERO_OR_MORE);
+			else
+				items[i] = GlobAutomaton.Item.literal(c);
+		}
+
+		return items;
+	}
+
+
+	/**
+	 * Folds US-ASCII letters to lower case.
+	 */
+	private static char toLowerCase(final char c) {
+
+		return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+	}
+
+
+	/**
+	 * Matches the specified region of a string, such as a token of a raw
+	 * {@code Access-Control-Request-Headers} value, against the patterns.
+	 *
+	 * @param s     The string. Must not be {@code null}.
+	 * @param start The start index, inclusive.
+	 * @param end   The end index, exclusive.
+	 *
+	 * @return {@code true} if a pattern matches, else {@code false}.
+	 */
+	boolean matches(final String s, final int start, final int end) {
+
+		Node node = root;
+
+		if (node.terminal)
+			return true;
+
+		for (int i = start; i < end; i++) {
+
+			node = node.find(toLowerCase(s.charAt(i)));
+
+			if (node == null)
+				break;
+
+			if (node.terminal)
+				return true;
+		}
+
+		return automaton != null && automaton.match(s, start, end) >= 0;
+	}
+
+
+	/**
+	 * Matches the specified header name against the patterns.
+	 *
+	 * @param name The header name. Must not be {@code null}.
+	 *
+	 * @return {@code true} if a pattern matches, else {@code false}.
+	 */
+	boolean matches(final String name) {
+
+		return matches(name, 0, name.length());
+	}
+}
@@ -0,0 +1,182 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Immutable table of host names, for selecting a value by the host name
+ * of a request. Supports exact host names, such as {@code example.com},
+ * and wildcard host names, such as {@code *.example.com}, which match the
+ * subdomains of the host at any depth but not the host itself.
+ *
+ * <p>Exact host names are looked up in a single {@link StringIndex}. The
+ * wildcard host names are stored by suffix, e.g. {@code .example.com},
+ * in a second index, which is probed with the suffixes of the looked up
+ * host name, longest first. A lookup thus takes one probe plus one per
+ * label of the host name, regardless of the number of configured hosts.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class HostTable<V> {
+
+
+	/**
+	 * The exact host names.
+	 */
+	private final StringIndex exactHosts;
+
+
+	/**
+	 * The values of the exact host names, by index position.
+	 */
+	private final List<V> exactValues;
+
+
+	/**
+	 * The suffixes of the wildcard host names, starting with a dot.
+	 */
+	private final StringIndex suffixes;
+
+
+	/**
+	 * The values of the wildcard host names, by index position.
+	 */
+	private final List<V> suffixValues;
+
+
+	/**
+	 * Checks if the specified host name is a wildcard host name.
+	 *
+	 * @param host The host name. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the host name starts with {@code *.}, else
+	 *         {@code false}.
+	 */
+	static boolean isWildcard(final String host) {
+
+		return host.startsWith("*.");
+	}
+
+
+	/**
+	 * Normalises the specified host name: converts it to lower case and
+	 * strips a trailing dot.
+	 *
+	 * @param host The host name. Must not be {@code null}.
+	 *
+	 * @return The normalised host name.
+	 */
+	static String normalize(final String host) {
+
+		String h = host.toLowerCase(Locale.ENGLISH);
+
+		if (h.endsWith("."))
+			h = h.substring(0, h.length() - 1);
+
+		return h;
+	}
+
+
+	/**
+	 * Creates a new host table.
+	 *
+	 * @param hosts The values keyed by exact or wildcard host name. Must
+	 *              not be {@code null}.
+	 *
+	 * @throws IllegalArgumentException On a bad host name.
+	 */
+	HostTable(final Map<String,V> hosts) {
+
+		Set<String> seen = new HashSet<String>();
+
+		List<String> exactKeys = new ArrayList<String>();
+		exactValues = new ArrayList<V>();
+
+		List<String> suffixKeys = new ArrayList<String>();
+		suffixValues = new ArrayList<V>();
+
+		for (Map.Entry<String,V> entry: hosts.entrySet()) {
+
+			String host = normalize(entry.getKey());
+
+			if (! seen.add(host))
+				throw new IllegalArgumentException("Duplicate host name: " + entry.getKey());
+
+			if (isWildcard(host)) {
+
+				String suffix = host.substring(1);
+
+				if (suffix.length() < 2 || suffix.indexOf('*') >= 0)
+					throw new IllegalArgumentException("Bad wildcard host name: " + entry.getKey());
+
+				suffixKeys.add(suffix);
+				suffixValues.add(entry.getValue());
+
+			} else {
+
+				if (host.isEmpty() || host.indexOf('*') >= 0)
+					throw new IllegalArgumentException("Bad host name: " + entry.getKey());
+
+				exactKeys.add(host);
+				exactValues.add(entry.getValue());
+			}
+		}
+
+		exactHosts = new StringIndex(exactKeys);
+		suffixes = new StringIndex(suffixKeys);
+	}
+
+
+	/**
+	 * Finds the value for the specified host name. An exact host name
+	 * takes precedence over a wildcard, and a longer wildcard suffix over
+	 * a shorter one.
+	 *
+	 * @param host The host name, as received in the request. May be
+	 *             {@code null}.
+	 *
+	 * @return The value, {@code null} if no host name matches.
+	 */
+	V match(final String host) {
+
+		if (host == null)
+			return null;
+
+		String h = normalize(host);
+
+		int pos = exactHosts.indexOf(h);
+
+		if (pos >= 0)
+			return exactValues.get(pos);
+
+		if (suffixes.size() == 0)
+			return null;
+
+		for (int dot = h.indexOf('.'); dot >= 0; dot = h.indexOf('.', dot + 1)) {
+
+			pos = suffixes.indexOf(h.substring(dot));
+
+			if (pos >= 0)
+				return suffixValues.get(pos);
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Returns the number of host names in the table.
+	 *
+	 * @return The number of host names.
+	 */
+	int size() {
+
+		return exactHosts.size() + suffixes.size();
+	}
+}
@@ -0,0 +1,521 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+
+/**
+ * Bounded cache of {@link OriginAuthorizer} results, with separate
+ * time-to-live for positive and negative results and stale-while-revalidate
+ * semantics.
+ *
+ * <p>The authoriser is never called on the calling (request) thread, nor,
+ * by default, does the calling thread wait for it:
+ *
+ * <ul>
+ *     <li>A fresh result is returned as is.
+ *     <li>A stale result, i.e. one past its time-to-live but still within
+ *         the stale period, is returned and a background refresh is
+ *         started.
+ *     <li>If the stale period has elapsed the origin is denied and a
+ *         background lookup is started.
+ *     <li>On a cache miss the origin is denied (fail closed) and a
+ *         background lookup is started. Subsequent requests from the
+ *         origin get the lookup result once it completes.
+ * </ul>
+ *
+ * <p>An optional miss wait, off by default, lets the calling thread wait
+ * for the lookup of a cache miss, up to the specified time. It should be
+ * enabled with care, as every miss, including one for a made-up origin,
+ * then holds a request thread for up to the wait.
+ *
+ * <p>Concurrent misses for the same origin trigger a single lookup. The
+ * lookups run on a small pool of daemon threads with a bounded queue; if
+ * the queue is full the lookup is skipped and retried on a later request,
+ * and the calling thread doesn't wait.
+ *
+ * <p>The number of cached origins is bounded. When the bound is reached
+ * negative and pending results are evicted first, so that a flood of
+ * attacker-chosen origins cannot push out the allowed origins. The origins
+ * are hashed with a {@link SeededHash seeded hash}, so they cannot be
+ * crafted to collide.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class OriginAuthorizationCache {
+
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger LOG = LogManager.getLogManager().getLogger("");
+
+
+	/**
+	 * The maximum number of queued lookups.
+	 */
+	private static final int MAX_QUEUED_LOOKUPS = 1000;
+
+
+	/**
+	 * Cache entry.
+	 */
+	private static final class Entry {
+
+
+		/**
+		 * {@code true} if the entry holds a result, {@code false} if
+		 * the first lookup of the origin is pending.
+		 */
+		final boolean resolved;
+
+
+		/**
+		 * The authorisation result, {@code false} if pending.
+		 */
+		final boolean allowed;
+
+
+		/**
+		 * The time until which the result is fresh, as
+		 * {@code System.nanoTime()}.
+		 */
+		final long freshUntil;
+
+
+		/**
+		 * The time until which the result may be served stale, as
+		 * {@code System.nanoTime()}.
+		 */
+		final long staleUntil;
+
+
+		/**
+		 * Set while a lookup for the entry is in progress.
+		 */
+		final AtomicBoolean loading = new AtomicBoolean();
+
+
+		/**
+		 * Released when the first lookup of a pending entry completes,
+		 * {@code null} if resolved.
+		 */
+		final CountDownLatch lookupDone;
+
+
+		/**
+		 * The result of the first lookup of a pending entry, set before
+		 * {@link #lookupDone} is released.
+		 */
+		volatile Entry result;
+
+
+		/**
+		 * Creates a new resolved entry.
+		 */
+		Entry(final boolean allowed, final long freshUntil, final long staleUntil) {
+
+			resolved = true;
+			this.allowed = allowed;
+			this.freshUntil = freshUntil;
+			this.staleUntil = staleUntil;
+			lookupDone = null;
+		}
+
+
+		/**
+		 * Creates a new pending entry.
+		 */
+		Entry() {
+
+			resolved = false;
+			allowed = false;
+			freshUntil = 0L;
+			staleUntil = 0L;
+			lookupDone = new CountDownLatch(1);
+		}
+	}
+
+
+	/**
+	 * The origin authoriser.
+	 */
+	private final OriginAuthorizer authorizer;
+
+
+	/**
+	 * The maximum number of cached origins.
+	 */
+	private final int maxSize;
+
+
+	/**
+	 * The time-to-live of positive results, in nanoseconds.
+	 */
+	private final long positiveTTL;
+
+
+	/**
+	 * The time-to-live of negative results, in nanoseconds.
+	 */
+	private final long negativeTTL;
+
+
+	/**
+	 * The period after expiration during which a result may be served
+	 * stale, in nanoseconds.
+	 */
+	private final long staleTTL;
+
+
+	/**
+	 * The maximum time to wait for the lookup on a cache miss, in
+	 * nanoseconds.
+	 */
+	private final long missWait;
+
+
+	/**
+	 * Hashes the origin strings, which are attacker-controlled.
+	 */
+	private final SeededHash hash = new SeededHash();
+
+
+	/**
+	 * The cached results, keyed by origin string.
+	 */
+	private final ConcurrentHashMap<SeededHash.Key,Entry> entries = new ConcurrentHashMap<SeededHash.Key,Entry>();
+
+
+	/**
+	 * Runs the lookups.
+	 */
+	private final ThreadPoolExecutor executor;
+
+
+	/**
+	 * Creates a new origin authorisation cache which doesn't wait on
+	 * cache misses.
+	 *
+	 * @param authorizer  The origin authoriser. Must not be {@code null}.
+	 * @param maxSize     The maximum number of cached origins. Must be
+	 *                    positive.
+	 * @param positiveTTL The time-to-live of positive results, in
+	 *                    seconds.
+	 * @param negativeTTL The time-to-live of negative results, in
+	 *                    seconds.
+	 * @param staleTTL    The period after expiration during which a
+	 *                    result may be served while it is being
+	 *                    refreshed, in seconds.
+	 * @param threads     The number of lookup threads. Must be positive.
+	 */
+	public OriginAuthorizationCache(final OriginAuthorizer authorizer,
+					final int maxSize,
+					final long positiveTTL,
+					final long negativeTTL,
+					final long staleTTL,
+					final int threads) {
+
+		this(authorizer, maxSize, positiveTTL, negativeTTL, staleTTL, threads, 0L);
+	}
+
+
+	/**
+	 * Creates a new origin authorisation cache.
+	 *
+	 * @param authorizer  The origin authoriser. Must not be {@code null}.
+	 * @param maxSize     The maximum number of cached origins. Must be
+	 *                    positive.
+	 * @param positiveTTL The time-to-live of positive results, in
+	 *                    seconds.
+	 * @param negativeTTL The time-to-live of negative results, in
+	 *                    seconds.
+	 * @param staleTTL    The period after expiration during which a
+	 *                    result may be served while it is being
+	 *                    refreshed, in seconds.
+	 * @param threads     The number of lookup threads. Must be positive.
+	 * @param missWait    The maximum time to wait for the lookup on a
+	 *                    cache miss, in milliseconds. If zero cache misses
+	 *                    are denied without waiting.
+	 */
+	public OriginAuthorizationCache(final OriginAuthorizer authorizer,
+					final int maxSize,
+					final long positiveTTL,
+					final long negativeTTL,
+					final long staleTTL,
+					final int threads,
+					final long missWait) {
+
+		if (authorizer == null)
+			throw new IllegalArgumentException("The origin authorizer must not be null");
+
+		if (maxSize <= 0)
+			throw new IllegalArgumentException("The maximum cache size must be positive");
+
+		if (threads <= 0)
+			throw new IllegalArgumentException("The number of lookup threads must be positive");
+
+		this.authorizer = authorizer;
+		this.maxSize = maxSize;
+		this.positiveTTL = TimeUnit.SECONDS.toNanos(positiveTTL);
+		this.negativeTTL = TimeUnit.SECONDS.toNanos(negativeTTL);
+		this.staleTTL = TimeUnit.SECONDS.toNanos(staleTTL);
+		this.missWait = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, missWait));
+
+		executor = new ThreadPoolExecutor(
+			threads, threads,
+			0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(MAX_QUEUED_LOOKUPS),
+			new ThreadFactory() {
+
+				private final AtomicInteger counter = new AtomicInteger();
+
+				@Override
+				public Thread newThread(final Runnable r) {
+
+					Thread thread = new Thread(r, "CORS Filter origin authorizer " + counter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	}
+
+
+	/**
+	 * Returns the origin authoriser.
+	 *
+	 * @return The origin authoriser.
+	 */
+	public OriginAuthorizer getAuthorizer() {
+
+		return authorizer;
+	}
+
+
+	/**
+	 * Checks if the specified origin is allowed according to the cached
+	 * authoriser result. Starts a background lookup if the result is
+	 * missing or stale. Blocks only on a cache miss, for at most the miss
+	 * wait.
+	 *
+	 * @param origin The origin. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the origin is allowed, {@code false} if
+	 *         denied or the result is not available in time.
+	 */
+	public boolean isAllowed(final Origin origin) {
+
+		final SeededHash.Key key = hash.key(origin.toString());
+
+		Entry entry = entries.get(key);
+
+		if (entry == null) {
+
+			Entry pending = new Entry();
+
+			entry = entries.putIfAbsent(key, pending);
+
+			if (entry == null) {
+
+				entry = pending;
+				evictIfRequired();
+			}
+		}
+
+		if (! entry.resolved) {
+
+			load(origin, key, entry);
+			return awaitFirstLookup(entry);
+		}
+
+		final long now = System.nanoTime();
+
+		if (now - entry.freshUntil < 0)
+			return entry.allowed;
+
+		load(origin, key, entry);
+
+		return now - entry.staleUntil < 0 && entry.allowed;
+	}
+
+
+	/**
+	 * Waits for the first lookup of the specified pending entry, up to
+	 * the miss wait. Doesn't wait if no lookup is in progress.
+	 *
+	 * @param entry The pending cache entry.
+	 *
+	 * @return {@code true} if the lookup completed in time and allowed the
+	 *         origin, else {@code false}.
+	 */
+	private boolean awaitFirstLookup(final Entry entry) {
+
+		if (missWait > 0L && entry.loading.get()) {
+
+			try {
+				entry.lookupDone.await(missWait, TimeUnit.NANOSECONDS);
+
+			} catch (InterruptedException e) {
+
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		Entry result = entry.result;
+
+		return result != null && result.allowed;
+	}
+
+
+	/**
+	 * Starts a background lookup for the specified origin, unless one is
+	 * already in progress.
+	 *
+	 * @param origin The origin.
+	 * @param key    The cache key of the origin.
+	 * @param entry  The current cache entry for the origin.
+	 */
+	private void load(final Origin origin, final SeededHash.Key key, final Entry entry) {
+
+		if (! entry.loading.compareAndSet(false, true))
+			return;
+
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					lookup(origin, key, entry);
+				}
+			});
+
+		} catch (RejectedExecutionException e) {
+
+			// Queue full or shut down, retry on a later request
+			entry.loading.set(false);
+		}
+	}
+
+
+	/**
+	 * Looks up the specified origin with the authoriser and caches the
+	 * result.
+	 *
+	 * @param origin The origin.
+	 * @param key    The cache key of the origin.
+	 * @param entry  The current cache entry for the origin.
+	 */
+	private void lookup(final Origin origin, final SeededHash.Key key, final Entry entry) {
+
+		boolean allowed;
+
+		try {
+			allowed = authorizer.isAllowed(origin.validate());
+
+		} catch (OriginException e) {
+
+			allowed = false;
+
+		} catch (Exception e) {
+
+			LOG.warning("CORS Filter: Origin authorizer failed for " + origin + ": " + e.getMessage());
+
+			if (entry.resolved) {
+
+				// Retain the current result, retry on a later request
+				entry.loading.set(false);
+
+			} else {
+
+				// Release the waiters, the next request retries with
+				// a new pending entry
+				entries.replace(key, entry, new Entry());
+				entry.lookupDone.countDown();
+			}
+
+			return;
+		}
+
+		final long now = System.nanoTime();
+		final long ttl = allowed ? positiveTTL : negativeTTL;
+
+		final Entry fresh = new Entry(allowed, now + ttl, now + ttl + staleTTL);
+
+		// Replace only if not evicted in the meantime, positive results
+		// are cached again
+		if (! entries.replace(key, entry, fresh) && allowed && entries.putIfAbsent(key, fresh) == null)
+			evictIfRequired();
+
+		if (! entry.resolved) {
+
+			entry.result = fresh;
+			entry.lookupDone.countDown();
+		}
+	}
+
+
+	/**
+	 * Evicts entries if the cache size exceeds the maximum, the negative
+	 * and pending results first.
+	 */
+	private void evictIfRequired() {
+
+		if (entries.size() <= maxSize)
+			return;
+
+		Iterator<Entry> it = entries.values().iterator();
+
+		while (entries.size() > maxSize && it.hasNext()) {
+
+			if (! it.next().allowed)
+				it.remove();
+		}
+
+		it = entries.values().iterator();
+
+		while (entries.size() > maxSize && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+
+
+	/**
+	 * Returns the number of cached origins.
+	 *
+	 * @return The number of cached origins.
+	 */
+	public int size() {
+
+		return entries.size();
+	}
+
+
+	/**
+	 * Removes all cached results.
+	 */
+	public void clear() {
+
+		entries.clear();
+	}
+
+
+	/**
+	 * Stops the background lookups. Should be called when the cache is
+	 * taken out of service.
+	 */
+	public void shutdown() {
+
+		executor.shutdownNow();
+	}
+}
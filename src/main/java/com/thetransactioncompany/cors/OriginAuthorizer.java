@@ -0,0 +1,33 @@
+package com.thetransactioncompany.cors;
+
+
+/**
+ * Service provider interface for authorising origins which are not in the
+ * configured {@link CORSConfiguration#allowedOrigins allowed origins}, for
+ * example by looking them up in a database.
+ *
+ * <p>The CORS filter never calls the authoriser on a request thread. The
+ * results are cached by an {@link OriginAuthorizationCache} and refreshed
+ * in the background, so implementations may block on I/O.
+ *
+ * <p>Implementations configured with the {@code cors.originAuthorizer}
+ * property must have a public no-argument constructor and be thread-safe.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public interface OriginAuthorizer {
+
+
+	/**
+	 * Checks if requests from the specified origin must be allowed.
+	 *
+	 * @param origin The validated request origin. Not {@code null}.
+	 *
+	 * @return {@code true} if the origin is allowed, else {@code false}.
+	 *
+	 * @throws Exception If the authorisation couldn't be determined. The
+	 *                   previously cached result, if any, is retained.
+	 */
+	boolean isAllowed(final ValidatedOrigin origin)
+		throws Exception;
+}
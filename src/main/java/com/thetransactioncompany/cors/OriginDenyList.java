@@ -0,0 +1,273 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * List of denied origins, for rejecting known-bad origins up front without
+ * validating and matching them against the allowed origins.
+ *
+ * <p>The list contains the explicitly denied origins and, optionally, a
+ * learned set of origins which were denied repeatedly. A compact
+ * {@link BloomFilter bloom filter} screens the lookups, so that most
+ * origins which are not on the list are passed with a few bit probes. An
+ * origin which passes the bloom filter is confirmed by an exact lookup. If
+ * there are no denied origins and learning is disabled no bloom filter is
+ * allocated and the lookups return immediately. The
+ * learned origins and the denial counters are keyed by a
+ * {@link SeededHash seeded hash}, so crafted origins cannot collide in
+ * them.
+ *
+ * <p>Origins are compared by their {@link OriginUtils#toCanonicalKey
+ * canonical key}, i.e. case-insensitively and ignoring explicit default
+ * ports.
+ *
+ * <p>The learned set and the denial counters are bounded. When the learned
+ * set is full no more origins are learned; when the counters are full they
+ * are reset. The learned set must be {@link #clearLearned cleared} when
+ * the allowed origins change, as a learned origin may have become allowed.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class OriginDenyList {
+
+
+	/**
+	 * The explicitly denied origins, as canonical keys.
+	 */
+	private final Set<String> denied;
+
+
+	/**
+	 * The number of denials after which an origin is learned, zero if
+	 * learning is disabled.
+	 */
+	private final int learnThreshold;
+
+
+	/**
+	 * The maximum number of learned origins.
+	 */
+	private final int maxLearned;
+
+
+	/**
+	 * Hashes the learned origins and the counted denials, which are
+	 * attacker-controlled.
+	 */
+	private final SeededHash hash = new SeededHash();
+
+
+	/**
+	 * The learned origins, as canonical keys.
+	 */
+	private final Set<SeededHash.Key> learned = Collections.newSetFromMap(new ConcurrentHashMap<SeededHash.Key,Boolean>());
+
+
+	/**
+	 * The denial counts of the origins not learned yet.
+	 */
+	private final ConcurrentHashMap<SeededHash.Key,AtomicInteger> denialCounts = new ConcurrentHashMap<SeededHash.Key,AtomicInteger>();
+
+
+	/**
+	 * Screens the denied and learned origins. Replaced when the learned
+	 * set is cleared. {@code null} if there are no denied origins and
+	 * learning is disabled.
+	 */
+	private volatile BloomFilter filter;
+
+
+	/**
+	 * Creates a new origin deny list.
+	 *
+	 * @param denied         The explicitly denied origins. Must not be
+	 *                       {@code null}.
+	 * @param learnThreshold The number of denials after which an origin
+	 *                       is learned, zero to disable learning.
+	 * @param maxLearned     The maximum number of learned origins.
+	 */
+	public OriginDenyList(final Collection<? extends Origin> denied,
+			      final int learnThreshold,
+			      final int maxLearned) {
+
+		if (learnThreshold < 0)
+			throw new IllegalArgumentException("The learn threshold must not be negative");
+
+		if (maxLearned < 0)
+			throw new IllegalArgumentException("The maximum number of learned origins must not be negative");
+
+		Set<String> keys = new HashSet<String>();
+
+		for (Origin origin: denied)
+			keys.add(toKey(origin));
+
+		this.denied = Collections.unmodifiableSet(keys);
+		this.learnThreshold = learnThreshold;
+		this.maxLearned = learnThreshold > 0 ? maxLearned : 0;
+
+		filter = createFilter();
+	}
+
+
+	/**
+	 * Creates a bloom filter with the explicitly denied origins.
+	 *
+	 * @return The bloom filter, {@code null} if there are no denied
+	 *         origins and learning is disabled.
+	 */
+	private BloomFilter createFilter() {
+
+		if (denied.isEmpty() && maxLearned == 0)
+			return null;
+
+		BloomFilter bloomFilter = new BloomFilter(denied.size() + maxLearned);
+
+		for (String key: denied)
+			bloomFilter.add(key);
+
+		return bloomFilter;
+	}
+
+
+	/**
+	 * Returns the lookup key for the specified origin.
+	 *
+	 * @param origin The origin. Must not be {@code null}.
+	 *
+	 * @return The {@link OriginUtils#toCanonicalKey canonical key}.
+	 */
+	private static String toKey(final Origin origin) {
+
+		return OriginUtils.toCanonicalKey(origin.toString());
+	}
+
+
+	/**
+	 * Checks if the specified origin is denied, explicitly or learned.
+	 *
+	 * @param origin The origin. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the origin is denied, else {@code false}.
+	 */
+	public boolean isDenied(final Origin origin) {
+
+		final BloomFilter bloomFilter = filter;
+
+		if (bloomFilter == null)
+			return false;
+
+		final String key = toKey(origin);
+
+		if (! bloomFilter.mightContain(key))
+			return false;
+
+		return denied.contains(key) || learned.contains(hash.key(key));
+	}
+
+
+	/**
+	 * Records a denial of the specified origin. The origin is learned
+	 * once its denials reach the learn threshold. Has no effect if
+	 * learning is disabled or the learned set is full.
+	 *
+	 * @param origin The denied origin. Must not be {@code null}.
+	 */
+	public void recordDenial(final Origin origin) {
+
+		if (learned.size() >= maxLearned)
+			return;
+
+		final String key = toKey(origin);
+		final SeededHash.Key hashedKey = hash.key(key);
+
+		AtomicInteger count = denialCounts.get(hashedKey);
+
+		if (count == null) {
+
+			// Reset the counters if full, keeps junk origins bounded
+			if (denialCounts.size() >= maxLearned)
+				denialCounts.clear();
+
+			count = new AtomicInteger();
+
+			AtomicInteger existing = denialCounts.putIfAbsent(hashedKey, count);
+
+			if (existing != null)
+				count = existing;
+		}
+
+		if (count.incrementAndGet() < learnThreshold)
+			return;
+
+		denialCounts.remove(hashedKey);
+
+		BloomFilter bloomFilter = filter;
+
+		// Add to the filter first, so the origin is never in the learned
+		// set without being in the filter
+		bloomFilter.add(key);
+		learned.add(hashedKey);
+
+		// Cleared concurrently, the denial may predate an allowed
+		// origin change
+		if (filter != bloomFilter)
+			learned.remove(hashedKey);
+	}
+
+
+	/**
+	 * Returns {@code true} if learning of repeatedly denied origins is
+	 * enabled.
+	 *
+	 * @return {@code true} if learning is enabled.
+	 */
+	public boolean isLearning() {
+
+		return maxLearned > 0;
+	}
+
+
+	/**
+	 * Returns the explicitly denied origins.
+	 *
+	 * @return The explicitly denied origins, as canonical keys.
+	 */
+	public Set<String> getDenied() {
+
+		return denied;
+	}
+
+
+	/**
+	 * Returns the number of learned origins.
+	 *
+	 * @return The number of learned origins.
+	 */
+	public int getLearnedCount() {
+
+		return learned.size();
+	}
+
+
+	/**
+	 * Clears the learned origins and the denial counters. Should be
+	 * called when the allowed origins change.
+	 */
+	public void clearLearned() {
+
+		if (! isLearning())
+			return;
+
+		// Learned origins are cleared from the filter by replacing it
+		filter = createFilter();
+		learned.clear();
+		denialCounts.clear();
+	}
+}
@@ -0,0 +1,138 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Set;
+
+
+/**
+ * Named group of origins with their own credentials, exposed headers and
+ * preflight max-age settings, overriding those of the CORS configuration.
+ * The origins of a group are allowed.
+ *
+ * <p>Origin groups are configured by properties with the prefix
+ * {@code cors.originGroup.[name].}, see {@link CORSConfiguration}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class OriginGroup {
+
+
+	/**
+	 * The group name.
+	 */
+	private final String name;
+
+
+	/**
+	 * The origins of the group.
+	 */
+	private final Set<ValidatedOrigin> origins;
+
+
+	/**
+	 * Whether user credentials are supported for the origins.
+	 */
+	private final boolean supportsCredentials;
+
+
+	/**
+	 * The headers exposed to the origins.
+	 */
+	private final Set<String> exposedHeaders;
+
+
+	/**
+	 * The preflight max-age for the origins, in seconds.
+	 */
+	private final int maxAge;
+
+
+	/**
+	 * Creates a new origin group.
+	 *
+	 * @param name                The group name. Must not be
+	 *                            {@code null}.
+	 * @param origins             The origins of the group. Must not be
+	 *                            {@code null}.
+	 * @param supportsCredentials Whether user credentials are supported
+	 *                            for the origins.
+	 * @param exposedHeaders      The headers exposed to the origins. Must
+	 *                            not be {@code null}.
+	 * @param maxAge              The preflight max-age for the origins,
+	 *                            in seconds, negative if unspecified.
+	 */
+	public OriginGroup(final String name,
+			   final Set<ValidatedOrigin> origins,
+			   final boolean supportsCredentials,
+			   final Set<String> exposedHeaders,
+			   final int maxAge) {
+
+		this.name = name;
+		this.origins = origins;
+		this.supportsCredentials = supportsCredentials;
+		this.exposedHeaders = exposedHeaders;
+		this.maxAge = maxAge;
+	}
+
+
+	/**
+	 * Returns the group name.
+	 *
+	 * @return The group name.
+	 */
+	public String getName() {
+
+		return name;
+	}
+
+
+	/**
+	 * Returns the origins of the group.
+	 *
+	 * @return The origins.
+	 */
+	public Set<ValidatedOrigin> getOrigins() {
+
+		return origins;
+	}
+
+
+	/**
+	 * Returns whether user credentials are supported for the origins.
+	 *
+	 * <p>Property key: cors.originGroup.[name].supportsCredentials
+	 *
+	 * @return {@code true} if user credentials are supported, else
+	 *         {@code false}.
+	 */
+	public boolean supportsCredentials() {
+
+		return supportsCredentials;
+	}
+
+
+	/**
+	 * Returns the headers exposed to the origins.
+	 *
+	 * <p>Property key: cors.originGroup.[name].exposedHeaders
+	 *
+	 * @return The exposed headers.
+	 */
+	public Set<String> getExposedHeaders() {
+
+		return exposedHeaders;
+	}
+
+
+	/**
+	 * Returns the preflight max-age for the origins.
+	 *
+	 * <p>Property key: cors.originGroup.[name].maxAge
+	 *
+	 * @return The max-age in seconds, negative if unspecified.
+	 */
+	public int getMaxAge() {
+
+		return maxAge;
+	}
+}
@@ -0,0 +1,256 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * Matches origins against a set of wildcard patterns. All patterns are
+ * compiled into a single deterministic automaton over the serialised origin,
+ * so matching takes time linear to the origin length, regardless of the
+ * number of configured patterns.
+ *
+ * <p>Pattern syntax: {@code scheme://host[:port]}, where
+ *
+ * <ul>
+ *     <li>{@code *} in the host matches one or more host characters,
+ *         including dots, so {@code https://*.example.com} matches
+ *         {@code https://app.example.com} as well as
+ *         {@code https://a.b.example.com}, but not
+ *         {@code https://example.com}.
+ *     <li>{@code ?} in the host matches exactly one host character other
+ *         than a dot.
+ *     <li>{@code *} as port matches any explicit port, as well as no
+ *         port, e.g. {@code http://localhost:*}.
+ * </ul>
+ *
+ * <p>Matching is case-insensitive. Examples:
+ *
+ * <pre>
+ * https://*.eu.example.com
+ * http://localhost:*
+ * https://app-??.example.com
+ * </pre>
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class OriginPatternMatcher {
+
+
+	/**
+	 * The host characters matched by a wildcard, in lower case.
+	 */
+	private static final BitSet HOST_CHARS = new BitSet(GlobAutomaton.SYMBOLS);
+
+
+	/**
+	 * The host label characters (excluding dot), in lower case.
+	 */
+	private static final BitSet LABEL_CHARS = new BitSet(GlobAutomaton.SYMBOLS);
+
+
+	/**
+	 * The port characters.
+	 */
+	private static final BitSet DIGITS = new BitSet(GlobAutomaton.SYMBOLS);
+
+
+	static {
+		LABEL_CHARS.set('a', 'z' + 1);
+		LABEL_CHARS.set('0', '9' + 1);
+		LABEL_CHARS.set('-');
+		LABEL_CHARS.set('_');
+
+		// Internationalised host names in Unicode form
+		LABEL_CHARS.set(GlobAutomaton.OTHER);
+
+		HOST_CHARS.or(LABEL_CHARS);
+		HOST_CHARS.set('.');
+
+		DIGITS.set('0', '9' + 1);
+	}
+
+
+	/**
+	 * The compiled patterns.
+	 */
+	private final GlobAutomaton automaton;
+
+
+	/**
+	 * Maps the compiled automaton patterns to the configured pattern
+	 * indices. A pattern with a port wildcard is compiled as two
+	 * automaton patterns.
+	 */
+	private final int[] patternIndex;
+
+
+	/**
+	 * Returns {@code true} if the specified origin string is a wildcard
+	 * pattern.
+	 *
+	 * @param s The origin string. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the string contains a wildcard character.
+	 */
+	public static boolean isPattern(final String s) {
+
+		return s.indexOf('*') >= 0 || s.indexOf('?') >= 0;
+	}
+
+
+	/**
+	 * Creates a new origin pattern matcher.
+	 *
+	 * @param patterns The origin patterns. Must not be {@code null}.
+	 *
+	 * @throws IllegalArgumentException On a invalid pattern.
+	 */
+	public OriginPatternMatcher(final Collection<String> patterns) {
+
+		List<GlobAutomaton.Item[]> compiled = new ArrayList<GlobAutomaton.Item[]>();
+		List<Integer> indices = new ArrayList<Integer>();
+
+		int index = 0;
+
+		for (String pattern: patterns) {
+
+			for (GlobAutomaton.Item[] items: parse(pattern)) {
+				compiled.add(items);
+				indices.add(index);
+			}
+
+			index++;
+		}
+
+		automaton = new GlobAutomaton(compiled);
+
+		patternIndex = new int[indices.size()];
+
+		for (int i = 0; i < patternIndex.length; i++)
+			patternIndex[i] = indices.get(i);
+	}
+
+
+	/**
+	 * Parses the specified origin pattern.
+	 *
+	 * @param pattern The origin pattern. Must not be {@code null}.
+	 *
+	 * @return The pattern items, two alternatives if the port is a
+	 *         wildcard.
+	 *
+	 * @throws IllegalArgumentException On a invalid pattern.
+	 */
+	private static List<GlobAutomaton.Item[]> parse(final String pattern) {
+
+		final int schemeEnd = pattern.indexOf("://");
+
+		if (schemeEnd < 1)
+			throw new IllegalArgumentException("Bad origin pattern: Missing scheme, such as http or https");
+
+		final String scheme = pattern.substring(0, schemeEnd);
+
+		if (isPattern(scheme))
+			throw new IllegalArgumentException("Bad origin pattern: The scheme must not contain wildcards");
+
+		final int hostStart = schemeEnd + 3;
+
+		// Port separator, after the closing bracket of IPv6 hosts
+		final int bracket = pattern.indexOf(']', hostStart);
+		final int portSep = pattern.indexOf(':', bracket >= 0 ? bracket + 1 : hostStart);
+
+		final int hostEnd = portSep > 0 ? portSep : pattern.length();
+
+		if (hostEnd == hostStart)
+			throw new IllegalArgumentException("Bad origin pattern: Missing host");
+
+		if (pattern.indexOf('/', hostStart) >= 0)
+			throw new IllegalArgumentException("Bad origin pattern: Unexpected path");
+
+		List<GlobAutomaton.Item> items = new ArrayList<GlobAutomaton.Item>();
+
+		for (int i = 0; i < hostStart; i++)
+			items.add(GlobAutomaton.Item.literal(pattern.charAt(i)));
+
+		for (int i = hostStart; i < hostEnd; i++) {
+
+			char c = pattern.charAt(i);
+
+			if (c == '*')
+				items.add(new GlobAutomaton.Item(HOST_CHARS, GlobAutomaton.Repeat.ONE_OR_MORE));
+			else if (c == '?')
+				items.add(new GlobAutomaton.Item(LABEL_CHARS, GlobAutomaton.Repeat.ONE));
+			else
+				items.add(GlobAutomaton.Item.literal(c));
+		}
+
+		List<GlobAutomaton.Item[]> alternatives = new ArrayList<GlobAutomaton.Item[]>();
+
+		if (portSep < 0) {
+			alternatives.add(items.toArray(new GlobAutomaton.Item[items.size()]));
+			return alternatives;
+		}
+
+		String port = pattern.substring(portSep + 1);
+
+		if (port.equals("*")) {
+
+			// No port
+			alternatives.add(items.toArray(new GlobAutomaton.Item[items.size()]));
+
+			// Any explicit port
+			items.add(GlobAutomaton.Item.literal(':'));
+			items.add(new GlobAutomaton.Item(DIGITS, GlobAutomaton.Repeat.ONE_OR_MORE));
+			alternatives.add(items.toArray(new GlobAutomaton.Item[items.size()]));
+			return alternatives;
+		}
+
+		if (port.isEmpty())
+			throw new IllegalArgumentException("Bad origin pattern: Missing port");
+
+		for (int i = 0; i < port.length(); i++) {
+
+			if (! DIGITS.get(port.charAt(i)))
+				throw new IllegalArgumentException("Bad origin pattern: Bad port");
+		}
+
+		for (int i = portSep; i < pattern.length(); i++)
+			items.add(GlobAutomaton.Item.literal(pattern.charAt(i)));
+
+		alternatives.add(items.toArray(new GlobAutomaton.Item[items.size()]));
+		return alternatives;
+	}
+
+
+	/**
+	 * Matches the specified origin against the patterns.
+	 *
+	 * @param origin The origin. Must not be {@code null}.
+	 *
+	 * @return The index of the first matching pattern, in configuration
+	 *         order, -1 if none matches.
+	 */
+	public int match(final Origin origin) {
+
+		int matched = automaton.match(origin.toString());
+
+		return matched >= 0 ? patternIndex[matched] : -1;
+	}
+
+
+	/**
+	 * Checks if the specified origin matches any of the patterns.
+	 *
+	 * @param origin The origin. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the origin matches, else {@code false}.
+	 */
+	public boolean matches(final Origin origin) {
+
+		return automaton.match(origin.toString()) >= 0;
+	}
+}
@@ -0,0 +1,606 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Collection;
+
+
+/**
+ * Matches IP-literal origins against a set of IP address ranges in CIDR
+ * notation. The ranges are compiled into binary tries, one for IPv4 and one
+ * for IPv6, so that a match takes at most 32, respectively 128, steps
+ * regardless of the number of configured ranges. The origin address is
+ * parsed directly into integers, without creating a {@link java.net.URI}
+ * or {@link java.net.InetAddress}.
+ *
+ * <p>Range syntax: {@code scheme://address/prefix-length[:port]}, where
+ * the port is optional and may be {@code *} to match any port. Without a
+ * port only origins with the default port of the scheme match. Examples:
+ *
+ * <pre>
+ * http://10.0.0.0/8:*
+ * https://192.168.0.0/16
+ * http://[fd00::]/8:3000
+ * </pre>
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class OriginRangeMatcher {
+
+
+	/**
+	 * Port value matching any port.
+	 */
+	private static final int ANY_PORT = -2;
+
+
+	/**
+	 * Port value for the default port of the scheme.
+	 */
+	private static final int DEFAULT_PORT = -1;
+
+
+	/**
+	 * A range rule, stored at the trie node of its address prefix.
+	 */
+	private static final class Rule {
+
+
+		/**
+		 * The scheme, in lower case.
+		 */
+		final String scheme;
+
+
+		/**
+		 * The port, {@link #ANY_PORT} or {@link #DEFAULT_PORT}.
+		 */
+		final int port;
+
+
+		/**
+		 * The next rule at the same node, {@code null} if none.
+		 */
+		final Rule next;
+
+
+		Rule(final String scheme, final int port, final Rule next) {
+
+			this.scheme = scheme;
+			this.port = port;
+			this.next = next;
+		}
+
+
+		/**
+		 * Checks if the rule, or any following rule at the node,
+		 * matches the specified scheme and port.
+		 */
+		boolean matches(final String scheme, final int port) {
+
+			for (Rule rule = this; rule != null; rule = rule.next) {
+
+				if ((rule.port == ANY_PORT || rule.port == port) && rule.scheme.equals(scheme))
+					return true;
+			}
+
+			return false;
+		}
+	}
+
+
+	/**
+	 * Binary trie node.
+	 */
+	private static final class Node {
+
+
+		/**
+		 * The child nodes for the next address bit.
+		 */
+		final Node[] children = new Node[2];
+
+
+		/**
+		 * The rules for the address prefix ending at this node,
+		 * {@code null} if none.
+		 */
+		Rule rules;
+	}
+
+
+	/**
+	 * The root of the IPv4 trie.
+	 */
+	private final Node ipv4Root = new Node();
+
+
+	/**
+	 * The root of the IPv6 trie.
+	 */
+	private final Node ipv6Root = new Node();
+
+
+	/**
+	 * Returns {@code true} if the specified origin string is an IP address
+	 * range, i.e. an IPv4 or IPv6 literal followed by a prefix length.
+	 * Other strings with a path, such as {@code https://example.com/},
+	 * are not ranges.
+	 *
+	 * @param s The origin string. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the string is an IP address range.
+	 */
+	public static boolean isRange(final String s) {
+
+		final int schemeEnd = s.indexOf("://");
+
+		if (schemeEnd < 1)
+			return false;
+
+		final int addrStart = schemeEnd + 3;
+		final int slash = s.indexOf('/', addrStart);
+
+		if (slash <= addrStart)
+			return false;
+
+		// The prefix length digits, up to the end or the port
+		int i = slash + 1;
+
+		while (i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '9')
+			i++;
+
+		if (i == slash + 1 || (i < s.length() && s.charAt(i) != ':'))
+			return false;
+
+		if (s.charAt(addrStart) == '[')
+			return s.charAt(slash - 1) == ']' && parseIPv6(s, addrStart + 1, slash - 1, new long[2]);
+
+		return parseIPv4(s, addrStart, slash) >= 0;
+	}
+
+
+	/**
+	 * Creates a new origin range matcher.
+	 *
+	 * @param ranges The IP address ranges. Must not be {@code null}.
+	 *
+	 * @throws IllegalArgumentException On a invalid range.
+	 */
+	public OriginRangeMatcher(final Collection<String> ranges) {
+
+		for (String range: ranges)
+			add(range);
+	}
+
+
+	/**
+	 * Adds the specified IP address range.
+	 *
+	 * @param range The range. Must not be {@code null}.
+	 *
+	 * @throws IllegalArgumentException On a invalid range.
+	 */
+	private void add(final String range) {
+
+		final int schemeEnd = range.indexOf("://");
+
+		if (schemeEnd < 1)
+			throw new IllegalArgumentException("Missing scheme: " + range);
+
+		final String scheme = range.substring(0, schemeEnd).toLowerCase();
+
+		final int addrStart = schemeEnd + 3;
+		final int slash = range.indexOf('/', addrStart);
+
+		if (slash < 0)
+			throw new IllegalArgumentException("Missing prefix length: " + range);
+
+		final int portSep = range.indexOf(':', slash);
+		final int prefixEnd = portSep > 0 ? portSep : range.length();
+
+		final int prefixLength = parseNumber(range, slash + 1, prefixEnd);
+
+		if (prefixLength < 0)
+			throw new IllegalArgumentException("Bad prefix length: " + range);
+
+		int port = DEFAULT_PORT;
+
+		if (portSep > 0) {
+
+			if (range.length() == portSep + 2 && range.charAt(portSep + 1) == '*') {
+
+				port = ANY_PORT;
+
+			} else {
+
+				port = parseNumber(range, portSep + 1, range.length());
+
+				if (port < 0 || port > 65535)
+					throw new IllegalArgumentException("Bad port: " + range);
+
+				port = canonicalPort(scheme, port);
+			}
+		}
+
+		Node node;
+		int bits;
+
+		if (range.charAt(addrStart) == '[') {
+
+			if (range.charAt(slash - 1) != ']')
+				throw new IllegalArgumentException("Bad IPv6 address: " + range);
+
+			long[] addr = new long[2];
+
+			if (! parseIPv6(range, addrStart + 1, slash - 1, addr))
+				throw new IllegalArgumentException("Bad IPv6 address: " + range);
+
+			if (prefixLength > 128)
+				throw new IllegalArgumentException("Bad prefix length: " + range);
+
+			node = ipv6Root;
+
+			for (bits = 0; bits < prefixLength; bits++)
+				node = child(node, ipv6Bit(addr, bits));
+
+		} else {
+
+			long addr = parseIPv4(range, addrStart, slash);
+
+			if (addr < 0)
+				throw new IllegalArgumentException("Bad IPv4 address: " + range);
+
+			if (prefixLength > 32)
+				throw new IllegalArgumentException("Bad prefix length: " + range);
+
+			node = ipv4Root;
+
+			for (bits = 0; bits < prefixLength; bits++)
+				node = child(node, ipv4Bit((int)addr, bits));
+		}
+
+		node.rules = new Rule(scheme, port, node.rules);
+	}
+
+
+	/**
+	 * Returns the specified child of a trie node, creating it if
+	 * required.
+	 */
+	private static Node child(final Node node, final int bit) {
+
+		if (node.children[bit] == null)
+			node.children[bit] = new Node();
+
+		return node.children[bit];
+	}
+
+
+	/**
+	 * Returns the specified bit of an IPv4 address, counting from the
+	 * most significant.
+	 */
+	private static int ipv4Bit(final int addr, final int i) {
+
+		return (addr >>> (31 - i)) & 1;
+	}
+
+
+	/**
+	 * Returns the specified bit of an IPv6 address, counting from the
+	 * most significant.
+	 */
+	private static int ipv6Bit(final long[] addr, final int i) {
+
+		return (int)(addr[i >>> 6] >>> (63 - (i & 63))) & 1;
+	}
+
+
+	/**
+	 * Maps the default port of the http and https schemes to
+	 * {@link #DEFAULT_PORT}.
+	 */
+	private static int canonicalPort(final String scheme, final int port) {
+
+		if ((port == 80 && scheme.equals("http")) || (port == 443 && scheme.equals("https")))
+			return DEFAULT_PORT;
+
+		return port;
+	}
+
+
+	/**
+	 * Parses a decimal number of up to 5 digits.
+	 *
+	 * @param s     The string.
+	 * @param start The start index, inclusive.
+	 * @param end   The end index, exclusive.
+	 *
+	 * @return The number, -1 if invalid.
+	 */
+	private static int parseNumber(final String s, final int start, final int end) {
+
+		if (start >= end || end - start > 5)
+			return -1;
+
+		int value = 0;
+
+		for (int i = start; i < end; i++) {
+
+			char c = s.charAt(i);
+
+			if (c < '0' || c > '9')
+				return -1;
+
+			value = value * 10 + (c - '0');
+		}
+
+		return value;
+	}
+
+
+	/**
+	 * Parses a dotted decimal IPv4 address.
+	 *
+	 * @param s     The string.
+	 * @param start The start index, inclusive.
+	 * @param end   The end index, exclusive.
+	 *
+	 * @return The address as unsigned 32-bit value, -1 if invalid.
+	 */
+	static long parseIPv4(final String s, final int start, final int end) {
+
+		long addr = 0;
+		int octets = 0;
+		int i = start;
+
+		while (octets < 4) {
+
+			int value = 0;
+			int digits = 0;
+
+			while (i < end && digits < 3) {
+
+				char c = s.charAt(i);
+
+				if (c < '0' || c > '9')
+					break;
+
+				value = value * 10 + (c - '0');
+				digits++;
+				i++;
+			}
+
+			if (digits == 0 || value > 255)
+				return -1;
+
+			addr = addr << 8 | value;
+			octets++;
+
+			if (octets < 4) {
+
+				if (i >= end || s.charAt(i) != '.')
+					return -1;
+
+				i++;
+			}
+		}
+
+		return i == end ? addr : -1;
+	}
+
+
+	/**
+	 * Parses an IPv6 address, in any of the RFC 4291 text forms,
+	 * including a trailing dotted decimal IPv4 address. Zone identifiers
+	 * are not supported.
+	 *
+	 * @param s     The string.
+	 * @param start The start index, inclusive.
+	 * @param end   The end index, exclusive.
+	 * @param out   Receives the high and low 64 bits of the address.
+	 *
+	 * @return {@code true} if the address is valid, else {@code false}.
+	 */
+	static boolean parseIPv6(final String s, final int start, final int end, final long[] out) {
+
+		int[] groups = new int[8];
+		int count = 0;
+		int doubleColon = -1;
+		int i = start;
+
+		if (end - start >= 2 && s.charAt(i) == ':' && s.charAt(i + 1) == ':') {
+			doubleColon = 0;
+			i += 2;
+		}
+
+		while (i < end) {
+
+			if (count == 8)
+				return false;
+
+			int groupStart = i;
+			int value = 0;
+
+			while (i < end && i - groupStart < 4) {
+
+				int digit = Character.digit(s.charAt(i), 16);
+
+				if (digit < 0)
+					break;
+
+				value = value << 4 | digit;
+				i++;
+			}
+
+			if (i < end && s.charAt(i) == '.') {
+
+				// Trailing IPv4 address
+				if (count > 6)
+					return false;
+
+				long ipv4 = parseIPv4(s, groupStart, end);
+
+				if (ipv4 < 0)
+					return false;
+
+				groups[count++] = (int)(ipv4 >>> 16);
+				groups[count++] = (int)(ipv4 & 0xffff);
+				i = end;
+				break;
+			}
+
+			if (i == groupStart)
+				return false;
+
+			groups[count++] = value;
+
+			if (i == end)
+				break;
+
+			if (s.charAt(i) != ':')
+				return false;
+
+			i++;
+
+			if (i < end && s.charAt(i) == ':') {
+
+				if (doubleColon >= 0)
+					return false;
+
+				doubleColon = count;
+				i++;
+
+			} else if (i == end) {
+
+				// Trailing single colon
+				return false;
+			}
+		}
+
+		if (doubleColon < 0) {
+
+			if (count != 8)
+				return false;
+
+		} else {
+
+			if (count == 8)
+				return false;
+
+			// Expand the double colon with zero groups
+			int tail = count - doubleColon;
+			System.arraycopy(groups, doubleColon, groups, 8 - tail, tail);
+
+			for (int j = doubleColon; j < 8 - tail; j++)
+				groups[j] = 0;
+		}
+
+		out[0] = (long)groups[0] << 48 | (long)groups[1] << 32 | (long)groups[2] << 16 | groups[3];
+		out[1] = (long)groups[4] << 48 | (long)groups[5] << 32 | (long)groups[6] << 16 | groups[7];
+		return true;
+	}
+
+
+	/**
+	 * Checks if the specified origin is an IP-literal origin within any
+	 * of the ranges.
+	 *
+	 * @param origin The origin. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the origin matches, else {@code false}.
+	 */
+	public boolean matches(final Origin origin) {
+
+		final String s = OriginUtils.toCanonicalKey(origin.toString());
+
+		final int schemeEnd = s.indexOf("://");
+
+		if (schemeEnd < 1)
+			return false;
+
+		final int hostStart = schemeEnd + 3;
+
+		if (hostStart >= s.length())
+			return false;
+
+		final String scheme = s.substring(0, schemeEnd);
+
+		final boolean ipv6 = s.charAt(hostStart) == '[';
+
+		final int hostEnd = ipv6 ? s.indexOf(']', hostStart) + 1 : indexOf(s, ':', hostStart);
+
+		if (hostEnd <= hostStart)
+			return false;
+
+		int port = DEFAULT_PORT;
+
+		if (hostEnd < s.length()) {
+
+			if (s.charAt(hostEnd) != ':')
+				return false;
+
+			port = parseNumber(s, hostEnd + 1, s.length());
+
+			if (port < 0)
+				return false;
+		}
+
+		Node node;
+
+		if (ipv6) {
+
+			long[] addr = new long[2];
+
+			if (! parseIPv6(s, hostStart + 1, hostEnd - 1, addr))
+				return false;
+
+			node = ipv6Root;
+
+			for (int i = 0; node != null; i++) {
+
+				if (node.rules != null && node.rules.matches(scheme, port))
+					return true;
+
+				if (i == 128)
+					break;
+
+				node = node.children[ipv6Bit(addr, i)];
+			}
+
+		} else {
+
+			long addr = parseIPv4(s, hostStart, hostEnd);
+
+			if (addr < 0)
+				return false;
+
+			node = ipv4Root;
+
+			for (int i = 0; node != null; i++) {
+
+				if (node.rules != null && node.rules.matches(scheme, port))
+					return true;
+
+				if (i == 32)
+					break;
+
+				node = node.children[ipv4Bit((int)addr, i)];
+			}
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * Returns the index of the specified character, or the string length
+	 * if not found.
+	 */
+	private static int indexOf(final String s, final char c, final int from) {
+
+		int i = s.indexOf(c, from);
+
+		return i >= 0 ? i : s.length();
+	}
+}
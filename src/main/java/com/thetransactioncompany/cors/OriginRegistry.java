@@ -0,0 +1,509 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Registry of the allowed origins, which may be updated at runtime without
+ * reloading the CORS filter configuration.
+ *
+ * <p>The registry is thread-safe. Lookups never block and run concurrently
+ * with updates, updates are serialised among themselves. Adding and
+ * removing an origin takes constant time; {@link #replaceAll} builds the
+ * new origin set aside and then switches to it atomically, so lookups see
+ * either the old or the new set, never a mix of the two.
+ *
+ * <p>Origins may also be granted for a limited time only. Such temporary
+ * grants are expired by a {@link HashedTimerWheel timer wheel} running in
+ * a background thread, which removes them from the registry within one
+ * {@link #EXPIRY_TICK_SECONDS tick} after their time-to-live has elapsed.
+ * Lookups therefore don't need to check any expiration times.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class OriginRegistry {
+
+
+	/**
+	 * The tick duration of the timer wheel for expiring temporary
+	 * grants, in seconds.
+	 */
+	public static final long EXPIRY_TICK_SECONDS = 1;
+
+
+	/**
+	 * The number of timer wheel buckets.
+	 */
+	private static final int EXPIRY_WHEEL_SIZE = 512;
+
+
+	/**
+	 * Registry entry.
+	 */
+	private static final class Entry {
+
+
+		/**
+		 * The registered origin.
+		 */
+		final ValidatedOrigin origin;
+
+
+		/**
+		 * {@code true} if the origin is granted for a limited time.
+		 */
+		final boolean temporary;
+
+
+		Entry(final ValidatedOrigin origin, final boolean temporary) {
+
+			this.origin = origin;
+			this.temporary = temporary;
+		}
+	}
+
+
+	/**
+	 * The registered origins, keyed by their
+	 * {@link OriginUtils#toCanonicalKey canonical key}, so that case and
+	 * default port variants of an origin match too. Replaced as
+	 * a whole on {@link #replaceAll}. Entries are compared by identity,
+	 * so that an expiring grant doesn't remove a newer one for the same
+	 * origin.
+	 */
+	private volatile ConcurrentHashMap<String,Entry> origins;
+
+
+	/**
+	 * The number of active temporary grants.
+	 */
+	private final AtomicInteger temporaryGrantCount = new AtomicInteger();
+
+
+	/**
+	 * Expires the temporary grants, {@code null} if not created yet.
+	 */
+	private HashedTimerWheel expiryWheel;
+
+
+	/**
+	 * Indicates whether the registry was shut down.
+	 */
+	private boolean shutdown;
+
+
+	/**
+	 * The number of configurations using the registry. Guarded by this.
+	 */
+	private int references = 1;
+
+
+	/**
+	 * Incremented on each change of the registered origins.
+	 */
+	private volatile long version;
+
+
+	/**
+	 * Notified after origins are added to the registry.
+	 */
+	private final CopyOnWriteArrayList<Runnable> additionListeners = new CopyOnWriteArrayList<Runnable>();
+
+
+	/**
+	 * Read-only set view of the registered origins.
+	 */
+	private final Set<ValidatedOrigin> view = new AbstractSet<ValidatedOrigin>() {
+
+		@Override
+		public Iterator<ValidatedOrigin> iterator() {
+
+			final Iterator<Entry> it = origins.values().iterator();
+
+			return new Iterator<ValidatedOrigin>() {
+
+				@Override
+				public boolean hasNext() {
+
+					return it.hasNext();
+				}
+
+
+				@Override
+				public ValidatedOrigin next() {
+
+					return it.next().origin;
+				}
+
+
+				@Override
+				public void remove() {
+
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+
+		@Override
+		public int size() {
+
+			return origins.size();
+		}
+
+
+		@Override
+		public boolean contains(final Object o) {
+
+			return o instanceof Origin && OriginRegistry.this.contains((Origin)o);
+		}
+	};
+
+
+	/**
+	 * Creates a new origin registry.
+	 *
+	 * @param origins The initially registered origins. Must not be
+	 *                {@code null}.
+	 */
+	public OriginRegistry(final Collection<ValidatedOrigin> origins) {
+
+		this.origins = toMap(origins);
+	}
+
+
+	/**
+	 * Adds a listener to be notified after origins are added to the
+	 * registry, for invalidating state derived from the denied origins.
+	 * The registry may be shared by several configurations, each with
+	 * its own listener.
+	 *
+	 * @param listener The listener. Must not be {@code null}.
+	 */
+	void addAdditionListener(final Runnable listener) {
+
+		additionListeners.add(listener);
+	}
+
+
+	/**
+	 * Removes the specified addition listener.
+	 *
+	 * @param listener The listener. Must not be {@code null}.
+	 */
+	void removeAdditionListener(final Runnable listener) {
+
+		additionListeners.remove(listener);
+	}
+
+
+	/**
+	 * Registers another configuration using the registry, which is then
+	 * shared until each user {@link #release releases} it.
+	 *
+	 * @return {@code true} if the registry was retained, {@code false}
+	 *         if it was already shut down.
+	 */
+	synchronized boolean retain() {
+
+		if (shutdown)
+			return false;
+
+		references++;
+		return true;
+	}
+
+
+	/**
+	 * Releases the registry on behalf of a configuration using it. The
+	 * registry is shut down when the last user releases it.
+	 */
+	synchronized void release() {
+
+		if (--references == 0)
+			shutdown();
+	}
+
+
+	/**
+	 * Returns the version of the registered origins, for invalidating
+	 * state derived from them. Incremented on each change.
+	 *
+	 * @return The version.
+	 */
+	long getVersion() {
+
+		return version;
+	}
+
+
+	/**
+	 * Notifies the addition listeners.
+	 */
+	private void notifyAddition() {
+
+		for (Runnable listener: additionListeners)
+			listener.run();
+	}
+
+
+	/**
+	 * Creates a new origin map from the specified collection.
+	 *
+	 * @param origins The origins. Must not be {@code null}.
+	 *
+	 * @return The origin map.
+	 */
+	private static ConcurrentHashMap<String,Entry> toMap(final Collection<ValidatedOrigin> origins) {
+
+		ConcurrentHashMap<String,Entry> map = new ConcurrentHashMap<String,Entry>();
+
+		for (ValidatedOrigin origin: origins)
+			map.put(OriginUtils.toCanonicalKey(origin.toString()), new Entry(origin, false));
+
+		return map;
+	}
+
+
+	/**
+	 * Checks if the specified origin is registered. The scheme and host
+	 * are compared case-insensitively, an explicit default port matches
+	 * an origin without port and vice versa.
+	 *
+	 * @param origin The origin. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the origin is registered, else
+	 *         {@code false}.
+	 */
+	public boolean contains(final Origin origin) {
+
+		return origins.containsKey(OriginUtils.toCanonicalKey(origin.toString()));
+	}
+
+
+	/**
+	 * Adds the specified origin to the registry. A temporary grant for
+	 * the origin becomes permanent.
+	 *
+	 * @param origin The origin to add. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the origin was added, {@code false} if it
+	 *         was already registered.
+	 *
+	 * @throws OriginException If the origin is invalid.
+	 */
+	public boolean add(final Origin origin)
+		throws OriginException {
+
+		ValidatedOrigin validatedOrigin = origin.validate();
+
+		Entry old;
+
+		synchronized (this) {
+
+			old = origins.put(OriginUtils.toCanonicalKey(validatedOrigin.toString()), new Entry(validatedOrigin, false));
+			version++;
+
+			if (old != null && old.temporary)
+				temporaryGrantCount.decrementAndGet();
+		}
+
+		if (old == null)
+			notifyAddition();
+
+		return old == null;
+	}
+
+
+	/**
+	 * Adds the specified origin to the registry for a limited time. An
+	 * existing temporary grant for the origin is replaced, a permanent
+	 * registration is left unchanged.
+	 *
+	 * @param origin     The origin to add. Must not be {@code null}.
+	 * @param timeToLive The time to live of the grant. Must be positive.
+	 * @param unit       The time to live unit. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the origin was added, {@code false} if it
+	 *         was already registered.
+	 *
+	 * @throws OriginException       If the origin is invalid.
+	 * @throws IllegalStateException If the registry was shut down.
+	 */
+	public boolean add(final Origin origin, final long timeToLive, final TimeUnit unit)
+		throws OriginException {
+
+		if (timeToLive <= 0)
+			throw new IllegalArgumentException("The time to live must be positive");
+
+		ValidatedOrigin validatedOrigin = origin.validate();
+
+		final String key = OriginUtils.toCanonicalKey(validatedOrigin.toString());
+
+		final Entry entry = new Entry(validatedOrigin, true);
+
+		Entry old;
+
+		synchronized (this) {
+
+			if (shutdown)
+				throw new IllegalStateException("The origin registry was shut down");
+
+			old = origins.get(key);
+
+			if (old != null && ! old.temporary)
+				return false;
+
+			origins.put(key, entry);
+			version++;
+
+			if (old == null)
+				temporaryGrantCount.incrementAndGet();
+
+			if (expiryWheel == null)
+				expiryWheel = new HashedTimerWheel(EXPIRY_TICK_SECONDS, TimeUnit.SECONDS, EXPIRY_WHEEL_SIZE, "CORS Filter origin expiry");
+
+			expiryWheel.schedule(new Runnable() {
+				@Override
+				public void run() {
+					expire(key, entry);
+				}
+			}, timeToLive, unit);
+		}
+
+		if (old == null)
+			notifyAddition();
+
+		return old == null;
+	}
+
+
+	/**
+	 * Removes an expired temporary grant, unless it was superseded in the
+	 * meantime.
+	 *
+	 * @param key   The origin key.
+	 * @param entry The registry entry of the grant.
+	 */
+	private synchronized void expire(final String key, final Entry entry) {
+
+		if (origins.remove(key, entry)) {
+			temporaryGrantCount.decrementAndGet();
+			version++;
+		}
+	}
+
+
+	/**
+	 * Removes the specified origin from the registry.
+	 *
+	 * @param origin The origin to remove. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the origin was removed, {@code false} if it
+	 *         wasn't registered.
+	 */
+	public boolean remove(final Origin origin) {
+
+		synchronized (this) {
+
+			Entry old = origins.remove(OriginUtils.toCanonicalKey(origin.toString()));
+			version++;
+
+			if (old != null && old.temporary)
+				temporaryGrantCount.decrementAndGet();
+
+			return old != null;
+		}
+	}
+
+
+	/**
+	 * Replaces all registered origins, including the temporary grants,
+	 * with the specified ones. The origins are validated before the
+	 * registry is changed, if any of them is invalid the registry is left
+	 * unchanged.
+	 *
+	 * @param newOrigins The new origins. Must not be {@code null}.
+	 *
+	 * @throws OriginException If an origin is invalid.
+	 */
+	public void replaceAll(final Collection<? extends Origin> newOrigins)
+		throws OriginException {
+
+		ConcurrentHashMap<String,Entry> map = new ConcurrentHashMap<String,Entry>();
+
+		for (Origin origin: newOrigins) {
+
+			ValidatedOrigin validatedOrigin = origin.validate();
+			map.put(OriginUtils.toCanonicalKey(validatedOrigin.toString()), new Entry(validatedOrigin, false));
+		}
+
+		synchronized (this) {
+			origins = map;
+			temporaryGrantCount.set(0);
+			version++;
+		}
+
+		notifyAddition();
+	}
+
+
+	/**
+	 * Returns the number of registered origins, including the temporary
+	 * grants.
+	 *
+	 * @return The number of registered origins.
+	 */
+	public int size() {
+
+		return origins.size();
+	}
+
+
+	/**
+	 * Returns the number of active temporary grants.
+	 *
+	 * @return The number of active temporary grants.
+	 */
+	public int getTemporaryGrantCount() {
+
+		return temporaryGrantCount.get();
+	}
+
+
+	/**
+	 * Returns a read-only set view of the registered origins, which
+	 * reflects subsequent changes to the registry.
+	 *
+	 * @return The registered origins.
+	 */
+	public Set<ValidatedOrigin> asSet() {
+
+		return view;
+	}
+
+
+	/**
+	 * Stops the background expiration of temporary grants. Should be
+	 * called when the registry is taken out of service. No temporary
+	 * grants can be added afterwards and the addition listeners are
+	 * removed.
+	 */
+	public synchronized void shutdown() {
+
+		shutdown = true;
+
+		additionListeners.clear();
+
+		if (expiryWheel != null)
+			expiryWheel.stop();
+	}
+}
@@ -0,0 +1,101 @@
+package com.thetransactioncompany.cors;
+
+
+/**
+ * Origin utilities.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class OriginUtils {
+
+
+	/**
+	 * Returns the canonical key of the specified origin string, for exact
+	 * matching: the scheme and host are converted to lower case and the
+	 * default port of the {@code http} and {@code https} schemes is
+	 * removed. The string is not validated and no {@link java.net.URI}
+	 * is created, so the key is cheap to compute on each request.
+	 *
+	 * <p>Examples:
+	 *
+	 * <pre>
+	 * HTTPS://App.Example.com     =&gt; https://app.example.com
+	 * https://app.example.com:443 =&gt; https://app.example.com
+	 * http://app.example.com:8080 =&gt; http://app.example.com:8080
+	 * </pre>
+	 *
+	 * @param origin The origin string. Must not be {@code null}.
+	 *
+	 * @return The canonical key, the same string instance if the origin
+	 *         is already in canonical form.
+	 */
+	public static String toCanonicalKey(final String origin) {
+
+		final int len = origin.length();
+
+		// Find the first upper case letter, if any
+		int upper = -1;
+
+		for (int i = 0; i < len; i++) {
+
+			char c = origin.charAt(i);
+
+			if (c >= 'A' && c <= 'Z') {
+				upper = i;
+				break;
+			}
+		}
+
+		// Find the default port suffix, if any
+		int portStart = defaultPortStart(origin);
+
+		if (upper < 0 && portStart < 0)
+			return origin;
+
+		final int end = portStart >= 0 ? portStart : len;
+
+		if (upper < 0 || upper >= end)
+			return origin.substring(0, end);
+
+		char[] chars = new char[end];
+
+		origin.getChars(0, end, chars, 0);
+
+		for (int i = upper; i < end; i++) {
+
+			if (chars[i] >= 'A' && chars[i] <= 'Z')
+				chars[i] += 'a' - 'A';
+		}
+
+		return new String(chars);
+	}
+
+
+	/**
+	 * Returns the start index of the default port suffix of the specified
+	 * origin string, i.e. {@code :80} for {@code http} and {@code :443}
+	 * for {@code https} origins.
+	 *
+	 * @param origin The origin string. Must not be {@code null}.
+	 *
+	 * @return The start index of the port suffix, including the colon,
+	 *         -1 if none.
+	 */
+	private static int defaultPortStart(final String origin) {
+
+		final int len = origin.length();
+
+		if (len > 3 && origin.regionMatches(len - 3, ":80", 0, 3)) {
+
+			if (origin.regionMatches(true, 0, "http://", 0, 7) && len - 3 > 7)
+				return len - 3;
+
+		} else if (len > 4 && origin.regionMatches(len - 4, ":443", 0, 4)) {
+
+			if (origin.regionMatches(true, 0, "https://", 0, 8) && len - 4 > 8)
+				return len - 4;
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,208 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Arrays;
+
+
+/**
+ * Trie of URI path prefixes, matched segment by segment. Finds the value
+ * of the longest prefix of a request path in time proportional to the
+ * number of path segments, regardless of the number of prefixes.
+ *
+ * <p>Prefixes match whole segments only, so {@code /api/public} matches
+ * {@code /api/public} and {@code /api/public/items}, but not
+ * {@code /api/publication}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class PathTrie<V> {
+
+
+	/**
+	 * Trie node.
+	 */
+	private static final class Node<V> {
+
+
+		/**
+		 * The child segments.
+		 */
+		String[] segments = new String[0];
+
+
+		/**
+		 * The child nodes, in segment order.
+		 */
+		Node<V>[] children = newArray(0);
+
+
+		/**
+		 * The value for the path prefix ending at this node,
+		 * {@code null} if none.
+		 */
+		V value;
+
+
+		@SuppressWarnings("unchecked")
+		static <V> Node<V>[] newArray(final int length) {
+
+			return (Node<V>[])new Node<?>[length];
+		}
+
+
+		/**
+		 * Finds the child for the specified path segment.
+		 */
+		Node<V> find(final String path, final int start, final int end) {
+
+			final int len = end - start;
+
+			for (int i = 0; i < segments.length; i++) {
+
+				String segment = segments[i];
+
+				if (segment.length() == len && path.regionMatches(start, segment, 0, len))
+					return children[i];
+			}
+
+			return null;
+		}
+
+
+		/**
+		 * Returns the child for the specified segment, creating it if
+		 * required.
+		 */
+		Node<V> child(final String segment) {
+
+			for (int i = 0; i < segments.length; i++) {
+
+				if (segments[i].equals(segment))
+					return children[i];
+			}
+
+			segments = Arrays.copyOf(segments, segments.length + 1);
+			segments[segments.length - 1] = segment;
+
+			children = Arrays.copyOf(children, children.length + 1);
+			children[children.length - 1] = new Node<V>();
+
+			return children[children.length - 1];
+		}
+	}
+
+
+	/**
+	 * The root node, for the empty prefix.
+	 */
+	private final Node<V> root = new Node<V>();
+
+
+	/**
+	 * Normalises the specified path prefix: strips a trailing {@code /**},
+	 * {@code /*} or {@code /}.
+	 *
+	 * @param prefix The path prefix. Must not be {@code null}.
+	 *
+	 * @return The normalised path prefix.
+	 */
+	static String normalizePrefix(final String prefix) {
+
+		String p = prefix;
+
+		if (p.endsWith("/**"))
+			p = p.substring(0, p.length() - 3);
+		else if (p.endsWith("/*"))
+			p = p.substring(0, p.length() - 2);
+
+		while (p.endsWith("/"))
+			p = p.substring(0, p.length() - 1);
+
+		return p;
+	}
+
+
+	/**
+	 * Sets the value for the specified path prefix.
+	 *
+	 * @param prefix The path prefix, starting with {@code /}. May end
+	 *               with {@code /**}. Must not be {@code null}.
+	 * @param value  The value. Must not be {@code null}.
+	 *
+	 * @return The previous value for the prefix, {@code null} if none.
+	 */
+	V put(final String prefix, final V value) {
+
+		if (! prefix.startsWith("/"))
+			throw new IllegalArgumentException("The path prefix must start with /: " + prefix);
+
+		String p = normalizePrefix(prefix);
+
+		Node<V> node = root;
+
+		int start = 1;
+
+		while (start <= p.length()) {
+
+			int end = p.indexOf('/', start);
+
+			if (end < 0)
+				end = p.length();
+
+			if (end > start)
+				node = node.child(p.substring(start, end));
+
+			start = end + 1;
+		}
+
+		V old = node.value;
+		node.value = value;
+		return old;
+	}
+
+
+	/**
+	 * Finds the value of the longest prefix of the specified path.
+	 *
+	 * @param path  The path. Must not be {@code null}.
+	 * @param start The path start index in the string.
+	 *
+	 * @return The value, {@code null} if no prefix matches.
+	 */
+	V match(final String path, final int start) {
+
+		Node<V> node = root;
+
+		V value = root.value;
+
+		int pos = start;
+
+		final int len = path.length();
+
+		while (pos < len) {
+
+			// Skip the separator(s)
+			if (path.charAt(pos) == '/') {
+				pos++;
+				continue;
+			}
+
+			int end = path.indexOf('/', pos);
+
+			if (end < 0)
+				end = len;
+
+			node = node.find(path, pos, end);
+
+			if (node == null)
+				break;
+
+			if (node.value != null)
+				value = node.value;
+
+			pos = end;
+		}
+
+		return value;
+	}
+}
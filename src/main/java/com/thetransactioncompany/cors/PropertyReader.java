@@ -0,0 +1,262 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+
+/**
+ * Typed reader of CORS configuration properties. Parses boolean, integer,
+ * string and word list values, applying defaults for missing properties.
+ *
+ * <p>Replaces the {@code PropertyRetriever} from the Property Utils library,
+ * producing the same defaults and error messages.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class PropertyReader {
+
+
+	/**
+	 * The properties to read.
+	 */
+	private final Properties props;
+
+
+	/**
+	 * Creates a new property reader.
+	 *
+	 * @param props The properties to read. Must not be {@code null}.
+	 */
+	public PropertyReader(final Properties props) {
+
+		if (props == null)
+			throw new IllegalArgumentException("The properties must not be null");
+
+		this.props = props;
+	}
+
+
+	/**
+	 * Returns {@code true} if the specified property value is undefined,
+	 * empty or blank.
+	 *
+	 * @param value The property value, {@code null} if undefined.
+	 *
+	 * @return {@code true} if the value is undefined or blank.
+	 */
+	private static boolean isBlank(final String value) {
+
+		return value == null || value.trim().isEmpty();
+	}
+
+
+	/**
+	 * Gets a mandatory string property.
+	 *
+	 * @param key The property key. Must not be {@code null}.
+	 *
+	 * @return The property value.
+	 *
+	 * @throws CORSConfigurationException If the property is missing.
+	 */
+	public String getString(final String key)
+		throws CORSConfigurationException {
+
+		String value = props.getProperty(key);
+
+		if (value == null)
+			throw new CORSConfigurationException("Missing property");
+
+		return value;
+	}
+
+
+	/**
+	 * Gets an optional string property.
+	 *
+	 * @param key The property key. Must not be {@code null}.
+	 * @param def The default value to return if the property is undefined
+	 *            or blank.
+	 *
+	 * @return The property value.
+	 */
+	public String getOptString(final String key, final String def) {
+
+		String value = props.getProperty(key);
+
+		return isBlank(value) ? def : value;
+	}
+
+
+	/**
+	 * Gets an optional boolean property. The value must be {@code true} or
+	 * {@code false} (case insensitive).
+	 *
+	 * @param key The property key. Must not be {@code null}.
+	 * @param def The default value to return if the property is undefined
+	 *            or blank.
+	 *
+	 * @return The property value.
+	 *
+	 * @throws CORSConfigurationException If the value is not a boolean.
+	 */
+	public boolean getOptBoolean(final String key, final boolean def)
+		throws CORSConfigurationException {
+
+		String value = props.getProperty(key);
+
+		if (isBlank(value))
+			return def;
+
+		if (value.equalsIgnoreCase("true"))
+			return true;
+
+		if (value.equalsIgnoreCase("false"))
+			return false;
+
+		throw new CORSConfigurationException("Invalid boolean property");
+	}
+
+
+	/**
+	 * Gets an optional integer property.
+	 *
+	 * @param key The property key. Must not be {@code null}.
+	 * @param def The default value to return if the property is undefined
+	 *            or blank.
+	 *
+	 * @return The property value.
+	 *
+	 * @throws CORSConfigurationException If the value is not an integer.
+	 */
+	public int getOptInt(final String key, final int def)
+		throws CORSConfigurationException {
+
+		String value = props.getProperty(key);
+
+		if (isBlank(value))
+			return def;
+
+		try {
+			return Integer.parseInt(value);
+
+		} catch (NumberFormatException e) {
+
+			throw new CORSConfigurationException("Invalid int property");
+		}
+	}
+
+
+	/**
+	 * Gets an optional long integer property.
+	 *
+	 * @param key The property key. Must not be {@code null}.
+	 * @param def The default value to return if the property is undefined
+	 *            or blank.
+	 *
+	 * @return The property value.
+	 *
+	 * @throws CORSConfigurationException If the value is not a long
+	 *                                    integer.
+	 */
+	public long getOptLong(final String key, final long def)
+		throws CORSConfigurationException {
+
+		String value = props.getProperty(key);
+
+		if (isBlank(value))
+			return def;
+
+		try {
+			return Long.parseLong(value);
+
+		} catch (NumberFormatException e) {
+
+			throw new CORSConfigurationException("Invalid long property");
+		}
+	}
+
+
+	/**
+	 * Gets an optional word list property. The words are separated by
+	 * space and / or comma.
+	 *
+	 * @param key The property key. Must not be {@code null}.
+	 * @param def The default value to parse if the property is undefined
+	 *            or blank. Must not be {@code null}.
+	 *
+	 * @return The parsed words, empty if none were found.
+	 */
+	public String[] getOptWords(final String key, final String def) {
+
+		return parseWords(getOptString(key, def));
+	}
+
+
+	/**
+	 * Returns {@code true} if the specified character is a word
+	 * separator, i.e. white space or comma.
+	 *
+	 * @param c The character.
+	 *
+	 * @return {@code true} if the character is a separator.
+	 */
+	private static boolean isSeparator(final char c) {
+
+		return c == ',' || c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000b';
+	}
+
+
+	/**
+	 * Parses a string containing words separated by space and/or comma.
+	 * The string is scanned in a single pass; the result is the same as
+	 * trimming and splitting it on the {@code \s*,\s*|\s+} regular
+	 * expression, i.e. comma separators with nothing in between produce
+	 * empty words.
+	 *
+	 * @param s The string to parse. Must not be {@code null}.
+	 *
+	 * @return An array of the parsed words, empty if none were found.
+	 */
+	public static String[] parseWords(final String s) {
+
+		final String s1 = s.trim();
+
+		final int len = s1.length();
+
+		List<String> words = new ArrayList<String>();
+
+		int i = 0;
+
+		while (i < len) {
+
+			// Skip over the separators, counting the commas
+			int commas = 0;
+
+			while (i < len && isSeparator(s1.charAt(i))) {
+
+				if (s1.charAt(i) == ',')
+					commas++;
+				i++;
+			}
+
+			if (i == len)
+				break; // trailing separators
+
+			// Consecutive commas delimit empty words
+			for (int j = words.isEmpty() ? 0 : 1; j < commas; j++)
+				words.add("");
+
+			int start = i;
+
+			while (i < len && ! isSeparator(s1.charAt(i)))
+				i++;
+
+			words.add(s1.substring(start, i));
+		}
+
+		return words.toArray(new String[words.size()]);
+	}
+}
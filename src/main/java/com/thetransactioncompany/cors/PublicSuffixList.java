@@ -0,0 +1,507 @@
+package com.thetransactioncompany.cors;
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.IDN;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Public suffix list, for determining the registrable domain of a host
+ * name, e.g. {@code example.co.uk} for {@code app.example.co.uk}. See
+ * https://publicsuffix.org/ for the list and the matching algorithm.
+ *
+ * <p>The rules are stored in a trie of reversed domain labels, flattened
+ * into a few arrays: the label characters of all nodes share a single
+ * {@code char} array and the children of each node are stored next to
+ * each other in label order, so they can be searched by bisection. A
+ * lookup walks the host name labels right to left in place and allocates
+ * nothing.
+ *
+ * <p>The {@link #getDefault default list} is loaded lazily from the
+ * {@code public_suffix_list.dat} resource in this package, a copy of the
+ * complete official list. It may be replaced by a newer copy.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class PublicSuffixList {
+
+
+	/**
+	 * The name of the default list resource.
+	 */
+	public static final String RESOURCE_NAME = "public_suffix_list.dat";
+
+
+	/**
+	 * Node flag: the node is a rule.
+	 */
+	private static final byte RULE = 1;
+
+
+	/**
+	 * Node flag: a wildcard rule applies to the children of the node.
+	 */
+	private static final byte WILDCARD = 2;
+
+
+	/**
+	 * Node flag: the node is an exception rule.
+	 */
+	private static final byte EXCEPTION = 4;
+
+
+	/**
+	 * Lazy holder of the default list.
+	 */
+	private static final class DefaultHolder {
+
+		static final PublicSuffixList INSTANCE = loadDefault();
+	}
+
+
+	/**
+	 * The label characters of all nodes.
+	 */
+	private final char[] chars;
+
+
+	/**
+	 * The offset of each node label in {@link #chars}.
+	 */
+	private final int[] labelOffset;
+
+
+	/**
+	 * The length of each node label.
+	 */
+	private final short[] labelLength;
+
+
+	/**
+	 * The index of the first child of each node.
+	 */
+	private final int[] firstChild;
+
+
+	/**
+	 * The number of children of each node.
+	 */
+	private final int[] childCount;
+
+
+	/**
+	 * The flags of each node.
+	 */
+	private final byte[] flags;
+
+
+	/**
+	 * Trie node used during construction.
+	 */
+	private static final class BuildNode {
+
+		final Map<String,BuildNode> children = new TreeMap<String,BuildNode>();
+
+		byte flags;
+	}
+
+
+	/**
+	 * Returns the default public suffix list, loading it on first use.
+	 *
+	 * @return The default public suffix list.
+	 */
+	public static PublicSuffixList getDefault() {
+
+		return DefaultHolder.INSTANCE;
+	}
+
+
+	/**
+	 * Loads the default public suffix list resource.
+	 *
+	 * @return The default public suffix list.
+	 */
+	private static PublicSuffixList loadDefault() {
+
+		InputStream in = PublicSuffixList.class.getResourceAsStream(RESOURCE_NAME);
+
+		if (in == null)
+			throw new IllegalStateException("Missing resource " + RESOURCE_NAME);
+
+		try {
+			try {
+				return new PublicSuffixList(new InputStreamReader(in, "UTF-8"));
+
+			} finally {
+				in.close();
+			}
+
+		} catch (IOException e) {
+
+			throw new IllegalStateException("Couldn't load resource " + RESOURCE_NAME + ": " + e.getMessage(), e);
+		}
+	}
+
+
+	/**
+	 * Creates a new public suffix list.
+	 *
+	 * @param reader Reader for the list, in the format of
+	 *               {@code public_suffix_list.dat}. Must not be
+	 *               {@code null}.
+	 *
+	 * @throws IOException If reading failed.
+	 */
+	public PublicSuffixList(final Reader reader)
+		throws IOException {
+
+		BuildNode root = new BuildNode();
+
+		BufferedReader br = new BufferedReader(reader);
+
+		String line;
+
+		while ((line = br.readLine()) != null) {
+
+			// Rules end at the first whitespace
+			line = line.trim();
+
+			int ws = indexOfWhitespace(line);
+
+			if (ws >= 0)
+				line = line.substring(0, ws);
+
+			if (line.isEmpty() || line.startsWith("//"))
+				continue;
+
+			addRule(root, line);
+		}
+
+		// Flatten breadth first, so the children of each node are
+		// adjacent
+		List<BuildNode> nodes = new ArrayList<BuildNode>();
+		List<String> labels = new ArrayList<String>();
+
+		nodes.add(root);
+		labels.add("");
+
+		int charCount = 0;
+
+		for (int i = 0; i < nodes.size(); i++) {
+
+			for (Map.Entry<String,BuildNode> child: nodes.get(i).children.entrySet()) {
+				nodes.add(child.getValue());
+				labels.add(child.getKey());
+				charCount += child.getKey().length();
+			}
+		}
+
+		final int n = nodes.size();
+
+		chars = new char[charCount];
+		labelOffset = new int[n];
+		labelLength = new short[n];
+		firstChild = new int[n];
+		childCount = new int[n];
+		flags = new byte[n];
+
+		int offset = 0;
+		int next = 1;
+
+		for (int i = 0; i < n; i++) {
+
+			String label = labels.get(i);
+			label.getChars(0, label.length(), chars, offset);
+			labelOffset[i] = offset;
+			labelLength[i] = (short)label.length();
+			offset += label.length();
+
+			BuildNode node = nodes.get(i);
+			flags[i] = node.flags;
+			firstChild[i] = next;
+			childCount[i] = node.children.size();
+			next += node.children.size();
+		}
+	}
+
+
+	/**
+	 * Returns the index of the first whitespace character in the
+	 * specified string, -1 if none.
+	 */
+	private static int indexOfWhitespace(final String s) {
+
+		for (int i = 0; i < s.length(); i++) {
+
+			if (Character.isWhitespace(s.charAt(i)))
+				return i;
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Adds the specified rule to the trie.
+	 *
+	 * @param root The trie root.
+	 * @param rule The rule.
+	 */
+	private static void addRule(final BuildNode root, final String rule) {
+
+		boolean exception = rule.startsWith("!");
+
+		String domain = exception ? rule.substring(1) : rule;
+
+		boolean wildcard = domain.startsWith("*.");
+
+		if (wildcard)
+			domain = domain.substring(2);
+
+		String[] parts = IDN.toASCII(domain, IDN.ALLOW_UNASSIGNED).toLowerCase().split("\\.");
+
+		BuildNode node = root;
+
+		for (int i = parts.length - 1; i >= 0; i--) {
+
+			BuildNode child = node.children.get(parts[i]);
+
+			if (child == null) {
+				child = new BuildNode();
+				node.children.put(parts[i], child);
+			}
+
+			node = child;
+		}
+
+		if (exception)
+			node.flags |= EXCEPTION;
+		else if (wildcard)
+			node.flags |= WILDCARD;
+		else
+			node.flags |= RULE;
+	}
+
+
+	/**
+	 * Finds the child of the specified node with the specified label.
+	 *
+	 * @param node  The node.
+	 * @param host  The host name.
+	 * @param start The label start index in the host name, inclusive.
+	 * @param end   The label end index in the host name, exclusive.
+	 *
+	 * @return The child node, -1 if not found.
+	 */
+	private int findChild(final int node, final String host, final int start, final int end) {
+
+		int low = firstChild[node];
+		int high = low + childCount[node] - 1;
+
+		while (low <= high) {
+
+			int mid = (low + high) >>> 1;
+
+			int cmp = compareLabel(mid, host, start, end);
+
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Compares the label of the specified node with a host name label.
+	 */
+	private int compareLabel(final int node, final String host, final int start, final int end) {
+
+		final int offset = labelOffset[node];
+		final int len = labelLength[node];
+		final int hostLen = end - start;
+		final int min = Math.min(len, hostLen);
+
+		for (int i = 0; i < min; i++) {
+
+			int diff = chars[offset + i] - host.charAt(start + i);
+
+			if (diff != 0)
+				return diff;
+		}
+
+		return len - hostLen;
+	}
+
+
+	/**
+	 * Returns the start index of the registrable domain in the specified
+	 * host name, i.e. of the public suffix plus one label. Does not
+	 * allocate any objects.
+	 *
+	 * @param host The host name, in lower case ASCII (punycode) form.
+	 *             Must not be {@code null}.
+	 *
+	 * @return The start index of the registrable domain, -1 if the host
+	 *         name is a public suffix or not a valid domain name.
+	 */
+	public int getRegistrableDomainStart(final String host) {
+
+		return getRegistrableDomainStart(host, false);
+	}
+
+
+	/**
+	 * Returns the start index of the registrable domain in the specified
+	 * host name, optionally only if a listed rule determines the public
+	 * suffix. Does not allocate any objects.
+	 *
+	 * @param host       The host name, in lower case ASCII (punycode)
+	 *                   form. Must not be {@code null}.
+	 * @param listedOnly If {@code true} a host name whose public suffix
+	 *                   is given only by the implicit {@code *} rule, i.e.
+	 *                   under a top level domain not on the list, has no
+	 *                   registrable domain.
+	 *
+	 * @return The start index of the registrable domain, -1 if the host
+	 *         name is a public suffix, not a valid domain name, or not
+	 *         covered by a listed rule when required.
+	 */
+	public int getRegistrableDomainStart(final String host, final boolean listedOnly) {
+
+		final int len = host.length();
+
+		if (len == 0 || host.charAt(0) == '.' || host.charAt(len - 1) == '.' || host.indexOf("..") >= 0)
+			return -1;
+
+		// IP address, top level domains don't end with a digit
+		char last = host.charAt(len - 1);
+
+		if (last == ']' || (last >= '0' && last <= '9'))
+			return -1;
+
+		// The number of labels of the public suffix, by default the
+		// last label (implicit "*" rule)
+		int suffixLabels = 1;
+
+		boolean listed = false;
+
+		int node = 0;
+		int depth = 0;
+		int end = len;
+
+		while (end > 0) {
+
+			int start = host.lastIndexOf('.', end - 1) + 1;
+
+			int child = findChild(node, host, start, end);
+
+			if ((flags[node] & WILDCARD) != 0) {
+
+				listed = true;
+
+				if (child >= 0 && (flags[child] & EXCEPTION) != 0) {
+
+					// Exception rules prevail
+					suffixLabels = depth;
+					break;
+				}
+
+				suffixLabels = Math.max(suffixLabels, depth + 1);
+			}
+
+			if (child < 0)
+				break;
+
+			depth++;
+
+			if ((flags[child] & RULE) != 0) {
+				listed = true;
+				suffixLabels = Math.max(suffixLabels, depth);
+			}
+
+			node = child;
+			end = start - 1;
+		}
+
+		if (listedOnly && ! listed)
+			return -1;
+
+		// Skip the suffix labels plus one
+		int start = len;
+
+		for (int i = 0; i <= suffixLabels; i++) {
+
+			if (start <= 0)
+				return -1;
+
+			start = host.lastIndexOf('.', start - 1) + 1;
+
+			if (i < suffixLabels)
+				start--;
+		}
+
+		return start;
+	}
+
+
+	/**
+	 * Returns the registrable domain of the specified host name, e.g.
+	 * {@code example.co.uk} for {@code app.example.co.uk}.
+	 *
+	 * @param host The host name, in lower case ASCII (punycode) form.
+	 *             Must not be {@code null}.
+	 *
+	 * @return The registrable domain, {@code null} if the host name is a
+	 *         public suffix or not a valid domain name.
+	 */
+	public String getRegistrableDomain(final String host) {
+
+		return getRegistrableDomain(host, false);
+	}
+
+
+	/**
+	 * Returns the registrable domain of the specified host name,
+	 * optionally only if a listed rule determines the public suffix.
+	 *
+	 * @param host       The host name, in lower case ASCII (punycode)
+	 *                   form. Must not be {@code null}.
+	 * @param listedOnly If {@code true} a host name under a top level
+	 *                   domain not on the list has no registrable domain.
+	 *
+	 * @return The registrable domain, {@code null} if the host name is a
+	 *         public suffix, not a valid domain name, or not covered by a
+	 *         listed rule when required.
+	 */
+	public String getRegistrableDomain(final String host, final boolean listedOnly) {
+
+		int start = getRegistrableDomainStart(host, listedOnly);
+
+		return start >= 0 ? host.substring(start) : null;
+	}
+
+
+	/**
+	 * Returns the number of trie nodes.
+	 *
+	 * @return The number of trie nodes.
+	 */
+	int getNodeCount() {
+
+		return flags.length;
+	}
+}
@@ -0,0 +1,202 @@
+package com.thetransactioncompany.cors;
+
+
+import java.security.SecureRandom;
+
+
+/**
+ * Keyed string hash function, for hash tables which store or look up
+ * attacker-controlled strings, such as request origins and header names.
+ *
+ * <p>{@link String#hashCode} is trivial to collide, so a flood of requests
+ * with crafted values can degrade a hash table keyed by them to a linear
+ * list. This class computes SipHash-1-3 with a random 128-bit key chosen
+ * per instance, so the hash values, and hence the collisions, cannot be
+ * predicted from outside.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class SeededHash {
+
+
+	/**
+	 * Source of the hash keys.
+	 */
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+
+	/**
+	 * String with a precomputed seeded hash code, for use as hash table
+	 * key.
+	 */
+	static final class Key {
+
+
+		/**
+		 * The string value.
+		 */
+		final String value;
+
+
+		/**
+		 * The seeded hash code.
+		 */
+		private final int hash;
+
+
+		private Key(final String value, final int hash) {
+
+			this.value = value;
+			this.hash = hash;
+		}
+
+
+		@Override
+		public int hashCode() {
+
+			return hash;
+		}
+
+
+		@Override
+		public boolean equals(final Object object) {
+
+			return object instanceof Key && value.equals(((Key)object).value);
+		}
+
+
+		@Override
+		public String toString() {
+
+			return value;
+		}
+	}
+
+
+	/**
+	 * The first half of the hash key.
+	 */
+	private final long k0;
+
+
+	/**
+	 * The second half of the hash key.
+	 */
+	private final long k1;
+
+
+	/**
+	 * Creates a new seeded hash function with a random key.
+	 */
+	SeededHash() {
+
+		this(RANDOM.nextLong(), RANDOM.nextLong());
+	}
+
+
+	/**
+	 * Creates a new seeded hash function with the specified key.
+	 *
+	 * @param k0 The first half of the hash key.
+	 * @param k1 The second half of the hash key.
+	 */
+	SeededHash(final long k0, final long k1) {
+
+		this.k0 = k0;
+		this.k1 = k1;
+	}
+
+
+	/**
+	 * Creates a hash table key for the specified string.
+	 *
+	 * @param s The string. Must not be {@code null}.
+	 *
+	 * @return The key.
+	 */
+	Key key(final String s) {
+
+		return new Key(s, hash(s));
+	}
+
+
+	/**
+	 * Computes the hash of the specified string.
+	 *
+	 * @param s The string. Must not be {@code null}.
+	 *
+	 * @return The hash.
+	 */
+	int hash(final String s) {
+
+		long h = hash64(s);
+
+		return (int)(h ^ (h >>> 32));
+	}
+
+
+	/**
+	 * Computes the SipHash-1-3 of the UTF-16LE encoding of the specified
+	 * string.
+	 *
+	 * @param s The string. Must not be {@code null}.
+	 *
+	 * @return The 64-bit hash.
+	 */
+	long hash64(final String s) {
+
+		long v0 = k0 ^ 0x736f6d6570736575L;
+		long v1 = k1 ^ 0x646f72616e646f6dL;
+		long v2 = k0 ^ 0x6c7967656e657261L;
+		long v3 = k1 ^ 0x7465646279746573L;
+
+		final int len = s.length();
+		final int blockEnd = len & ~3;
+
+		// Four chars per 64-bit block
+		for (int i = 0; i < blockEnd; i += 4) {
+
+			long m = (long)s.charAt(i)
+				| (long)s.charAt(i + 1) << 16
+				| (long)s.charAt(i + 2) << 32
+				| (long)s.charAt(i + 3) << 48;
+
+			v3 ^= m;
+
+			// SipRound
+			v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+			v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+			v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+			v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+
+			v0 ^= m;
+		}
+
+		// Last block with the remaining chars and the byte length
+		long m = (long)(len << 1) << 56;
+
+		for (int i = blockEnd, shift = 0; i < len; i++, shift += 16)
+			m |= (long)s.charAt(i) << shift;
+
+		v3 ^= m;
+
+		v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+		v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+		v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+		v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+
+		v0 ^= m;
+
+		// Finalisation
+		v2 ^= 0xff;
+
+		for (int i = 0; i < 3; i++) {
+			v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+			v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+			v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+			v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+		}
+
+		return v0 ^ v1 ^ v2 ^ v3;
+	}
+}
@@ -0,0 +1,198 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+
+/**
+ * Immutable index of strings, mapping each string to its position in the
+ * original collection. Intended for looking up attacker-controlled
+ * strings, such as request header names, in a configured set.
+ *
+ * <p>The strings are placed in an open addressing table by a
+ * {@link SeededHash seeded hash}. The table is built so that no string is
+ * more than {@link #MAX_PROBES} slots from its home slot, growing the
+ * table and choosing a new hash key if required. A lookup therefore
+ * probes a bounded number of slots, whatever the looked up string.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class StringIndex {
+
+
+	/**
+	 * The maximum number of slots probed by a lookup.
+	 */
+	static final int MAX_PROBES = 8;
+
+
+	/**
+	 * The hash function.
+	 */
+	private final SeededHash hash;
+
+
+	/**
+	 * The indexed strings, by table slot, {@code null} for empty slots.
+	 */
+	private final String[] keys;
+
+
+	/**
+	 * The string positions, by table slot.
+	 */
+	private final int[] positions;
+
+
+	/**
+	 * The indexed strings, by position.
+	 */
+	private final List<String> strings;
+
+
+	/**
+	 * Bit mask for mapping hashes to table slots.
+	 */
+	private final int mask;
+
+
+	/**
+	 * Creates a new string index. Duplicate strings are indexed once.
+	 *
+	 * @param strings The strings to index. Must not be {@code null}.
+	 */
+	StringIndex(final Collection<String> strings) {
+
+		this.strings = new ArrayList<String>(new LinkedHashSet<String>(strings));
+
+		// Start at a load factor of at most 0.5
+		int size = Integer.highestOneBit(Math.max(2, this.strings.size()) * 2 - 1) << 1;
+
+		while (true) {
+
+			SeededHash candidateHash = new SeededHash();
+			String[] candidateKeys = new String[size];
+			int[] candidatePositions = new int[size];
+
+			if (fill(candidateHash, candidateKeys, candidatePositions)) {
+				hash = candidateHash;
+				keys = candidateKeys;
+				positions = candidatePositions;
+				mask = size - 1;
+				return;
+			}
+
+			size <<= 1;
+		}
+	}
+
+
+	/**
+	 * Places the strings in the specified table.
+	 *
+	 * @param hash      The hash function.
+	 * @param keys      The table keys.
+	 * @param positions The table positions.
+	 *
+	 * @return {@code true} if all strings were placed within the maximum
+	 *         probe distance, else {@code false}.
+	 */
+	private boolean fill(final SeededHash hash, final String[] keys, final int[] positions) {
+
+		final int tableMask = keys.length - 1;
+
+		for (int pos = 0; pos < strings.size(); pos++) {
+
+			String s = strings.get(pos);
+
+			int slot = hash.hash(s) & tableMask;
+
+			int probes = 0;
+
+			while (keys[slot] != null) {
+
+				if (++probes == MAX_PROBES)
+					return false;
+
+				slot = (slot + 1) & tableMask;
+			}
+
+			keys[slot] = s;
+			positions[slot] = pos;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Returns the position of the specified string.
+	 *
+	 * @param s The string. Must not be {@code null}.
+	 *
+	 * @return The position of the string in the original collection, -1
+	 *         if not indexed.
+	 */
+	int indexOf(final String s) {
+
+		if (strings.isEmpty())
+			return -1;
+
+		int slot = hash.hash(s) & mask;
+
+		for (int i = 0; i < MAX_PROBES; i++) {
+
+			String key = keys[slot];
+
+			if (key == null)
+				return -1;
+
+			if (key.equals(s))
+				return positions[slot];
+
+			slot = (slot + 1) & mask;
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Checks if the specified string is indexed.
+	 *
+	 * @param s The string. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the string is indexed, else {@code false}.
+	 */
+	boolean contains(final String s) {
+
+		return indexOf(s) >= 0;
+	}
+
+
+	/**
+	 * Returns the number of indexed strings.
+	 *
+	 * @return The number of indexed strings.
+	 */
+	int size() {
+
+		return strings.size();
+	}
+
+
+	/**
+	 * Returns the indexed string at the specified position.
+	 *
+	 * @param position The position.
+	 *
+	 * @return The string.
+	 */
+	String get(final int position) {
+
+		return strings.get(position);
+	}
+}
@@ -0,0 +1,717 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+
+/**
+ * Bounded cache of tenant CORS policies, loaded on demand from a
+ * {@link TenantPolicySource}.
+ *
+ * <ul>
+ *     <li>On a cache miss the policy is loaded and compiled on the calling
+ *         (request) thread. Concurrent misses for the same tenant trigger
+ *         a single load, the other threads wait for its result. Lookups
+ *         of other tenants are not blocked.
+ *     <li>A policy older than the refresh interval is returned as is and
+ *         a background reload is started. If the reload fails the policy
+ *         is retained and the reload is retried after another interval.
+ *         If the reloaded properties are unchanged the request handler
+ *         is kept, with its adaptive max-age state.
+ *     <li>Unknown tenants are remembered for the refresh interval in a
+ *         separate bounded set, so requests for them don't hit the source
+ *         repeatedly and don't evict the policies of known tenants.
+ * </ul>
+ *
+ * <p>The policies are held in a concurrent map, with a future per tenant
+ * for the pending load. The number of cached tenants is bounded; when a
+ * load takes it over the bound the least recently used tenant is evicted,
+ * found by a scan of the last access times. A policy evicted while it is
+ * still being loaded is shut down once the load completes. The tenant
+ * identifiers are hashed with a {@link SeededHash seeded hash}, so they
+ * cannot be crafted to collide.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class TenantPolicyCache {
+
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger LOG = LogManager.getLogManager().getLogger("");
+
+
+	/**
+	 * The maximum number of queued reloads.
+	 */
+	private static final int MAX_QUEUED_RELOADS = 1000;
+
+
+	/**
+	 * Cache entry, the result of a tenant policy load.
+	 */
+	private static final class CachedPolicy extends FutureTask<CORSRequestHandler> {
+
+
+		/**
+		 * The time of the last load, as {@code System.nanoTime()}.
+		 */
+		volatile long loadedAt;
+
+
+		/**
+		 * The time of the last access, as {@code System.nanoTime()}.
+		 */
+		volatile long lastAccess = System.nanoTime();
+
+
+		/**
+		 * Set while a reload for the entry is in progress.
+		 */
+		final AtomicBoolean reloading = new AtomicBoolean();
+
+
+		/**
+		 * Set when the entry is removed from the cache.
+		 */
+		private volatile boolean evicted;
+
+
+		/**
+		 * Set when the loaded policy is released.
+		 */
+		private final AtomicBoolean released = new AtomicBoolean();
+
+
+		CachedPolicy(final Callable<CORSRequestHandler> loader) {
+
+			super(loader);
+		}
+
+
+		@Override
+		protected void set(final CORSRequestHandler handler) {
+
+			loadedAt = System.nanoTime();
+			lastAccess = loadedAt;
+			super.set(handler);
+		}
+
+
+		@Override
+		protected void done() {
+
+			releaseIfEvicted();
+		}
+
+
+		/**
+		 * Marks the entry as removed from the cache. Its policy is
+		 * released now, or when the pending load completes.
+		 */
+		void evict() {
+
+			evicted = true;
+			releaseIfEvicted();
+		}
+
+
+		/**
+		 * Releases the loaded policy once the entry is evicted and the
+		 * load is complete.
+		 */
+		private void releaseIfEvicted() {
+
+			if (evicted && isDone() && released.compareAndSet(false, true))
+				release(getIfLoaded());
+		}
+
+
+		/**
+		 * Creates a completed entry for the specified handler.
+		 */
+		static CachedPolicy completed(final CORSRequestHandler handler) {
+
+			CachedPolicy entry = new CachedPolicy(new Callable<CORSRequestHandler>() {
+				@Override
+				public CORSRequestHandler call() {
+
+					return handler;
+				}
+			});
+
+			entry.run();
+			return entry;
+		}
+
+
+		/**
+		 * Returns the loaded handler, {@code null} if the load is not
+		 * complete or failed.
+		 */
+		CORSRequestHandler getIfLoaded() {
+
+			if (! isDone())
+				return null;
+
+			try {
+				return get();
+
+			} catch (Exception e) {
+
+				return null;
+			}
+		}
+	}
+
+
+	/**
+	 * The tenant policy source.
+	 */
+	private final TenantPolicySource source;
+
+
+	/**
+	 * The parent configuration of the tenant policies, {@code null} if
+	 * none.
+	 */
+	private final CORSConfiguration parent;
+
+
+	/**
+	 * The properties inherited by the tenant policies.
+	 */
+	private final Properties baseProps;
+
+
+	/**
+	 * The maximum number of cached tenants.
+	 */
+	private final int maxSize;
+
+
+	/**
+	 * The refresh interval, in nanoseconds.
+	 */
+	private final long refreshInterval;
+
+
+	/**
+	 * Hashes the tenant identifiers, which are attacker-controlled.
+	 */
+	private final SeededHash hash = new SeededHash();
+
+
+	/**
+	 * The cached and pending tenant policies.
+	 */
+	private final ConcurrentHashMap<SeededHash.Key,CachedPolicy> entries =
+		new ConcurrentHashMap<SeededHash.Key,CachedPolicy>();
+
+
+	/**
+	 * The unknown tenants, with the time they were found unknown, as
+	 * {@code System.nanoTime()}.
+	 */
+	private final ConcurrentHashMap<SeededHash.Key,Long> unknown =
+		new ConcurrentHashMap<SeededHash.Key,Long>();
+
+
+	/**
+	 * Runs the reloads.
+	 */
+	private final ThreadPoolExecutor executor;
+
+
+	/**
+	 * Creates a new tenant policy cache.
+	 *
+	 * @param source          The tenant policy source. Must not be
+	 *                        {@code null}.
+	 * @param baseProps       The properties inherited by the tenant
+	 *                        policies. Must not be {@code null}.
+	 * @param maxSize         The maximum number of cached tenants. Must
+	 *                        be positive.
+	 * @param refreshInterval The interval after which a tenant policy is
+	 *                        reloaded, in seconds.
+	 * @param threads         The number of reload threads. Must be
+	 *                        positive.
+	 */
+	public TenantPolicyCache(final TenantPolicySource source,
+				 final Properties baseProps,
+				 final int maxSize,
+				 final long refreshInterval,
+				 final int threads) {
+
+		this(source, null, baseProps, maxSize, refreshInterval, threads);
+	}
+
+
+	/**
+	 * Creates a new tenant policy cache for the specified parent
+	 * configuration, whose origin authorizer the tenant policies share.
+	 *
+	 * @param source          The tenant policy source. Must not be
+	 *                        {@code null}.
+	 * @param parent          The parent configuration, {@code null} if
+	 *                        none.
+	 * @param baseProps       The properties inherited by the tenant
+	 *                        policies. Must not be {@code null}.
+	 * @param maxSize         The maximum number of cached tenants. Must
+	 *                        be positive.
+	 * @param refreshInterval The interval after which a tenant policy is
+	 *                        reloaded, in seconds.
+	 * @param threads         The number of reload threads. Must be
+	 *                        positive.
+	 */
+	TenantPolicyCache(final TenantPolicySource source,
+			  final CORSConfiguration parent,
+			  final Properties baseProps,
+			  final int maxSize,
+			  final long refreshInterval,
+			  final int threads) {
+
+		if (source == null)
+			throw new IllegalArgumentException("The tenant policy source must not be null");
+
+		if (maxSize <= 0)
+			throw new IllegalArgumentException("The maximum cache size must be positive");
+
+		if (threads <= 0)
+			throw new IllegalArgumentException("The number of reload threads must be positive");
+
+		this.source = source;
+		this.parent = parent;
+		this.baseProps = new Properties();
+		this.baseProps.putAll(baseProps);
+		this.maxSize = maxSize;
+		this.refreshInterval = TimeUnit.SECONDS.toNanos(refreshInterval);
+
+		executor = new ThreadPoolExecutor(
+			threads, threads,
+			0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(MAX_QUEUED_RELOADS),
+			new ThreadFactory() {
+
+				private final AtomicInteger counter = new AtomicInteger();
+
+				@Override
+				public Thread newThread(final Runnable r) {
+
+					Thread thread = new Thread(r, "CORS Filter tenant policy loader " + counter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	}
+
+
+	/**
+	 * Returns the tenant policy source.
+	 *
+	 * @return The tenant policy source.
+	 */
+	public TenantPolicySource getSource() {
+
+		return source;
+	}
+
+
+	/**
+	 * Gets the request handler for the policy of the specified tenant,
+	 * loading the policy if it isn't cached. Blocks while the policy is
+	 * being loaded for the first time.
+	 *
+	 * @param tenant The tenant identifier. Must not be {@code null}.
+	 *
+	 * @return The request handler, {@code null} if the tenant is not
+	 *         known or its policy couldn't be loaded.
+	 */
+	public CORSRequestHandler getHandler(final String tenant) {
+
+		final SeededHash.Key key = hash.key(tenant);
+
+		CachedPolicy entry = entries.get(key);
+
+		boolean owner = false;
+
+		if (entry == null) {
+
+			if (isUnknown(key))
+				return null;
+
+			CachedPolicy created = new CachedPolicy(new Callable<CORSRequestHandler>() {
+				@Override
+				public CORSRequestHandler call()
+					throws Exception {
+
+					return load(tenant);
+				}
+			});
+
+			entry = entries.putIfAbsent(key, created);
+
+			if (entry == null) {
+
+				entry = created;
+				owner = true;
+			}
+		}
+
+		// Load outside any lock, only this tenant waits
+		if (owner)
+			entry.run();
+
+		CORSRequestHandler handler;
+
+		try {
+			handler = entry.get();
+
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			return null;
+
+		} catch (ExecutionException e) {
+
+			if (owner) {
+
+				LOG.warning("CORS Filter: Couldn't load the policy of tenant " + tenant + ": " + e.getCause().getMessage());
+
+				// Retry on a later request
+				if (entries.remove(key, entry))
+					entry.evict();
+			}
+
+			return null;
+		}
+
+		if (owner) {
+
+			if (handler == null) {
+
+				// Remember the unknown tenant apart from the
+				// known ones
+				putUnknown(key);
+
+				if (entries.remove(key, entry))
+					entry.evict();
+
+			} else {
+
+				evictIfRequired();
+			}
+
+			// A policy loaded by this request is fresh
+			return handler;
+		}
+
+		final long now = System.nanoTime();
+
+		entry.lastAccess = now;
+
+		if (now - entry.loadedAt - refreshInterval >= 0)
+			reload(tenant, key, entry);
+
+		return handler;
+	}
+
+
+	/**
+	 * Checks if the specified tenant was recently found unknown.
+	 *
+	 * @param key The cache key of the tenant.
+	 *
+	 * @return {@code true} if the tenant is known to be unknown.
+	 */
+	private boolean isUnknown(final SeededHash.Key key) {
+
+		Long since = unknown.get(key);
+
+		if (since == null)
+			return false;
+
+		if (System.nanoTime() - since - refreshInterval < 0)
+			return true;
+
+		// Expired, look the tenant up again
+		unknown.remove(key, since);
+		return false;
+	}
+
+
+	/**
+	 * Remembers the specified tenant as unknown. If the bound is reached
+	 * arbitrary unknown tenants are dropped, the seeded hash keys don't
+	 * let the dropped ones be chosen.
+	 *
+	 * @param key The cache key of the tenant.
+	 */
+	private void putUnknown(final SeededHash.Key key) {
+
+		unknown.put(key, System.nanoTime());
+
+		if (unknown.size() <= maxSize)
+			return;
+
+		Iterator<SeededHash.Key> it = unknown.keySet().iterator();
+
+		while (unknown.size() > maxSize && it.hasNext()) {
+
+			it.next();
+			it.remove();
+		}
+	}
+
+
+	/**
+	 * Evicts the least recently used tenant policies while the number of
+	 * loaded policies exceeds the bound. Pending loads are not counted.
+	 */
+	private void evictIfRequired() {
+
+		while (entries.size() > maxSize) {
+
+			SeededHash.Key eldestKey = null;
+			CachedPolicy eldest = null;
+
+			int loaded = 0;
+
+			for (Map.Entry<SeededHash.Key,CachedPolicy> en: entries.entrySet()) {
+
+				CachedPolicy entry = en.getValue();
+
+				if (! entry.isDone())
+					continue;
+
+				loaded++;
+
+				if (eldest == null || entry.lastAccess - eldest.lastAccess < 0) {
+
+					eldestKey = en.getKey();
+					eldest = entry;
+				}
+			}
+
+			if (loaded <= maxSize)
+				return;
+
+			if (entries.remove(eldestKey, eldest))
+				eldest.evict();
+		}
+	}
+
+
+	/**
+	 * Gets the policy of the specified tenant, loading it if it isn't
+	 * cached.
+	 *
+	 * @param tenant The tenant identifier. Must not be {@code null}.
+	 *
+	 * @return The tenant policy, {@code null} if the tenant is not known
+	 *         or its policy couldn't be loaded.
+	 */
+	public CORSConfiguration getConfiguration(final String tenant) {
+
+		CORSRequestHandler handler = getHandler(tenant);
+
+		return handler != null ? handler.getConfiguration() : null;
+	}
+
+
+	/**
+	 * Loads the policy properties of the specified tenant, merged with
+	 * the inherited properties.
+	 *
+	 * @param tenant The tenant identifier.
+	 *
+	 * @return The policy properties, {@code null} if the tenant is not
+	 *         known.
+	 *
+	 * @throws Exception If the policy couldn't be loaded.
+	 */
+	private Properties loadProperties(final String tenant)
+		throws Exception {
+
+		Properties overrides = source.getPolicyProperties(tenant);
+
+		if (overrides == null)
+			return null;
+
+		Properties props = new Properties();
+		props.putAll(baseProps);
+
+		for (String key: overrides.stringPropertyNames()) {
+
+			if (key.startsWith("cors.") && CORSConfiguration.isInheritedProperty(key))
+				props.setProperty(key, overrides.getProperty(key));
+		}
+
+		return props;
+	}
+
+
+	/**
+	 * Loads and compiles the policy of the specified tenant.
+	 *
+	 * @param tenant The tenant identifier.
+	 *
+	 * @return The request handler for the policy, {@code null} if the
+	 *         tenant is not known.
+	 *
+	 * @throws Exception If the policy couldn't be loaded or is invalid.
+	 */
+	private CORSRequestHandler load(final String tenant)
+		throws Exception {
+
+		Properties props = loadProperties(tenant);
+
+		if (props == null)
+			return null;
+
+		return new CORSRequestHandler(new CORSConfiguration(props, parent));
+	}
+
+
+	/**
+	 * Starts a background reload of the policy of the specified tenant,
+	 * unless one is already in progress.
+	 *
+	 * @param tenant The tenant identifier.
+	 * @param key    The cache key of the tenant.
+	 * @param entry  The current cache entry for the tenant.
+	 */
+	private void reload(final String tenant, final SeededHash.Key key, final CachedPolicy entry) {
+
+		if (! entry.reloading.compareAndSet(false, true))
+			return;
+
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+
+					CORSRequestHandler handler;
+
+					try {
+						Properties props = loadProperties(tenant);
+
+						CORSRequestHandler current = entry.getIfLoaded();
+
+						if (props != null && current != null && current.getConfiguration().isCreatedFrom(props)) {
+
+							// Unchanged, keep the handler, so the
+							// policy age for the adaptive max-age
+							// carries on
+							entry.loadedAt = System.nanoTime();
+							entry.reloading.set(false);
+							return;
+						}
+
+						handler = props != null ? new CORSRequestHandler(new CORSConfiguration(props, parent)) : null;
+
+					} catch (Exception e) {
+
+						LOG.warning("CORS Filter: Couldn't reload the policy of tenant " + tenant + ": " + e.getMessage());
+
+						// Retain the current policy, retry after
+						// another interval
+						entry.loadedAt = System.nanoTime();
+						entry.reloading.set(false);
+						return;
+					}
+
+					if (handler == null) {
+
+						// The tenant was removed
+						putUnknown(key);
+
+						if (entries.remove(key, entry))
+							entry.evict();
+
+						return;
+					}
+
+					CachedPolicy fresh = CachedPolicy.completed(handler);
+					fresh.lastAccess = entry.lastAccess;
+
+					// Replace only if not evicted in the meantime
+					if (entries.replace(key, entry, fresh))
+						entry.evict();
+					else
+						release(handler);
+				}
+			});
+
+		} catch (RejectedExecutionException e) {
+
+			// Queue full or shut down, retry on a later request
+			entry.reloading.set(false);
+		}
+	}
+
+
+	/**
+	 * Shuts down the policy of the specified request handler, if any.
+	 */
+	private static void release(final CORSRequestHandler handler) {
+
+		if (handler != null)
+			handler.getConfiguration().shutdown();
+	}
+
+
+	/**
+	 * Returns the number of cached tenants, including those being loaded
+	 * and excluding the unknown ones.
+	 *
+	 * @return The number of cached tenants.
+	 */
+	public int size() {
+
+		return entries.size();
+	}
+
+
+	/**
+	 * Removes all cached tenant policies. Policies which are still being
+	 * loaded are released once loaded.
+	 */
+	public void clear() {
+
+		for (Map.Entry<SeededHash.Key,CachedPolicy> en: entries.entrySet()) {
+
+			if (entries.remove(en.getKey(), en.getValue()))
+				en.getValue().evict();
+		}
+
+		unknown.clear();
+	}
+
+
+	/**
+	 * Stops the background reloads and releases the cached tenant
+	 * policies. Should be called when the cache is taken out of service.
+	 */
+	public void shutdown() {
+
+		executor.shutdownNow();
+		clear();
+	}
+}
@@ -0,0 +1,40 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Properties;
+
+
+/**
+ * Service provider interface for loading the CORS policies of tenants on
+ * demand, for example from a database, in deployments with too many
+ * tenants to configure them all up front.
+ *
+ * <p>The tenant policies are compiled on first use and cached by a
+ * {@link TenantPolicyCache}, which refreshes them in the background. The
+ * source is called for at most one load per tenant at a time, so
+ * implementations may block on I/O.
+ *
+ * <p>Implementations configured with the {@code cors.tenant.source}
+ * property must have a public no-argument constructor and be thread-safe.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public interface TenantPolicySource {
+
+
+	/**
+	 * Gets the CORS policy properties of the specified tenant. The
+	 * properties have the same keys as the top-level configuration, e.g.
+	 * {@code cors.allowOrigin}, and override its settings for the tenant.
+	 *
+	 * @param tenant The tenant identifier. Not {@code null}.
+	 *
+	 * @return The tenant policy properties, {@code null} if the tenant is
+	 *         not known and the top-level policy applies.
+	 *
+	 * @throws Exception If the policy couldn't be loaded. The previously
+	 *                   loaded policy, if any, is retained.
+	 */
+	Properties getPolicyProperties(final String tenant)
+		throws Exception;
+}
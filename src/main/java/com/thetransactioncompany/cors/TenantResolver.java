@@ -0,0 +1,152 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Locale;
+
+import javax.servlet.http.HttpServletRequest;
+
+
+/**
+ * Resolves the tenant identifier of an HTTP request, from a request
+ * header, a label of the server name or a segment of the request path.
+ *
+ * <p>The tenant identifier is attacker-controlled, so only identifiers of
+ * up to {@link #MAX_LENGTH} letters, digits, dots, hyphens and
+ * underscores are accepted.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class TenantResolver {
+
+
+	/**
+	 * The maximum length of a tenant identifier.
+	 */
+	static final int MAX_LENGTH = 128;
+
+
+	/**
+	 * The name of the tenant header, {@code null} if not used.
+	 */
+	private final String header;
+
+
+	/**
+	 * The index of the tenant label in the server name, counting from
+	 * the left, -1 if not used.
+	 */
+	private final int hostLabel;
+
+
+	/**
+	 * The index of the tenant segment in the request path, -1 if not
+	 * used.
+	 */
+	private final int pathSegment;
+
+
+	/**
+	 * Creates a new tenant resolver. Exactly one source of the tenant
+	 * identifier must be specified.
+	 *
+	 * @param header      The name of the tenant header, {@code null} if
+	 *                    not used.
+	 * @param hostLabel   The index of the tenant label in the server
+	 *                    name, counting from the left, -1 if not used.
+	 * @param pathSegment The index of the tenant segment in the request
+	 *                    path, -1 if not used.
+	 */
+	TenantResolver(final String header, final int hostLabel, final int pathSegment) {
+
+		this.header = header;
+		this.hostLabel = hostLabel;
+		this.pathSegment = pathSegment;
+	}
+
+
+	/**
+	 * Resolves the tenant identifier of the specified request.
+	 *
+	 * @param request The HTTP request. Must not be {@code null}.
+	 *
+	 * @return The tenant identifier, {@code null} if not found or
+	 *         invalid.
+	 */
+	String resolve(final HttpServletRequest request) {
+
+		String tenant;
+
+		if (header != null)
+			tenant = request.getHeader(header);
+		else if (hostLabel >= 0)
+			tenant = getPart(request.getServerName(), '.', hostLabel);
+		else if (pathSegment >= 0)
+			tenant = getPart(CORSFilter.getRequestPath(request), '/', pathSegment + 1);
+		else
+			tenant = null;
+
+		if (tenant == null || ! isValid(tenant))
+			return null;
+
+		return hostLabel >= 0 ? tenant.toLowerCase(Locale.ENGLISH) : tenant;
+	}
+
+
+	/**
+	 * Returns the part of the specified string at the specified index.
+	 *
+	 * @param s         The string, {@code null} if not available.
+	 * @param separator The part separator.
+	 * @param index     The part index.
+	 *
+	 * @return The part, {@code null} if not found or empty.
+	 */
+	static String getPart(final String s, final char separator, final int index) {
+
+		if (s == null)
+			return null;
+
+		int start = 0;
+
+		for (int i = 0; i < index; i++) {
+
+			start = s.indexOf(separator, start) + 1;
+
+			if (start == 0)
+				return null;
+		}
+
+		int end = s.indexOf(separator, start);
+
+		if (end < 0)
+			end = s.length();
+
+		return end > start ? s.substring(start, end) : null;
+	}
+
+
+	/**
+	 * Checks if the specified tenant identifier is valid.
+	 *
+	 * @param tenant The tenant identifier. Must not be {@code null}.
+	 *
+	 * @return {@code true} if valid, else {@code false}.
+	 */
+	static boolean isValid(final String tenant) {
+
+		final int len = tenant.length();
+
+		if (len == 0 || len > MAX_LENGTH)
+			return false;
+
+		for (int i = 0; i < len; i++) {
+
+			char c = tenant.charAt(i);
+
+			if (! ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '_'))
+				return false;
+		}
+
+		return true;
+	}
+}
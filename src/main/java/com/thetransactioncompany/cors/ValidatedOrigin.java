@@ -35,6 +35,18 @@ public class ValidatedOrigin extends Origin {
 	 */
 	private int port = -1;
 
+
+	/**
+	 * The registrable domain, {@code null} if not determined yet.
+	 */
+	private String registrableDomain;
+
+
+	/**
+	 * Set if the host has no registrable domain.
+	 */
+	private boolean noRegistrableDomain;
+
 	
 	/**
 	 * Creates a new validated origin.
@@ -137,4 +149,38 @@ public class ValidatedOrigin extends Origin {
 		
 		return s;
 	}
+
+
+	/**
+	 * Returns the registrable domain of the host, according to the
+	 * {@link PublicSuffixList#getDefault default public suffix list}.
+	 * A host under a top level domain which is not on the list has no
+	 * registrable domain, so an unknown public suffix is never taken for
+	 * a registrable domain.
+	 *
+	 * <p>Example:
+	 *
+	 * <pre>
+	 * https://app.example.co.uk =&gt; example.co.uk
+	 * https://co.uk =&gt; null
+	 * </pre>
+	 *
+	 * @return The registrable domain, {@code null} if the host is a
+	 *         public suffix, an IP address or under an unlisted top level
+	 *         domain.
+	 */
+	public String getRegistrableDomain() {
+
+		if (registrableDomain == null && ! noRegistrableDomain) {
+
+			String domain = PublicSuffixList.getDefault().getRegistrableDomain(host, true);
+
+			if (domain != null)
+				registrableDomain = domain;
+			else
+				noRegistrableDomain = true;
+		}
+
+		return registrableDomain;
+	}
 }
@@ -0,0 +1,225 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Bounded cache of {@link ValidatedOrigin validated origins}, keyed by the
+ * raw origin string, so that the URI parsing and IDN conversion of an
+ * origin are done once rather than on every request. Invalid origins are
+ * cached as well.
+ *
+ * <p>The cache has two generations. New entries go into the current
+ * generation; when it reaches half the maximum size it becomes the old
+ * generation and the previous old generation is dropped. Entries found in
+ * the old generation are promoted to the current one. Frequently seen
+ * origins thus stay cached, while the total size stays within about the
+ * maximum, regardless of how many distinct origins are looked up.
+ *
+ * <p>The origins are hashed with a {@link SeededHash seeded hash}, so
+ * crafted origins cannot collide in the cache. The cache is thread-safe and
+ * lookups don't block.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class ValidatedOriginCache {
+
+
+	/**
+	 * Hashes the origin strings, which are attacker-controlled.
+	 */
+	private final SeededHash hash = new SeededHash();
+
+
+	/**
+	 * The maximum size of a generation.
+	 */
+	private final int generationSize;
+
+
+	/**
+	 * The current generation. Values are validated origins or origin
+	 * exceptions.
+	 */
+	private volatile ConcurrentHashMap<SeededHash.Key,Object> current = new ConcurrentHashMap<SeededHash.Key,Object>();
+
+
+	/**
+	 * The old generation.
+	 */
+	private volatile ConcurrentHashMap<SeededHash.Key,Object> old = new ConcurrentHashMap<SeededHash.Key,Object>();
+
+
+	/**
+	 * The number of cache hits.
+	 */
+	private final AtomicLong hits = new AtomicLong();
+
+
+	/**
+	 * The number of cache misses.
+	 */
+	private final AtomicLong misses = new AtomicLong();
+
+
+	/**
+	 * Creates a new validated origin cache.
+	 *
+	 * @param maxSize The maximum number of cached origins. Must be at
+	 *                least 2.
+	 */
+	public ValidatedOriginCache(final int maxSize) {
+
+		if (maxSize < 2)
+			throw new IllegalArgumentException("The maximum cache size must be at least 2");
+
+		generationSize = maxSize / 2;
+	}
+
+
+	/**
+	 * Validates the specified origin, returning the cached result if
+	 * available.
+	 *
+	 * @param origin The origin. Must not be {@code null}.
+	 *
+	 * @return The validated origin.
+	 *
+	 * @throws OriginException If the origin is invalid.
+	 */
+	public ValidatedOrigin validate(final Origin origin)
+		throws OriginException {
+
+		if (origin instanceof ValidatedOrigin)
+			return (ValidatedOrigin)origin;
+
+		final SeededHash.Key key = hash.key(origin.toString());
+
+		Object result = current.get(key);
+
+		if (result == null) {
+
+			result = old.get(key);
+
+			if (result != null) {
+
+				// Promote
+				put(key, result);
+
+			} else {
+
+				misses.incrementAndGet();
+
+				try {
+					result = origin.validate();
+
+				} catch (OriginException e) {
+
+					result = e;
+				}
+
+				put(key, result);
+
+				return unwrap(result);
+			}
+		}
+
+		hits.incrementAndGet();
+
+		return unwrap(result);
+	}
+
+
+	/**
+	 * Returns the specified cached result.
+	 *
+	 * @param result The cached result.
+	 *
+	 * @return The validated origin.
+	 *
+	 * @throws OriginException If the cached result is an exception, 
+	 *                         which is rethrown.
+	 */
+	private static ValidatedOrigin unwrap(final Object result)
+		throws OriginException {
+
+		if (result instanceof OriginException)
+			throw (OriginException)result;
+
+		return (ValidatedOrigin)result;
+	}
+
+
+	/**
+	 * Puts the specified result into the current generation, starting a
+	 * new generation if it is full.
+	 *
+	 * @param key    The origin key.
+	 * @param result The validated origin or origin exception.
+	 */
+	private void put(final SeededHash.Key key, final Object result) {
+
+		ConcurrentHashMap<SeededHash.Key,Object> generation = current;
+
+		if (generation.size() >= generationSize) {
+
+			synchronized (this) {
+
+				if (current == generation) {
+					old = generation;
+					current = new ConcurrentHashMap<SeededHash.Key,Object>();
+				}
+
+				generation = current;
+			}
+		}
+
+		generation.put(key, result);
+	}
+
+
+	/**
+	 * Returns the number of cached origins.
+	 *
+	 * @return The number of cached origins, may include origins present
+	 *         in both generations.
+	 */
+	public int size() {
+
+		return current.size() + old.size();
+	}
+
+
+	/**
+	 * Returns the number of cache hits.
+	 *
+	 * @return The number of cache hits.
+	 */
+	public long getHitCount() {
+
+		return hits.get();
+	}
+
+
+	/**
+	 * Returns the number of cache misses.
+	 *
+	 * @return The number of cache misses.
+	 */
+	public long getMissCount() {
+
+		return misses.get();
+	}
+
+
+	/**
+	 * Removes all cached origins.
+	 */
+	public synchronized void clear() {
+
+		current = new ConcurrentHashMap<SeededHash.Key,Object>();
+		old = new ConcurrentHashMap<SeededHash.Key,Object>();
+	}
+}
@@ -0,0 +1,238 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import javax.servlet.http.HttpServletResponse;
+
+
+/**
+ * Merging of {@code Vary} header values into a single header.
+ *
+ * <p>The common request header names are represented as bits of a small
+ * fixed token set, so merging is a bitwise OR and the merged values are
+ * rendered from a pre-computed table. Other header names are kept in a
+ * set which is only allocated when such a token occurs.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class VaryHeader {
+
+
+	/**
+	 * The known tokens, by bit number.
+	 */
+	private static final String[] TOKENS = {
+		HeaderName.ORIGIN,
+		HeaderName.ACCESS_CONTROL_REQUEST_METHOD,
+		HeaderName.ACCESS_CONTROL_REQUEST_HEADERS,
+		"Accept-Encoding",
+		"Accept",
+		"Accept-Language",
+		"Authorization",
+		"Cookie"
+	};
+
+
+	/**
+	 * The {@code Origin} token bit.
+	 */
+	static final int ORIGIN = 1;
+
+
+	/**
+	 * The {@code Access-Control-Request-Method} token bit.
+	 */
+	static final int REQUEST_METHOD = 1 << 1;
+
+
+	/**
+	 * The {@code Access-Control-Request-Headers} token bit.
+	 */
+	static final int REQUEST_HEADERS = 1 << 2;
+
+
+	/**
+	 * The {@code *} token bit, which subsumes all other tokens.
+	 */
+	static final int ANY = 1 << TOKENS.length;
+
+
+	/**
+	 * The rendered values of the known token combinations, by bitmask.
+	 */
+	private static final String[] RENDERED = new String[1 << TOKENS.length];
+
+
+	static {
+		for (int mask = 0; mask < RENDERED.length; mask++) {
+
+			StringBuilder sb = new StringBuilder();
+
+			for (int i = 0; i < TOKENS.length; i++) {
+
+				if ((mask & (1 << i)) == 0)
+					continue;
+
+				if (sb.length() > 0)
+					sb.append(", ");
+
+				sb.append(TOKENS[i]);
+			}
+
+			RENDERED[mask] = sb.toString();
+		}
+	}
+
+
+	/**
+	 * Returns the bit of the specified token.
+	 *
+	 * @param value The header value.
+	 * @param start The token start index, inclusive.
+	 * @param end   The token end index, exclusive.
+	 *
+	 * @return The token bit, 0 if not a known token.
+	 */
+	private static int bitOf(final String value, final int start, final int end) {
+
+		final int len = end - start;
+
+		if (len == 1 && value.charAt(start) == '*')
+			return ANY;
+
+		for (int i = 0; i < TOKENS.length; i++) {
+
+			if (TOKENS[i].length() == len && value.regionMatches(true, start, TOKENS[i], 0, len))
+				return 1 << i;
+		}
+
+		return 0;
+	}
+
+
+	/**
+	 * Parses the specified {@code Vary} header value.
+	 *
+	 * @param value  The header value, {@code null} if none.
+	 * @param others Receives the tokens which are not in the known token
+	 *               set. Must not be {@code null}.
+	 *
+	 * @return The bitmask of the known tokens.
+	 */
+	static int parse(final String value, final Set<String> others) {
+
+		if (value == null)
+			return 0;
+
+		int mask = 0;
+
+		final int len = value.length();
+
+		int pos = 0;
+
+		while (pos < len) {
+
+			int end = value.indexOf(',', pos);
+
+			if (end < 0)
+				end = len;
+
+			int start = pos;
+			int stop = end;
+
+			while (start < stop && value.charAt(start) <= ' ')
+				start++;
+
+			while (stop > start && value.charAt(stop - 1) <= ' ')
+				stop--;
+
+			if (stop > start) {
+
+				int bit = bitOf(value, start, stop);
+
+				if (bit != 0)
+					mask |= bit;
+				else
+					others.add(value.substring(start, stop));
+			}
+
+			pos = end + 1;
+		}
+
+		return mask;
+	}
+
+
+	/**
+	 * Renders a {@code Vary} header value.
+	 *
+	 * @param mask   The bitmask of the known tokens.
+	 * @param others The other tokens, {@code null} if none.
+	 *
+	 * @return The header value, empty if there are no tokens.
+	 */
+	static String render(final int mask, final Collection<String> others) {
+
+		if ((mask & ANY) != 0)
+			return "*";
+
+		String known = RENDERED[mask];
+
+		if (others == null || others.isEmpty())
+			return known;
+
+		StringBuilder sb = new StringBuilder(known);
+
+		for (String token: others) {
+
+			if (sb.length() > 0)
+				sb.append(", ");
+
+			sb.append(token);
+		}
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * Adds the specified known tokens to the {@code Vary} header of the
+	 * specified response, merging them with any present {@code Vary}
+	 * headers into a single header.
+	 *
+	 * @param response The HTTP response. Must not be {@code null}.
+	 * @param tokens   The bitmask of the known tokens to add.
+	 */
+	static void add(final HttpServletResponse response, final int tokens) {
+
+		if (! response.containsHeader(HeaderName.VARY)) {
+
+			response.setHeader(HeaderName.VARY, RENDERED[tokens]);
+			return;
+		}
+
+		Set<String> others = new LinkedHashSet<String>();
+
+		int mask = tokens;
+
+		Collection<String> values = response.getHeaders(HeaderName.VARY);
+
+		if (values != null) {
+
+			for (String value: values)
+				mask |= parse(value, others);
+		}
+
+		response.setHeader(HeaderName.VARY, render(mask, others));
+	}
+
+
+	/**
+	 * Prevents public instantiation.
+	 */
+	private VaryHeader() {
+
+	}
+}
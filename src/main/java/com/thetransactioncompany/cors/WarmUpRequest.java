@@ -0,0 +1,394 @@
+package com.thetransactioncompany.cors;
+
+
+import java.io.BufferedReader;
+import java.security.Principal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.Part;
+
+
+/**
+ * Synthetic HTTP servlet request for the filter warm-up, with a fixed
+ * method and headers. A plain class rather than a dynamic proxy, so the
+ * warm-up doesn't leave proxy types in the JIT profiles of the request
+ * processing code.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class WarmUpRequest implements HttpServletRequest {
+
+
+	/**
+	 * The HTTP method.
+	 */
+	private final String method;
+
+
+	/**
+	 * The request headers.
+	 */
+	private final Map<String,String> headers;
+
+
+	/**
+	 * Creates a new synthetic request.
+	 *
+	 * @param method  The HTTP method. Must not be {@code null}.
+	 * @param headers The request headers. Must not be {@code null}.
+	 */
+	WarmUpRequest(final String method, final Map<String,String> headers) {
+
+		this.method = method;
+		this.headers = headers;
+	}
+
+
+	@Override
+	public String getMethod() {
+		return method;
+	}
+
+	@Override
+	public String getHeader(final String name) {
+		return headers.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getHeaders(final String name) {
+
+		String value = headers.get(name);
+
+		if (value == null)
+			return Collections.enumeration(Collections.<String>emptyList());
+
+		return Collections.enumeration(Collections.singletonList(value));
+	}
+
+	@Override
+	public Enumeration<String> getHeaderNames() {
+		return Collections.enumeration(headers.keySet());
+	}
+
+	@Override
+	public String getScheme() {
+		return "http";
+	}
+
+	@Override
+	public String getServerName() {
+		return "localhost";
+	}
+
+	@Override
+	public int getServerPort() {
+		return 80;
+	}
+
+	@Override
+	public String getRequestURI() {
+		return "/";
+	}
+
+	@Override
+	public String getContextPath() {
+		return "";
+	}
+
+	@Override
+	public String getServletPath() {
+		return "/";
+	}
+
+	@Override
+	public String getPathInfo() {
+		return null;
+	}
+
+	@Override
+	public String getAuthType() {
+		return null;
+	}
+
+	@Override
+	public Cookie[] getCookies() {
+		return null;
+	}
+
+	@Override
+	public long getDateHeader(final String name) {
+		return -1L;
+	}
+
+	@Override
+	public int getIntHeader(final String name) {
+		return -1;
+	}
+
+	@Override
+	public String getPathTranslated() {
+		return null;
+	}
+
+	@Override
+	public String getQueryString() {
+		return null;
+	}
+
+	@Override
+	public String getRemoteUser() {
+		return null;
+	}
+
+	@Override
+	public boolean isUserInRole(final String role) {
+		return false;
+	}
+
+	@Override
+	public Principal getUserPrincipal() {
+		return null;
+	}
+
+	@Override
+	public String getRequestedSessionId() {
+		return null;
+	}
+
+	@Override
+	public StringBuffer getRequestURL() {
+		return new StringBuffer("http://localhost/");
+	}
+
+	@Override
+	public HttpSession getSession(final boolean create) {
+		return null;
+	}
+
+	@Override
+	public HttpSession getSession() {
+		return null;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdValid() {
+		return false;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromCookie() {
+		return false;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromURL() {
+		return false;
+	}
+
+	@Override
+	@Deprecated
+	public boolean isRequestedSessionIdFromUrl() {
+		return false;
+	}
+
+	@Override
+	public boolean authenticate(final HttpServletResponse response) {
+		return false;
+	}
+
+	@Override
+	public void login(final String username, final String password) {
+	}
+
+	@Override
+	public void logout() {
+	}
+
+	@Override
+	public Collection<Part> getParts() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Part getPart(final String name) {
+		return null;
+	}
+
+	@Override
+	public Object getAttribute(final String name) {
+		return null;
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		return Collections.enumeration(Collections.<String>emptyList());
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		return null;
+	}
+
+	@Override
+	public void setCharacterEncoding(final String env) {
+	}
+
+	@Override
+	public int getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public String getContentType() {
+		return null;
+	}
+
+	@Override
+	public ServletInputStream getInputStream() {
+		return null;
+	}
+
+	@Override
+	public String getParameter(final String name) {
+		return null;
+	}
+
+	@Override
+	public Enumeration<String> getParameterNames() {
+		return Collections.enumeration(Collections.<String>emptyList());
+	}
+
+	@Override
+	public String[] getParameterValues(final String name) {
+		return null;
+	}
+
+	@Override
+	public Map<String,String[]> getParameterMap() {
+		return Collections.emptyMap();
+	}
+
+	@Override
+	public String getProtocol() {
+		return "HTTP/1.1";
+	}
+
+	@Override
+	public BufferedReader getReader() {
+		return null;
+	}
+
+	@Override
+	public String getRemoteAddr() {
+		return "127.0.0.1";
+	}
+
+	@Override
+	public String getRemoteHost() {
+		return "localhost";
+	}
+
+	@Override
+	public void setAttribute(final String name, final Object o) {
+	}
+
+	@Override
+	public void removeAttribute(final String name) {
+	}
+
+	@Override
+	public Locale getLocale() {
+		return Locale.ENGLISH;
+	}
+
+	@Override
+	public Enumeration<Locale> getLocales() {
+		return Collections.enumeration(Collections.singletonList(Locale.ENGLISH));
+	}
+
+	@Override
+	public boolean isSecure() {
+		return false;
+	}
+
+	@Override
+	public RequestDispatcher getRequestDispatcher(final String path) {
+		return null;
+	}
+
+	@Override
+	@Deprecated
+	public String getRealPath(final String path) {
+		return null;
+	}
+
+	@Override
+	public int getRemotePort() {
+		return 0;
+	}
+
+	@Override
+	public String getLocalName() {
+		return "localhost";
+	}
+
+	@Override
+	public String getLocalAddr() {
+		return "127.0.0.1";
+	}
+
+	@Override
+	public int getLocalPort() {
+		return 80;
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return null;
+	}
+
+	@Override
+	public AsyncContext startAsync() {
+		throw new IllegalStateException("Not supported");
+	}
+
+	@Override
+	public AsyncContext startAsync(final ServletRequest request, final ServletResponse response) {
+		throw new IllegalStateException("Not supported");
+	}
+
+	@Override
+	public boolean isAsyncStarted() {
+		return false;
+	}
+
+	@Override
+	public boolean isAsyncSupported() {
+		return false;
+	}
+
+	@Override
+	public AsyncContext getAsyncContext() {
+		throw new IllegalStateException("Not supported");
+	}
+
+	@Override
+	public DispatcherType getDispatcherType() {
+		return DispatcherType.REQUEST;
+	}
+}
@@ -0,0 +1,224 @@
+package com.thetransactioncompany.cors;
+
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+
+/**
+ * Synthetic HTTP servlet response for the filter warm-up, which discards
+ * the headers and output. A plain class rather than a dynamic proxy, so
+ * the warm-up doesn't leave proxy types in the JIT profiles of the request
+ * processing code.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class WarmUpResponse implements HttpServletResponse {
+
+
+	/**
+	 * Writer which discards all output.
+	 */
+	private static final class NullWriter extends Writer {
+
+
+		@Override
+		public void write(final char[] cbuf, final int off, final int len) {
+			// discard
+		}
+
+
+		@Override
+		public void flush() {
+			// do nothing
+		}
+
+
+		@Override
+		public void close() {
+			// do nothing
+		}
+	}
+
+
+	/**
+	 * The response status.
+	 */
+	private int status = SC_OK;
+
+
+	@Override
+	public void addCookie(final Cookie cookie) {
+	}
+
+	@Override
+	public boolean containsHeader(final String name) {
+		return false;
+	}
+
+	@Override
+	public String encodeURL(final String url) {
+		return url;
+	}
+
+	@Override
+	public String encodeRedirectURL(final String url) {
+		return url;
+	}
+
+	@Override
+	@Deprecated
+	public String encodeUrl(final String url) {
+		return url;
+	}
+
+	@Override
+	@Deprecated
+	public String encodeRedirectUrl(final String url) {
+		return url;
+	}
+
+	@Override
+	public void sendError(final int sc, final String msg) {
+		status = sc;
+	}
+
+	@Override
+	public void sendError(final int sc) {
+		status = sc;
+	}
+
+	@Override
+	public void sendRedirect(final String location) {
+	}
+
+	@Override
+	public void setDateHeader(final String name, final long date) {
+	}
+
+	@Override
+	public void addDateHeader(final String name, final long date) {
+	}
+
+	@Override
+	public void setHeader(final String name, final String value) {
+	}
+
+	@Override
+	public void addHeader(final String name, final String value) {
+	}
+
+	@Override
+	public void setIntHeader(final String name, final int value) {
+	}
+
+	@Override
+	public void addIntHeader(final String name, final int value) {
+	}
+
+	@Override
+	public void setStatus(final int sc) {
+		status = sc;
+	}
+
+	@Override
+	@Deprecated
+	public void setStatus(final int sc, final String sm) {
+		status = sc;
+	}
+
+	@Override
+	public int getStatus() {
+		return status;
+	}
+
+	@Override
+	public String getHeader(final String name) {
+		return null;
+	}
+
+	@Override
+	public Collection<String> getHeaders(final String name) {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Collection<String> getHeaderNames() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		return "ISO-8859-1";
+	}
+
+	@Override
+	public String getContentType() {
+		return null;
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() {
+		throw new IllegalStateException("Not supported");
+	}
+
+	@Override
+	public PrintWriter getWriter() {
+		return new PrintWriter(new NullWriter());
+	}
+
+	@Override
+	public void setCharacterEncoding(final String charset) {
+	}
+
+	@Override
+	public void setContentLength(final int len) {
+	}
+
+	@Override
+	public void setContentType(final String type) {
+	}
+
+	@Override
+	public void setBufferSize(final int size) {
+	}
+
+	@Override
+	public int getBufferSize() {
+		return 0;
+	}
+
+	@Override
+	public void flushBuffer() {
+	}
+
+	@Override
+	public void resetBuffer() {
+	}
+
+	@Override
+	public boolean isCommitted() {
+		return false;
+	}
+
+	@Override
+	public void reset() {
+		status = SC_OK;
+	}
+
+	@Override
+	public void setLocale(final Locale loc) {
+	}
+
+	@Override
+	public Locale getLocale() {
+		return Locale.ENGLISH;
+	}
+}
@@ -2,6 +2,7 @@ package com.thetransactioncompany.cors.autoreconf;
 
 
 import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
@@ -12,6 +13,7 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 
+import com.thetransactioncompany.cors.CORSConfiguration;
 import com.thetransactioncompany.cors.CORSConfigurationException;
 import com.thetransactioncompany.cors.CORSConfigurationLoader;
 import com.thetransactioncompany.cors.CORSFilter;
@@ -22,6 +24,15 @@ import com.thetransactioncompany.cors.CORSFilter;
  * the configuration file and reconfigure itself. The configuration file will
  * be checked the next time the filter is invoked and the poll interval has
  * elapsed since the last check.
+ *
+ * <p>The origins added and removed at runtime through the
+ * {@link CORSFilter#getOriginRegistry origin registry} are retained on
+ * reload, as long as {@code cors.allowOrigin} is unchanged. If it changes
+ * the registry is rebuilt from the new value.
+ *
+ * <p>Each new filter is {@link CORSFilter#warmUp warmed up} before it is
+ * put in service, if the configuration enables it. During a reload the
+ * requests are served by the previous filter.
  */
 public class AutoReconfigurableCORSFilter implements Filter {
 
@@ -32,6 +43,12 @@ public class AutoReconfigurableCORSFilter implements Filter {
 	private static final Logger LOG = LogManager.getLogManager().getLogger("");
 
 
+	/**
+	 * Serialises the reloads.
+	 */
+	private static final ReentrantLock RELOAD_LOCK = new ReentrantLock();
+
+
 	/**
 	 * The current CORS filter.
 	 */
@@ -54,8 +71,22 @@ public class AutoReconfigurableCORSFilter implements Filter {
 	public void init(final FilterConfig filterConfig)
 		throws ServletException {
 
-		loader = new CORSConfigurationLoader(filterConfig);
-		watcher = new CORSConfigurationFileWatcher(filterConfig);
+		init(new CORSConfigurationLoader(filterConfig), new CORSConfigurationFileWatcher(filterConfig));
+	}
+
+
+	/**
+	 * Initialises the filter with the specified configuration loader and
+	 * watcher.
+	 *
+	 * @param loader  The configuration loader. Must not be {@code null}.
+	 * @param watcher The configuration watcher. Must not be
+	 *                {@code null}.
+	 */
+	void init(final CORSConfigurationLoader loader, final CORSConfigurationWatcher watcher) {
+
+		this.loader = loader;
+		this.watcher = watcher;
 		watcher.start();
 	}
 
@@ -69,8 +100,14 @@ public class AutoReconfigurableCORSFilter implements Filter {
 
 		if (watcher.reloadRequired() || filter == null) {
 
-			synchronized (AutoReconfigurableCORSFilter.class) {
+			// Wait only for the first filter, else serve the current
+			// one while another thread reloads
+			if (filter == null)
+				RELOAD_LOCK.lock();
+			else if (! RELOAD_LOCK.tryLock())
+				return filter;
 
+			try {
 				if (watcher.reloadRequired() || filter == null) {
 
 					try {
@@ -80,8 +117,14 @@ public class AutoReconfigurableCORSFilter implements Filter {
 							LOG.info("CORS Filter: Initiated re-configuration");
 						}
 
-						final Filter oldFilter = filter;
-						filter = new CORSFilter(loader.load());
+						final CORSFilter oldFilter = filter;
+
+						// Carry the runtime origin registry over
+						CORSConfiguration previous = oldFilter != null ? oldFilter.getConfiguration() : null;
+
+						CORSFilter newFilter = new CORSFilter(loader.load(previous));
+						newFilter.warmUp();
+						filter = newFilter;
 						if (oldFilter != null) {
 							oldFilter.destroy();
 						}
@@ -91,6 +134,8 @@ public class AutoReconfigurableCORSFilter implements Filter {
 						LOG.severe("CORS Filter: Failed to instantiate new CORS filter: " + e.getMessage());
 					}
 				}
+			} finally {
+				RELOAD_LOCK.unlock();
 			}
 		}
 		return filter;
@@ -67,13 +67,5 @@
  *         </ul>
  *     </li>
  * </ul>
- * 
- * 
- * <p>Package dependencies:
- *
- * <ul>
- *     <li>{@code com.thetransactioncompany.util} provides parsing of the filter
- *         init parameters (included in the CORS filter distribution).</li>
- * </ul>
  */
 package com.thetransactioncompany.cors;
@@ -0,0 +1,136 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the adaptive preflight max-age.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class AdaptiveMaxAgeTest extends TestCase {
+
+
+	public void testFreshPolicy() {
+
+		long now = System.nanoTime();
+
+		AdaptiveMaxAge adaptive = new AdaptiveMaxAge(now);
+
+		assertEquals(0, adaptive.getStep("https://example.com", 600, now));
+		assertEquals(0, adaptive.getStep("https://example.com", 600, now));
+		assertEquals(0, adaptive.getStep("https://example.com", 600, now + TimeUnit.SECONDS.toNanos(10)));
+	}
+
+
+	public void testStablePolicy() {
+
+		long now = System.nanoTime();
+
+		// Stable for 4 * 600 * 8 seconds
+		AdaptiveMaxAge adaptive = new AdaptiveMaxAge(now - TimeUnit.SECONDS.toNanos(4 * 600 * 8));
+
+		// First preflight of the origin
+		assertEquals(0, adaptive.getStep("https://example.com", 600, now));
+
+		// Repeated preflight
+		assertEquals(3, adaptive.getStep("https://example.com", 600, now));
+
+		// Another origin starts over
+		assertEquals(0, adaptive.getStep("https://other.com", 600, now));
+	}
+
+
+	public void testCountPreflight() {
+
+		long now = System.nanoTime();
+
+		AdaptiveMaxAge adaptive = new AdaptiveMaxAge(now);
+
+		assertEquals(1, adaptive.countPreflight("https://example.com", now));
+		assertEquals(2, adaptive.countPreflight("https://example.com", now));
+
+		for (int i = 0; i < 300; i++)
+			adaptive.countPreflight("https://example.com", now);
+
+		assertEquals(255, adaptive.countPreflight("https://example.com", now));
+
+		// Halved after the decay interval
+		assertEquals(128, adaptive.countPreflight("https://example.com", now + AdaptiveMaxAge.DECAY_INTERVAL + 1));
+	}
+
+
+	public void testSteps() {
+
+		CORSResponseHeaders headers = new CORSResponseHeaders(true, false, Collections.<String>emptySet(), 600, 7200);
+
+		assertEquals("600", headers.maxAge);
+		assertEquals(600, headers.maxAgeSeconds);
+		assertEquals(5, headers.maxAgeSteps.length);
+		assertEquals("600", headers.maxAgeSteps[0]);
+		assertEquals("1200", headers.maxAgeSteps[1]);
+		assertEquals("2400", headers.maxAgeSteps[2]);
+		assertEquals("4800", headers.maxAgeSteps[3]);
+		assertEquals("7200", headers.maxAgeSteps[4]);
+
+		assertNull(new CORSResponseHeaders(true, false, Collections.<String>emptySet(), 600, 0).maxAgeSteps);
+		assertNull(new CORSResponseHeaders(true, false, Collections.<String>emptySet(), -1, 7200).maxAgeSteps);
+	}
+
+
+	public void testPreflight()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.maxAge", "600");
+		props.setProperty("cors.maxAge.adaptive", "true");
+		props.setProperty("cors.maxAge.limit", "7200");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+		assertTrue(config.adaptiveMaxAge);
+		assertEquals(7200, config.adaptiveMaxAgeLimit);
+
+		CORSRequestHandler handler = new CORSRequestHandler(config);
+
+		MockServletRequest request = new MockServletRequest();
+		request.setMethod("OPTIONS");
+		request.setHeader("Origin", "http://example.com");
+		request.setHeader("Access-Control-Request-Method", "POST");
+
+		// Just loaded policy
+		for (int i = 0; i < 3; i++) {
+			MockServletResponse response = new MockServletResponse();
+			handler.handlePreflightRequest(request, response);
+			assertEquals("600", response.getHeader("Access-Control-Max-Age"));
+		}
+	}
+
+
+	public void testConfigErrors() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.maxAge.adaptive", "true");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("The property cors.maxAge.adaptive requires a positive cors.maxAge", e.getMessage());
+		}
+
+		props.setProperty("cors.maxAge", "600");
+		props.setProperty("cors.maxAge.limit", "60");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("The property cors.maxAge.limit must not be less than cors.maxAge", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.thetransactioncompany.cors;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the bloom filter.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class BloomFilterTest extends TestCase {
+
+
+	public void testNoFalseNegatives() {
+
+		BloomFilter filter = new BloomFilter(1000);
+
+		for (int i = 0; i < 1000; i++)
+			filter.add("https://bot" + i + ".example.com");
+
+		for (int i = 0; i < 1000; i++)
+			assertTrue(filter.mightContain("https://bot" + i + ".example.com"));
+	}
+
+
+	public void testFalsePositiveRate() {
+
+		BloomFilter filter = new BloomFilter(1000);
+
+		for (int i = 0; i < 1000; i++)
+			filter.add("https://bot" + i + ".example.com");
+
+		int falsePositives = 0;
+
+		for (int i = 0; i < 10000; i++) {
+
+			if (filter.mightContain("https://other" + i + ".example.org"))
+				falsePositives++;
+		}
+
+		assertTrue("False positives: " + falsePositives, falsePositives < 500);
+	}
+
+
+	public void testEmpty() {
+
+		BloomFilter filter = new BloomFilter(0);
+
+		assertFalse(filter.mightContain("https://example.com"));
+		assertFalse(filter.mightContain(""));
+	}
+}
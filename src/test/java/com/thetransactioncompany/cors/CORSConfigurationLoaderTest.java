@@ -1,6 +1,11 @@
 package com.thetransactioncompany.cors;
 
 
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
 import com.thetransactioncompany.cors.environment.MockEnvironment;
 import junit.framework.TestCase;
 
@@ -61,4 +66,71 @@ public class CORSConfigurationLoaderTest extends TestCase {
 		
 		assertEquals(3600, c.maxAge);
 	}
+
+
+	public void testHostPolicyDirectory()
+		throws Exception {
+
+		MockFilterConfig filterConfig = new MockFilterConfig();
+		filterConfig.setInitParameter("cors.allowOrigin", "http://example.com");
+		filterConfig.setInitParameter("cors.hostPolicyDirectory", "/cors-hosts");
+		filterConfig.setInitParameter("cors.policy.brand-b.maxAge", "60");
+
+		CORSConfigurationLoader configLoader = new CORSConfigurationLoader(filterConfig);
+		configLoader.setEnvironment(new MockEnvironment());
+
+		CORSConfiguration c = configLoader.load();
+
+		assertEquals(2, c.policies.size());
+
+		CORSPolicy brandA = c.policies.get("brand-a_com");
+		assertEquals(Collections.singleton("brand-a.com"), brandA.getHostNames());
+		assertTrue(brandA.getConfiguration().isAllowedOrigin(new Origin("https://shop.brand-a.com")));
+		assertFalse(brandA.getConfiguration().isAllowedOrigin(new Origin("http://example.com")));
+		assertFalse(brandA.getConfiguration().supportsCredentials);
+
+		CORSPolicy brandB = c.policies.get("brand-b");
+		assertEquals(Collections.singleton("*.brand-b.com"), brandB.getHostNames());
+		assertTrue(brandB.getConfiguration().isAllowedOrigin(new Origin("https://app.brand-b.com")));
+		assertTrue(brandB.getConfiguration().supportsCredentials);
+
+		// Explicit policy property takes precedence over the file
+		assertEquals(60, brandB.getConfiguration().maxAge);
+
+		c.shutdown();
+	}
+
+
+	public void testHostPolicyFileSystemDirectory()
+		throws Exception {
+
+		MockFilterConfig filterConfig = new MockFilterConfig();
+		filterConfig.setInitParameter("cors.hostPolicyDirectory", new File("src/test/resources/cors-hosts").getAbsolutePath());
+
+		CORSConfigurationLoader configLoader = new CORSConfigurationLoader(filterConfig);
+		configLoader.setEnvironment(new MockEnvironment());
+
+		CORSConfiguration c = configLoader.load();
+
+		assertEquals(new HashSet<String>(Arrays.asList("brand-a_com", "brand-b")), c.policies.keySet());
+
+		c.shutdown();
+	}
+
+
+	public void testMissingHostPolicyDirectory() {
+
+		MockFilterConfig filterConfig = new MockFilterConfig();
+		filterConfig.setInitParameter("cors.hostPolicyDirectory", "/no-such-dir");
+
+		CORSConfigurationLoader configLoader = new CORSConfigurationLoader(filterConfig);
+		configLoader.setEnvironment(new MockEnvironment());
+
+		try {
+			configLoader.load();
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("No such directory: /no-such-dir", e.getMessage());
+		}
+	}
 }
@@ -0,0 +1,120 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the CORS filter request dispatch.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class CORSFilterTest extends TestCase {
+
+
+	private static final FilterChain NO_OP_CHAIN = new FilterChain() {
+		@Override
+		public void doFilter(ServletRequest request, ServletResponse response) {
+			// no-op
+		}
+	};
+
+
+	private static MockServletRequest createPreflight(final String origin) {
+
+		MockServletRequest request = new MockServletRequest();
+		request.setMethod("OPTIONS");
+		request.setHeader("Origin", origin);
+		request.setHeader("Access-Control-Request-Method", "POST");
+		return request;
+	}
+
+
+	public void testPreflightDefaultStatus()
+		throws Exception {
+
+		CORSFilter filter = new CORSFilter(new CORSConfiguration(new Properties()));
+
+		MockServletResponse response = new MockServletResponse();
+		filter.doFilter(createPreflight("http://example.com"), response, NO_OP_CHAIN);
+
+		assertEquals(200, response.getStatus());
+		assertEquals(-1, response.getContentLength());
+		assertFalse(response.isCommitted());
+	}
+
+
+	public void testPreflightNoContent()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+		props.setProperty("cors.preflightNoContent", "true");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+		assertTrue(config.preflightNoContent);
+
+		CORSFilter filter = new CORSFilter(config);
+
+		MockServletResponse response = new MockServletResponse();
+		filter.doFilter(createPreflight("http://example.com"), response, NO_OP_CHAIN);
+
+		assertEquals(204, response.getStatus());
+		assertEquals(0, response.getContentLength());
+		assertTrue(response.isCommitted());
+		assertEquals("http://example.com", response.getHeader("Access-Control-Allow-Origin"));
+
+		// Denied preflights are not affected
+		response = new MockServletResponse();
+		filter.doFilter(createPreflight("http://other.com"), response, NO_OP_CHAIN);
+
+		assertEquals(403, response.getStatus());
+		assertFalse(response.isCommitted());
+	}
+
+
+	public void testSetConfigurationReleasesPrevious()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+
+		CORSConfiguration oldConfig = new CORSConfiguration(props);
+
+		CORSFilter filter = new CORSFilter(oldConfig);
+
+		props.setProperty("cors.allowOrigin", "http://other.com");
+
+		CORSConfiguration newConfig = new CORSConfiguration(props);
+
+		filter.setConfiguration(newConfig);
+
+		assertSame(newConfig, filter.getConfiguration());
+		assertSame(newConfig.getOriginRegistry(), filter.getOriginRegistry());
+
+		// The previous configuration was shut down
+		try {
+			oldConfig.getOriginRegistry().add(new Origin("http://tenant.com"), 1, TimeUnit.HOURS);
+			fail();
+		} catch (IllegalStateException e) {
+			// ok
+		}
+
+		MockServletResponse response = new MockServletResponse();
+		filter.doFilter(createPreflight("http://other.com"), response, NO_OP_CHAIN);
+		assertEquals("http://other.com", response.getHeader("Access-Control-Allow-Origin"));
+
+		// Setting the same configuration again doesn't shut it down
+		filter.setConfiguration(newConfig);
+		newConfig.getOriginRegistry().add(new Origin("http://tenant.com"), 1, TimeUnit.HOURS);
+
+		filter.destroy();
+	}
+}
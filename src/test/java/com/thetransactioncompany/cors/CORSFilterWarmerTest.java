@@ -0,0 +1,154 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Properties;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the CORS filter warmer.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class CORSFilterWarmerTest extends TestCase {
+
+
+	private static final FilterChain NO_OP_CHAIN = new FilterChain() {
+		@Override
+		public void doFilter(ServletRequest request, ServletResponse response) {
+			// no-op
+		}
+	};
+
+
+	public void testRunWithDefaultConfiguration()
+		throws Exception {
+
+		CORSFilter filter = new CORSFilter(new CORSConfiguration(new Properties()));
+
+		assertEquals(10, new CORSFilterWarmer(filter).run(10, 0));
+	}
+
+
+	public void testRunWithRestrictedConfiguration()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+		props.setProperty("cors.allowGenericHttpRequests", "false");
+		props.setProperty("cors.supportedHeaders", "X-Requested-With");
+
+		CORSFilter filter = new CORSFilter(new CORSConfiguration(props));
+
+		assertEquals(10, new CORSFilterWarmer(filter).run(10, 0));
+	}
+
+
+	public void testTimeBudget()
+		throws Exception {
+
+		CORSFilter filter = new CORSFilter(new CORSConfiguration(new Properties()));
+
+		int iterations = new CORSFilterWarmer(filter).run(Integer.MAX_VALUE, 10);
+
+		assertTrue(iterations > 0);
+		assertTrue(iterations < Integer.MAX_VALUE);
+	}
+
+
+	public void testLiveStateUntouched()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+		props.setProperty("cors.allowSubdomains", "true");
+		props.setProperty("cors.denyOrigin", "http://bad.com");
+		props.setProperty("cors.denyOrigin.learnThreshold", "1");
+		props.setProperty("cors.originAuthorizer", InMemoryOriginAuthorizer.class.getName());
+		props.setProperty("cors.maxAge", "60");
+		props.setProperty("cors.maxAge.adaptive", "true");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+		CORSFilter filter = new CORSFilter(config);
+
+		assertEquals(10, new CORSFilterWarmer(filter).run(10, 0));
+
+		// No learned denials, cache entries or authorizer lookups
+		assertEquals(0, config.getOriginDenyList().getLearnedCount());
+		assertEquals(0, config.getValidatedOriginCache().size());
+		assertEquals(0, config.getValidatedOriginCache().getMissCount());
+		assertEquals(0, config.getOriginAuthorizationCache().size());
+		assertEquals(0, ((InMemoryOriginAuthorizer)config.getOriginAuthorizer()).getLookupCount());
+
+		// The live filter still works
+		MockServletRequest request = new MockServletRequest();
+		request.setHeader("Origin", "http://example.com");
+		request.setMethod("GET");
+
+		MockServletResponse response = new MockServletResponse();
+
+		filter.doFilter(request, response, NO_OP_CHAIN);
+
+		assertEquals("http://example.com", response.getHeader("Access-Control-Allow-Origin"));
+
+		config.shutdown();
+	}
+
+
+	public void testWarmUpCopyExcludesAuthorizerAndTenants()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+		props.setProperty("cors.originAuthorizer", InMemoryOriginAuthorizer.class.getName());
+		props.setProperty("cors.policy.api.pathPrefix", "/api");
+		props.setProperty("cors.policy.api.originAuthorizer", InMemoryOriginAuthorizer.class.getName());
+		props.setProperty("cors.tenant.source", InMemoryTenantPolicySource.class.getName());
+		props.setProperty("cors.tenant.header", "X-Tenant");
+		props.setProperty("cors.warmUpIterations", "100");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		CORSConfiguration copy = config.createWarmUpConfiguration();
+
+		assertNull(copy.getOriginAuthorizer());
+		assertNull(copy.policies.get("api").getConfiguration().getOriginAuthorizer());
+		assertNull(copy.getTenantPolicySource());
+		assertEquals(0, copy.warmUpIterations);
+		assertEquals(config.allowedOrigins, copy.allowedOrigins);
+
+		copy.shutdown();
+		config.shutdown();
+	}
+
+
+	public void testWarmUpOnInit()
+		throws Exception {
+
+		MockFilterConfig filterConfig = new MockFilterConfig();
+		filterConfig.setInitParameter("cors.warmUpIterations", "100");
+
+		CORSFilter filter = new CORSFilter();
+		filter.init(filterConfig);
+
+		assertEquals(100, filter.getConfiguration().warmUpIterations);
+		assertEquals(1000, filter.getConfiguration().warmUpTimeBudget);
+		assertFalse(filter.getConfiguration().warmUpInBackground);
+	}
+
+
+	public void testNotConfigured() {
+
+		try {
+			new CORSFilterWarmer(new CORSFilter());
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+}
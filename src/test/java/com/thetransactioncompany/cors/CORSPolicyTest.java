@@ -0,0 +1,357 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the path-prefix routed CORS policies.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class CORSPolicyTest extends TestCase {
+
+
+	private static final FilterChain NO_OP_CHAIN = new FilterChain() {
+		@Override
+		public void doFilter(ServletRequest request, ServletResponse response) {
+			// no-op
+		}
+	};
+
+
+	private static Properties createProperties() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+		props.setProperty("cors.supportedMethods", "GET, POST");
+		props.setProperty("cors.maxAge", "3600");
+
+		props.setProperty("cors.policy.public.pathPrefix", "/api/public/**, /static");
+		props.setProperty("cors.policy.public.allowOrigin", "*");
+		props.setProperty("cors.policy.public.supportsCredentials", "false");
+
+		props.setProperty("cors.policy.partner.pathPrefix", "/api/partner");
+		props.setProperty("cors.policy.partner.allowOrigin", "http://partner.com");
+		props.setProperty("cors.policy.partner.supportedMethods", "GET, PUT, DELETE");
+
+		return props;
+	}
+
+
+	private static MockServletRequest createPreflight(final String path, final String origin, final String method) {
+
+		MockServletRequest request = new MockServletRequest();
+		request.setMethod("OPTIONS");
+		request.setServletPath(path);
+		request.setHeader("Origin", origin);
+		request.setHeader("Access-Control-Request-Method", method);
+		return request;
+	}
+
+
+	public void testNoPolicies()
+		throws Exception {
+
+		CORSConfiguration config = new CORSConfiguration(new Properties());
+
+		assertTrue(config.policies.isEmpty());
+	}
+
+
+	public void testParse()
+		throws Exception {
+
+		CORSConfiguration config = new CORSConfiguration(createProperties());
+
+		assertEquals(Arrays.asList("partner", "public"), Arrays.asList(config.policies.keySet().toArray()));
+
+		CORSPolicy publicPolicy = config.policies.get("public");
+		assertEquals("public", publicPolicy.getName());
+		assertEquals(new LinkedHashSet<String>(Arrays.asList("/api/public/**", "/static")), publicPolicy.getPathPrefixes());
+		assertTrue(publicPolicy.getConfiguration().allowAnyOrigin);
+		assertFalse(publicPolicy.getConfiguration().supportsCredentials);
+
+		// Inherited
+		assertEquals(3600, publicPolicy.getConfiguration().maxAge);
+		assertTrue(publicPolicy.getConfiguration().isSupportedMethod("POST"));
+		assertFalse(publicPolicy.getConfiguration().isSupportedMethod("PUT"));
+
+		CORSPolicy partnerPolicy = config.policies.get("partner");
+		assertFalse(partnerPolicy.getConfiguration().allowAnyOrigin);
+		assertTrue(partnerPolicy.getConfiguration().isSupportedMethod("PUT"));
+		assertFalse(partnerPolicy.getConfiguration().isSupportedMethod("POST"));
+		assertTrue(partnerPolicy.getConfiguration().supportsCredentials);
+
+		// No nesting
+		assertTrue(publicPolicy.getConfiguration().policies.isEmpty());
+
+		config.shutdown();
+	}
+
+
+	public void testMissingPathPrefix() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.policy.public.allowOrigin", "*");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Missing property cors.policy.public.pathPrefix or cors.policy.public.hostName", e.getMessage());
+		}
+	}
+
+
+	public void testRelativePathPrefix() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.policy.public.pathPrefix", "api/public");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Bad path prefix in property cors.policy.public.pathPrefix: api/public", e.getMessage());
+		}
+	}
+
+
+	public void testDuplicatePathPrefix() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.policy.a.pathPrefix", "/api");
+		props.setProperty("cors.policy.b.pathPrefix", "/api/**");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Duplicate path prefix in property cors.policy.b.pathPrefix: /api/**", e.getMessage());
+		}
+	}
+
+
+	public void testHostNames()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.policy.brand.hostName", "Brand.com *.brand.com");
+
+		CORSPolicy policy = new CORSConfiguration(props).policies.get("brand");
+
+		assertEquals(new LinkedHashSet<String>(Arrays.asList("brand.com", "*.brand.com")), policy.getHostNames());
+		assertTrue(policy.getPathPrefixes().isEmpty());
+	}
+
+
+	public void testBadHostName() {
+
+		for (String hostName: Arrays.asList("*", "*.", "a.*.com", "http://a.com", "a.com:8080")) {
+
+			Properties props = new Properties();
+			props.setProperty("cors.policy.brand.hostName", hostName);
+
+			try {
+				new CORSConfiguration(props);
+				fail(hostName);
+			} catch (CORSConfigurationException e) {
+				assertEquals("Bad host name in property cors.policy.brand.hostName: " + hostName, e.getMessage());
+			}
+		}
+	}
+
+
+	public void testDuplicateHostName() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.policy.a.hostName", "brand.com");
+		props.setProperty("cors.policy.b.hostName", "BRAND.com.");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Duplicate host name in property cors.policy.b.hostName: BRAND.com.", e.getMessage());
+		}
+	}
+
+
+	public void testHostNameWithPathPrefix() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.policy.a.hostName", "brand.com");
+		props.setProperty("cors.policy.a.pathPrefix", "/api");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Properties cors.policy.a.pathPrefix and cors.policy.a.hostName must not be combined", e.getMessage());
+		}
+	}
+
+
+	public void testBadPolicySetting() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.policy.public.pathPrefix", "/api/public");
+		props.setProperty("cors.policy.public.maxAge", "abc");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertTrue(e.getMessage().startsWith("Bad policy public: "));
+		}
+	}
+
+
+	public void testBadPolicyProperty() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.policy.public", "/api/public");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Bad policy property: cors.policy.public", e.getMessage());
+		}
+	}
+
+
+	public void testRouting()
+		throws Exception {
+
+		CORSFilter filter = new CORSFilter(new CORSConfiguration(createProperties()));
+
+		// Default policy
+		MockServletResponse response = new MockServletResponse();
+		filter.doFilter(createPreflight("/api/items", "http://example.com", "POST"), response, NO_OP_CHAIN);
+		assertEquals("http://example.com", response.getHeader("Access-Control-Allow-Origin"));
+		assertEquals("true", response.getHeader("Access-Control-Allow-Credentials"));
+
+		response = new MockServletResponse();
+		filter.doFilter(createPreflight("/api/items", "http://partner.com", "GET"), response, NO_OP_CHAIN);
+		assertNull(response.getHeader("Access-Control-Allow-Origin"));
+		assertEquals(403, response.getStatus());
+
+		// Public policy
+		response = new MockServletResponse();
+		filter.doFilter(createPreflight("/api/public/items", "http://any.com", "GET"), response, NO_OP_CHAIN);
+		assertEquals("*", response.getHeader("Access-Control-Allow-Origin"));
+		assertNull(response.getHeader("Access-Control-Allow-Credentials"));
+
+		response = new MockServletResponse();
+		filter.doFilter(createPreflight("/static", "http://any.com", "GET"), response, NO_OP_CHAIN);
+		assertEquals("*", response.getHeader("Access-Control-Allow-Origin"));
+
+		// Whole segments only
+		response = new MockServletResponse();
+		filter.doFilter(createPreflight("/api/publication", "http://any.com", "GET"), response, NO_OP_CHAIN);
+		assertNull(response.getHeader("Access-Control-Allow-Origin"));
+
+		// Partner policy
+		response = new MockServletResponse();
+		filter.doFilter(createPreflight("/api/partner/orders", "http://partner.com", "DELETE"), response, NO_OP_CHAIN);
+		assertEquals("http://partner.com", response.getHeader("Access-Control-Allow-Origin"));
+
+		response = new MockServletResponse();
+		filter.doFilter(createPreflight("/api/partner/orders", "http://example.com", "GET"), response, NO_OP_CHAIN);
+		assertNull(response.getHeader("Access-Control-Allow-Origin"));
+	}
+
+
+	public void testRoutingWithPathInfo()
+		throws Exception {
+
+		CORSFilter filter = new CORSFilter(new CORSConfiguration(createProperties()));
+
+		MockServletRequest request = createPreflight("/api", "http://partner.com", "PUT");
+		request.setPathInfo("/partner/orders/1");
+
+		MockServletResponse response = new MockServletResponse();
+		filter.doFilter(request, response, NO_OP_CHAIN);
+		assertEquals("http://partner.com", response.getHeader("Access-Control-Allow-Origin"));
+	}
+
+
+	public void testHostRouting()
+		throws Exception {
+
+		Properties props = createProperties();
+		props.setProperty("cors.policy.brandA.hostName", "brand-a.com");
+		props.setProperty("cors.policy.brandA.allowOrigin", "https://www.brand-a.com");
+		props.setProperty("cors.policy.brandB.hostName", "*.brand-b.com");
+		props.setProperty("cors.policy.brandB.allowOrigin", "https://www.brand-b.com");
+
+		CORSFilter filter = new CORSFilter(new CORSConfiguration(props));
+
+		// Exact host, takes precedence over the path prefixes
+		MockServletRequest request = createPreflight("/api/partner", "https://www.brand-a.com", "GET");
+		request.setServerName("Brand-A.com");
+		MockServletResponse response = new MockServletResponse();
+		filter.doFilter(request, response, NO_OP_CHAIN);
+		assertEquals("https://www.brand-a.com", response.getHeader("Access-Control-Allow-Origin"));
+
+		request = createPreflight("/api/partner", "http://partner.com", "GET");
+		request.setServerName("brand-a.com");
+		response = new MockServletResponse();
+		filter.doFilter(request, response, NO_OP_CHAIN);
+		assertNull(response.getHeader("Access-Control-Allow-Origin"));
+
+		// Wildcard host
+		request = createPreflight("/", "https://www.brand-b.com", "GET");
+		request.setServerName("api.eu.brand-b.com");
+		response = new MockServletResponse();
+		filter.doFilter(request, response, NO_OP_CHAIN);
+		assertEquals("https://www.brand-b.com", response.getHeader("Access-Control-Allow-Origin"));
+
+		request = createPreflight("/", "https://www.brand-b.com", "GET");
+		request.setServerName("brand-b.com");
+		response = new MockServletResponse();
+		filter.doFilter(request, response, NO_OP_CHAIN);
+		assertNull(response.getHeader("Access-Control-Allow-Origin"));
+
+		// Unknown host, falls back to the path prefixes and default
+		request = createPreflight("/api/partner", "http://partner.com", "GET");
+		request.setServerName("other.com");
+		response = new MockServletResponse();
+		filter.doFilter(request, response, NO_OP_CHAIN);
+		assertEquals("http://partner.com", response.getHeader("Access-Control-Allow-Origin"));
+
+		request = createPreflight("/", "http://example.com", "GET");
+		request.setServerName("other.com");
+		response = new MockServletResponse();
+		filter.doFilter(request, response, NO_OP_CHAIN);
+		assertEquals("http://example.com", response.getHeader("Access-Control-Allow-Origin"));
+	}
+
+
+	public void testFilterInit()
+		throws Exception {
+
+		MockFilterConfig filterConfig = new MockFilterConfig();
+		filterConfig.setInitParameter("cors.policy.public.pathPrefix", "/public");
+		filterConfig.setInitParameter("cors.policy.public.allowOrigin", "http://example.com");
+
+		CORSFilter filter = new CORSFilter();
+		filter.init(filterConfig);
+
+		assertEquals(1, filter.getConfiguration().policies.size());
+		assertTrue(filter.getConfiguration().allowAnyOrigin);
+		assertFalse(filter.getConfiguration().policies.get("public").getConfiguration().allowAnyOrigin);
+
+		filter.destroy();
+	}
+}
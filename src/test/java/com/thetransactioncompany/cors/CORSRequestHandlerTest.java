@@ -1,6 +1,7 @@
 package com.thetransactioncompany.cors;
 
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Properties;
@@ -232,4 +233,199 @@ public class CORSRequestHandlerTest extends TestCase {
 
 		assertEquals("Authorization, Content-Type", response.getHeader("Access-Control-Allow-Headers"));
 	}
+
+
+	public void testWildcardResponses()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "*");
+		props.setProperty("cors.supportsCredentials", "false");
+		props.setProperty("cors.exposedHeaders", "X-Custom-1, X-Custom-2");
+		props.setProperty("cors.wildcardResponses", "true");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+		assertTrue(config.wildcardResponses);
+
+		CORSRequestHandler handler = new CORSRequestHandler(config);
+
+		MockServletRequest request = new MockServletRequest();
+		request.setHeader("Origin", "http://example.com");
+		request.setHeader("Access-Control-Request-Method", "POST");
+		request.setHeader("Access-Control-Request-Headers", "Content-Type, X-Requested-With");
+		request.setMethod("OPTIONS");
+
+		MockServletResponse response = new MockServletResponse();
+		handler.handlePreflightRequest(request, response);
+
+		assertEquals("*", response.getHeader("Access-Control-Allow-Origin"));
+		assertEquals("*", response.getHeader("Access-Control-Allow-Methods"));
+		assertEquals("*", response.getHeader("Access-Control-Allow-Headers"));
+
+		// Authorization isn't covered by the wildcard
+		request.setHeader("Access-Control-Request-Headers", "authorization, content-type");
+
+		response = new MockServletResponse();
+		handler.handlePreflightRequest(request, response);
+		assertEquals("*, Authorization", response.getHeader("Access-Control-Allow-Headers"));
+
+		// The actual request method is still checked
+		request = new MockServletRequest();
+		request.setHeader("Origin", "http://example.com");
+		request.setMethod("GET");
+
+		response = new MockServletResponse();
+		handler.handleActualRequest(request, response);
+		assertEquals("*", response.getHeader("Access-Control-Expose-Headers"));
+
+		request.setMethod("DELETE");
+
+		try {
+			handler.handleActualRequest(request, new MockServletResponse());
+			fail();
+		} catch (CORSException e) {
+			assertSame(CORSException.UNSUPPORTED_METHOD, e);
+		}
+	}
+
+
+	public void testWildcardResponsesIgnoredWithCredentials()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.supportedMethods", "POST");
+		props.setProperty("cors.exposedHeaders", "X-Custom-1");
+		props.setProperty("cors.wildcardResponses", "true");
+
+		CORSRequestHandler handler = new CORSRequestHandler(new CORSConfiguration(props));
+
+		MockServletRequest request = new MockServletRequest();
+		request.setHeader("Origin", "http://example.com");
+		request.setHeader("Access-Control-Request-Method", "POST");
+		request.setHeader("Access-Control-Request-Headers", "Content-Type");
+		request.setMethod("OPTIONS");
+
+		MockServletResponse response = new MockServletResponse();
+		handler.handlePreflightRequest(request, response);
+
+		assertEquals("true", response.getHeader("Access-Control-Allow-Credentials"));
+		assertEquals("POST", response.getHeader("Access-Control-Allow-Methods"));
+		assertEquals("Content-Type", response.getHeader("Access-Control-Allow-Headers"));
+
+		request = new MockServletRequest();
+		request.setHeader("Origin", "http://example.com");
+		request.setMethod("POST");
+
+		response = new MockServletResponse();
+		handler.handleActualRequest(request, response);
+		assertEquals("X-Custom-1", response.getHeader("Access-Control-Expose-Headers"));
+	}
+
+
+	public void testPreflightSharedCacheHeaders()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "*");
+		props.setProperty("cors.supportsCredentials", "false");
+		props.setProperty("cors.preflightVary", "true");
+		props.setProperty("cors.preflightCacheControl", "public, max-age=600");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+		assertTrue(config.preflightVary);
+		assertEquals("public, max-age=600", config.preflightCacheControl);
+
+		CORSRequestHandler handler = new CORSRequestHandler(config);
+
+		MockServletRequest request = new MockServletRequest();
+		request.setHeader("Origin", "http://example.com");
+		request.setHeader("Access-Control-Request-Method", "POST");
+		request.setMethod("OPTIONS");
+
+		MockServletResponse response = new MockServletResponse();
+		handler.handlePreflightRequest(request, response);
+
+		assertEquals("*", response.getHeader("Access-Control-Allow-Origin"));
+		assertEquals("Origin, Access-Control-Request-Method, Access-Control-Request-Headers", response.getHeader("Vary"));
+		assertEquals("public, max-age=600", response.getHeader("Cache-Control"));
+
+		// Not on actual requests
+		request = new MockServletRequest();
+		request.setHeader("Origin", "http://example.com");
+		request.setMethod("GET");
+
+		response = new MockServletResponse();
+		handler.handleActualRequest(request, response);
+		assertNull(response.getHeader("Cache-Control"));
+	}
+
+
+	public void testPreflightDefaultCacheHeaders()
+		throws Exception {
+
+		CORSConfiguration config = new CORSConfiguration(new Properties());
+		assertFalse(config.preflightVary);
+		assertNull(config.preflightCacheControl);
+
+		CORSRequestHandler handler = new CORSRequestHandler(config);
+
+		MockServletRequest request = new MockServletRequest();
+		request.setHeader("Origin", "http://example.com");
+		request.setHeader("Access-Control-Request-Method", "POST");
+		request.setMethod("OPTIONS");
+
+		MockServletResponse response = new MockServletResponse();
+		handler.handlePreflightRequest(request, response);
+
+		assertEquals("Origin", response.getHeader("Vary"));
+		assertNull(response.getHeader("Cache-Control"));
+	}
+
+
+	public void testStableHeaderOrder()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.supportedMethods", "PUT, GET, POST, DELETE");
+		props.setProperty("cors.supportedHeaders", "X-Zeta, Content-Type, X-Alpha");
+		props.setProperty("cors.exposedHeaders", "X-Custom-2, X-Custom-1");
+		props.setProperty("cors.maxAge", "3600");
+
+		CORSRequestHandler handler = new CORSRequestHandler(new CORSConfiguration(props));
+
+		MockServletRequest request = new MockServletRequest();
+		request.setHeader("Origin", "http://example.com");
+		request.setHeader("Access-Control-Request-Method", "PUT");
+		request.setHeader("Access-Control-Request-Headers", "X-Alpha");
+		request.setMethod("OPTIONS");
+
+		MockServletResponse response = new MockServletResponse();
+		handler.handlePreflightRequest(request, response);
+
+		assertEquals("PUT, GET, POST, DELETE", response.getHeader("Access-Control-Allow-Methods"));
+		assertEquals("X-Zeta, Content-Type, X-Alpha", response.getHeader("Access-Control-Allow-Headers"));
+
+		assertEquals(Arrays.asList(
+			"Access-Control-Allow-Origin",
+			"Access-Control-Allow-Credentials",
+			"Access-Control-Allow-Methods",
+			"Access-Control-Allow-Headers",
+			"Access-Control-Max-Age",
+			"Vary"), new ArrayList<String>(response.getHeaderNames()));
+
+		request = new MockServletRequest();
+		request.setHeader("Origin", "http://example.com");
+		request.setMethod("GET");
+
+		response = new MockServletResponse();
+		handler.handleActualRequest(request, response);
+
+		assertEquals("X-Custom-2, X-Custom-1", response.getHeader("Access-Control-Expose-Headers"));
+
+		assertEquals(Arrays.asList(
+			"Access-Control-Allow-Origin",
+			"Access-Control-Allow-Credentials",
+			"Access-Control-Expose-Headers",
+			"Vary"), new ArrayList<String>(response.getHeaderNames()));
+	}
 }
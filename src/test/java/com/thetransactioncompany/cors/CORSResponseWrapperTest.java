@@ -0,0 +1,132 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the CORS response wrapper and the Vary header merging.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class CORSResponseWrapperTest extends TestCase {
+
+
+	public void testVaryParseAndRender() {
+
+		Set<String> others = new LinkedHashSet<String>();
+
+		int mask = VaryHeader.parse(" accept-encoding ,Origin,, X-Custom", others);
+
+		assertEquals(VaryHeader.ORIGIN, mask & VaryHeader.ORIGIN);
+		assertEquals(1, others.size());
+		assertTrue(others.contains("X-Custom"));
+
+		assertEquals("Origin, Accept-Encoding, X-Custom", VaryHeader.render(mask, others));
+		assertEquals("Origin", VaryHeader.render(VaryHeader.ORIGIN, null));
+		assertEquals("", VaryHeader.render(0, null));
+		assertEquals("*", VaryHeader.render(mask | VaryHeader.parse("*", others), others));
+	}
+
+
+	public void testVaryAdd() {
+
+		MockServletResponse response = new MockServletResponse();
+
+		VaryHeader.add(response, VaryHeader.ORIGIN);
+		assertEquals("Origin", response.getHeader("Vary"));
+
+		response = new MockServletResponse();
+		response.addHeader("Vary", "Accept-Encoding");
+		response.addHeader("Vary", "Origin, Cookie");
+
+		VaryHeader.add(response, VaryHeader.ORIGIN | VaryHeader.REQUEST_METHOD);
+		assertEquals("Origin, Access-Control-Request-Method, Accept-Encoding, Cookie", response.getHeader("Vary"));
+		assertEquals(1, response.getHeaders("Vary").size());
+	}
+
+
+	public void testMergeVary() {
+
+		MockServletResponse response = new MockServletResponse();
+		response.setHeader("Access-Control-Allow-Origin", "http://example.com");
+		response.setHeader("Vary", "Origin");
+
+		CORSResponseWrapper wrapper = new CORSResponseWrapper(response);
+
+		wrapper.addHeader("Vary", "Accept-Encoding");
+		wrapper.addHeader("vary", "origin, X-Custom");
+
+		assertEquals("Origin, Accept-Encoding, X-Custom", response.getHeader("Vary"));
+		assertEquals(1, response.getHeaders("Vary").size());
+
+		// Replaces the application tokens, keeps the filter tokens
+		wrapper.setHeader("Vary", "Accept-Language");
+		assertEquals("Origin, Accept-Language", response.getHeader("Vary"));
+
+		wrapper.setHeader("Vary", null);
+		assertEquals("Origin", response.getHeader("Vary"));
+	}
+
+
+	public void testMergeVaryWithoutFilterVary() {
+
+		MockServletResponse response = new MockServletResponse();
+		response.setHeader("Access-Control-Allow-Origin", "*");
+
+		CORSResponseWrapper wrapper = new CORSResponseWrapper(response);
+
+		wrapper.setHeader("Vary", "Accept-Encoding");
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+
+		wrapper.setHeader("Vary", null);
+		assertNull(response.getHeader("Vary"));
+	}
+
+
+	public void testSuppressDuplicateCORSHeaders() {
+
+		MockServletResponse response = new MockServletResponse();
+		response.setHeader("Access-Control-Allow-Origin", "http://example.com");
+		response.setHeader("Access-Control-Allow-Credentials", "true");
+
+		CORSResponseWrapper wrapper = new CORSResponseWrapper(response);
+
+		wrapper.addHeader("Access-Control-Allow-Origin", "*");
+		wrapper.setHeader("access-control-allow-credentials", "false");
+
+		assertEquals("http://example.com", response.getHeader("Access-Control-Allow-Origin"));
+		assertEquals(1, response.getHeaders("Access-Control-Allow-Origin").size());
+		assertEquals("true", response.getHeader("Access-Control-Allow-Credentials"));
+		assertNull(response.getHeader("access-control-allow-credentials"));
+
+		// Not set by the filter
+		wrapper.setHeader("Access-Control-Expose-Headers", "X-Custom");
+		assertEquals("X-Custom", response.getHeader("Access-Control-Expose-Headers"));
+
+		wrapper.setHeader("X-Other", "1");
+		assertEquals("1", response.getHeader("X-Other"));
+	}
+
+
+	public void testReset() {
+
+		MockServletResponse response = new MockServletResponse();
+		response.setHeader("Access-Control-Allow-Origin", "http://example.com");
+		response.setHeader("Vary", "Origin");
+
+		CORSResponseWrapper wrapper = new CORSResponseWrapper(response);
+
+		wrapper.addHeader("Vary", "Accept-Encoding");
+		wrapper.setHeader("X-Other", "1");
+
+		wrapper.reset();
+
+		assertEquals("http://example.com", response.getHeader("Access-Control-Allow-Origin"));
+		assertEquals("Origin, Accept-Encoding", response.getHeader("Vary"));
+		assertNull(response.getHeader("X-Other"));
+	}
+}
@@ -0,0 +1,88 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the hashed timer wheel.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class HashedTimerWheelTest extends TestCase {
+
+
+	public void testRunAfterDelay()
+		throws Exception {
+
+		HashedTimerWheel wheel = new HashedTimerWheel(10, TimeUnit.MILLISECONDS, 8, "test");
+
+		final CountDownLatch latch = new CountDownLatch(3);
+
+		final long start = System.nanoTime();
+
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		};
+
+		// Span more than one rotation of the wheel
+		wheel.schedule(task, 20, TimeUnit.MILLISECONDS);
+		wheel.schedule(task, 100, TimeUnit.MILLISECONDS);
+		wheel.schedule(task, 200, TimeUnit.MILLISECONDS);
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+
+		wheel.stop();
+	}
+
+
+	public void testStop()
+		throws Exception {
+
+		HashedTimerWheel wheel = new HashedTimerWheel(10, TimeUnit.MILLISECONDS, 8, "test");
+
+		final AtomicInteger counter = new AtomicInteger();
+
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				counter.incrementAndGet();
+			}
+		};
+
+		wheel.schedule(task, 50, TimeUnit.MILLISECONDS);
+		wheel.stop();
+		wheel.schedule(task, 10, TimeUnit.MILLISECONDS);
+
+		Thread.sleep(100);
+
+		assertEquals(0, counter.get());
+	}
+
+
+	public void testInvalidArguments() {
+
+		try {
+			new HashedTimerWheel(0, TimeUnit.SECONDS, 8, "test");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+
+		try {
+			new HashedTimerWheel(1, TimeUnit.SECONDS, 0, "test");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the header method matrix and the method specific supported
+ * headers.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class HeaderMethodMatrixTest extends TestCase {
+
+
+	private static HeaderMethodMatrix createMatrix() {
+
+		Map<String,Set<String>> methodHeaders = new HashMap<String,Set<String>>();
+		methodHeaders.put("PUT", new LinkedHashSet<String>(Arrays.asList("Content-Range", "X-Upload-Id")));
+		methodHeaders.put("PATCH", Collections.singleton("X-Upload-Id"));
+
+		return new HeaderMethodMatrix(
+			Arrays.asList("GET", "POST", "PUT", "PATCH"),
+			Arrays.asList("Content-Type", "X-Requested-With"),
+			methodHeaders);
+	}
+
+
+	public void testCommonHeaders() {
+
+		HeaderMethodMatrix matrix = createMatrix();
+
+		int get = matrix.indexOfMethod("GET");
+		assertTrue(get >= 0);
+
+		assertTrue(matrix.isSupported(get, new String[0]));
+		assertTrue(matrix.isSupported(get, new String[]{"Content-Type"}));
+		assertTrue(matrix.isSupported(get, new String[]{"Content-Type", "X-Requested-With"}));
+		assertFalse(matrix.isSupported(get, new String[]{"Content-Type", "X-Upload-Id"}));
+		assertFalse(matrix.isSupported(get, new String[]{"X-Other"}));
+
+		assertEquals("Content-Type, X-Requested-With", matrix.getAllowHeaders(get));
+	}
+
+
+	public void testMethodHeaders() {
+
+		HeaderMethodMatrix matrix = createMatrix();
+
+		int put = matrix.indexOfMethod("PUT");
+		assertTrue(matrix.isSupported(put, new String[]{"Content-Range", "X-Upload-Id", "Content-Type"}));
+		assertEquals("Content-Type, X-Requested-With, Content-Range, X-Upload-Id", matrix.getAllowHeaders(put));
+
+		int patch = matrix.indexOfMethod("PATCH");
+		assertTrue(matrix.isSupported(patch, new String[]{"X-Upload-Id"}));
+		assertFalse(matrix.isSupported(patch, new String[]{"Content-Range"}));
+		assertEquals("Content-Type, X-Requested-With, X-Upload-Id", matrix.getAllowHeaders(patch));
+
+		assertEquals(-1, matrix.indexOfMethod("DELETE"));
+	}
+
+
+	public void testNoHeaders() {
+
+		HeaderMethodMatrix matrix = new HeaderMethodMatrix(
+			Collections.singleton("GET"),
+			Collections.<String>emptySet(),
+			Collections.<String,Set<String>>emptyMap());
+
+		int get = matrix.indexOfMethod("GET");
+		assertTrue(matrix.isSupported(get, new String[0]));
+		assertFalse(matrix.isSupported(get, new String[]{"Content-Type"}));
+		assertEquals("", matrix.getAllowHeaders(get));
+	}
+
+
+	public void testMoreThan64Headers() {
+
+		List<String> common = new ArrayList<String>();
+
+		for (int i = 0; i < 100; i++)
+			common.add("X-Common-" + i);
+
+		Map<String,Set<String>> methodHeaders = new HashMap<String,Set<String>>();
+		methodHeaders.put("PUT", Collections.singleton("X-Upload-Id"));
+
+		HeaderMethodMatrix matrix = new HeaderMethodMatrix(Arrays.asList("GET", "PUT"), common, methodHeaders);
+
+		int get = matrix.indexOfMethod("GET");
+		int put = matrix.indexOfMethod("PUT");
+
+		assertTrue(matrix.isSupported(get, new String[]{"X-Common-0", "X-Common-63", "X-Common-64", "X-Common-99"}));
+		assertFalse(matrix.isSupported(get, new String[]{"X-Common-99", "X-Upload-Id"}));
+		assertTrue(matrix.isSupported(put, new String[]{"X-Common-99", "X-Upload-Id"}));
+		assertFalse(matrix.isSupported(put, new String[]{"X-Common-100"}));
+	}
+
+
+	public void testConfiguration()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.supportedMethods", "GET, POST, PUT, PATCH");
+		props.setProperty("cors.supportedHeaders", "Content-Type");
+		props.setProperty("cors.supportedHeaders.PUT", "Content-Range, X-Upload-Id");
+		props.setProperty("cors.supportedHeaders.patch", "x-upload-id");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		assertEquals(new LinkedHashSet<String>(Arrays.asList("Content-Range", "X-Upload-Id")), config.methodSupportedHeaders.get("PUT"));
+		assertEquals(Collections.singleton("X-Upload-Id"), config.methodSupportedHeaders.get("PATCH"));
+		assertEquals(2, config.methodSupportedHeaders.size());
+
+		assertTrue(config.isSupportedHeader("PUT", "X-Upload-Id"));
+		assertTrue(config.isSupportedHeader("PUT", "Content-Type"));
+		assertFalse(config.isSupportedHeader("POST", "X-Upload-Id"));
+		assertFalse(config.isSupportedHeader("DELETE", "Content-Type"));
+
+		// Global check unchanged
+		assertTrue(config.isSupportedHeader("Content-Type"));
+		assertFalse(config.isSupportedHeader("X-Upload-Id"));
+	}
+
+
+	public void testPreflight()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.supportedMethods", "GET, PUT");
+		props.setProperty("cors.supportedHeaders", "Content-Type");
+		props.setProperty("cors.supportedHeaders.PUT", "X-Upload-Id");
+
+		CORSRequestHandler handler = new CORSRequestHandler(new CORSConfiguration(props));
+
+		MockServletRequest request = new MockServletRequest();
+		request.setMethod("OPTIONS");
+		request.setHeader("Origin", "http://example.com");
+		request.setHeader("Access-Control-Request-Method", "PUT");
+		request.setHeader("Access-Control-Request-Headers", "content-type, x-upload-id");
+
+		MockServletResponse response = new MockServletResponse();
+		handler.handlePreflightRequest(request, response);
+		assertEquals("Content-Type, X-Upload-Id", response.getHeader("Access-Control-Allow-Headers"));
+
+		request.setHeader("Access-Control-Request-Method", "GET");
+
+		try {
+			handler.handlePreflightRequest(request, new MockServletResponse());
+			fail();
+		} catch (CORSException e) {
+			assertSame(CORSException.UNSUPPORTED_REQUEST_HEADER, e);
+		}
+
+		request.setHeader("Access-Control-Request-Headers", "content-type");
+
+		response = new MockServletResponse();
+		handler.handlePreflightRequest(request, response);
+		assertEquals("Content-Type", response.getHeader("Access-Control-Allow-Headers"));
+	}
+
+
+	public void testAnyHeaderConflict() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.supportedHeaders.PUT", "X-Upload-Id");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("The property cors.supportedHeaders.PUT requires a cors.supportedHeaders list", e.getMessage());
+		}
+	}
+
+
+	public void testUnsupportedMethod() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.supportedHeaders", "Content-Type");
+		props.setProperty("cors.supportedHeaders.DELETE", "X-Upload-Id");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Unsupported method in property cors.supportedHeaders.DELETE", e.getMessage());
+		}
+	}
+
+
+	public void testRequestedAllowHeaders() {
+
+		HeaderMethodMatrix matrix = createMatrix();
+
+		int put = matrix.indexOfMethod("PUT");
+
+		assertEquals("", matrix.getRequestedAllowHeaders(put, new String[0]));
+
+		String single = matrix.getRequestedAllowHeaders(put, new String[]{new String("X-Upload-Id")});
+		assertEquals("X-Upload-Id", single);
+		assertSame(single, matrix.getRequestedAllowHeaders(put, new String[]{"X-Upload-Id"}));
+
+		// Configured order, cached
+		String pair = matrix.getRequestedAllowHeaders(put, new String[]{"X-Upload-Id", "Content-Type"});
+		assertEquals("Content-Type, X-Upload-Id", pair);
+		assertSame(pair, matrix.getRequestedAllowHeaders(put, new String[]{"Content-Type", "X-Upload-Id"}));
+	}
+
+
+	public void testMinimalPreflight()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.supportedMethods", "GET, POST, PUT, DELETE");
+		props.setProperty("cors.supportedHeaders", "Content-Type, X-Requested-With, X-Custom-1, X-Custom-2");
+		props.setProperty("cors.minimalPreflight", "true");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+		assertTrue(config.minimalPreflight);
+
+		CORSRequestHandler handler = new CORSRequestHandler(config);
+
+		MockServletRequest request = new MockServletRequest();
+		request.setMethod("OPTIONS");
+		request.setHeader("Origin", "http://example.com");
+		request.setHeader("Access-Control-Request-Method", "put");
+		request.setHeader("Access-Control-Request-Headers", "x-custom-2, content-type");
+
+		MockServletResponse response = new MockServletResponse();
+		handler.handlePreflightRequest(request, response);
+
+		assertEquals("PUT", response.getHeader("Access-Control-Allow-Methods"));
+		assertEquals("Content-Type, X-Custom-2", response.getHeader("Access-Control-Allow-Headers"));
+
+		request.setHeader("Access-Control-Request-Headers", null);
+
+		response = new MockServletResponse();
+		handler.handlePreflightRequest(request, response);
+
+		assertEquals("PUT", response.getHeader("Access-Control-Allow-Methods"));
+		assertNull(response.getHeader("Access-Control-Allow-Headers"));
+	}
+}
@@ -0,0 +1,153 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the header pattern matcher and the header patterns in the
+ * supported and exposed headers.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class HeaderPatternMatcherTest extends TestCase {
+
+
+	public void testIsPattern() {
+
+		assertTrue(HeaderPatternMatcher.isPattern("X-Tenant-*"));
+		assertTrue(HeaderPatternMatcher.isPattern("X-*-Id"));
+		assertFalse(HeaderPatternMatcher.isPattern("X-Tenant-Id"));
+	}
+
+
+	public void testPrefixPatterns() {
+
+		HeaderPatternMatcher matcher = new HeaderPatternMatcher(Arrays.asList("X-Tenant-*", "X-B3-*"));
+
+		assertTrue(matcher.matches("X-Tenant-Id"));
+		assertTrue(matcher.matches("x-tenant-region"));
+		assertTrue(matcher.matches("X-TENANT-"));
+		assertTrue(matcher.matches("X-B3-TraceId"));
+		assertFalse(matcher.matches("X-Tenant"));
+		assertFalse(matcher.matches("X-Tenants"));
+		assertFalse(matcher.matches("X-B4-TraceId"));
+		assertFalse(matcher.matches(""));
+	}
+
+
+	public void testGlobPatterns() {
+
+		HeaderPatternMatcher matcher = new HeaderPatternMatcher(Collections.singleton("X-*-Id"));
+
+		assertTrue(matcher.matches("X-Request-Id"));
+		assertTrue(matcher.matches("x-upload-id"));
+		assertTrue(matcher.matches("X--Id"));
+		assertFalse(matcher.matches("X-Request-Ids"));
+		assertFalse(matcher.matches("Y-Request-Id"));
+	}
+
+
+	public void testMatchRegion() {
+
+		HeaderPatternMatcher matcher = new HeaderPatternMatcher(Arrays.asList("X-Tenant-*", "X-*-Id"));
+
+		String raw = "content-type, x-tenant-id, x-request-id";
+
+		assertFalse(matcher.matches(raw, 0, 12));
+		assertTrue(matcher.matches(raw, 14, 25));
+		assertTrue(matcher.matches(raw, 27, raw.length()));
+	}
+
+
+	public void testSupportedHeaderPatterns()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.supportedMethods", "GET, PUT");
+		props.setProperty("cors.supportedHeaders", "Content-Type, x-tenant-*");
+		props.setProperty("cors.supportedHeaders.PUT", "X-Upload-*");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		assertTrue(config.supportedHeaders.contains("X-Tenant-*"));
+		assertTrue(config.isSupportedHeader("Content-Type"));
+		assertTrue(config.isSupportedHeader("X-Tenant-Id"));
+		assertFalse(config.isSupportedHeader("X-Upload-Id"));
+		assertTrue(config.isSupportedHeader("PUT", "X-Upload-Id"));
+		assertTrue(config.isSupportedHeader("PUT", "X-Tenant-Id"));
+		assertFalse(config.isSupportedHeader("GET", "X-Upload-Id"));
+
+		CORSRequestHandler handler = new CORSRequestHandler(config);
+
+		MockServletRequest request = new MockServletRequest();
+		request.setMethod("OPTIONS");
+		request.setHeader("Origin", "http://example.com");
+		request.setHeader("Access-Control-Request-Method", "PUT");
+		request.setHeader("Access-Control-Request-Headers", "content-type, x-tenant-id, x-upload-offset");
+
+		MockServletResponse response = new MockServletResponse();
+		handler.handlePreflightRequest(request, response);
+		assertEquals("Content-Type, X-Tenant-Id, X-Upload-Offset", response.getHeader("Access-Control-Allow-Headers"));
+
+		request.setHeader("Access-Control-Request-Method", "GET");
+
+		try {
+			handler.handlePreflightRequest(request, new MockServletResponse());
+			fail();
+		} catch (CORSException e) {
+			assertSame(CORSException.UNSUPPORTED_REQUEST_HEADER, e);
+		}
+
+		request.setHeader("Access-Control-Request-Headers", "x-tenant-id");
+
+		response = new MockServletResponse();
+		handler.handlePreflightRequest(request, response);
+		assertEquals("Content-Type, X-Tenant-Id", response.getHeader("Access-Control-Allow-Headers"));
+	}
+
+
+	public void testExposedHeaderPatterns()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.exposedHeaders", "X-Custom-1, X-RateLimit-*");
+
+		CORSRequestHandler handler = new CORSRequestHandler(new CORSConfiguration(props));
+
+		MockServletRequest request = new MockServletRequest();
+		request.setMethod("GET");
+		request.setHeader("Origin", "http://example.com");
+
+		MockServletResponse response = new MockServletResponse();
+		CORSResponseHeaders headers = handler.applyActualRequest(request, response);
+		assertEquals("X-Custom-1", response.getHeader("Access-Control-Expose-Headers"));
+
+		CORSResponseWrapper wrapper = new CORSResponseWrapper(response, headers.exposedHeaderPatterns);
+
+		wrapper.setHeader("x-ratelimit-remaining", "10");
+		wrapper.addHeader("X-RateLimit-Reset", "60");
+		wrapper.setHeader("X-RateLimit-Remaining", "9");
+		wrapper.setHeader("X-Other", "1");
+
+		assertEquals("X-Custom-1, X-Ratelimit-Remaining, X-Ratelimit-Reset", response.getHeader("Access-Control-Expose-Headers"));
+	}
+
+
+	public void testBadExposedHeaderPattern() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.exposedHeaders", "X-(*");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Bad header field name in property cors.exposedHeaders: X-(*", e.getMessage());
+		}
+	}
+}
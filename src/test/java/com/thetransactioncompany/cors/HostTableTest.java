@@ -0,0 +1,111 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the host name table.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class HostTableTest extends TestCase {
+
+
+	private static HostTable<String> createTable() {
+
+		Map<String,String> hosts = new HashMap<String,String>();
+		hosts.put("example.com", "exact");
+		hosts.put("api.example.com", "api");
+		hosts.put("*.example.com", "wildcard");
+		hosts.put("*.eu.example.com", "eu");
+		return new HostTable<String>(hosts);
+	}
+
+
+	public void testExact() {
+
+		HostTable<String> table = createTable();
+
+		assertEquals(4, table.size());
+
+		assertEquals("exact", table.match("example.com"));
+		assertEquals("api", table.match("api.example.com"));
+	}
+
+
+	public void testWildcard() {
+
+		HostTable<String> table = createTable();
+
+		assertEquals("wildcard", table.match("www.example.com"));
+		assertEquals("wildcard", table.match("a.b.example.com"));
+		assertEquals("eu", table.match("shop.eu.example.com"));
+		assertEquals("eu", table.match("a.shop.eu.example.com"));
+		assertEquals("wildcard", table.match("eu.example.com"));
+	}
+
+
+	public void testNoMatch() {
+
+		HostTable<String> table = createTable();
+
+		assertNull(table.match("example.org"));
+		assertNull(table.match("notexample.com"));
+		assertNull(table.match("com"));
+		assertNull(table.match(""));
+		assertNull(table.match(null));
+	}
+
+
+	public void testNormalize() {
+
+		HostTable<String> table = createTable();
+
+		assertEquals("exact", table.match("EXAMPLE.com"));
+		assertEquals("exact", table.match("example.com."));
+		assertEquals("wildcard", table.match("WWW.Example.Com."));
+	}
+
+
+	public void testEmpty() {
+
+		HostTable<String> table = new HostTable<String>(Collections.<String,String>emptyMap());
+
+		assertEquals(0, table.size());
+		assertNull(table.match("example.com"));
+	}
+
+
+	public void testBadHostNames() {
+
+		for (String host: new String[]{"", "*", "*.", "a.*.com", "*.*.com"}) {
+
+			try {
+				new HostTable<String>(Collections.singletonMap(host, "value"));
+				fail(host);
+			} catch (IllegalArgumentException e) {
+				// ok
+			}
+		}
+	}
+
+
+	public void testDuplicateHostNames() {
+
+		Map<String,String> hosts = new HashMap<String,String>();
+		hosts.put("example.com", "a");
+		hosts.put("Example.com", "b");
+
+		try {
+			new HostTable<String>(hosts);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+}
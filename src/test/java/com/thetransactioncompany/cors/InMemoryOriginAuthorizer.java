@@ -0,0 +1,77 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * In-memory origin authorizer, for testing.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class InMemoryOriginAuthorizer implements OriginAuthorizer {
+
+
+	private final Set<String> allowedOrigins = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+
+
+	private final AtomicInteger lookupCount = new AtomicInteger();
+
+
+	private volatile boolean failing;
+
+
+	private volatile CountDownLatch gate;
+
+
+	public void allow(final String origin) {
+
+		allowedOrigins.add(origin);
+	}
+
+
+	public void deny(final String origin) {
+
+		allowedOrigins.remove(origin);
+	}
+
+
+	public void setFailing(final boolean failing) {
+
+		this.failing = failing;
+	}
+
+
+	public void setGate(final CountDownLatch gate) {
+
+		this.gate = gate;
+	}
+
+
+	public int getLookupCount() {
+
+		return lookupCount.get();
+	}
+
+
+	@Override
+	public boolean isAllowed(final ValidatedOrigin origin)
+		throws Exception {
+
+		lookupCount.incrementAndGet();
+
+		CountDownLatch latch = gate;
+
+		if (latch != null)
+			latch.await();
+
+		if (failing)
+			throw new Exception("Backing store unavailable");
+
+		return allowedOrigins.contains(origin.toString());
+	}
+}
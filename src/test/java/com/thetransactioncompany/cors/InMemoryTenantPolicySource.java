@@ -0,0 +1,73 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * In-memory tenant policy source, for testing.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class InMemoryTenantPolicySource implements TenantPolicySource {
+
+
+	private final Map<String,Properties> tenants = new ConcurrentHashMap<String,Properties>();
+
+
+	private final AtomicInteger loadCount = new AtomicInteger();
+
+
+	private volatile boolean failing;
+
+
+	private volatile CountDownLatch gate;
+
+
+	public void put(final String tenant, final String allowOrigin) {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", allowOrigin);
+		tenants.put(tenant, props);
+	}
+
+
+	public void setFailing(final boolean failing) {
+
+		this.failing = failing;
+	}
+
+
+	public void setGate(final CountDownLatch gate) {
+
+		this.gate = gate;
+	}
+
+
+	public int getLoadCount() {
+
+		return loadCount.get();
+	}
+
+
+	@Override
+	public Properties getPolicyProperties(final String tenant)
+		throws Exception {
+
+		loadCount.incrementAndGet();
+
+		CountDownLatch latch = gate;
+
+		if (latch != null)
+			latch.await();
+
+		if (failing)
+			throw new Exception("Backing store unavailable");
+
+		return tenants.get(tenant);
+	}
+}
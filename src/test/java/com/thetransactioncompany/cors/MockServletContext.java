@@ -1,6 +1,7 @@
 package com.thetransactioncompany.cors;
 
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -8,6 +9,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Enumeration;
 import java.util.EventListener;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -67,7 +69,18 @@ public class MockServletContext implements ServletContext {
 
 	@Override
 	public Set getResourcePaths(String s) {
-		return null;
+
+		File[] files = new File("src/test/resources" + s).listFiles();
+
+		if (files == null)
+			return null;
+
+		Set<String> paths = new HashSet<String>();
+
+		for (File file: files)
+			paths.add(s + file.getName() + (file.isDirectory() ? "/" : ""));
+
+		return paths;
 	}
 
 
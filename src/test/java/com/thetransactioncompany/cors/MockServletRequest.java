@@ -93,6 +93,15 @@ public class MockServletRequest implements HttpServletRequest {
 	private String method = "GET";
 
 
+	private String servletPath = null;
+
+
+	private String pathInfo = null;
+
+
+	private String serverName = null;
+
+
 	private final Map<String,String> headers = new HashMap<String, String>();
 
 
@@ -150,7 +159,12 @@ public class MockServletRequest implements HttpServletRequest {
 
 	@Override
 	public String getPathInfo() {
-		return null;
+		return pathInfo;
+	}
+
+	public void setPathInfo(final String pathInfo) {
+
+		this.pathInfo = pathInfo;
 	}
 
 	@Override
@@ -200,7 +214,12 @@ public class MockServletRequest implements HttpServletRequest {
 
 	@Override
 	public String getServletPath() {
-		return null;
+		return servletPath;
+	}
+
+	public void setServletPath(final String servletPath) {
+
+		this.servletPath = servletPath;
 	}
 
 	@Override
@@ -299,7 +318,12 @@ public class MockServletRequest implements HttpServletRequest {
 
 	@Override
 	public String getServerName() {
-		return null;
+		return serverName;
+	}
+
+	public void setServerName(final String serverName) {
+
+		this.serverName = serverName;
 	}
 
 	@Override
@@ -3,8 +3,13 @@ package com.thetransactioncompany.cors;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -24,7 +29,19 @@ public class MockServletResponse implements HttpServletResponse {
 	private int status = 200;
 
 
-	private final Map<String,String> headers = new HashMap<String, String>();
+	private final Map<String,String> headers = new LinkedHashMap<String, String>();
+
+
+	private final Map<String,List<String>> headerLines = new HashMap<String,List<String>>();
+
+
+	private final StringWriter body = new StringWriter();
+
+
+	private int contentLength = -1;
+
+
+	private boolean committed = false;
 
 
 	@Override
@@ -33,7 +50,7 @@ public class MockServletResponse implements HttpServletResponse {
 
 	@Override
 	public boolean containsHeader(String s) {
-		return false;
+		return headers.containsKey(s);
 	}
 
 	@Override
@@ -79,13 +96,19 @@ public class MockServletResponse implements HttpServletResponse {
 
 	@Override
 	public Collection<String> getHeaders(String s) {
-		return null;
+
+		List<String> lines = headerLines.get(s);
+
+		if (lines == null)
+			return Collections.emptyList();
+
+		return lines;
 	}
 
 
 	@Override
 	public Collection<String> getHeaderNames() {
-		return null;
+		return headers.keySet();
 	}
 
 
@@ -104,16 +127,25 @@ public class MockServletResponse implements HttpServletResponse {
 	@Override
 	public void setHeader(String name, String value) {
 
-		if (value == null)
+		headerLines.remove(name);
+
+		if (value == null) {
 			headers.remove(name);
-		else
+		} else {
 			headers.put(name, value);
+			headerLines.put(name, new ArrayList<String>(Collections.singletonList(value)));
+		}
 	}
 
 	@Override
 	public void addHeader(String name, String value) {
 
 		headers.put(name, value);
+
+		if (! headerLines.containsKey(name))
+			headerLines.put(name, new ArrayList<String>());
+
+		headerLines.get(name).add(value);
 	}
 
 	@Override
@@ -131,6 +163,8 @@ public class MockServletResponse implements HttpServletResponse {
 
 	@Override
 	public void setStatus(int i) {
+
+		status = i;
 	}
 
 	@Override
@@ -154,7 +188,12 @@ public class MockServletResponse implements HttpServletResponse {
 
 	@Override
 	public PrintWriter getWriter() throws IOException {
-		return null;
+		return new PrintWriter(body, true);
+	}
+
+	public String getBody() {
+
+		return body.toString();
 	}
 
 	@Override
@@ -163,6 +202,11 @@ public class MockServletResponse implements HttpServletResponse {
 
 	@Override
 	public void setContentLength(int i) {
+		contentLength = i;
+	}
+
+	public int getContentLength() {
+		return contentLength;
 	}
 
 	@Override
@@ -180,6 +224,7 @@ public class MockServletResponse implements HttpServletResponse {
 
 	@Override
 	public void flushBuffer() throws IOException {
+		committed = true;
 	}
 
 	@Override
@@ -188,11 +233,13 @@ public class MockServletResponse implements HttpServletResponse {
 
 	@Override
 	public boolean isCommitted() {
-		return false;
+		return committed;
 	}
 
 	@Override
 	public void reset() {
+		headers.clear();
+		headerLines.clear();
 	}
 
 	@Override
@@ -0,0 +1,353 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the origin authorisation cache.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class OriginAuthorizationCacheTest extends TestCase {
+
+
+	private static boolean awaitAllowed(final OriginAuthorizationCache cache, final Origin origin)
+		throws InterruptedException {
+
+		long deadline = System.currentTimeMillis() + 5000;
+
+		while (System.currentTimeMillis() < deadline) {
+
+			if (cache.isAllowed(origin))
+				return true;
+
+			Thread.sleep(10);
+		}
+
+		return false;
+	}
+
+
+	public void testMissThenHit()
+		throws Exception {
+
+		InMemoryOriginAuthorizer authorizer = new InMemoryOriginAuthorizer();
+		authorizer.allow("https://tenant.com");
+
+		// Hold the lookup until the cold miss is checked
+		CountDownLatch gate = new CountDownLatch(1);
+		authorizer.setGate(gate);
+
+		OriginAuthorizationCache cache = new OriginAuthorizationCache(authorizer, 100, 300, 60, 300, 1);
+
+		Origin origin = new Origin("https://tenant.com");
+
+		// Cold miss is denied without blocking
+		assertFalse(cache.isAllowed(origin));
+
+		gate.countDown();
+
+		assertTrue(awaitAllowed(cache, origin));
+
+		// Fresh hits don't trigger lookups
+		int lookups = authorizer.getLookupCount();
+		assertTrue(cache.isAllowed(origin));
+		assertTrue(cache.isAllowed(origin));
+		assertEquals(lookups, authorizer.getLookupCount());
+
+		cache.shutdown();
+	}
+
+
+	public void testNegativeResult()
+		throws Exception {
+
+		InMemoryOriginAuthorizer authorizer = new InMemoryOriginAuthorizer();
+
+		OriginAuthorizationCache cache = new OriginAuthorizationCache(authorizer, 100, 300, 60, 300, 1);
+
+		Origin origin = new Origin("https://other.com");
+
+		assertFalse(cache.isAllowed(origin));
+
+		Thread.sleep(200);
+
+		assertFalse(cache.isAllowed(origin));
+		assertEquals(1, authorizer.getLookupCount());
+
+		cache.shutdown();
+	}
+
+
+	public void testStaleWhileRevalidate()
+		throws Exception {
+
+		InMemoryOriginAuthorizer authorizer = new InMemoryOriginAuthorizer();
+		authorizer.allow("https://tenant.com");
+
+		// Zero TTL, all results stale immediately
+		OriginAuthorizationCache cache = new OriginAuthorizationCache(authorizer, 100, 0, 0, 300, 1);
+
+		Origin origin = new Origin("https://tenant.com");
+
+		assertTrue(awaitAllowed(cache, origin));
+
+		// Stale result keeps being served while the backing store fails
+		authorizer.setFailing(true);
+
+		for (int i = 0; i < 10; i++) {
+			assertTrue(cache.isAllowed(origin));
+			Thread.sleep(10);
+		}
+
+		// Revocation picked up by the background refresh
+		authorizer.setFailing(false);
+		authorizer.deny("https://tenant.com");
+
+		long deadline = System.currentTimeMillis() + 5000;
+
+		while (cache.isAllowed(origin) && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+
+		assertFalse(cache.isAllowed(origin));
+
+		cache.shutdown();
+	}
+
+
+	public void testBoundedSize()
+		throws Exception {
+
+		OriginAuthorizationCache cache = new OriginAuthorizationCache(new InMemoryOriginAuthorizer(), 10, 300, 60, 300, 1);
+
+		for (int i = 0; i < 1000; i++)
+			cache.isAllowed(new Origin("https://junk" + i + ".com"));
+
+		assertTrue(cache.size() <= 10);
+
+		cache.shutdown();
+	}
+
+
+	public void testColdMissWaitsForLookup()
+		throws Exception {
+
+		InMemoryOriginAuthorizer authorizer = new InMemoryOriginAuthorizer();
+		authorizer.allow("https://tenant.com");
+
+		OriginAuthorizationCache cache = new OriginAuthorizationCache(authorizer, 100, 300, 60, 300, 1, 5000);
+
+		// The first request gets the lookup result
+		assertTrue(cache.isAllowed(new Origin("https://tenant.com")));
+		assertFalse(cache.isAllowed(new Origin("https://other.com")));
+		assertEquals(2, authorizer.getLookupCount());
+
+		cache.shutdown();
+	}
+
+
+	public void testColdMissWaitIsBounded()
+		throws Exception {
+
+		InMemoryOriginAuthorizer authorizer = new InMemoryOriginAuthorizer();
+		authorizer.allow("https://tenant.com");
+
+		CountDownLatch gate = new CountDownLatch(1);
+		authorizer.setGate(gate);
+
+		OriginAuthorizationCache cache = new OriginAuthorizationCache(authorizer, 100, 300, 60, 300, 1, 50);
+
+		Origin origin = new Origin("https://tenant.com");
+
+		// Fails closed when the lookup doesn't complete in time
+		long start = System.nanoTime();
+		assertFalse(cache.isAllowed(origin));
+		assertTrue(System.nanoTime() - start < 5000000000L);
+
+		// Once complete the result is served
+		gate.countDown();
+		assertTrue(awaitAllowed(cache, origin));
+		assertEquals(1, authorizer.getLookupCount());
+
+		cache.shutdown();
+	}
+
+
+	public void testFailedFirstLookupRetried()
+		throws Exception {
+
+		InMemoryOriginAuthorizer authorizer = new InMemoryOriginAuthorizer();
+		authorizer.allow("https://tenant.com");
+		authorizer.setFailing(true);
+
+		OriginAuthorizationCache cache = new OriginAuthorizationCache(authorizer, 100, 300, 60, 300, 1, 5000);
+
+		Origin origin = new Origin("https://tenant.com");
+
+		assertFalse(cache.isAllowed(origin));
+
+		authorizer.setFailing(false);
+
+		assertTrue(cache.isAllowed(origin));
+		assertEquals(2, authorizer.getLookupCount());
+
+		cache.shutdown();
+	}
+
+
+	public void testNegativeResultsEvictedFirst()
+		throws Exception {
+
+		InMemoryOriginAuthorizer authorizer = new InMemoryOriginAuthorizer();
+
+		OriginAuthorizationCache cache = new OriginAuthorizationCache(authorizer, 10, 300, 60, 300, 1, 5000);
+
+		for (int i = 0; i < 5; i++) {
+			authorizer.allow("https://tenant" + i + ".com");
+			assertTrue(cache.isAllowed(new Origin("https://tenant" + i + ".com")));
+		}
+
+		// Flood of junk origins
+		for (int i = 0; i < 1000; i++)
+			cache.isAllowed(new Origin("https://junk" + i + ".com"));
+
+		assertTrue(cache.size() <= 10);
+
+		// The allowed origins are still cached
+		int lookups = authorizer.getLookupCount();
+
+		for (int i = 0; i < 5; i++)
+			assertTrue(cache.isAllowed(new Origin("https://tenant" + i + ".com")));
+
+		assertEquals(lookups, authorizer.getLookupCount());
+
+		cache.shutdown();
+	}
+
+
+	public void testPoliciesShareAuthorizer()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://example.com");
+		props.setProperty("cors.originAuthorizer", InMemoryOriginAuthorizer.class.getName());
+		props.setProperty("cors.policy.api.pathPrefix", "/api");
+		props.setProperty("cors.policy.api.maxAge", "60");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		assertEquals(0, config.originAuthorizerMissWait);
+
+		CORSConfiguration policyConfig = config.policies.get("api").getConfiguration();
+
+		assertSame(config.getOriginAuthorizationCache(), policyConfig.getOriginAuthorizationCache());
+		assertSame(config.getOriginAuthorizer(), policyConfig.getOriginAuthorizer());
+
+		((InMemoryOriginAuthorizer)config.getOriginAuthorizer()).allow("https://tenant.com");
+
+		assertTrue(awaitAllowed(policyConfig.getOriginAuthorizationCache(), new Origin("https://tenant.com")));
+		assertTrue(policyConfig.isAllowedOrigin(new Origin("https://tenant.com")));
+
+		// The shared cache survives the policy shutdown
+		policyConfig.shutdown();
+		assertTrue(config.isAllowedOrigin(new Origin("https://tenant.com")));
+
+		config.shutdown();
+	}
+
+
+	public void testTenantPoliciesShareAuthorizer()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://example.com");
+		props.setProperty("cors.originAuthorizer", InMemoryOriginAuthorizer.class.getName());
+		props.setProperty("cors.tenant.source", InMemoryTenantPolicySource.class.getName());
+		props.setProperty("cors.tenant.header", "X-Tenant");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		((InMemoryTenantPolicySource)config.getTenantPolicySource()).put("acme", "https://acme.com");
+
+		CORSConfiguration tenantConfig = config.getTenantPolicyCache().getConfiguration("acme");
+
+		assertSame(config.getOriginAuthorizationCache(), tenantConfig.getOriginAuthorizationCache());
+
+		config.shutdown();
+	}
+
+
+	public void testBadMissWait() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.originAuthorizer.missWait", "-1");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("The property cors.originAuthorizer.missWait must not be negative", e.getMessage());
+		}
+	}
+
+
+	public void testInvalidOriginDenied()
+		throws Exception {
+
+		InMemoryOriginAuthorizer authorizer = new InMemoryOriginAuthorizer();
+
+		OriginAuthorizationCache cache = new OriginAuthorizationCache(authorizer, 100, 300, 60, 300, 1);
+
+		assertFalse(cache.isAllowed(new Origin("not an origin")));
+
+		Thread.sleep(100);
+
+		assertFalse(cache.isAllowed(new Origin("not an origin")));
+		assertEquals(0, authorizer.getLookupCount());
+
+		cache.shutdown();
+	}
+
+
+	public void testConfiguredAuthorizer()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://example.com");
+		props.setProperty("cors.originAuthorizer", InMemoryOriginAuthorizer.class.getName());
+		props.setProperty("cors.originAuthorizer.cacheSize", "50");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		assertTrue(config.getOriginAuthorizer() instanceof InMemoryOriginAuthorizer);
+		assertEquals(50, config.originAuthorizerCacheSize);
+
+		InMemoryOriginAuthorizer authorizer = (InMemoryOriginAuthorizer)config.getOriginAuthorizer();
+		authorizer.allow("https://tenant.com");
+
+		assertTrue(config.isAllowedOrigin(new Origin("https://example.com")));
+
+		assertTrue(awaitAllowed(config.getOriginAuthorizationCache(), new Origin("https://tenant.com")));
+		assertTrue(config.isAllowedOrigin(new Origin("https://tenant.com")));
+
+		config.shutdown();
+	}
+
+
+	public void testBadAuthorizerClass() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.originAuthorizer", "com.example.NoSuchClass");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Bad origin authorizer class in property cors.originAuthorizer: com.example.NoSuchClass", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the origin deny list.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class OriginDenyListTest extends TestCase {
+
+
+	public void testExplicitlyDenied() {
+
+		OriginDenyList denyList = new OriginDenyList(Arrays.asList(new Origin("https://bad.example.com")), 0, 0);
+
+		assertTrue(denyList.isDenied(new Origin("https://bad.example.com")));
+		assertTrue(denyList.isDenied(new Origin("HTTPS://Bad.Example.com")));
+		assertFalse(denyList.isDenied(new Origin("https://good.example.com")));
+		assertEquals(Collections.singleton("https://bad.example.com"), denyList.getDenied());
+		assertFalse(denyList.isLearning());
+	}
+
+
+	public void testLearning() {
+
+		OriginDenyList denyList = new OriginDenyList(Collections.<Origin>emptySet(), 3, 100);
+
+		assertTrue(denyList.isLearning());
+
+		Origin origin = new Origin("https://junk.example.com");
+
+		denyList.recordDenial(origin);
+		denyList.recordDenial(origin);
+		assertFalse(denyList.isDenied(origin));
+
+		denyList.recordDenial(origin);
+		assertTrue(denyList.isDenied(origin));
+		assertEquals(1, denyList.getLearnedCount());
+
+		denyList.clearLearned();
+		assertFalse(denyList.isDenied(origin));
+		assertEquals(0, denyList.getLearnedCount());
+	}
+
+
+	public void testLearnedBound() {
+
+		OriginDenyList denyList = new OriginDenyList(Collections.<Origin>emptySet(), 1, 10);
+
+		for (int i = 0; i < 100; i++)
+			denyList.recordDenial(new Origin("https://junk" + i + ".example.com"));
+
+		assertEquals(10, denyList.getLearnedCount());
+	}
+
+
+	public void testLearningDisabled() {
+
+		OriginDenyList denyList = new OriginDenyList(Collections.<Origin>emptySet(), 0, 100);
+
+		Origin origin = new Origin("https://junk.example.com");
+
+		for (int i = 0; i < 10; i++)
+			denyList.recordDenial(origin);
+
+		assertFalse(denyList.isDenied(origin));
+	}
+
+
+	public void testConfiguration()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://example.com https://bad.example.com");
+		props.setProperty("cors.allowSubdomains", "true");
+		props.setProperty("cors.denyOrigin", "https://bad.example.com https://worse.example.com");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		assertEquals(2, config.deniedOrigins.size());
+		assertEquals(0, config.denyOriginLearnThreshold);
+		assertFalse(config.getOriginDenyList().isLearning());
+		assertEquals(10000, config.denyOriginLearnedMaxSize);
+
+		assertTrue(config.isAllowedOrigin(new Origin("https://example.com")));
+		assertTrue(config.isAllowedOrigin(new Origin("https://good.example.com")));
+		assertFalse(config.isAllowedOrigin(new Origin("https://bad.example.com")));
+		assertFalse(config.isAllowedOrigin(new Origin("https://worse.example.com")));
+	}
+
+
+	public void testDenyWithAnyOrigin()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.denyOrigin", "https://bad.example.com");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		assertTrue(config.allowAnyOrigin);
+		assertTrue(config.isAllowedOrigin(new Origin("https://example.com")));
+		assertFalse(config.isAllowedOrigin(new Origin("https://bad.example.com")));
+	}
+
+
+	public void testLearnedClearedOnRegistryAdd()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://example.com");
+		props.setProperty("cors.denyOrigin.learnThreshold", "3");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		Origin origin = new Origin("https://new.example.com");
+
+		for (int i = 0; i < 3; i++)
+			assertFalse(config.isAllowedOrigin(origin));
+
+		assertTrue(config.getOriginDenyList().isDenied(origin));
+
+		config.getOriginRegistry().add(origin);
+		assertTrue(config.isAllowedOrigin(origin));
+
+		Origin other = new Origin("https://temp.example.com");
+
+		for (int i = 0; i < 3; i++)
+			assertFalse(config.isAllowedOrigin(other));
+
+		config.getOriginRegistry().add(other, 1, TimeUnit.HOURS);
+		assertTrue(config.isAllowedOrigin(other));
+
+		config.shutdown();
+	}
+
+
+	public void testNoLearningWithAuthorizer()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://example.com");
+		props.setProperty("cors.denyOrigin.learnThreshold", "3");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+		config.setOriginAuthorizer(new InMemoryOriginAuthorizer());
+
+		Origin origin = new Origin("https://junk.example.com");
+
+		for (int i = 0; i < 10; i++)
+			config.isAllowedOrigin(origin);
+
+		assertEquals(0, config.getOriginDenyList().getLearnedCount());
+
+		config.shutdown();
+	}
+
+
+	public void testNoLearningByDefault()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://example.com");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		Origin origin = new Origin("https://junk.example.com");
+
+		for (int i = 0; i < 10; i++)
+			assertFalse(config.isAllowedOrigin(origin));
+
+		assertEquals(0, config.getOriginDenyList().getLearnedCount());
+		assertFalse(config.getOriginDenyList().isDenied(origin));
+	}
+
+
+	public void testEmptyListWithoutLearning() {
+
+		OriginDenyList denyList = new OriginDenyList(Collections.<Origin>emptySet(), 0, 100);
+
+		assertFalse(denyList.isLearning());
+		assertFalse(denyList.isDenied(new Origin("https://example.com")));
+
+		denyList.clearLearned();
+		assertFalse(denyList.isDenied(new Origin("https://example.com")));
+	}
+
+
+	public void testBadDeniedOrigin() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.denyOrigin", "not-an-origin");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Bad origin URL in property cors.denyOrigin: not-an-origin", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the origin groups.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class OriginGroupTest extends TestCase {
+
+
+	private static Properties createProperties() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+		props.setProperty("cors.supportsCredentials", "false");
+		props.setProperty("cors.exposedHeaders", "X-Request-Id");
+		props.setProperty("cors.maxAge", "600");
+
+		props.setProperty("cors.originGroup.firstParty.origins", "https://app.example.com https://admin.example.com");
+		props.setProperty("cors.originGroup.firstParty.supportsCredentials", "true");
+		props.setProperty("cors.originGroup.firstParty.exposedHeaders", "X-Request-Id, X-Session-Expiry");
+		props.setProperty("cors.originGroup.firstParty.maxAge", "86400");
+
+		props.setProperty("cors.originGroup.partner.origins", "https://partner.com");
+		props.setProperty("cors.originGroup.partner.maxAge", "60");
+
+		return props;
+	}
+
+
+	private static MockServletRequest createPreflight(final String origin) {
+
+		MockServletRequest request = new MockServletRequest();
+		request.setMethod("OPTIONS");
+		request.setHeader("Origin", origin);
+		request.setHeader("Access-Control-Request-Method", "GET");
+		return request;
+	}
+
+
+	private static MockServletRequest createActual(final String origin) {
+
+		MockServletRequest request = new MockServletRequest();
+		request.setHeader("Origin", origin);
+		return request;
+	}
+
+
+	public void testParse()
+		throws Exception {
+
+		CORSConfiguration config = new CORSConfiguration(createProperties());
+
+		assertEquals(Arrays.asList("firstParty", "partner"), Arrays.asList(config.originGroups.keySet().toArray()));
+
+		OriginGroup firstParty = config.originGroups.get("firstParty");
+		assertEquals("firstParty", firstParty.getName());
+		assertEquals(2, firstParty.getOrigins().size());
+		assertTrue(firstParty.supportsCredentials());
+		assertEquals(new LinkedHashSet<String>(Arrays.asList("X-Request-Id", "X-Session-Expiry")), firstParty.getExposedHeaders());
+		assertEquals(86400, firstParty.getMaxAge());
+
+		// Defaults to the top-level settings
+		OriginGroup partner = config.originGroups.get("partner");
+		assertFalse(partner.supportsCredentials());
+		assertEquals(Collections.singleton("X-Request-Id"), partner.getExposedHeaders());
+		assertEquals(60, partner.getMaxAge());
+
+		assertEquals(3, config.getGroupOriginCount());
+	}
+
+
+	public void testNoGroups()
+		throws Exception {
+
+		CORSConfiguration config = new CORSConfiguration(new Properties());
+
+		assertTrue(config.originGroups.isEmpty());
+		assertEquals(0, config.getGroupOriginCount());
+		assertNull(config.getOriginGroup(new Origin("http://example.com")));
+	}
+
+
+	public void testLookup()
+		throws Exception {
+
+		CORSConfiguration config = new CORSConfiguration(createProperties());
+
+		assertEquals("firstParty", config.getOriginGroup(new Origin("https://app.example.com")).getName());
+		assertEquals("firstParty", config.getOriginGroup(new Origin("HTTPS://Admin.Example.com:443")).getName());
+		assertEquals("partner", config.getOriginGroup(new Origin("https://partner.com")).getName());
+		assertNull(config.getOriginGroup(new Origin("http://example.com")));
+		assertNull(config.getOriginGroup(null));
+
+		// Group origins are allowed
+		assertTrue(config.isAllowedOrigin(new Origin("https://partner.com")));
+		assertTrue(config.isAllowedOrigin(new Origin("http://example.com")));
+		assertFalse(config.isAllowedOrigin(new Origin("https://other.com")));
+
+		// Without the group lookup
+		assertFalse(config.isAllowedOrigin(new Origin("https://partner.com"), false));
+		assertTrue(config.isAllowedOrigin(new Origin("http://example.com"), false));
+	}
+
+
+	public void testPreflight()
+		throws Exception {
+
+		CORSRequestHandler handler = new CORSRequestHandler(new CORSConfiguration(createProperties()));
+
+		MockServletResponse response = new MockServletResponse();
+		handler.handlePreflightRequest(createPreflight("https://app.example.com"), response);
+		assertEquals("https://app.example.com", response.getHeader("Access-Control-Allow-Origin"));
+		assertEquals("true", response.getHeader("Access-Control-Allow-Credentials"));
+		assertEquals("86400", response.getHeader("Access-Control-Max-Age"));
+
+		response = new MockServletResponse();
+		handler.handlePreflightRequest(createPreflight("https://partner.com"), response);
+		assertEquals("https://partner.com", response.getHeader("Access-Control-Allow-Origin"));
+		assertNull(response.getHeader("Access-Control-Allow-Credentials"));
+		assertEquals("60", response.getHeader("Access-Control-Max-Age"));
+
+		response = new MockServletResponse();
+		handler.handlePreflightRequest(createPreflight("http://example.com"), response);
+		assertEquals("http://example.com", response.getHeader("Access-Control-Allow-Origin"));
+		assertNull(response.getHeader("Access-Control-Allow-Credentials"));
+		assertEquals("600", response.getHeader("Access-Control-Max-Age"));
+
+		try {
+			handler.handlePreflightRequest(createPreflight("https://other.com"), new MockServletResponse());
+			fail();
+		} catch (CORSException e) {
+			assertSame(CORSException.ORIGIN_DENIED, e);
+		}
+	}
+
+
+	public void testActualRequest()
+		throws Exception {
+
+		CORSRequestHandler handler = new CORSRequestHandler(new CORSConfiguration(createProperties()));
+
+		MockServletResponse response = new MockServletResponse();
+		handler.handleActualRequest(createActual("https://admin.example.com"), response);
+		assertEquals("https://admin.example.com", response.getHeader("Access-Control-Allow-Origin"));
+		assertEquals("true", response.getHeader("Access-Control-Allow-Credentials"));
+		assertEquals("X-Request-Id, X-Session-Expiry", response.getHeader("Access-Control-Expose-Headers"));
+
+		response = new MockServletResponse();
+		handler.handleActualRequest(createActual("https://partner.com"), response);
+		assertNull(response.getHeader("Access-Control-Allow-Credentials"));
+		assertEquals("X-Request-Id", response.getHeader("Access-Control-Expose-Headers"));
+	}
+
+
+	public void testMissingOrigins() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.originGroup.partner.maxAge", "60");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Missing property cors.originGroup.partner.origins", e.getMessage());
+		}
+	}
+
+
+	public void testBadProperty() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.originGroup.partner.origins", "https://partner.com");
+		props.setProperty("cors.originGroup.partner.allowOrigin", "*");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Bad origin group property: cors.originGroup.partner.allowOrigin", e.getMessage());
+		}
+	}
+
+
+	public void testBadOrigin() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.originGroup.partner.origins", "https://*.partner.com");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Bad origin URL in property cors.originGroup.partner.origins: https://*.partner.com", e.getMessage());
+		}
+	}
+
+
+	public void testDuplicateOrigin() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.originGroup.a.origins", "https://partner.com");
+		props.setProperty("cors.originGroup.b.origins", "https://PARTNER.com");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Duplicate origin in property cors.originGroup.b.origins: https://PARTNER.com", e.getMessage());
+		}
+	}
+
+
+	public void testDeniedOrigin() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.denyOrigin", "https://partner.com");
+		props.setProperty("cors.originGroup.partner.origins", "https://partner.com");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Denied origin in property cors.originGroup.partner.origins: https://partner.com", e.getMessage());
+		}
+	}
+}
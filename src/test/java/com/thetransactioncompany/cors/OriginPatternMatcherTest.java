@@ -0,0 +1,165 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the origin pattern matcher.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class OriginPatternMatcherTest extends TestCase {
+
+
+	public void testIsPattern() {
+
+		assertTrue(OriginPatternMatcher.isPattern("https://*.example.com"));
+		assertTrue(OriginPatternMatcher.isPattern("https://app-??.example.com"));
+		assertFalse(OriginPatternMatcher.isPattern("https://example.com"));
+	}
+
+
+	public void testSubdomainWildcard() {
+
+		OriginPatternMatcher matcher = new OriginPatternMatcher(Arrays.asList("https://*.eu.example.com"));
+
+		assertTrue(matcher.matches(new Origin("https://app.eu.example.com")));
+		assertTrue(matcher.matches(new Origin("https://a.b.eu.example.com")));
+		assertTrue(matcher.matches(new Origin("HTTPS://App.EU.Example.com")));
+
+		assertFalse(matcher.matches(new Origin("https://eu.example.com")));
+		assertFalse(matcher.matches(new Origin("https://.eu.example.com")));
+		assertFalse(matcher.matches(new Origin("http://app.eu.example.com")));
+		assertFalse(matcher.matches(new Origin("https://app.us.example.com")));
+		assertFalse(matcher.matches(new Origin("https://app.eu.example.com:8443")));
+		assertFalse(matcher.matches(new Origin("https://app.eu.example.com.evil.com")));
+		assertFalse(matcher.matches(new Origin("https://evil.com/.eu.example.com")));
+	}
+
+
+	public void testPortWildcard() {
+
+		OriginPatternMatcher matcher = new OriginPatternMatcher(Arrays.asList("http://localhost:*"));
+
+		assertTrue(matcher.matches(new Origin("http://localhost")));
+		assertTrue(matcher.matches(new Origin("http://localhost:8080")));
+		assertTrue(matcher.matches(new Origin("http://localhost:3000")));
+
+		assertFalse(matcher.matches(new Origin("http://localhost:")));
+		assertFalse(matcher.matches(new Origin("http://localhost:abc")));
+		assertFalse(matcher.matches(new Origin("http://localhost.evil.com")));
+		assertFalse(matcher.matches(new Origin("https://localhost:8080")));
+	}
+
+
+	public void testSingleCharWildcard() {
+
+		OriginPatternMatcher matcher = new OriginPatternMatcher(Arrays.asList("https://app-??.example.com"));
+
+		assertTrue(matcher.matches(new Origin("https://app-01.example.com")));
+		assertTrue(matcher.matches(new Origin("https://app-eu.example.com")));
+
+		assertFalse(matcher.matches(new Origin("https://app-1.example.com")));
+		assertFalse(matcher.matches(new Origin("https://app-001.example.com")));
+		assertFalse(matcher.matches(new Origin("https://app-a.b.example.com")));
+	}
+
+
+	public void testExplicitPort() {
+
+		OriginPatternMatcher matcher = new OriginPatternMatcher(Arrays.asList("https://*.example.com:8443"));
+
+		assertTrue(matcher.matches(new Origin("https://app.example.com:8443")));
+		assertFalse(matcher.matches(new Origin("https://app.example.com")));
+		assertFalse(matcher.matches(new Origin("https://app.example.com:443")));
+	}
+
+
+	public void testMatchIndex() {
+
+		OriginPatternMatcher matcher = new OriginPatternMatcher(Arrays.asList(
+			"https://*.a.com",
+			"http://localhost:*",
+			"https://*.com"));
+
+		assertEquals(0, matcher.match(new Origin("https://x.a.com")));
+		assertEquals(1, matcher.match(new Origin("http://localhost:9000")));
+		assertEquals(2, matcher.match(new Origin("https://b.com")));
+		assertEquals(-1, matcher.match(new Origin("https://b.org")));
+	}
+
+
+	public void testManyPatterns() {
+
+		List<String> patterns = new ArrayList<String>();
+
+		for (int i = 0; i < 500; i++)
+			patterns.add("https://*.tenant" + i + ".example.com");
+
+		OriginPatternMatcher matcher = new OriginPatternMatcher(patterns);
+
+		assertEquals(250, matcher.match(new Origin("https://app.tenant250.example.com")));
+		assertEquals(-1, matcher.match(new Origin("https://app.tenant500.example.com")));
+	}
+
+
+	public void testInvalidPatterns() {
+
+		String[] invalid = {
+			"*.example.com",
+			"http*://example.com",
+			"https://:*",
+			"https://*.example.com/path",
+			"https://*.example.com:",
+			"https://*.example.com:8x"
+		};
+
+		for (String pattern: invalid) {
+
+			try {
+				new OriginPatternMatcher(Arrays.asList(pattern));
+				fail(pattern);
+			} catch (IllegalArgumentException e) {
+				// ok
+			}
+		}
+	}
+
+
+	public void testConfiguration()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://example.com https://*.eu.example.com http://localhost:*");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		assertEquals(1, config.allowedOrigins.size());
+		assertEquals(Arrays.asList("https://*.eu.example.com", "http://localhost:*"), new ArrayList<String>(config.allowedOriginPatterns));
+
+		assertTrue(config.isAllowedOrigin(new Origin("https://example.com")));
+		assertTrue(config.isAllowedOrigin(new Origin("https://app.eu.example.com")));
+		assertTrue(config.isAllowedOrigin(new Origin("http://localhost:8080")));
+		assertFalse(config.isAllowedOrigin(new Origin("https://app.example.com")));
+	}
+
+
+	public void testBadPatternInConfiguration() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "*.example.com");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Bad origin pattern in property cors.allowOrigin: Bad origin pattern: Missing scheme, such as http or https", e.getMessage());
+		}
+	}
+}
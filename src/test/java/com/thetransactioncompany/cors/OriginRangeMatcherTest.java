@@ -0,0 +1,198 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the origin IP address range matcher.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class OriginRangeMatcherTest extends TestCase {
+
+
+	public void testIsRange() {
+
+		assertTrue(OriginRangeMatcher.isRange("http://10.0.0.0/8:*"));
+		assertTrue(OriginRangeMatcher.isRange("http://[fd00::]/8"));
+		assertFalse(OriginRangeMatcher.isRange("http://10.0.0.1:8080"));
+		assertFalse(OriginRangeMatcher.isRange("https://*.example.com"));
+		assertFalse(OriginRangeMatcher.isRange("https://example.com/"));
+		assertFalse(OriginRangeMatcher.isRange("https://example.com/8"));
+		assertFalse(OriginRangeMatcher.isRange("http://10.0.0.1/"));
+		assertFalse(OriginRangeMatcher.isRange("http://10.0.0.0/8x"));
+		assertTrue(OriginRangeMatcher.isRange("http://10.0.0.0/40"));
+	}
+
+
+	public void testParseIPv4() {
+
+		assertEquals(0x0a0c0304L, OriginRangeMatcher.parseIPv4("10.12.3.4", 0, 9));
+		assertEquals(0xffffffffL, OriginRangeMatcher.parseIPv4("255.255.255.255", 0, 15));
+		assertEquals(-1L, OriginRangeMatcher.parseIPv4("256.0.0.1", 0, 9));
+		assertEquals(-1L, OriginRangeMatcher.parseIPv4("10.0.0", 0, 6));
+		assertEquals(-1L, OriginRangeMatcher.parseIPv4("10.0.0.1.2", 0, 10));
+		assertEquals(-1L, OriginRangeMatcher.parseIPv4("example.com", 0, 11));
+	}
+
+
+	private static long[] parseIPv6(final String s) {
+
+		long[] addr = new long[2];
+
+		return OriginRangeMatcher.parseIPv6(s, 0, s.length(), addr) ? addr : null;
+	}
+
+
+	public void testParseIPv6() {
+
+		assertTrue(Arrays.equals(new long[]{0L, 1L}, parseIPv6("::1")));
+		assertTrue(Arrays.equals(new long[]{0L, 0L}, parseIPv6("::")));
+		assertTrue(Arrays.equals(new long[]{0xfd00000000000000L, 0x12L}, parseIPv6("fd00::12")));
+		assertTrue(Arrays.equals(new long[]{0x20010db800000000L, 0L}, parseIPv6("2001:db8::")));
+		assertTrue(Arrays.equals(new long[]{0x0001000200030004L, 0x0005000600070008L}, parseIPv6("1:2:3:4:5:6:7:8")));
+		assertTrue(Arrays.equals(new long[]{0L, 0x0000ffff0a000001L}, parseIPv6("::ffff:10.0.0.1")));
+
+		assertNull(parseIPv6("1:2:3:4:5:6:7"));
+		assertNull(parseIPv6("1:2:3:4:5:6:7:8:9"));
+		assertNull(parseIPv6("1::2::3"));
+		assertNull(parseIPv6("1:"));
+		assertNull(parseIPv6(":1"));
+		assertNull(parseIPv6("12345::"));
+		assertNull(parseIPv6("g::"));
+		assertNull(parseIPv6("1:2:3:4::5:6:7:8"));
+	}
+
+
+	public void testIPv4Ranges() {
+
+		OriginRangeMatcher matcher = new OriginRangeMatcher(Arrays.asList(
+			"http://10.0.0.0/8:*",
+			"https://192.168.1.0/24"));
+
+		assertTrue(matcher.matches(new Origin("http://10.12.3.4:8080")));
+		assertTrue(matcher.matches(new Origin("http://10.12.3.4")));
+		assertTrue(matcher.matches(new Origin("HTTP://10.255.255.255:3000")));
+		assertFalse(matcher.matches(new Origin("https://10.12.3.4")));
+		assertFalse(matcher.matches(new Origin("http://11.0.0.1:8080")));
+
+		assertTrue(matcher.matches(new Origin("https://192.168.1.7")));
+		assertTrue(matcher.matches(new Origin("https://192.168.1.7:443")));
+		assertFalse(matcher.matches(new Origin("https://192.168.1.7:8443")));
+		assertFalse(matcher.matches(new Origin("https://192.168.2.7")));
+
+		assertFalse(matcher.matches(new Origin("http://example.com")));
+		assertFalse(matcher.matches(new Origin("http://10.0.0.1.example.com")));
+		assertFalse(matcher.matches(new Origin("http://10.0.0.1:abc")));
+		assertFalse(matcher.matches(new Origin("null")));
+	}
+
+
+	public void testIPv6Ranges() {
+
+		OriginRangeMatcher matcher = new OriginRangeMatcher(Arrays.asList(
+			"http://[fd00::]/8:3000",
+			"https://[2001:db8::]/32:*"));
+
+		assertTrue(matcher.matches(new Origin("http://[fd00::12]:3000")));
+		assertTrue(matcher.matches(new Origin("http://[FD12:3456::1]:3000")));
+		assertFalse(matcher.matches(new Origin("http://[fd00::12]:3001")));
+		assertFalse(matcher.matches(new Origin("http://[fd00::12]")));
+		assertFalse(matcher.matches(new Origin("http://[fe80::1]:3000")));
+
+		assertTrue(matcher.matches(new Origin("https://[2001:db8:1::1]")));
+		assertTrue(matcher.matches(new Origin("https://[2001:db8:ffff::1]:8443")));
+		assertFalse(matcher.matches(new Origin("https://[2001:db9::1]")));
+
+		assertFalse(matcher.matches(new Origin("http://[fd00::12:3000")));
+	}
+
+
+	public void testHostAndZeroPrefix() {
+
+		OriginRangeMatcher matcher = new OriginRangeMatcher(Arrays.asList(
+			"http://127.0.0.1/32:*",
+			"https://0.0.0.0/0:8443"));
+
+		assertTrue(matcher.matches(new Origin("http://127.0.0.1:8080")));
+		assertFalse(matcher.matches(new Origin("http://127.0.0.2:8080")));
+		assertTrue(matcher.matches(new Origin("https://1.2.3.4:8443")));
+		assertFalse(matcher.matches(new Origin("https://1.2.3.4")));
+	}
+
+
+	public void testInvalidRanges() {
+
+		String[] invalid = {
+			"10.0.0.0/8",
+			"http://10.0.0.0/33",
+			"http://10.0.0/8",
+			"http://10.0.0.0/x",
+			"http://10.0.0.0/8:",
+			"http://10.0.0.0/8:70000",
+			"http://[fd00::]/129",
+			"http://fd00::/8",
+			"http://example.com/8"
+		};
+
+		for (String range: invalid) {
+
+			try {
+				new OriginRangeMatcher(Arrays.asList(range));
+				fail(range);
+			} catch (IllegalArgumentException e) {
+				// ok
+			}
+		}
+	}
+
+
+	public void testConfiguration()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://example.com http://10.0.0.0/8:* http://[fd00::]/8:*");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		assertEquals(1, config.allowedOrigins.size());
+		assertEquals(2, config.allowedOriginRanges.size());
+		assertTrue(config.allowedOriginPatterns.isEmpty());
+
+		assertTrue(config.isAllowedOrigin(new Origin("https://example.com")));
+		assertTrue(config.isAllowedOrigin(new Origin("http://10.12.3.4:8080")));
+		assertTrue(config.isAllowedOrigin(new Origin("http://[fd00::12]:3000")));
+		assertFalse(config.isAllowedOrigin(new Origin("http://192.168.0.1")));
+	}
+
+
+	public void testBadRangeInConfiguration() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://10.0.0.0/40");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Bad origin range in property cors.allowOrigin: Bad prefix length: http://10.0.0.0/40", e.getMessage());
+		}
+	}
+
+
+	public void testTrailingSlashOriginInConfiguration()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://example.com/ http://10.0.0.1/");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		assertEquals(2, config.allowedOrigins.size());
+		assertTrue(config.allowedOriginRanges.isEmpty());
+	}
+}
@@ -0,0 +1,256 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the origin registry.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class OriginRegistryTest extends TestCase {
+
+
+	public void testAddAndRemove()
+		throws Exception {
+
+		OriginRegistry registry = new OriginRegistry(Collections.<ValidatedOrigin>emptySet());
+
+		Origin origin = new Origin("https://example.com");
+
+		assertFalse(registry.contains(origin));
+
+		assertTrue(registry.add(origin));
+		assertFalse(registry.add(origin));
+		assertTrue(registry.contains(origin));
+		assertEquals(1, registry.size());
+
+		assertTrue(registry.remove(origin));
+		assertFalse(registry.remove(origin));
+		assertFalse(registry.contains(origin));
+		assertEquals(0, registry.size());
+	}
+
+
+	public void testAddInvalid() {
+
+		OriginRegistry registry = new OriginRegistry(Collections.<ValidatedOrigin>emptySet());
+
+		try {
+			registry.add(new Origin("example.com"));
+			fail();
+		} catch (OriginException e) {
+			// ok
+		}
+
+		assertEquals(0, registry.size());
+	}
+
+
+	public void testReplaceAll()
+		throws Exception {
+
+		OriginRegistry registry = new OriginRegistry(Arrays.asList(new Origin("https://a.com").validate()));
+
+		registry.replaceAll(Arrays.asList(new Origin("https://b.com"), new Origin("https://c.com")));
+
+		assertFalse(registry.contains(new Origin("https://a.com")));
+		assertTrue(registry.contains(new Origin("https://b.com")));
+		assertTrue(registry.contains(new Origin("https://c.com")));
+		assertEquals(2, registry.size());
+	}
+
+
+	public void testReplaceAllWithInvalid()
+		throws Exception {
+
+		OriginRegistry registry = new OriginRegistry(Arrays.asList(new Origin("https://a.com").validate()));
+
+		try {
+			registry.replaceAll(Arrays.asList(new Origin("https://b.com"), new Origin("c.com")));
+			fail();
+		} catch (OriginException e) {
+			// ok
+		}
+
+		assertTrue(registry.contains(new Origin("https://a.com")));
+		assertEquals(1, registry.size());
+	}
+
+
+	public void testSetView()
+		throws Exception {
+
+		OriginRegistry registry = new OriginRegistry(Collections.<ValidatedOrigin>emptySet());
+
+		assertTrue(registry.asSet().isEmpty());
+
+		registry.add(new Origin("https://example.com"));
+
+		assertEquals(1, registry.asSet().size());
+		assertTrue(registry.asSet().contains(new Origin("https://example.com")));
+		assertEquals("https://example.com", registry.asSet().iterator().next().toString());
+
+		try {
+			registry.asSet().clear();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// ok
+		}
+	}
+
+
+	public void testTemporaryGrant()
+		throws Exception {
+
+		OriginRegistry registry = new OriginRegistry(Collections.<ValidatedOrigin>emptySet());
+
+		Origin origin = new Origin("https://pr-1234.preview.example.com");
+
+		assertTrue(registry.add(origin, 100, TimeUnit.MILLISECONDS));
+		assertTrue(registry.contains(origin));
+		assertEquals(1, registry.getTemporaryGrantCount());
+
+		long deadline = System.currentTimeMillis() + 5000;
+
+		while (registry.contains(origin) && System.currentTimeMillis() < deadline)
+			Thread.sleep(50);
+
+		assertFalse(registry.contains(origin));
+		assertEquals(0, registry.getTemporaryGrantCount());
+
+		registry.shutdown();
+	}
+
+
+	public void testTemporaryGrantMadePermanent()
+		throws Exception {
+
+		OriginRegistry registry = new OriginRegistry(Collections.<ValidatedOrigin>emptySet());
+
+		Origin origin = new Origin("https://example.com");
+
+		assertTrue(registry.add(origin, 100, TimeUnit.MILLISECONDS));
+		assertFalse(registry.add(origin));
+		assertEquals(0, registry.getTemporaryGrantCount());
+
+		// Permanent registration not downgraded
+		assertFalse(registry.add(origin, 100, TimeUnit.MILLISECONDS));
+		assertEquals(0, registry.getTemporaryGrantCount());
+
+		Thread.sleep(2 * TimeUnit.SECONDS.toMillis(OriginRegistry.EXPIRY_TICK_SECONDS) + 200);
+
+		assertTrue(registry.contains(origin));
+
+		registry.shutdown();
+	}
+
+
+	public void testTemporaryGrantAfterShutdown()
+		throws Exception {
+
+		OriginRegistry registry = new OriginRegistry(Collections.<ValidatedOrigin>emptySet());
+
+		registry.shutdown();
+
+		try {
+			registry.add(new Origin("https://example.com"), 1, TimeUnit.HOURS);
+			fail();
+		} catch (IllegalStateException e) {
+			// ok
+		}
+	}
+
+
+	public void testRuntimeUpdateOfConfiguration()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://example.com");
+
+		CORSFilter filter = new CORSFilter(new CORSConfiguration(props));
+
+		Origin tenantOrigin = new Origin("https://tenant.com");
+
+		assertFalse(filter.getConfiguration().isAllowedOrigin(tenantOrigin));
+
+		filter.getOriginRegistry().add(tenantOrigin);
+
+		assertTrue(filter.getConfiguration().isAllowedOrigin(tenantOrigin));
+		assertTrue(filter.getConfiguration().allowedOrigins.contains(tenantOrigin));
+
+		filter.getOriginRegistry().remove(tenantOrigin);
+
+		assertFalse(filter.getConfiguration().isAllowedOrigin(tenantOrigin));
+	}
+
+
+	public void testRegistrySharedWithPolicies()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://example.com");
+		props.setProperty("cors.policy.api.pathPrefix", "/api");
+		props.setProperty("cors.policy.api.maxAge", "60");
+		props.setProperty("cors.policy.admin.pathPrefix", "/admin");
+		props.setProperty("cors.policy.admin.allowOrigin", "https://admin.example.com");
+
+		CORSFilter filter = new CORSFilter(new CORSConfiguration(props));
+
+		// Inherited cors.allowOrigin, shared registry
+		assertSame(filter.getOriginRegistry(), filter.getOriginRegistry("api"));
+
+		// Own cors.allowOrigin, own registry
+		assertNotSame(filter.getOriginRegistry(), filter.getOriginRegistry("admin"));
+		assertNull(filter.getOriginRegistry("no-such-policy"));
+
+		Origin tenantOrigin = new Origin("https://tenant.com");
+
+		filter.getOriginRegistry().add(tenantOrigin);
+
+		CORSConfiguration apiConfig = filter.getConfiguration().policies.get("api").getConfiguration();
+		CORSConfiguration adminConfig = filter.getConfiguration().policies.get("admin").getConfiguration();
+
+		assertTrue(apiConfig.isAllowedOrigin(tenantOrigin));
+		assertFalse(adminConfig.isAllowedOrigin(tenantOrigin));
+
+		filter.getOriginRegistry("admin").add(tenantOrigin);
+		assertTrue(adminConfig.isAllowedOrigin(tenantOrigin));
+
+		// The shared registry survives the shutdown of the policy
+		apiConfig.shutdown();
+		filter.getOriginRegistry().add(new Origin("https://other.com"), 1, TimeUnit.HOURS);
+
+		filter.destroy();
+	}
+
+
+	public void testSharedRegistryClearsLearnedDenials()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://example.com");
+		props.setProperty("cors.denyOrigin.learnThreshold", "1");
+		props.setProperty("cors.policy.api.pathPrefix", "/api");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		OriginDenyList policyDenyList = config.policies.get("api").getConfiguration().getOriginDenyList();
+
+		Origin origin = new Origin("https://tenant.com");
+
+		policyDenyList.recordDenial(origin);
+		assertEquals(1, policyDenyList.getLearnedCount());
+
+		config.getOriginRegistry().add(origin);
+		assertEquals(0, policyDenyList.getLearnedCount());
+
+		config.shutdown();
+	}
+}
@@ -0,0 +1,76 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the origin utilities.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class OriginUtilsTest extends TestCase {
+
+
+	public void testCanonicalKey() {
+
+		assertEquals("https://app.example.com", OriginUtils.toCanonicalKey("HTTPS://App.Example.com"));
+		assertEquals("https://app.example.com", OriginUtils.toCanonicalKey("https://app.example.com:443"));
+		assertEquals("https://app.example.com", OriginUtils.toCanonicalKey("HTTPS://APP.EXAMPLE.COM:443"));
+		assertEquals("http://app.example.com", OriginUtils.toCanonicalKey("http://app.example.com:80"));
+		assertEquals("http://app.example.com", OriginUtils.toCanonicalKey("Http://app.example.com:80"));
+		assertEquals("http://[::1]", OriginUtils.toCanonicalKey("http://[::1]:80"));
+	}
+
+
+	public void testNonDefaultPortRetained() {
+
+		assertEquals("http://app.example.com:443", OriginUtils.toCanonicalKey("http://app.example.com:443"));
+		assertEquals("https://app.example.com:80", OriginUtils.toCanonicalKey("https://app.example.com:80"));
+		assertEquals("https://app.example.com:8443", OriginUtils.toCanonicalKey("https://app.example.com:8443"));
+		assertEquals("http://app.example.com:8080", OriginUtils.toCanonicalKey("http://app.example.com:8080"));
+		assertEquals("http://app.example.com:180", OriginUtils.toCanonicalKey("http://app.example.com:180"));
+	}
+
+
+	public void testSameInstanceIfCanonical() {
+
+		String origin = "https://app.example.com";
+
+		assertSame(origin, OriginUtils.toCanonicalKey(origin));
+	}
+
+
+	public void testDegenerate() {
+
+		assertEquals("", OriginUtils.toCanonicalKey(""));
+		assertEquals("null", OriginUtils.toCanonicalKey("null"));
+		assertEquals("http://:80", OriginUtils.toCanonicalKey("http://:80"));
+		assertEquals("https://:443", OriginUtils.toCanonicalKey("https://:443"));
+	}
+
+
+	public void testExactMatchVariants()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://app.example.com http://localhost:80");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		assertTrue(config.isAllowedOrigin(new Origin("https://app.example.com")));
+		assertTrue(config.isAllowedOrigin(new Origin("HTTPS://App.Example.com")));
+		assertTrue(config.isAllowedOrigin(new Origin("https://app.example.com:443")));
+		assertTrue(config.isAllowedOrigin(new Origin("http://localhost")));
+		assertTrue(config.isAllowedOrigin(new Origin("http://LOCALHOST:80")));
+
+		assertFalse(config.isAllowedOrigin(new Origin("http://app.example.com")));
+		assertFalse(config.isAllowedOrigin(new Origin("https://app.example.com:8443")));
+		assertFalse(config.isAllowedOrigin(new Origin("https://localhost")));
+
+		assertTrue(config.getOriginRegistry().remove(new Origin("https://APP.example.com:443")));
+		assertFalse(config.isAllowedOrigin(new Origin("https://app.example.com")));
+	}
+}
@@ -0,0 +1,116 @@
+package com.thetransactioncompany.cors;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the path prefix trie.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class PathTrieTest extends TestCase {
+
+
+	public void testNormalizePrefix() {
+
+		assertEquals("/api", PathTrie.normalizePrefix("/api"));
+		assertEquals("/api", PathTrie.normalizePrefix("/api/"));
+		assertEquals("/api", PathTrie.normalizePrefix("/api/*"));
+		assertEquals("/api", PathTrie.normalizePrefix("/api/**"));
+		assertEquals("", PathTrie.normalizePrefix("/"));
+		assertEquals("", PathTrie.normalizePrefix("/**"));
+	}
+
+
+	public void testEmpty() {
+
+		PathTrie<String> trie = new PathTrie<String>();
+
+		assertNull(trie.match("/", 0));
+		assertNull(trie.match("/api", 0));
+		assertNull(trie.match("", 0));
+	}
+
+
+	public void testLongestPrefix() {
+
+		PathTrie<String> trie = new PathTrie<String>();
+		assertNull(trie.put("/api", "api"));
+		assertNull(trie.put("/api/public/**", "public"));
+		assertNull(trie.put("/static/", "static"));
+
+		assertEquals("api", trie.match("/api", 0));
+		assertEquals("api", trie.match("/api/", 0));
+		assertEquals("api", trie.match("/api/private/items", 0));
+		assertEquals("public", trie.match("/api/public", 0));
+		assertEquals("public", trie.match("/api/public/items/1", 0));
+		assertEquals("api", trie.match("/api/publication", 0));
+		assertEquals("static", trie.match("/static/app.js", 0));
+
+		assertNull(trie.match("/apis", 0));
+		assertNull(trie.match("/", 0));
+		assertNull(trie.match("/other/api", 0));
+	}
+
+
+	public void testWholeSegments() {
+
+		PathTrie<String> trie = new PathTrie<String>();
+		trie.put("/api/v1", "v1");
+
+		assertEquals("v1", trie.match("/api/v1/items", 0));
+		assertNull(trie.match("/api/v10/items", 0));
+		assertNull(trie.match("/api", 0));
+	}
+
+
+	public void testRootPrefix() {
+
+		PathTrie<String> trie = new PathTrie<String>();
+		trie.put("/**", "root");
+		trie.put("/api", "api");
+
+		assertEquals("root", trie.match("/", 0));
+		assertEquals("root", trie.match("/other", 0));
+		assertEquals("api", trie.match("/api/items", 0));
+	}
+
+
+	public void testRepeatedSeparators() {
+
+		PathTrie<String> trie = new PathTrie<String>();
+		trie.put("/api/public", "public");
+
+		assertEquals("public", trie.match("//api//public/", 0));
+	}
+
+
+	public void testMatchFromOffset() {
+
+		PathTrie<String> trie = new PathTrie<String>();
+		trie.put("/api", "api");
+
+		assertEquals("api", trie.match("/context/api/items", 8));
+	}
+
+
+	public void testReplace() {
+
+		PathTrie<String> trie = new PathTrie<String>();
+		assertNull(trie.put("/api", "a"));
+		assertEquals("a", trie.put("/api/**", "b"));
+		assertEquals("b", trie.match("/api", 0));
+	}
+
+
+	public void testRejectRelativePrefix() {
+
+		try {
+			new PathTrie<String>().put("api", "api");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+}
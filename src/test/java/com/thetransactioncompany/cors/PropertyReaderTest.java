@@ -0,0 +1,133 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the property reader.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class PropertyReaderTest extends TestCase {
+
+
+	public void testOptBoolean()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("a", "true");
+		props.setProperty("b", "FALSE");
+		props.setProperty("c", " ");
+
+		PropertyReader pr = new PropertyReader(props);
+
+		assertTrue(pr.getOptBoolean("a", false));
+		assertFalse(pr.getOptBoolean("b", true));
+		assertTrue(pr.getOptBoolean("c", true));
+		assertFalse(pr.getOptBoolean("d", false));
+	}
+
+
+	public void testInvalidBoolean() {
+
+		Properties props = new Properties();
+		props.setProperty("a", "yes");
+
+		try {
+			new PropertyReader(props).getOptBoolean("a", false);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Invalid boolean property", e.getMessage());
+		}
+	}
+
+
+	public void testOptInt()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("a", "100");
+
+		PropertyReader pr = new PropertyReader(props);
+
+		assertEquals(100, pr.getOptInt("a", -1));
+		assertEquals(-1, pr.getOptInt("b", -1));
+	}
+
+
+	public void testInvalidInt() {
+
+		Properties props = new Properties();
+		props.setProperty("a", "abc");
+
+		try {
+			new PropertyReader(props).getOptInt("a", 0);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Invalid int property", e.getMessage());
+		}
+	}
+
+
+	public void testInvalidLong() {
+
+		Properties props = new Properties();
+		props.setProperty("a", "1.5");
+
+		try {
+			new PropertyReader(props).getOptLong("a", 0);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Invalid long property", e.getMessage());
+		}
+	}
+
+
+	public void testString()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("a", "");
+
+		PropertyReader pr = new PropertyReader(props);
+
+		assertEquals("", pr.getString("a"));
+		assertEquals("def", pr.getOptString("a", "def"));
+
+		try {
+			pr.getString("b");
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Missing property", e.getMessage());
+		}
+	}
+
+
+	public void testParseWordsMatchesRegexSplit() {
+
+		final char[] alphabet = {'a', 'B', ' ', ',', '\t', '-'};
+
+		Random random = new Random(42);
+
+		for (int i = 0; i < 10000; i++) {
+
+			char[] c = new char[random.nextInt(12)];
+
+			for (int j = 0; j < c.length; j++)
+				c[j] = alphabet[random.nextInt(alphabet.length)];
+
+			String s = new String(c);
+
+			String trimmed = s.trim();
+
+			String[] expected = trimmed.isEmpty() ? new String[0] : trimmed.split("\\s*,\\s*|\\s+");
+
+			assertTrue("Input: [" + s + "]", Arrays.equals(expected, PropertyReader.parseWords(s)));
+		}
+	}
+}
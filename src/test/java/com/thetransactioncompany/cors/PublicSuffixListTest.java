@@ -0,0 +1,194 @@
+package com.thetransactioncompany.cors;
+
+
+import java.io.StringReader;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the public suffix list.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class PublicSuffixListTest extends TestCase {
+
+
+	public void testDefaultList() {
+
+		PublicSuffixList psl = PublicSuffixList.getDefault();
+
+		assertSame(psl, PublicSuffixList.getDefault());
+
+		assertEquals("example.com", psl.getRegistrableDomain("example.com"));
+		assertEquals("example.com", psl.getRegistrableDomain("app.example.com"));
+		assertEquals("example.co.uk", psl.getRegistrableDomain("a.b.example.co.uk"));
+		assertEquals("example.github.io", psl.getRegistrableDomain("app.example.github.io"));
+
+		assertNull(psl.getRegistrableDomain("com"));
+		assertNull(psl.getRegistrableDomain("co.uk"));
+		assertNull(psl.getRegistrableDomain("github.io"));
+	}
+
+
+	public void testDefaultRule() {
+
+		PublicSuffixList psl = PublicSuffixList.getDefault();
+
+		// Unlisted TLD, the last label is the public suffix
+		assertEquals("example.unlisted", psl.getRegistrableDomain("app.example.unlisted"));
+		assertNull(psl.getRegistrableDomain("unlisted"));
+
+		// Unless a listed rule is required
+		assertNull(psl.getRegistrableDomain("app.example.unlisted", true));
+		assertEquals(-1, psl.getRegistrableDomainStart("example.unlisted", true));
+		assertEquals("example.com", psl.getRegistrableDomain("app.example.com", true));
+	}
+
+
+	public void testMultiLabelSuffixes() {
+
+		PublicSuffixList psl = PublicSuffixList.getDefault();
+
+		String[] suffixes = {"com.vn", "com.ua", "com.pk", "com.my", "co.id", "com.np"};
+
+		for (String suffix: suffixes) {
+
+			assertNull(suffix, psl.getRegistrableDomain(suffix, true));
+			assertEquals("shop." + suffix, psl.getRegistrableDomain("www.shop." + suffix, true));
+		}
+	}
+
+
+	public void testWildcardAndException() {
+
+		PublicSuffixList psl = PublicSuffixList.getDefault();
+
+		assertNull(psl.getRegistrableDomain("foo.ck"));
+		assertEquals("bar.foo.ck", psl.getRegistrableDomain("app.bar.foo.ck"));
+		assertEquals("www.ck", psl.getRegistrableDomain("www.ck"));
+		assertEquals("www.ck", psl.getRegistrableDomain("app.www.ck"));
+
+		assertNull(psl.getRegistrableDomain("ward.kawasaki.jp"));
+		assertEquals("foo.ward.kawasaki.jp", psl.getRegistrableDomain("foo.ward.kawasaki.jp"));
+		assertEquals("city.kawasaki.jp", psl.getRegistrableDomain("www.city.kawasaki.jp"));
+	}
+
+
+	public void testInvalidHosts() {
+
+		PublicSuffixList psl = PublicSuffixList.getDefault();
+
+		assertNull(psl.getRegistrableDomain(""));
+		assertNull(psl.getRegistrableDomain(".example.com"));
+		assertNull(psl.getRegistrableDomain("example.com."));
+		assertNull(psl.getRegistrableDomain("app..example.com"));
+		assertNull(psl.getRegistrableDomain("10.0.0.1"));
+		assertNull(psl.getRegistrableDomain("[::1]"));
+	}
+
+
+	public void testRegistrableDomainStart() {
+
+		PublicSuffixList psl = PublicSuffixList.getDefault();
+
+		assertEquals(4, psl.getRegistrableDomainStart("app.example.co.uk"));
+		assertEquals(0, psl.getRegistrableDomainStart("example.co.uk"));
+		assertEquals(-1, psl.getRegistrableDomainStart("co.uk"));
+	}
+
+
+	public void testCustomList()
+		throws Exception {
+
+		PublicSuffixList psl = new PublicSuffixList(new StringReader(
+			"// comment\n" +
+			"com\n" +
+			"\n" +
+			"example.com  trailing text\n" +
+			"*.test\n" +
+			"食狮.中国\n"));
+
+		// Root, com, example, test, xn--fiqs8s, xn--85x722f
+		assertEquals(6, psl.getNodeCount());
+		assertEquals("app.example.com", psl.getRegistrableDomain("a.app.example.com"));
+		assertEquals("b.a.test", psl.getRegistrableDomain("b.a.test"));
+		assertEquals("x.xn--85x722f.xn--fiqs8s", psl.getRegistrableDomain("y.x.xn--85x722f.xn--fiqs8s"));
+	}
+
+
+	public void testValidatedOrigin()
+		throws Exception {
+
+		assertEquals("example.co.uk", new Origin("https://app.example.co.uk").validate().getRegistrableDomain());
+		assertNull(new Origin("https://co.uk").validate().getRegistrableDomain());
+		assertNull(new Origin("http://10.0.0.1").validate().getRegistrableDomain());
+		assertNull(new Origin("https://app.example.unlisted").validate().getRegistrableDomain());
+	}
+
+
+	public void testConfiguration()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://www.example.co.uk https://co.uk");
+		props.setProperty("cors.allowSubdomains", "true");
+		props.setProperty("cors.matchRegistrableDomain", "true");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		assertTrue(config.matchRegistrableDomain);
+
+		assertTrue(config.isAllowedOrigin(new Origin("https://app.example.co.uk")));
+		assertTrue(config.isAllowedOrigin(new Origin("https://example.co.uk")));
+		assertTrue(config.isAllowedOrigin(new Origin("https://co.uk")));
+
+		assertFalse(config.isAllowedOrigin(new Origin("http://app.example.co.uk")));
+		assertFalse(config.isAllowedOrigin(new Origin("https://app.example.co.uk:8443")));
+		assertFalse(config.isAllowedOrigin(new Origin("https://evil.co.uk")));
+
+		// Runtime registry changes are picked up
+		config.getOriginRegistry().add(new Origin("https://app.other.com"));
+		assertTrue(config.isAllowedOrigin(new Origin("https://www.other.com")));
+
+		config.getOriginRegistry().remove(new Origin("https://www.example.co.uk"));
+		assertFalse(config.isAllowedOrigin(new Origin("https://app.example.co.uk")));
+	}
+
+
+	public void testSuffixMatchingOverreach()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://co.uk");
+		props.setProperty("cors.allowSubdomains", "true");
+
+		// Plain suffix matching allows any .co.uk origin
+		assertTrue(new CORSConfiguration(props).isAllowedOrigin(new Origin("https://evil.co.uk")));
+
+		props.setProperty("cors.matchRegistrableDomain", "true");
+
+		assertFalse(new CORSConfiguration(props).isAllowedOrigin(new Origin("https://evil.co.uk")));
+	}
+
+
+	public void testMultiLabelSuffixOverreach()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://shop.com.vn https://shop.example.unlisted");
+		props.setProperty("cors.allowSubdomains", "true");
+		props.setProperty("cors.matchRegistrableDomain", "true");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		assertTrue(config.isAllowedOrigin(new Origin("https://shop.com.vn")));
+		assertTrue(config.isAllowedOrigin(new Origin("https://www.shop.com.vn")));
+		assertFalse(config.isAllowedOrigin(new Origin("https://evil.com.vn")));
+
+		// No widening under an unlisted top level domain
+		assertTrue(config.isAllowedOrigin(new Origin("https://shop.example.unlisted")));
+		assertFalse(config.isAllowedOrigin(new Origin("https://evil.example.unlisted")));
+	}
+}
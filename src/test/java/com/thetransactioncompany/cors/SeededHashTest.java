@@ -0,0 +1,90 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the seeded hash function.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class SeededHashTest extends TestCase {
+
+
+	/**
+	 * Returns 2^n distinct strings with the same {@link String#hashCode},
+	 * made of the colliding blocks "Aa" and "BB".
+	 */
+	static List<String> collidingStrings(final String prefix, final int n) {
+
+		List<String> strings = new ArrayList<String>();
+
+		for (int i = 0; i < (1 << n); i++) {
+
+			StringBuilder sb = new StringBuilder(prefix);
+
+			for (int bit = 0; bit < n; bit++)
+				sb.append((i & (1 << bit)) != 0 ? "Aa" : "BB");
+
+			strings.add(sb.toString());
+		}
+
+		return strings;
+	}
+
+
+	public void testKnownValues() {
+
+		// SipHash-1-3 of the UTF-16LE bytes with the reference key
+		SeededHash hash = new SeededHash(0x0706050403020100L, 0x0f0e0d0c0b0a0908L);
+
+		assertEquals(-6076480319675972388L, hash.hash64(""));
+		assertEquals(-1485517633295720820L, hash.hash64("ab"));
+		assertEquals(6541414965990906747L, hash.hash64("https://example.com"));
+	}
+
+
+	public void testKeysDiffer() {
+
+		assertFalse(new SeededHash().hash64("https://example.com") == new SeededHash().hash64("https://example.com"));
+	}
+
+
+	public void testCollidingStringsSpread() {
+
+		List<String> strings = collidingStrings("https://", 12);
+
+		Set<Integer> stringHashes = new HashSet<Integer>();
+		Set<Integer> seededHashes = new HashSet<Integer>();
+
+		SeededHash hash = new SeededHash();
+
+		for (String s: strings) {
+			stringHashes.add(s.hashCode());
+			seededHashes.add(hash.hash(s));
+		}
+
+		assertEquals(1, stringHashes.size());
+		assertTrue("Distinct hashes: " + seededHashes.size(), seededHashes.size() > strings.size() - 10);
+	}
+
+
+	public void testKey() {
+
+		SeededHash hash = new SeededHash();
+
+		SeededHash.Key a = hash.key("https://example.com");
+		SeededHash.Key b = hash.key("https://example.com");
+
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		assertEquals("https://example.com", a.toString());
+		assertFalse(a.equals(hash.key("https://example.org")));
+	}
+}
@@ -0,0 +1,54 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the string index.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class StringIndexTest extends TestCase {
+
+
+	public void testLookup() {
+
+		StringIndex index = new StringIndex(Arrays.asList("Content-Type", "X-Requested-With", "Authorization", "Content-Type"));
+
+		assertEquals(3, index.size());
+		assertEquals(0, index.indexOf("Content-Type"));
+		assertEquals(1, index.indexOf("X-Requested-With"));
+		assertEquals(2, index.indexOf("Authorization"));
+		assertEquals("Authorization", index.get(2));
+		assertEquals(-1, index.indexOf("X-Other"));
+		assertFalse(index.contains("content-type"));
+	}
+
+
+	public void testEmpty() {
+
+		StringIndex index = new StringIndex(Collections.<String>emptySet());
+
+		assertEquals(0, index.size());
+		assertFalse(index.contains("Content-Type"));
+	}
+
+
+	public void testCollidingStrings() {
+
+		List<String> strings = SeededHashTest.collidingStrings("X-", 10);
+
+		StringIndex index = new StringIndex(strings);
+
+		for (int i = 0; i < strings.size(); i++)
+			assertEquals(i, index.indexOf(strings.get(i)));
+
+		for (String s: SeededHashTest.collidingStrings("Y-", 10))
+			assertFalse(index.contains(s));
+	}
+}
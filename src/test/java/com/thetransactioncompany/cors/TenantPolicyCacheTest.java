@@ -0,0 +1,489 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the tenant policy cache.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class TenantPolicyCacheTest extends TestCase {
+
+
+	private static Properties createBaseProperties() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+		props.setProperty("cors.maxAge", "3600");
+		return props;
+	}
+
+
+	public void testLoadOnFirstUse()
+		throws Exception {
+
+		InMemoryTenantPolicySource source = new InMemoryTenantPolicySource();
+		source.put("acme", "https://acme.com");
+
+		TenantPolicyCache cache = new TenantPolicyCache(source, createBaseProperties(), 100, 300, 1);
+
+		assertSame(source, cache.getSource());
+		assertEquals(0, source.getLoadCount());
+
+		CORSConfiguration config = cache.getConfiguration("acme");
+
+		assertTrue(config.isAllowedOrigin(new Origin("https://acme.com")));
+		assertFalse(config.isAllowedOrigin(new Origin("http://example.com")));
+
+		// Inherited
+		assertEquals(3600, config.maxAge);
+
+		// Cached
+		assertSame(config, cache.getConfiguration("acme"));
+		assertEquals(1, source.getLoadCount());
+		assertEquals(1, cache.size());
+
+		cache.shutdown();
+	}
+
+
+	public void testUnknownTenantCached()
+		throws Exception {
+
+		InMemoryTenantPolicySource source = new InMemoryTenantPolicySource();
+
+		TenantPolicyCache cache = new TenantPolicyCache(source, createBaseProperties(), 100, 300, 1);
+
+		assertNull(cache.getHandler("unknown"));
+		assertNull(cache.getHandler("unknown"));
+		assertEquals(1, source.getLoadCount());
+
+		cache.shutdown();
+	}
+
+
+	public void testUnknownTenantExpires()
+		throws Exception {
+
+		InMemoryTenantPolicySource source = new InMemoryTenantPolicySource();
+
+		TenantPolicyCache cache = new TenantPolicyCache(source, createBaseProperties(), 100, 0, 1);
+
+		assertNull(cache.getHandler("acme"));
+
+		source.put("acme", "https://acme.com");
+
+		assertNotNull(cache.getHandler("acme"));
+		assertEquals(2, source.getLoadCount());
+
+		cache.shutdown();
+	}
+
+
+	public void testUnknownTenantsDontEvictKnown()
+		throws Exception {
+
+		InMemoryTenantPolicySource source = new InMemoryTenantPolicySource();
+		source.put("a", "https://a.com");
+		source.put("b", "https://b.com");
+
+		TenantPolicyCache cache = new TenantPolicyCache(source, createBaseProperties(), 2, 300, 1);
+
+		CORSConfiguration a = cache.getConfiguration("a");
+		CORSConfiguration b = cache.getConfiguration("b");
+
+		for (int i = 0; i < 1000; i++)
+			assertNull(cache.getHandler("unknown-" + i));
+
+		assertEquals(2, cache.size());
+
+		int loads = source.getLoadCount();
+
+		assertSame(a, cache.getConfiguration("a"));
+		assertSame(b, cache.getConfiguration("b"));
+		assertEquals(loads, source.getLoadCount());
+
+		cache.shutdown();
+	}
+
+
+	public void testPolicyEvictedWhileLoadingReleased()
+		throws Exception {
+
+		final InMemoryTenantPolicySource source = new InMemoryTenantPolicySource();
+		source.put("acme", "https://acme.com");
+
+		CountDownLatch gate = new CountDownLatch(1);
+		source.setGate(gate);
+
+		final TenantPolicyCache cache = new TenantPolicyCache(source, createBaseProperties(), 100, 300, 1);
+
+		final CORSConfiguration[] loaded = new CORSConfiguration[1];
+
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loaded[0] = cache.getConfiguration("acme");
+			}
+		});
+
+		thread.start();
+
+		while (source.getLoadCount() == 0)
+			Thread.sleep(10);
+
+		// Evict the pending load
+		cache.clear();
+		assertEquals(0, cache.size());
+
+		gate.countDown();
+		thread.join(5000);
+
+		assertNotNull(loaded[0]);
+
+		// The policy was shut down on completion of the load
+		try {
+			loaded[0].getOriginRegistry().add(new Origin("https://other.com"), 1, TimeUnit.HOURS);
+			fail();
+		} catch (IllegalStateException e) {
+			// ok
+		}
+
+		cache.shutdown();
+	}
+
+
+	public void testEvictedPolicyReleased()
+		throws Exception {
+
+		InMemoryTenantPolicySource source = new InMemoryTenantPolicySource();
+		source.put("a", "https://a.com");
+		source.put("b", "https://b.com");
+
+		TenantPolicyCache cache = new TenantPolicyCache(source, createBaseProperties(), 1, 300, 1);
+
+		CORSConfiguration a = cache.getConfiguration("a");
+		cache.getConfiguration("b");
+
+		assertEquals(1, cache.size());
+
+		try {
+			a.getOriginRegistry().add(new Origin("https://other.com"), 1, TimeUnit.HOURS);
+			fail();
+		} catch (IllegalStateException e) {
+			// ok
+		}
+
+		cache.shutdown();
+	}
+
+
+	public void testSelectionPropertiesIgnored()
+		throws Exception {
+
+		TenantPolicySource source = new TenantPolicySource() {
+			@Override
+			public Properties getPolicyProperties(final String tenant) {
+				Properties props = new Properties();
+				props.setProperty("cors.allowOrigin", "https://acme.com");
+				props.setProperty("cors.tenant.source", "no.such.Class");
+				props.setProperty("cors.policy.a.pathPrefix", "/a");
+				return props;
+			}
+		};
+
+		TenantPolicyCache cache = new TenantPolicyCache(source, createBaseProperties(), 100, 300, 1);
+
+		CORSConfiguration config = cache.getConfiguration("acme");
+		assertNull(config.getTenantPolicySource());
+		assertTrue(config.policies.isEmpty());
+
+		cache.shutdown();
+	}
+
+
+	public void testSingleLoadForConcurrentMisses()
+		throws Exception {
+
+		final InMemoryTenantPolicySource source = new InMemoryTenantPolicySource();
+		source.put("acme", "https://acme.com");
+
+		CountDownLatch gate = new CountDownLatch(1);
+		source.setGate(gate);
+
+		final TenantPolicyCache cache = new TenantPolicyCache(source, createBaseProperties(), 100, 300, 1);
+
+		final AtomicInteger loaded = new AtomicInteger();
+
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for (int i = 0; i < 8; i++) {
+
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					if (cache.getHandler("acme") != null)
+						loaded.incrementAndGet();
+				}
+			});
+
+			thread.start();
+			threads.add(thread);
+		}
+
+		// Let the threads pile up on the pending load
+		Thread.sleep(100);
+		gate.countDown();
+
+		for (Thread thread: threads)
+			thread.join(5000);
+
+		assertEquals(8, loaded.get());
+		assertEquals(1, source.getLoadCount());
+
+		cache.shutdown();
+	}
+
+
+	public void testLeastRecentlyUsedEviction()
+		throws Exception {
+
+		InMemoryTenantPolicySource source = new InMemoryTenantPolicySource();
+		source.put("a", "https://a.com");
+		source.put("b", "https://b.com");
+		source.put("c", "https://c.com");
+
+		TenantPolicyCache cache = new TenantPolicyCache(source, createBaseProperties(), 2, 300, 1);
+
+		cache.getHandler("a");
+		cache.getHandler("b");
+		cache.getHandler("a");
+		cache.getHandler("c");
+
+		assertEquals(2, cache.size());
+		assertEquals(3, source.getLoadCount());
+
+		// b was evicted
+		cache.getHandler("a");
+		cache.getHandler("c");
+		assertEquals(3, source.getLoadCount());
+
+		cache.getHandler("b");
+		assertEquals(4, source.getLoadCount());
+
+		cache.shutdown();
+	}
+
+
+	public void testFailedLoadRetried()
+		throws Exception {
+
+		InMemoryTenantPolicySource source = new InMemoryTenantPolicySource();
+		source.put("acme", "https://acme.com");
+		source.setFailing(true);
+
+		TenantPolicyCache cache = new TenantPolicyCache(source, createBaseProperties(), 100, 300, 1);
+
+		assertNull(cache.getHandler("acme"));
+		assertEquals(0, cache.size());
+
+		source.setFailing(false);
+
+		assertNotNull(cache.getHandler("acme"));
+		assertEquals(2, source.getLoadCount());
+
+		cache.shutdown();
+	}
+
+
+	public void testInvalidPolicy()
+		throws Exception {
+
+		InMemoryTenantPolicySource source = new InMemoryTenantPolicySource();
+		source.put("acme", "not-an-origin");
+
+		TenantPolicyCache cache = new TenantPolicyCache(source, createBaseProperties(), 100, 300, 1);
+
+		assertNull(cache.getHandler("acme"));
+
+		cache.shutdown();
+	}
+
+
+	public void testBackgroundRefresh()
+		throws Exception {
+
+		InMemoryTenantPolicySource source = new InMemoryTenantPolicySource();
+		source.put("acme", "https://acme.com");
+
+		TenantPolicyCache cache = new TenantPolicyCache(source, createBaseProperties(), 100, 0, 1);
+
+		CORSConfiguration config = cache.getConfiguration("acme");
+		assertTrue(config.isAllowedOrigin(new Origin("https://acme.com")));
+
+		source.put("acme", "https://new.acme.com");
+
+		long deadline = System.currentTimeMillis() + 5000;
+
+		while (System.currentTimeMillis() < deadline) {
+
+			// Serves the current policy while reloading
+			config = cache.getConfiguration("acme");
+			assertNotNull(config);
+
+			if (config.isAllowedOrigin(new Origin("https://new.acme.com")))
+				break;
+
+			Thread.sleep(10);
+		}
+
+		assertTrue(config.isAllowedOrigin(new Origin("https://new.acme.com")));
+		assertFalse(config.isAllowedOrigin(new Origin("https://acme.com")));
+
+		cache.shutdown();
+	}
+
+
+	public void testUnchangedRefreshKeepsHandler()
+		throws Exception {
+
+		InMemoryTenantPolicySource source = new InMemoryTenantPolicySource();
+		source.put("acme", "https://acme.com");
+
+		Properties baseProps = createBaseProperties();
+		baseProps.setProperty("cors.maxAge.adaptive", "true");
+
+		TenantPolicyCache cache = new TenantPolicyCache(source, baseProps, 100, 0, 1);
+
+		CORSRequestHandler handler = cache.getHandler("acme");
+
+		long deadline = System.currentTimeMillis() + 5000;
+
+		while (source.getLoadCount() < 3 && System.currentTimeMillis() < deadline) {
+
+			// The same handler, with its adaptive max-age state
+			assertSame(handler, cache.getHandler("acme"));
+			Thread.sleep(10);
+		}
+
+		assertTrue(source.getLoadCount() >= 3);
+		assertSame(handler, cache.getHandler("acme"));
+
+		// Not shut down
+		handler.getConfiguration().getOriginRegistry().add(new Origin("https://other.com"), 1, TimeUnit.HOURS);
+
+		cache.shutdown();
+	}
+
+
+	public void testFailedRefreshRetainsPolicy()
+		throws Exception {
+
+		InMemoryTenantPolicySource source = new InMemoryTenantPolicySource();
+		source.put("acme", "https://acme.com");
+
+		TenantPolicyCache cache = new TenantPolicyCache(source, createBaseProperties(), 100, 0, 1);
+
+		CORSConfiguration config = cache.getConfiguration("acme");
+
+		source.setFailing(true);
+
+		for (int i = 0; i < 10; i++) {
+			assertSame(config, cache.getConfiguration("acme"));
+			Thread.sleep(10);
+		}
+
+		cache.shutdown();
+	}
+
+
+	public void testConfiguredSource()
+		throws Exception {
+
+		Properties props = createBaseProperties();
+		props.setProperty("cors.tenant.source", InMemoryTenantPolicySource.class.getName());
+		props.setProperty("cors.tenant.header", "X-Tenant");
+		props.setProperty("cors.tenant.cacheSize", "10");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		assertTrue(config.getTenantPolicySource() instanceof InMemoryTenantPolicySource);
+		assertEquals("X-Tenant", config.tenantHeader);
+		assertEquals(-1, config.tenantHostLabel);
+		assertEquals(-1, config.tenantPathSegment);
+		assertEquals(10, config.tenantCacheSize);
+		assertEquals(300, config.tenantRefreshInterval);
+		assertEquals(1, config.tenantThreads);
+
+		config.setTenantPolicySource(null);
+		assertNull(config.getTenantPolicyCache());
+
+		config.shutdown();
+	}
+
+
+	public void testDefaultConfiguration()
+		throws Exception {
+
+		CORSConfiguration config = new CORSConfiguration(new Properties());
+
+		assertNull(config.getTenantPolicySource());
+		assertNull(config.getTenantPolicyCache());
+		assertNull(config.tenantHeader);
+		assertEquals(-1, config.tenantHostLabel);
+		assertEquals(-1, config.tenantPathSegment);
+	}
+
+
+	public void testSourceWithoutSelector() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.tenant.source", InMemoryTenantPolicySource.class.getName());
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("The property cors.tenant.source requires cors.tenant.header, cors.tenant.hostLabel or cors.tenant.pathSegment", e.getMessage());
+		}
+	}
+
+
+	public void testMultipleSelectors() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.tenant.header", "X-Tenant");
+		props.setProperty("cors.tenant.hostLabel", "0");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Only one of the properties cors.tenant.header, cors.tenant.hostLabel and cors.tenant.pathSegment may be set", e.getMessage());
+		}
+	}
+
+
+	public void testBadSourceClass() {
+
+		Properties props = new Properties();
+		props.setProperty("cors.tenant.source", "no.such.Class");
+		props.setProperty("cors.tenant.header", "X-Tenant");
+
+		try {
+			new CORSConfiguration(props);
+			fail();
+		} catch (CORSConfigurationException e) {
+			assertEquals("Bad tenant policy source class in property cors.tenant.source: no.such.Class", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Properties;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the tenant resolver and the tenant policy selection.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class TenantResolverTest extends TestCase {
+
+
+	private static final FilterChain NO_OP_CHAIN = new FilterChain() {
+		@Override
+		public void doFilter(ServletRequest request, ServletResponse response) {
+			// no-op
+		}
+	};
+
+
+	public void testHeader() {
+
+		TenantResolver resolver = new TenantResolver("X-Tenant", -1, -1);
+
+		MockServletRequest request = new MockServletRequest();
+		assertNull(resolver.resolve(request));
+
+		request.setHeader("X-Tenant", "Acme-1");
+		assertEquals("Acme-1", resolver.resolve(request));
+	}
+
+
+	public void testHostLabel() {
+
+		MockServletRequest request = new MockServletRequest();
+		request.setServerName("Acme.eu.app.example.com");
+
+		assertEquals("acme", new TenantResolver(null, 0, -1).resolve(request));
+		assertEquals("eu", new TenantResolver(null, 1, -1).resolve(request));
+		assertEquals("com", new TenantResolver(null, 4, -1).resolve(request));
+		assertNull(new TenantResolver(null, 5, -1).resolve(request));
+
+		assertNull(new TenantResolver(null, 0, -1).resolve(new MockServletRequest()));
+	}
+
+
+	public void testPathSegment() {
+
+		MockServletRequest request = new MockServletRequest();
+		request.setServletPath("/acme");
+		request.setPathInfo("/orders/1");
+
+		assertEquals("acme", new TenantResolver(null, -1, 0).resolve(request));
+		assertEquals("orders", new TenantResolver(null, -1, 1).resolve(request));
+		assertEquals("1", new TenantResolver(null, -1, 2).resolve(request));
+		assertNull(new TenantResolver(null, -1, 3).resolve(request));
+
+		assertNull(new TenantResolver(null, -1, 0).resolve(new MockServletRequest()));
+	}
+
+
+	public void testGetPart() {
+
+		assertEquals("a", TenantResolver.getPart("a.b", '.', 0));
+		assertEquals("b", TenantResolver.getPart("a.b", '.', 1));
+		assertNull(TenantResolver.getPart("a.b", '.', 2));
+		assertNull(TenantResolver.getPart("a..b", '.', 1));
+		assertNull(TenantResolver.getPart("", '.', 0));
+		assertNull(TenantResolver.getPart(null, '.', 0));
+	}
+
+
+	public void testInvalidTenant() {
+
+		assertTrue(TenantResolver.isValid("acme_corp-1.eu"));
+
+		assertFalse(TenantResolver.isValid(""));
+		assertFalse(TenantResolver.isValid("acme corp"));
+		assertFalse(TenantResolver.isValid("acme/corp"));
+		assertFalse(TenantResolver.isValid("ácme"));
+
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i <= TenantResolver.MAX_LENGTH; i++)
+			sb.append('a');
+
+		assertFalse(TenantResolver.isValid(sb.toString()));
+		assertTrue(TenantResolver.isValid(sb.substring(1)));
+
+		MockServletRequest request = new MockServletRequest();
+		request.setHeader("X-Tenant", "acme corp");
+		assertNull(new TenantResolver("X-Tenant", -1, -1).resolve(request));
+	}
+
+
+	public void testTenantRouting()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+		props.setProperty("cors.tenant.hostLabel", "0");
+		props.setProperty("cors.policy.admin.pathPrefix", "/admin");
+		props.setProperty("cors.policy.admin.allowOrigin", "https://admin.example.com");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		InMemoryTenantPolicySource source = new InMemoryTenantPolicySource();
+		source.put("acme", "https://acme.com");
+		config.setTenantPolicySource(source);
+
+		CORSFilter filter = new CORSFilter(config);
+
+		// Tenant policy
+		MockServletRequest request = createPreflight("acme.app.example.com", "/orders", "https://acme.com");
+		MockServletResponse response = new MockServletResponse();
+		filter.doFilter(request, response, NO_OP_CHAIN);
+		assertEquals("https://acme.com", response.getHeader("Access-Control-Allow-Origin"));
+
+		request = createPreflight("acme.app.example.com", "/orders", "http://example.com");
+		response = new MockServletResponse();
+		filter.doFilter(request, response, NO_OP_CHAIN);
+		assertNull(response.getHeader("Access-Control-Allow-Origin"));
+
+		// Named policy takes precedence
+		request = createPreflight("acme.app.example.com", "/admin", "https://admin.example.com");
+		response = new MockServletResponse();
+		filter.doFilter(request, response, NO_OP_CHAIN);
+		assertEquals("https://admin.example.com", response.getHeader("Access-Control-Allow-Origin"));
+
+		// Unknown tenant, top-level policy
+		request = createPreflight("other.app.example.com", "/orders", "http://example.com");
+		response = new MockServletResponse();
+		filter.doFilter(request, response, NO_OP_CHAIN);
+		assertEquals("http://example.com", response.getHeader("Access-Control-Allow-Origin"));
+
+		// The unknown tenant is not counted
+		assertEquals(1, config.getTenantPolicyCache().size());
+
+		filter.destroy();
+	}
+
+
+	private static MockServletRequest createPreflight(final String host, final String path, final String origin) {
+
+		MockServletRequest request = new MockServletRequest();
+		request.setMethod("OPTIONS");
+		request.setServerName(host);
+		request.setServletPath(path);
+		request.setHeader("Origin", origin);
+		request.setHeader("Access-Control-Request-Method", "GET");
+		return request;
+	}
+}
@@ -0,0 +1,135 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the validated origin cache.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class ValidatedOriginCacheTest extends TestCase {
+
+
+	public void testHitAndMiss()
+		throws Exception {
+
+		ValidatedOriginCache cache = new ValidatedOriginCache(100);
+
+		ValidatedOrigin first = cache.validate(new Origin("https://App.Example.com"));
+
+		assertEquals("https", first.getScheme());
+		assertEquals("app.example.com", first.getHost());
+		assertEquals(0, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		ValidatedOrigin second = cache.validate(new Origin("https://App.Example.com"));
+
+		assertSame(first, second);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.size());
+	}
+
+
+	public void testInvalidOriginCached() {
+
+		ValidatedOriginCache cache = new ValidatedOriginCache(100);
+
+		for (int i = 0; i < 2; i++) {
+
+			try {
+				cache.validate(new Origin("null"));
+				fail();
+			} catch (OriginException e) {
+				// ok
+			}
+		}
+
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+
+	public void testValidatedOriginPassedThrough()
+		throws Exception {
+
+		ValidatedOriginCache cache = new ValidatedOriginCache(100);
+
+		ValidatedOrigin origin = new Origin("https://example.com").validate();
+
+		assertSame(origin, cache.validate(origin));
+		assertEquals(0, cache.size());
+	}
+
+
+	public void testBounded()
+		throws Exception {
+
+		ValidatedOriginCache cache = new ValidatedOriginCache(100);
+
+		for (int i = 0; i < 10000; i++)
+			cache.validate(new Origin("https://junk" + i + ".example.com"));
+
+		assertTrue("Size: " + cache.size(), cache.size() <= 100);
+		assertEquals(10000, cache.getMissCount());
+	}
+
+
+	public void testFrequentOriginRetained()
+		throws Exception {
+
+		ValidatedOriginCache cache = new ValidatedOriginCache(100);
+
+		Origin frequent = new Origin("https://app.example.com");
+
+		for (int i = 0; i < 1000; i++) {
+			cache.validate(new Origin("https://junk" + i + ".example.com"));
+			cache.validate(frequent);
+		}
+
+		// Missed only on the first lookup
+		assertEquals(1001, cache.getMissCount());
+		assertEquals(999, cache.getHitCount());
+	}
+
+
+	public void testClear()
+		throws Exception {
+
+		ValidatedOriginCache cache = new ValidatedOriginCache(100);
+		cache.validate(new Origin("https://example.com"));
+		cache.clear();
+
+		assertEquals(0, cache.size());
+	}
+
+
+	public void testConfiguration()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "https://example.com");
+		props.setProperty("cors.allowSubdomains", "true");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		assertEquals(1000, config.validatedOriginCacheSize);
+
+		assertTrue(config.isAllowedOrigin(new Origin("https://app.example.com")));
+		assertTrue(config.isAllowedOrigin(new Origin("https://app.example.com")));
+
+		assertEquals(1, config.getValidatedOriginCache().getMissCount());
+		assertEquals(1, config.getValidatedOriginCache().getHitCount());
+
+		props.setProperty("cors.validatedOriginCacheSize", "0");
+
+		config = new CORSConfiguration(props);
+
+		assertNull(config.getValidatedOriginCache());
+		assertTrue(config.isAllowedOrigin(new Origin("https://app.example.com")));
+	}
+}
@@ -0,0 +1,199 @@
+package com.thetransactioncompany.cors.autoreconf;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import com.thetransactioncompany.cors.CORSConfigurationLoader;
+import com.thetransactioncompany.cors.CORSFilter;
+import com.thetransactioncompany.cors.MockFilterConfig;
+import com.thetransactioncompany.cors.Origin;
+import com.thetransactioncompany.cors.OriginRegistry;
+
+
+/**
+ * Tests the automatically reconfigurable CORS filter.
+ */
+public class AutoReconfigurableCORSFilterTest extends TestCase {
+
+
+	/**
+	 * Watcher which reports a change on request.
+	 */
+	private static class ManualWatcher implements CORSConfigurationWatcher {
+
+
+		volatile boolean changed;
+
+
+		@Override
+		public void start() {
+		}
+
+
+		@Override
+		public void stop() {
+		}
+
+
+		@Override
+		public boolean reloadRequired() {
+			return changed;
+		}
+
+
+		@Override
+		public void reset() {
+			changed = false;
+		}
+	}
+
+
+	public void testRuntimeOriginsRetainedOnReload()
+		throws Exception {
+
+		MockFilterConfig filterConfig = new MockFilterConfig();
+		filterConfig.setInitParameter("cors.allowOrigin", "https://example.com");
+		filterConfig.setInitParameter("cors.maxAge", "60");
+
+		ManualWatcher watcher = new ManualWatcher();
+
+		AutoReconfigurableCORSFilter autoFilter = new AutoReconfigurableCORSFilter();
+		autoFilter.init(new CORSConfigurationLoader(filterConfig), watcher);
+
+		CORSFilter filter = autoFilter.getFilter();
+
+		Origin added = new Origin("https://tenant.com");
+		Origin granted = new Origin("https://guest.com");
+
+		filter.getOriginRegistry().add(added);
+		filter.getOriginRegistry().add(granted, 1, TimeUnit.HOURS);
+
+		// Reload with unchanged allowed origins
+		filterConfig.setInitParameter("cors.maxAge", "120");
+		watcher.changed = true;
+
+		CORSFilter reloaded = autoFilter.getFilter();
+
+		assertNotSame(filter, reloaded);
+		assertEquals(120, reloaded.getConfiguration().maxAge);
+
+		OriginRegistry registry = reloaded.getOriginRegistry();
+
+		assertSame(filter.getOriginRegistry(), registry);
+		assertTrue(reloaded.getConfiguration().isAllowedOrigin(added));
+		assertTrue(reloaded.getConfiguration().isAllowedOrigin(granted));
+		assertEquals(1, registry.getTemporaryGrantCount());
+
+		// Not shut down with the old filter
+		registry.add(new Origin("https://other.com"), 1, TimeUnit.HOURS);
+
+		autoFilter.destroy();
+	}
+
+
+	public void testRegistryRebuiltOnChangedOrigins()
+		throws Exception {
+
+		MockFilterConfig filterConfig = new MockFilterConfig();
+		filterConfig.setInitParameter("cors.allowOrigin", "https://example.com");
+
+		ManualWatcher watcher = new ManualWatcher();
+
+		AutoReconfigurableCORSFilter autoFilter = new AutoReconfigurableCORSFilter();
+		autoFilter.init(new CORSConfigurationLoader(filterConfig), watcher);
+
+		Origin added = new Origin("https://tenant.com");
+
+		autoFilter.getFilter().getOriginRegistry().add(added);
+
+		filterConfig.setInitParameter("cors.allowOrigin", "https://example.org");
+		watcher.changed = true;
+
+		CORSFilter reloaded = autoFilter.getFilter();
+
+		// The runtime changes are lost with a new cors.allowOrigin
+		assertFalse(reloaded.getConfiguration().isAllowedOrigin(added));
+		assertTrue(reloaded.getConfiguration().isAllowedOrigin(new Origin("https://example.org")));
+
+		autoFilter.destroy();
+	}
+
+
+	public void testWarmUpOnLoadAndReload()
+		throws Exception {
+
+		final List<String> messages = new ArrayList<String>();
+
+		Handler handler = new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				synchronized (messages) {
+					messages.add(record.getMessage());
+				}
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+
+		Logger root = LogManager.getLogManager().getLogger("");
+		Level level = root.getLevel();
+		root.setLevel(Level.FINE);
+		root.addHandler(handler);
+
+		try {
+			MockFilterConfig filterConfig = new MockFilterConfig();
+			filterConfig.setInitParameter("cors.allowOrigin", "https://example.com");
+			filterConfig.setInitParameter("cors.warmUpIterations", "3");
+
+			ManualWatcher watcher = new ManualWatcher();
+
+			AutoReconfigurableCORSFilter autoFilter = new AutoReconfigurableCORSFilter();
+			autoFilter.init(new CORSConfigurationLoader(filterConfig), watcher);
+
+			autoFilter.getFilter();
+
+			assertEquals(1, countWarmUps(messages));
+
+			watcher.changed = true;
+			autoFilter.getFilter();
+
+			assertEquals(2, countWarmUps(messages));
+
+			autoFilter.destroy();
+
+		} finally {
+			root.removeHandler(handler);
+			root.setLevel(level);
+		}
+	}
+
+
+	private static int countWarmUps(final List<String> messages) {
+
+		int count = 0;
+
+		synchronized (messages) {
+			for (String message: messages) {
+				if ("CORS Filter: Completed 3 warm-up iterations".equals(message))
+					count++;
+			}
+		}
+
+		return count;
+	}
+}